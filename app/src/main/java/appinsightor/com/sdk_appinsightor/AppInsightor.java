@@ -9,8 +9,12 @@ import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * AppInsightor SDK 시작시 호출(SDK 동작)<br />
@@ -72,10 +76,6 @@ public class AppInsightor {
     //private static final String DEVICEID_PREFERENCE = "DEVICEID";
     //SharedPreferences, Device ID를 담고 있을 Queue, deviceId 영속적인 저장 처리
 
-    /**
-     * Event Queue에 담긴 요청 메시지들에 대한 수신서버 전송 제한 갯수(<b>1:즉시전송</b>)
-     */
-    private static int EVENT_QUEUE_SIZE_THRESHOLD = 1;
     /**
      * star-end Event 시 key 비교를 위한 변수
      */
@@ -84,22 +84,78 @@ public class AppInsightor {
     /**
      * 디버깅을 위한 boolean 변수
      */
-    private boolean enableLogging_ = false;
+    private volatile boolean enableLogging_ = false;
     /**
      * 디버깅을 위한 변수 - 현재 Class Name 과 Method Name 출력
      */
-    private boolean enableLoggingStep_ = false;
+    private volatile boolean enableLoggingStep_ = false;
     /**
      * release 시 사용할 로그를 위한 변수 - 현재 Class Name 과 Method Name 출력
      */
-    private boolean enableLogRelease_ = true;
+    private volatile boolean enableLogRelease_ = true;
 
 
     private ConnectionQueue connectionQueue_;
-    private EventQueue eventQueue_;
+    private volatile EventQueue eventQueue_;
+    private volatile EventIngestor eventIngestor_;//recordEvent 수집 ring buffer, init 전에는 null
     private int activityCount_;
     private Context context_;
     private static String deviceId_;
+    private AppInsightorStore.StorageType storageType_ = AppInsightorStore.StorageType.FILE;
+    private final EnumMap<LanePolicy.Lane, LanePolicy> lanePolicies_ = LanePolicy.defaults();
+    private QueueCapacity eventCapacity_ = QueueCapacity.DEFAULT_EVENTS;
+    private long storageMaxStalenessMs_ = AppInsightorStore.DEFAULT_MAX_STALENESS_MS;
+    private IngestionPolicy ingestionPolicy_ = IngestionPolicy.DEFAULT;
+    private volatile BatchPolicy batchPolicy_ = BatchPolicy.IMMEDIATE;//events Queue 전송 조건
+    private final ThreadLocal<EventBuilder> eventBuilders_ = new ThreadLocal<EventBuilder>() {
+        @Override
+        protected EventBuilder initialValue() {
+            return new EventBuilder(AppInsightor.this);
+        }
+    };//스레드마다 재사용하는 이벤트 builder
+    private volatile TimedEventTable timedEventTable_ = new TimedEventTable(TimedEventTable.DEFAULT_MAX_OPEN, TimedEventTable.DEFAULT_STALE_TIMEOUT_MS);//handle 로 구분하는 timed event
+    private volatile Map<String, LatencyHistogram> histograms_ = Collections.emptyMap();//처리 시간 분포로 기록하는 timed event key(copy-on-write)
+    private final MetricsRegistry metrics_ = new MetricsRegistry();//app metrics(counter, gauge, timer)
+    private final EventSampler eventSampler_ = new EventSampler();//이벤트 key 별 sampling
+    private final EventAggregator eventAggregator_ = new EventAggregator(EventAggregator.DEFAULT_MAX_KEYS);//같은 이벤트 합치기
+
+    /**
+     * 이벤트 스레드가 ring buffer 에서 꺼낸 이벤트를 events Queue 에 저장한다.
+     */
+    private final EventIngestor.Sink eventSink_ = new EventIngestor.Sink() {
+        @Override
+        public void accept(Event event) {
+            final EventQueue eventQueue = eventQueue_;
+            if (eventQueue == null) {
+                event.recycle();
+                return;//halt
+            }
+            if (enableLogRelease_ && event.segmentation != null) {
+                for (Map.Entry<String, String> entry : event.segmentation.entrySet()) {
+                    Log.i("recordEvent", "key : " + entry.getKey());
+                    Log.i("recordEvent", "value : " + entry.getValue());
+                }
+            }
+            event.timestamp = uniqueTimestampMs(event.timestamp);
+            if (!eventAggregator_.add(event, System.currentTimeMillis())) {
+                eventQueue.recordEvent(event);
+                event.recycle();
+            }
+        }
+
+        @Override
+        public long onDrained() {
+            return sendEventsIfNeeded();
+        }
+
+        @Override
+        public void onDropped(long count) {
+            final EventQueue eventQueue = eventQueue_;
+            if (eventQueue != null) {
+                eventQueue.addDropped(count);
+            }
+        }
+    };
 
 
     /**
@@ -157,7 +213,26 @@ public class AppInsightor {
      * @return this
      */
     public AppInsightor init(final Context context, final String serverURL, final String appName, final String appVersion, final String deviceID, String serverAppName) {
+        return init(context, serverURL, appName, appVersion, deviceID, serverAppName, batchPolicy_);
+    }
+
+    /**
+     * AppInsightor init - 이벤트 전송 조건(BatchPolicy) 지정<br />
+     * 요청 메시지를 처리 및 수신서버에 전송하기 위한 local store(Queue)를 초기화 하고<br />
+     * deviceID 등 초기 데이터를 입력한다.
+     * @param context
+     * @param serverURL 설정된 수신 Server URL
+     * @param appName App Name
+     * @param deviceID 시스템 및 사용자 정의 device Id
+     * @param batchPolicy 이벤트 전송 조건(이벤트 수, 크기, 시간 중 먼저 도달한 조건에서 전송)
+     * @throws IllegalArgumentException context, serverURL, appName, DeviceID, batchPolicy 의 값이 옳바르지 않을 경우
+     * @return this
+     */
+    public AppInsightor init(final Context context, final String serverURL, final String appName, final String appVersion, final String deviceID, String serverAppName, BatchPolicy batchPolicy) {
         AppInsightor.sharedInstance().logShowPrinting("start");
+        if (batchPolicy == null) {
+            throw new IllegalArgumentException("valid batchPolicy is required");
+        }
         if (context == null) {
             throw new IllegalArgumentException("valid context is required");
         }
@@ -174,8 +249,10 @@ public class AppInsightor {
             throw new IllegalArgumentException("valid serverAppName is required");
         }
         //halt();
+        batchPolicy_ = batchPolicy;
+        final boolean created = eventQueue_ == null;
         if (eventQueue_ == null) {
-            final AppInsightorStore appinsightorStore = new AppInsightorStore(context);
+            final AppInsightorStore appinsightorStore = new AppInsightorStore(context, storageType_, lanePolicies_, eventCapacity_, storageMaxStalenessMs_);
 
             deviceId_ = deviceID;
             AppInsightor.APPLICATION_SERVER_NAME = serverAppName;
@@ -185,10 +262,15 @@ public class AppInsightor {
             connectionQueue_.setAppVersion(appVersion);
             connectionQueue_.setAppInsightorStore(appinsightorStore);
             connectionQueue_.setDeviceId(deviceId_);
-            eventQueue_ = new EventQueue(appinsightorStore);
+            eventQueue_ = new EventQueue(appinsightorStore.getEvents(), appinsightorStore.getCodec(), appinsightorStore.getSequence());
+            eventIngestor_ = new EventIngestor(ingestionPolicy_, eventSink_);
+            eventIngestor_.start();
         }
         context_ = context;
         connectionQueue_.setContext(context);
+        if (created) {
+            connectionQueue_.prepareFatalCrash();//이전 실행의 fatal crash 전송, 이번 실행의 crash 기록 준비
+        }
 
 
         AppInsightor.sharedInstance().logShowPrinting("end");
@@ -216,7 +298,7 @@ public class AppInsightor {
      * AppInsightor SDK 프로그래밍 디버깅을 위한 로그 출력 유무의 boolean 값
      * @return boolean 로그출력 유무
      */
-    public synchronized boolean isLoggingEnabled() {
+    public boolean isLoggingEnabled() {
         return enableLogging_;
     }
 
@@ -224,7 +306,7 @@ public class AppInsightor {
      * AppInsightor SDK 프로그래밍 디버깅을 위해 현재 Class Name 과 Method Name 을 출력하기 위함
      * @param str 사용자 지정 문자열 (start, end etc.)
      */
-    public synchronized void logShowPrinting(String str) {
+    public void logShowPrinting(String str) {
         if(enableLoggingStep_) {
             StackTraceElement[] stacks = new Throwable().getStackTrace();
             StackTraceElement currentStack = stacks[1];
@@ -242,7 +324,7 @@ public class AppInsightor {
      * AppInsightor SDK 실제 API 적용시 현재 ClassName과 MethodName을 출력하기 위함
      * @param str 사용자 지정 문자열 (start, end etc.)
      */
-    public synchronized void showClassMethodLog(String str) {
+    public void showClassMethodLog(String str) {
         if(enableLogRelease_) {
             StackTraceElement[] stacks = new Throwable().getStackTrace();
             StackTraceElement currentStack = stacks[1];
@@ -268,15 +350,220 @@ public class AppInsightor {
         return this;
     }
 
+    /**
+     * POST 로 전송하는 요청 메시지 본문을 gzip 으로 압축하여 전송(Content-Encoding: gzip)<br />
+     * 수신서버가 gzip 본문을 거부(415)하면 압축하지 않고 다시 전송하며, 이후 앱 프로세스가 끝날 때까지 압축하지 않는다.<br />
+     * call ConnectionProcessor.compressionThreshold
+     * @param minLength 압축할 최소 본문 길이(UTF-8 byte 수), 음수이면 압축하지 않음(기본)
+     * @return this
+     */
+    public synchronized AppInsightor setCompressionThreshold(int minLength) {
+        ConnectionProcessor.compressionThreshold = minLength;
+        return this;
+    }
+
+    /**
+     * 압축시 요청 메시지에 반복되는 key, 값을 미리 담은 preset dictionary 를 사용(Content-Encoding: deflate, X-AppInsightor-Dictionary)<br />
+     * 작은 요청 메시지(이벤트 몇 개)도 압축되므로 setCompressionThreshold() 를 작게(e.g. 256) 지정하여 함께 사용한다.
+     * 수신서버에 같은 ID 의 dictionary 가 등록되어 있어야 하며, 거부(415, 또는 X-AppInsightor-Dictionary 헤더가 있는 400)하면 이후 dictionary 없이 gzip 으로 압축한다.<br />
+     * call ConnectionProcessor.compressionDictionary
+     * @param enabled 사용 여부 (기본 false)
+     * @return this
+     */
+    public synchronized AppInsightor setCompressionDictionary(boolean enabled) {
+        ConnectionProcessor.compressionDictionary = enabled;
+        return this;
+    }
+
+    /**
+     * 요청 메시지 Queue 저장소 종류 설정(init 호출 전에 설정해야 한다.)<br />
+     * e.g. kiosk 배포는 MEMORY, 일반 배포는 FILE(기본)
+     * @param storageType Queue 저장소 종류
+     * @return this
+     */
+    public synchronized AppInsightor setStorageType(AppInsightorStore.StorageType storageType) {
+        if (storageType == null) {
+            throw new IllegalArgumentException("valid storageType is required");
+        }
+        storageType_ = storageType;
+        return this;
+    }
+
+    /**
+     * 수신서버에 전송할 요청 메시지 Queue 의 용량과 초과시 처리 방식 설정(init 호출 전에 설정해야 한다.)<br />
+     * SESSION lane 의 용량을 설정하며, 다른 lane 은 setLanePolicy() 로 설정한다.
+     * @param capacity 용량 (기본 1000개, 4MB, DROP_LOWEST_PRIORITY)
+     * @return this
+     */
+    public synchronized AppInsightor setConnectionQueueCapacity(QueueCapacity capacity) {
+        if (capacity == null) {
+            throw new IllegalArgumentException("valid capacity is required");
+        }
+        lanePolicies_.put(LanePolicy.Lane.SESSION, lanePolicies_.get(LanePolicy.Lane.SESSION).withCapacity(capacity));
+        return this;
+    }
+
+    /**
+     * 전송 lane 의 용량, 재시도 방식, 스케줄링 가중치 설정(init 호출 전에 설정해야 한다.)<br />
+     * 만료 시간, 최대 전송 시도 횟수를 지정하지 않은 정책은 해당 lane 의 기본값을 사용한다.
+     * @param lane 전송 lane
+     * @param policy 정책
+     * @return this
+     */
+    public synchronized AppInsightor setLanePolicy(LanePolicy.Lane lane, LanePolicy policy) {
+        if (lane == null || policy == null) {
+            throw new IllegalArgumentException("valid lane and policy are required");
+        }
+        lanePolicies_.put(lane, policy.forLane(lane));
+        return this;
+    }
+
+    /**
+     * 수신서버에 요청 메시지 여러 개를 POST 요청 1건으로 묶어 전송하는 조건 설정(다음 전송부터 적용된다.)<br />
+     * 수신서버가 batch endpoint(/ne.nfl?batch=1)를 지원하는 경우에만 사용한다.
+     * @param policy 전송 조건 (기본 UploadBatchPolicy.SINGLE - 요청 메시지마다 HTTP 요청 1건)
+     * @return this
+     */
+    public AppInsightor setUploadBatchPolicy(UploadBatchPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("valid policy is required");
+        }
+        connectionQueue_.setUploadBatchPolicy(policy);
+        return this;
+    }
+
+    /**
+     * 전송 lane 별 Queue 깊이, 대기 시간, 전송/실패 횟수
+     * @return lane 별 상태, init 전에는 빈 Map
+     */
+    public synchronized Map<LanePolicy.Lane, LaneStats> getLaneStats() {
+        final AppInsightorStore appinsightorStore = connectionQueue_.getAppInsightorStore();
+        if (appinsightorStore == null) {
+            return new EnumMap<>(LanePolicy.Lane.class);
+        }
+        return appinsightorStore.getLanes().stats(appinsightorStore.getCodec());
+    }
+
+    /**
+     * 수신서버 전송 연결 재사용 통계(요청 수, TLS handshake 수, 재사용 비율, 평균 요청 시간)
+     * @return 앱 프로세스 시작 후 누적값
+     */
+    public TransportStats getTransportStats() {
+        return UploadTransport.stats();
+    }
+
+    /**
+     * recordEvent 수집 ring buffer 의 크기와 대기, 용량 초과시 처리 방식 설정(init 호출 전에 설정해야 한다.)
+     * @param policy 수집 정책 (기본 1024개, BLOCKING, CALLER_RUNS)
+     * @return this
+     */
+    public synchronized AppInsightor setIngestionPolicy(IngestionPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("valid policy is required");
+        }
+        ingestionPolicy_ = policy;
+        return this;
+    }
+
+    /**
+     * events Queue 의 이벤트를 수신서버에 전송하는 조건 설정(init 후에도 변경 가능, 다음 이벤트 저장시부터 적용)<br />
+     * 이벤트를 모아서 전송하려면 e.g. new BatchPolicy(50, 32 * 1024, 30000) 을 지정한다.
+     * @param policy 전송 조건 (기본 BatchPolicy.IMMEDIATE, 이벤트마다 바로 전송)
+     * @return this
+     */
+    public AppInsightor setBatchPolicy(BatchPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("valid policy is required");
+        }
+        batchPolicy_ = policy;
+        return this;
+    }
+
+    /**
+     * BatchPolicy 조건과 관계없이 수집된 이벤트를 바로 수신서버 전송 Queue 에 넣는다.(호출한 스레드에서 수행)
+     * @throws IllegalStateException AppInsightor SDK 초기화가 되지 않았을 경우
+     */
+    public void flushEvents() {
+        final EventIngestor eventIngestor = eventIngestor_;
+        if (eventIngestor == null) {
+            throw new IllegalStateException("AppInsightor.sharedInstance().init 처리를 통한 eventQueue_ 초기화 체크");
+        }
+        eventIngestor.drain();
+        sendEvents();
+    }
+
+    /**
+     * 같은 이벤트를 합쳐서 저장하는 (key, segmentation) 조합 최대 수 설정<br />
+     * 전송(BatchPolicy) 전까지 key 와 segmentation 이 같은 이벤트를 하나로 합쳐 count 와 dur(합계, 최소, 최대)를 누적하고,
+     * 조합 수가 maxKeys 에 이르면 새 조합의 이벤트는 그대로 저장한다.<br />
+     * 기본은 합치지 않으며(이벤트마다 저장, 이전 버전 동작), 사용하려면 e.g. setEventAggregation(100) 으로 지정한다.
+     * @param maxKeys 조합 최대 수 (기본 0, 0 이면 합치지 않음)
+     * @return this
+     */
+    public AppInsightor setEventAggregation(int maxKeys) {
+        if (maxKeys < 0) {
+            throw new IllegalArgumentException("maxKeys must not be negative");
+        }
+        eventAggregator_.setMaxKeys(maxKeys);
+        return this;
+    }
+
+    /**
+     * 만료된 요청 메시지를 제거하고 조각난 Queue 저장소를 다시 기록한다.(호출한 스레드에서 수행)<br />
+     * 백그라운드 compactor 스레드가 주기적으로 수행하므로 보통은 호출할 필요가 없다.
+     * @return 줄어든 저장소 byte 수, init 전에는 0
+     */
+    public long compactStorage() {
+        final AppInsightorStore appinsightorStore;
+        synchronized (this) {
+            appinsightorStore = connectionQueue_.getAppInsightorStore();
+        }
+        return appinsightorStore == null ? 0 : appinsightorStore.compact();
+    }
+
+    /**
+     * 이벤트 Queue 의 용량과 초과시 처리 방식 설정(init 호출 전에 설정해야 한다.)
+     * @param capacity 용량 (기본 1000개, 1MB, DROP_OLDEST)
+     * @return this
+     */
+    public synchronized AppInsightor setEventQueueCapacity(QueueCapacity capacity) {
+        if (capacity == null) {
+            throw new IllegalArgumentException("valid capacity is required");
+        }
+        eventCapacity_ = capacity;
+        return this;
+    }
+
+    /**
+     * Queue 변경 내용이 저장소(FILE, PREFERENCES)에 반영되기까지 최대 시간 설정(init 호출 전에 설정해야 한다.)<br />
+     * 변경 내용은 메모리에 먼저 반영되고 백그라운드에서 모아서 기록되므로, 값이 클수록 기록 횟수는 줄지만
+     * 프로세스가 강제 종료되는 경우 유실될 수 있는 구간이 길어진다.
+     * @param maxStalenessMs 최대 시간(ms, 기본 1000)
+     * @return this
+     */
+    public synchronized AppInsightor setStorageMaxStaleness(long maxStalenessMs) {
+        if (maxStalenessMs < 0) {
+            throw new IllegalArgumentException("valid maxStalenessMs is required");
+        }
+        storageMaxStalenessMs_ = maxStalenessMs;
+        return this;
+    }
+
     /**
      * 모든 Queue 와 관련한 데이터와 변수값들을 초기화 한다.<br />
      * @deprecated Currently SDK
      */
     public synchronized void halt() {
+        if (eventIngestor_ != null) {
+            eventIngestor_.stop();
+            eventIngestor_ = null;
+        }
         eventQueue_ = null;
+        eventAggregator_.clear();
         final AppInsightorStore appinsightorStore = connectionQueue_.getAppInsightorStore();
         if (appinsightorStore != null) {
             appinsightorStore.clear();
+            appinsightorStore.close();
         }
         connectionQueue_.setContext(null);
         connectionQueue_.setServerURL(null);
@@ -347,19 +634,83 @@ public class AppInsightor {
      * APP 종료에 따른 endSession 요청메시지 데이터 수신서버 전송 진행<br />
      *
      * <p>Addition</p>
-     * 멀티 처리의 경우, 즉 이벤트 요청 메시지를 Queue 에 쌓아두고 설정한 카운트가 되면 수신서버에 전송시<br />
-     * endSession 이 발생하면 endSession 메시지 데이터 전송후 eventQueue 에 이벤트 요청메시지들이 있을 경우 별도로 전송 처리한다.<br />
-     * 즉시 전송을 설정한 EVENT_QUEUE_SIZE_THRESHOLD 변수의 값이 1 이상의 값을 지정한 경우 조건이 수행 될 수 있다.<br />
+     * 이벤트 요청 메시지를 Queue 에 쌓아두고 BatchPolicy 조건에 이르면 수신서버에 전송하므로<br />
+     * endSession 이 발생하면 endSession 메시지 데이터 전송후 eventQueue 에 이벤트 요청메시지들이 있을 경우 조건과 관계없이 별도로 전송 처리한다.<br />
      * call connectionQueue_.endSession()
      */
     void onStopHelper() {
         AppInsightor.sharedInstance().logShowPrinting("");
         connectionQueue_.endSession();
 
-        // 멀티 이벤트 요청메시지 처리시
-        if (eventQueue_.size() > 0) {
-            connectionQueue_.recordEvents(eventQueue_.events());//이벤트 요청메시지 데이터 수신서버 전송 처리
+        // 멀티 이벤트 요청메시지 처리시, 아직 ring buffer 에 남아있거나 합치는 중인 이벤트도 함께 전송한다.
+        eventIngestor_.drain();
+        sendEvents();//이벤트 요청메시지 데이터 수신서버 전송 처리
+        connectionQueue_.getAppInsightorStore().flush();//백그라운드 전환시 메모리 캐시 즉시 기록
+    }
+
+    /**
+     * 이벤트 기록 builder 시작 - 호출 스레드의 builder 를 재사용하고 이벤트는 pool 에서 꺼낸다.
+     * <p>e.g.</p>
+     * AppInsightor.event("item_impression").seg("item", itemId).dur(0.2).record();
+     * @param key 설정된 키
+     * @return 호출 스레드의 builder(record() 전까지만 사용)
+     * @throws IllegalArgumentException key 값이 없는 경우
+     */
+    public static EventBuilder event(final String key) {
+        return sharedInstance().eventBuilders_.get().begin(key);
+    }
+
+    /**
+     * 작성한 이벤트를 수집 ring buffer 에 넣는다.(EventBuilder.record, sampling 은 EventBuilder.begin 에서 확인)
+     * @throws IllegalStateException AppInsightor SDK 초기화가 되지 않았을 경우
+     */
+    void publishEvent(final Event event) {
+        final EventIngestor eventIngestor = eventIngestor_;
+        if (eventIngestor == null) {
+            event.recycle();
+            throw new IllegalStateException("AppInsightor.sharedInstance().init 처리를 통한 eventQueue_ 초기화 체크");
         }
+        eventIngestor.publish(event);
+    }
+
+    /**
+     * @return key 에 적용할 sampling rate, 이 device 가 sample 에 포함되지 않아 버려야 하면 0
+     */
+    double sampleRate(final String key) {
+        final double rate = eventSampler_.rateOf(key);
+        return EventSampler.isSampled(deviceId_, key, rate) ? rate : 0;
+    }
+
+    /**
+     * 이벤트 key 별 sampling rate 설정(init 후에도 변경 가능, 바로 적용)<br />
+     * device ID 와 key 의 hash 로 정하므로 같은 device 는 같은 key 의 이벤트를 모두 전송하거나 모두 버리며,
+     * 전송하는 이벤트에는 sample_rate 를 기록하여 수신서버가 count 를 보정할 수 있게 한다.
+     * <p>e.g.</p>
+     * setSampleRate("scroll", 0.1) - scroll 이벤트는 10% device 만 전송<br />
+     * setSampleRate("impression_*", 0.05) - impression_ 로 시작하는 key(정확한 key 설정이 우선)
+     * @param key 이벤트 key, "*" 로 끝나면 prefix
+     * @param rate 0 ~ 1 (1 이면 설정 제거)
+     * @return this
+     * @throws IllegalArgumentException key 가 없거나 rate 가 0 ~ 1 이 아닌 경우
+     */
+    public AppInsightor setSampleRate(String key, double rate) {
+        if (key == null || key.length() == 0) {
+            throw new IllegalArgumentException("valid key is required");
+        }
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("rate must be between 0 and 1");
+        }
+        eventSampler_.setRate(key, rate);
+        return this;
+    }
+
+    /**
+     * 모든 sampling rate 설정을 제거한다.(모든 이벤트 전송)
+     * @return this
+     */
+    public AppInsightor clearSampleRates() {
+        eventSampler_.clear();
+        return this;
     }
 
     /**
@@ -367,19 +718,19 @@ public class AppInsightor {
      * call 재정의된 recordEvent()
      * @param key 설정된 키
      */
-    public synchronized void recordEvent(final String key) {
+    public void recordEvent(final String key) {
         recordEvent(key, null, 0);
     }
 
-    public synchronized void recordEvent(final String key, final Map<String, String> segmentation) {
+    public void recordEvent(final String key, final Map<String, String> segmentation) {
         recordEvent(key, segmentation, 0);
     }
 
     /**
      * 이벤트 기록 with given key, segmentation, count, duration<br/>
-     * 이벤트 요청메시지 데이터를 기록하고 수신서버에 전송한다.<br/>
-     * call eventQueue_.recordEvent()<br/>
-     * call connectionQueue_.recordEvents()
+     * 이벤트를 검사한 후 수집 ring buffer 에 넣고 바로 반환한다.(lock, 디스크 I/O 없음)<br/>
+     * 이벤트 스레드가 events Queue 에 저장하고, BatchPolicy 조건에 이르면 수신서버로 전송한다.<br/>
+     * segmentation 은 복사하여 저장하므로 호출 후 변경해도 된다.(반복 기록시에는 객체를 만들지 않는 {@link #event(String)} 사용)
      *
      * @param key 설정된 키
      * @param segmentation 사용자가 입력한 key-value 값
@@ -387,44 +738,146 @@ public class AppInsightor {
      * @throws IllegalStateException AppInsightor SDK 초기화가 되지 않았을 경우
      * @throws IllegalArgumentException key 값이 없거나, count 가 1 이하인경우, 사용자 입력 segmentation key-value 쌍이 올바르지 않은 경우
      */
-    public synchronized void recordEvent(final String key, final Map<String, String> segmentation, final double dur) {
+    public void recordEvent(final String key, final Map<String, String> segmentation, final double dur) {
         AppInsightor.sharedInstance().logShowPrinting("start");
-        AppInsightor.sharedInstance().showClassMethodLog("start");
 
-        if (!isInitialized()) {
+        final EventIngestor eventIngestor = eventIngestor_;
+        if (eventIngestor == null) {
             throw new IllegalStateException("AppInsightor.sharedInstance().init 처리를 통한 eventQueue_ 초기화 체크");
         }
         if (key == null || key.length() == 0) {
             throw new IllegalArgumentException("Event 이름 필요");
         }
-        if (segmentation != null) {
-            for (String k : segmentation.keySet()) {
-                if (k == null || k.length() == 0) {
-                    throw new IllegalArgumentException("NULL이 아닌 Map, segmentation의 key가 null 또는 비어 있어 있으면 안됨");
-                } else {
-                    if (enableLogRelease_) {
-                        Log.i("recordEvent", "key : " + k);
-                    }
-                }
-                if (segmentation.get(k) == null || segmentation.get(k).length() == 0) {
-                    throw new IllegalArgumentException("NULL이 아닌 Map, segmentation의 값이 null 또는 비어 있어 있으면 안됨");
-                } else {
-                    if (enableLogRelease_) {
-                        Log.i("recordEvent", "value : " + segmentation.get(k));
-                    }
-                }
+        final double sampleRate = sampleRate(key);
+        if (sampleRate == 0) {
+            return;//sample 에 포함되지 않음
+        }
+
+        //이벤트 요청메시지 데이터를 수집 ring buffer 에 기록(timestamp 는 이벤트 스레드에서 중복되지 않도록 보정)
+        final Event event = Event.obtain();
+        event.sampleRate = sampleRate;
+        copySegmentation(segmentation, event);
+        event.key = key;
+        event.timestamp = System.currentTimeMillis();
+        event.count = 1;
+        event.dur = dur;
+        eventIngestor.publish(event);
+        AppInsightor.sharedInstance().logShowPrinting("end");
+    }
+
+    /**
+     * segmentation 을 검사하면서 pool 에서 꺼낸 이벤트의 segmentation 으로 복사한다.
+     * @throws IllegalArgumentException segmentation key-value 쌍이 올바르지 않은 경우(이벤트는 pool 에 돌려줌)
+     */
+    private static void copySegmentation(final Map<String, String> segmentation, final Event event) {
+        if (segmentation == null) {
+            return;
+        }
+        final SegmentationMap copy = event.segmentationBuffer();
+        for (Map.Entry<String, String> entry : segmentation.entrySet()) {
+            final String k = entry.getKey();
+            final String v = entry.getValue();
+            if (k == null || k.length() == 0) {
+                event.recycle();
+                throw new IllegalArgumentException("NULL이 아닌 Map, segmentation의 key가 null 또는 비어 있어 있으면 안됨");
+            }
+            if (v == null || v.length() == 0) {
+                event.recycle();
+                throw new IllegalArgumentException("NULL이 아닌 Map, segmentation의 값이 null 또는 비어 있어 있으면 안됨");
             }
+            copy.put(k, v);
         }
+    }
 
-        //이벤트 요청메시지 데이터를 event Queue 에 기록
-        eventQueue_.recordEvent(key, segmentation, dur);
+    /**
+     * event Queue 의 이벤트 수, 크기, 첫 이벤트 저장 후 시간 중 하나라도 BatchPolicy 조건에 이르면 connection Queue 에 저장 후 수신서버에 전송(이벤트 스레드)
+     * @return 시간 조건까지 남은 시간(ms), 확인할 필요가 없으면 0
+     */
+    private long sendEventsIfNeeded() {
+        final EventQueue eventQueue = eventQueue_;
+        if (eventQueue == null) {
+            return 0;
+        }
+        final BatchPolicy policy = batchPolicy_;
+        final long now = System.currentTimeMillis();
+        int size = eventQueue.size() + eventAggregator_.size();
+        long ageMs = Math.max(eventQueue.ageMs(now), eventAggregator_.ageMs(now));
+        for (LatencyHistogram histogram : histograms_.values()) {
+            final long histogramAgeMs = histogram.ageMs(now);
+            if (histogramAgeMs >= 0) {
+                size++;
+                ageMs = Math.max(ageMs, histogramAgeMs);
+            }
+        }
+        if (size == 0) {
+            return 0;
+        }
+        if (!policy.isDue(size, eventQueue.bytes(), ageMs)) {
+            return policy.maxAgeMs > 0 ? policy.maxAgeMs - ageMs : 0;
+        }
+        sendEvents();
+        return 0;
+    }
 
-        //event Queue 사이즈를 체크하여 설정한 값보다 같거나 클경우 connection Queue 에 저장 후 수신서버에 전송
-        if (eventQueue_.size() >= EVENT_QUEUE_SIZE_THRESHOLD) {
-            connectionQueue_.recordEvents(eventQueue_.events());
+    /**
+     * 합치는 중인 이벤트와 분포를 events Queue 로 옮긴 후 events Queue 의 이벤트를 모두 connection Queue 에 저장한다.
+     */
+    private synchronized void sendEvents() {
+        if (eventQueue_ == null) {
+            return;
+        }
+        for (LatencyHistogram histogram : histograms_.values()) {
+            recordHistogram(histogram, eventQueue_);
+        }
+        eventAggregator_.drainTo(eventQueue_);
+        final String appMetrics = metrics_.snapshot();
+        if (eventQueue_.size() > 0 || appMetrics != null) {
+            connectionQueue_.recordEvents(eventQueue_.events(), appMetrics);
         }
-        AppInsightor.sharedInstance().logShowPrinting("end");
-        AppInsightor.sharedInstance().showClassMethodLog("end");
+    }
+
+    /**
+     * app metrics counter - 이벤트 전송시 이전 전송 이후 증가량을 app_metrics 로 함께 전송한다.<br/>
+     * 반환한 객체를 보관해 두고 사용하면 반복문 안에서도 lock 없이 더할 수 있다.(e.g. cache hit 수)
+     * @param name counter 이름
+     * @return 이름이 같으면 같은 counter
+     */
+    public MetricCounter counter(final String name) {
+        if (name == null || name.length() == 0) {
+            throw new IllegalArgumentException("valid name is required");
+        }
+        return metrics_.counter(name);
+    }
+
+    /**
+     * app metrics timer - 이벤트 전송시 이전 전송 이후 기록한 처리 시간의 count, sum, min, max, 분포를 app_metrics 로 함께 전송한다.(e.g. DB pool 대기 시간)
+     * @param name timer 이름
+     * @return 이름이 같으면 같은 timer
+     */
+    public MetricTimer timer(final String name) {
+        if (name == null || name.length() == 0) {
+            throw new IllegalArgumentException("valid name is required");
+        }
+        return metrics_.timer(name);
+    }
+
+    /**
+     * app metrics gauge 등록 - 이벤트 전송시에만 값을 읽어, 이전 전송 이후 값이 바뀐 경우 app_metrics 로 함께 전송한다.(e.g. 메모리 사용량, Queue 길이)
+     * @param name gauge 이름(같은 이름이 있으면 교체)
+     * @param gauge 값을 읽는 callback
+     * @return this
+     */
+    public AppInsightor registerGauge(final String name, final MetricGauge gauge) {
+        if (name == null || name.length() == 0 || gauge == null) {
+            throw new IllegalArgumentException("valid name and gauge are required");
+        }
+        metrics_.registerGauge(name, gauge);
+        return this;
+    }
+
+    public AppInsightor unregisterGauge(final String name) {
+        metrics_.unregisterGauge(name);
+        return this;
     }
 
     /**
@@ -437,6 +890,7 @@ public class AppInsightor {
         AppInsightor.sharedInstance().logShowPrinting("");
         if(segments != null)
             CrashDetails.setCustomSegments(segments);//사용자 정의 Crash 설정 값 저장
+        connectionQueue_.updateFatalCrash();
         return this;
     }
 
@@ -448,6 +902,7 @@ public class AppInsightor {
     public synchronized AppInsightor addCrashLog(String record) {
         AppInsightor.sharedInstance().logShowPrinting("");
         CrashDetails.addLog(record);
+        connectionQueue_.updateFatalCrash();
         return this;
     }
 
@@ -481,10 +936,25 @@ public class AppInsightor {
 
             @Override
             public void uncaughtException(Thread t, Throwable e) {
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw);
-                e.printStackTrace(pw);
-                AppInsightor.sharedInstance().connectionQueue_.sendCrashReport(sw.toString(), false);
+                //fatal crash 전용 파일에 바로 기록하고 다음 실행시 전송, 준비되지 않은 경우 connections Queue 에 저장
+                if (!AppInsightor.sharedInstance().connectionQueue_.writeFatalCrash(e)) {
+                    final EventIngestor eventIngestor = AppInsightor.sharedInstance().eventIngestor_;
+                    if (eventIngestor != null) {
+                        eventIngestor.drain();//ring buffer 에 남은 이벤트를 events Queue 로 옮긴 후 기록
+                    }
+                    final EventQueue eventQueue = AppInsightor.sharedInstance().eventQueue_;
+                    if (eventQueue != null) {
+                        for (LatencyHistogram histogram : AppInsightor.sharedInstance().histograms_.values()) {
+                            AppInsightor.sharedInstance().recordHistogram(histogram, eventQueue);//모인 분포 기록
+                        }
+                        AppInsightor.sharedInstance().eventAggregator_.drainTo(eventQueue);//합치는 중인 이벤트 기록
+                    }
+                    StringWriter sw = new StringWriter();
+                    PrintWriter pw = new PrintWriter(sw);
+                    e.printStackTrace(pw);
+                    AppInsightor.sharedInstance().connectionQueue_.sendCrashReport(sw.toString(), false);
+                    AppInsightor.sharedInstance().connectionQueue_.getAppInsightorStore().flush();//프로세스 종료 전 즉시 기록
+                }
 
                 //if there was another handler before
                 if(oldHandler != null){
@@ -499,9 +969,146 @@ public class AppInsightor {
     }
 
 
+    /**
+     * timed event 의 처리 시간을 이벤트 대신 분포(histogram)로 기록할 key 설정<br/>
+     * 설정한 key 의 endEvent / endTimedEvent 는 이벤트를 만들지 않고 log-linear bucket 에 lock 없이 더하며,
+     * 이벤트 전송(BatchPolicy)시 key 마다 count, sum(dur), min, max 와 0 이 아닌 bucket 배열을 가진 이벤트 하나로 전송한다.
+     * 분포로 기록하는 경우 endEvent 의 segmentation 은 기록하지 않는다.
+     * @param key 이벤트 키
+     * @param enabled false 이면 해제(모인 분포는 바로 events Queue 에 저장)
+     * @return this
+     */
+    public synchronized AppInsightor setHistogram(String key, boolean enabled) {
+        if (key == null || key.length() == 0) {
+            throw new IllegalArgumentException("valid key is required");
+        }
+        if (enabled == histograms_.containsKey(key)) {
+            return this;
+        }
+        final Map<String, LatencyHistogram> histograms = new HashMap<>(histograms_);
+        if (enabled) {
+            histograms.put(key, new LatencyHistogram(key));
+        } else {
+            final LatencyHistogram removed = histograms.remove(key);
+            if (eventQueue_ != null) {
+                recordHistogram(removed, eventQueue_);
+            }
+        }
+        histograms_ = histograms;
+        return this;
+    }
+
+    /**
+     * key 가 분포로 기록하는 key 이면 처리 시간을 분포에 더한다.
+     * @return 분포에 기록했으면 true(이벤트를 전송하지 않음)
+     */
+    private boolean recordLatency(final String key, final double durMs) {
+        final LatencyHistogram histogram = histograms_.get(key);
+        if (histogram == null) {
+            return false;
+        }
+        if (histogram.record((long) durMs)) {
+            final EventIngestor eventIngestor = eventIngestor_;
+            if (eventIngestor != null) {
+                eventIngestor.requestCheck();//BatchPolicy.maxAgeMs 확인 시작
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 분포를 이벤트로 만들어 events Queue 에 저장하고 비운다.
+     */
+    private void recordHistogram(final LatencyHistogram histogram, final EventQueue eventQueue) {
+        final Event event = histogram.snapshot();
+        if (event != null) {
+            event.sampleRate = eventSampler_.rateOf(histogram.key);
+            eventQueue.recordEvent(event);
+        }
+    }
+
+    /**
+     * handle 로 구분하는 timed event 시작 - 같은 key 의 이벤트를 여러개 동시에 측정할 수 있다.(e.g. 동시에 진행하는 이미지 다운로드)<br/>
+     * 반환한 handle 로 {@link #endTimedEvent(long, Map)} 또는 {@link #cancelTimedEvent(long)} 를 호출하며,
+     * 종료하지 않은 handle 은 setTimedEventLimits 의 staleTimeoutMs 가 지나면 자동으로 제거된다.(lock 없음)
+     * @param key 이벤트 키
+     * @return handle, 진행중인 이벤트가 maxOpen 에 이르면 0
+     * @throws IllegalStateException AppInsightor SDK 초기화가 되지 않았을 경우
+     * @throws IllegalArgumentException key 값이 없는 경우
+     */
+    public long startTimedEvent(final String key) {
+        if (eventIngestor_ == null) {
+            throw new IllegalStateException("AppInsightor.sharedInstance().init must be called before startTimedEvent");
+        }
+        if (key == null || key.length() == 0) {
+            throw new IllegalArgumentException("Valid AppInsightor event key is required");
+        }
+        return timedEventTable_.start(key, System.currentTimeMillis());
+    }
+
+    public boolean endTimedEvent(final long handle) {
+        return endTimedEvent(handle, null);
+    }
+
+    /**
+     * handle 로 구분하는 timed event 종료 - 시작 후 지난 시간(ms, 시스템 시간 변경의 영향을 받지 않음)을 dur 로 기록한다.
+     * @param handle startTimedEvent 가 반환한 값
+     * @param segmentation 사용자가 입력한 key-value 값
+     * @return handle 이 진행중이 아니면(이미 종료, 취소, 만료) false
+     * @throws IllegalStateException AppInsightor SDK 초기화가 되지 않았을 경우
+     * @throws IllegalArgumentException 사용자 입력 segmentation key-value 쌍이 올바르지 않은 경우
+     */
+    public boolean endTimedEvent(final long handle, final Map<String, String> segmentation) {
+        final EventIngestor eventIngestor = eventIngestor_;
+        if (eventIngestor == null) {
+            throw new IllegalStateException("AppInsightor.sharedInstance().init must be called before endTimedEvent");
+        }
+        final Event event = Event.obtain();
+        copySegmentation(segmentation, event);
+        if (!timedEventTable_.end(handle, event)) {
+            event.recycle();
+            return false;
+        }
+        event.count = 1;
+        final double sampleRate = sampleRate(event.key);
+        if (sampleRate == 0 || recordLatency(event.key, event.dur)) {
+            event.recycle();
+            return true;
+        }
+        event.sampleRate = sampleRate;
+        eventIngestor.publish(event);
+        return true;
+    }
+
+    /**
+     * handle 로 구분하는 timed event 를 기록하지 않고 취소한다.
+     * @param handle startTimedEvent 가 반환한 값
+     * @return handle 이 진행중이 아니면 false
+     */
+    public boolean cancelTimedEvent(final long handle) {
+        return timedEventTable_.cancel(handle);
+    }
+
+    /**
+     * handle 로 구분하는 timed event 의 제한 설정(진행중인 handle 은 취소된다.)
+     * @param maxOpen 동시에 진행할 수 있는 이벤트 수 (기본 256, 최대 65536)
+     * @param staleTimeoutMs 종료하지 않은 이벤트를 제거하는 시간 (기본 30분)
+     * @return this
+     */
+    public AppInsightor setTimedEventLimits(int maxOpen, long staleTimeoutMs) {
+        if (maxOpen <= 0 || maxOpen > TimedEventTable.MAX_OPEN_LIMIT) {
+            throw new IllegalArgumentException("maxOpen must be between 1 and " + TimedEventTable.MAX_OPEN_LIMIT);
+        }
+        if (staleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("staleTimeoutMs must be positive");
+        }
+        timedEventTable_ = new TimedEventTable(maxOpen, staleTimeoutMs);
+        return this;
+    }
+
     /**
      * 이벤트 시작 지정<br/>
-     * timeEvents 변수에 star-end Event 시 비교를 위한 key 를 저장
+     * timeEvents 변수에 star-end Event 시 비교를 위한 key 를 저장(같은 key 를 동시에 측정하려면 {@link #startTimedEvent(String)} 사용)
      * @param key start-end Event 에 설정된 키(이벤트 키)
      * @return boolean
      * @throws IllegalStateException AppInsightor SDK 초기화가 되지 않았을 경우
@@ -520,7 +1127,11 @@ public class AppInsightor {
         if (timedEvents.containsKey(key)) {
             return false;
         }
-        timedEvents.put(key, new Event(key));
+        final Event event = Event.obtain();//endEvent 에서 segmentation 을 채워 그대로 수집 ring buffer 에 기록
+        event.key = key;
+        event.timestamp = currentTimestampMs();
+        event.startNanos = monotonicNanos();
+        timedEvents.put(key, event);
         return true;
     }
 
@@ -552,32 +1163,24 @@ public class AppInsightor {
             if (key == null || key.length() == 0) {
                 throw new IllegalArgumentException("Event 이름 필요");
             }
-            if (segmentation != null) {
-                for (String k : segmentation.keySet()) {
-                    if (k == null || k.length() == 0) {
-                        throw new IllegalArgumentException("NULL이 아닌 Map, segmentation의 key가 null 또는 비어 있어 있으면 안됨");
-                    } else {
-                        if (enableLogRelease_) {
-                            Log.i("endEvent", "key : " + k);
-                        }
-                    }
-                    if (segmentation.get(k) == null || segmentation.get(k).length() == 0) {
-                        throw new IllegalArgumentException("NULL이 아닌 Map, segmentation의 값이 null 또는 비어 있어 있으면 안됨");
-                    } else {
-                        if (enableLogRelease_) {
-                            Log.i("endEvent", "value : " + segmentation.get(k));
-                        }
-                    }
+            if (segmentation != null && enableLogRelease_) {
+                for (Map.Entry<String, String> entry : segmentation.entrySet()) {
+                    Log.i("endEvent", "key : " + entry.getKey());
+                    Log.i("endEvent", "value : " + entry.getValue());
                 }
             }
+            //검사하면서 복사한다.(호출 후 사용자가 segmentation 을 바꾸어도 기록된 이벤트는 바뀌지 않음)
+            copySegmentation(segmentation, event);
 
             AppInsightor.sharedInstance().showClassMethodLog("");
-            event.segmentation = segmentation;
-            event.dur = AppInsightor.currentTimestampMs() - event.timestamp; //변경
+            event.dur = elapsedMs(event.startNanos);//시스템 시간 변경의 영향을 받지 않도록 monotonic 시간으로 측정
             event.count = 1;
-            eventQueue_.recordEvent(event);
-            if (eventQueue_.size() >= EVENT_QUEUE_SIZE_THRESHOLD) {
-                connectionQueue_.recordEvents(eventQueue_.events());
+            final double sampleRate = sampleRate(key);
+            if (sampleRate > 0 && !recordLatency(key, event.dur)) {
+                event.sampleRate = sampleRate;
+                eventIngestor_.publish(event);
+            } else {
+                event.recycle();
             }
             return true;
         } else {
@@ -588,21 +1191,68 @@ public class AppInsightor {
     /**
      * 시스템 timestamp 요청에 따른 직전 시간 저장 변수
      */
-    private static long lastTsMs;
+    private static final AtomicLong lastTimestampMs_ = new AtomicLong();
+    /**
+     * 직전 요청의 측정 시간(보정 전), 시스템 시간이 뒤로 바뀐 것을 확인하는데 사용
+     */
+    private static volatile long lastWallMs_;
+    /**
+     * 시스템 시간이 이 값보다 크게 뒤로 바뀌면(사용자 설정, 네트워크 동기화) 직전 timestamp 대신 새 시간을 기준으로 한다.
+     */
+    private static final long MAX_BACKWARD_JUMP_MS = 60 * 1000;
 
     /**
      * 시스템 현재의 시간 timestamp<br/>
      * 요청에 따른 직전 시간을 변수에 저장해 두고 다음 요청시 직전 시간보다 큰 값을 돌려준다.<br/>
-     * 동기화 처리(멀티 스레드 접근 허용)를 위해 순서가 뒤에 있는 요청이 빠른 시간을 가질 수 없도록 한다.
+     * lock 없이 CAS 로 갱신하므로 여러 스레드에서 동시에 호출해도 순서가 뒤에 있는 요청이 빠른 시간을 가질 수 없다.<br/>
+     * 이벤트 처리 시간(duration) 측정에는 시스템 시간 변경의 영향을 받지 않는 {@link #monotonicNanos()} 를 사용한다.
      * @return timestamp
      */
-    static synchronized long currentTimestampMs() {
-        long ms = System.currentTimeMillis();
-        while (lastTsMs >= ms) {
-            ms += 1;
+    static long currentTimestampMs() {
+        return uniqueTimestampMs(System.currentTimeMillis());
+    }
+
+    /**
+     * 지정한 시간을 직전 timestamp 보다 큰 값으로 보정한다.(다른 스레드에서 측정한 시간, e.g. 수집 ring buffer 의 이벤트)<br/>
+     * 같은 ms 에 여러 요청이 있으면 직전 timestamp + 1 을 돌려주며,
+     * 측정 시간이 직전 측정 시간보다 MAX_BACKWARD_JUMP_MS 보다 크게 뒤로 바뀐 경우(시스템 시간 변경)에는 바뀐 시간을 그대로 사용한다.
+     * @param ms 측정한 시간
+     * @return timestamp
+     */
+    static long uniqueTimestampMs(final long ms) {
+        final long lastWall = lastWallMs_;
+        if (lastWall - ms > MAX_BACKWARD_JUMP_MS) {
+            lastWallMs_ = ms;//시스템 시간이 뒤로 바뀜
+            lastTimestampMs_.set(ms);
+            return ms;
+        }
+        if (ms > lastWall) {
+            lastWallMs_ = ms;
+        }
+        while (true) {
+            final long last = lastTimestampMs_.get();
+            final long next = ms > last ? ms : last + 1;
+            if (lastTimestampMs_.compareAndSet(last, next)) {
+                return next;
+            }
         }
-        lastTsMs = ms;
-        return ms;
+    }
+
+    /**
+     * 시스템 시간 변경의 영향을 받지 않는 단조 증가 시간(System.nanoTime)<br/>
+     * 시작 시점을 기록해 두고 {@link #elapsedMs(long)} 로 처리 시간을 계산한다.(timed event, 실행 시간)
+     * @return nano seconds(시각이 아닌 상대값)
+     */
+    static long monotonicNanos() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param startNanos monotonicNanos() 로 기록한 시작 시점
+     * @return 지난 시간(ms)
+     */
+    static long elapsedMs(final long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
 
     /**
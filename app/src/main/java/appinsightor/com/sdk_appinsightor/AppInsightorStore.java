@@ -4,16 +4,16 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -39,190 +39,407 @@ import java.util.Map;
  * 데이터를 불러오기 위해서 getInt()나 getString() 메서드를 사용하여 불러와야 한다.
  * 첫번째 인자는 데이터의 키, 두번째 인자는 해당값이 없을경우 반환할 값을 넣어준다.
  * e.g. int firstData = test.getInt("First", 0);
+ *
+ * <p>요청 Queue 저장소</p>
+ * connections, events Queue 는 {@link StorageBackend} 를 통해 저장하며, 배포 환경에 따라 {@link StorageType} 으로 선택한다.
+ * <ul>
+ *     <li>FILE(기본) - {@link FileJournal}, data/data/패키지명/files/appinsightor/connections, events</li>
+ *     <li>PREFERENCES - {@link PreferencesStorageBackend}, 이전 버전의 SharedPreferences 문자열 방식</li>
+ *     <li>MEMORY - {@link MemoryStorageBackend}, 메모리에만 유지(kiosk 등)</li>
+ *     <li>MULTI_PROCESS - {@link MultiProcessStorageBackend}, 여러 프로세스(android:process)에서 SDK 를 사용하는 경우,
+ *     data/data/패키지명/files/appinsightor/mp</li>
+ * </ul>
+ * FILE 방식은 이전 버전에서 SharedPreferences 에 남아있는 Queue 데이터를 최초 생성시 저널로 옮긴다.<br />
+ * 요청 메시지 Queue 는 {@link LanePolicy.Lane} 별로 나누어(connections_crash, connections, connections_events) 저장한다.<br />
+ * 각 Queue 는 {@link BoundedStorageBackend} 로 감싸서 {@link QueueCapacity} 의 용량 제한과 초과시 처리 방식을 적용한다.<br />
+ * FILE, PREFERENCES 방식은 {@link CachedStorageBackend} 로 메모리에 Queue 를 유지하여 size, peek 시 저장된 데이터를 다시 읽지 않으며,
+ * 변경 내용은 백그라운드 flusher 스레드가 최대 maxStalenessMs 안에 모아서 기록한다.<br />
+ * 처리되지 않은 예외(fatal crash)는 Queue 와 별도로 {@link FatalCrashStore} 에 기록한다.<br />
+ * 낮은 우선순위의 compactor 스레드가 주기적으로(COMPACTION_INTERVAL_MS) 만료된 요청 메시지를 제거하고 조각난 저장소를 다시 기록한다.<br />
+ * MULTI_PROCESS 방식은 프로세스마다 별도의 저널에 기록하고 {@link UploaderElection} 으로 선출된 프로세스만 전송한다.
+ * 다른 프로세스와 공유할 수 없는 SharedPreferences 문자열 테이블과 메모리 캐시는 사용하지 않으며, SPILL_TO_DISK 는 적용되지 않는다.
  */
 public class AppInsightorStore {
     private static final String PREFERENCES = "APPINSIGHTOR_STORE";//SharePreferences xml name
-    private static final String DELIMITER = ":::";//Queue에 쌓여 있는 요청 항목들간의 문자열 전환시 분리자
-    private static final String CONNECTIONS_PREFERENCE = "CONNECTIONS";//SharedPreferences, 전송할 Queue
+    private static final String JOURNAL_DIR = "appinsightor";//context.getFilesDir() 하위 저널 디렉토리
+    private static final String CONNECTIONS_PREFERENCE = "CONNECTIONS";//SharedPreferences, 전송할 Queue(SESSION lane, 이전 버전 Queue)
+    private static final String CRASH_CONNECTIONS_PREFERENCE = "CONNECTIONS_CRASH";//CRASH lane
+    private static final String EVENT_CONNECTIONS_PREFERENCE = "CONNECTIONS_EVENTS";//EVENTS lane
     private static final String EVENTS_PREFERENCE = "EVENTS";//SharedPreferences, 이벤트를 담고 있을 Queue
-    private static final int MAX_EVENTS = 10;//SharedPreferences Queue에 쌓을 최대 이벤트 갯수
-    private static final int MAX_REQUESTS = 10;//SharedPreferences Queue에 쌓을 최대 요청 갯수(이벤트 제외)
+    private static final String FATAL_CRASH_FILE = "fatal.crash";//저널 디렉토리 하위 fatal crash 파일
+    private static final String MULTI_PROCESS_DIR = "mp";//MULTI_PROCESS 저널 디렉토리
+    private static final String UPLOADER_LOCK_FILE = "uploader.lock";
+    private static final String SEQUENCE_FILE = "sequence";
+    private static final int MULTI_PROCESS_SEQUENCE_BLOCK = 64;//프로세스 사이에서 번호 간격이 벌어지지 않도록 작게 예약
+    static final long DEFAULT_MAX_STALENESS_MS = 1000;//변경 후 저장소에 반영되기까지 최대 시간
+    static final long COMPACTION_INTERVAL_MS = 30 * 60 * 1000;//compaction 주기
+    static final int MIGRATE_BATCH = 100;//이전 버전 Queue 에서 한번에 제거하는 옮긴 레코드 수
+    private static final long COMPACTION_DELAY_MS = 60 * 1000;//init 직후의 전송과 겹치지 않도록 첫 compaction 을 늦춘다.
     private final SharedPreferences preferences_;
+    private final UploadLanes lanes_ = new UploadLanes();
+    private final BoundedStorageBackend events_;
+    private final FatalCrashStore fatalCrash_;
+    private final RecordCodec codec_;
+    private final SequenceGenerator sequence_;
+    private final UploaderElection election_;//MULTI_PROCESS 가 아니면 null
+    private final String processName_;//MULTI_PROCESS 프로세스 디렉토리 이름
+    private final ScheduledExecutorService flusher_;
+    private final ScheduledExecutorService compactor_;
+    private final long maxStalenessMs_;
+
+    /**
+     * Queue 저장소 종류
+     */
+    public enum StorageType {
+        /** 이전 버전의 SharedPreferences 문자열 */
+        PREFERENCES,
+        /** append-only 세그먼트 파일(기본) */
+        FILE,
+        /** 메모리(프로세스 종료시 유실) */
+        MEMORY,
+        /** 프로세스별 append-only 세그먼트 파일, 선출된 프로세스 하나만 전송 */
+        MULTI_PROCESS
+    }
 
 
     /**
      * ok-
-     * 특정 이름을 가진 SharedPreferences를 생성한다.(read+write mode)
+     * 특정 이름을 가진 SharedPreferences를 생성하고, 지정한 종류의 Queue 저장소를 연다.(read+write mode)
      * @param context
+     * @param type Queue 저장소 종류
+     * @param lanePolicies 전송 lane 별 용량, 재시도 방식, 가중치
+     * @param eventCapacity events Queue 용량
+     * @param maxStalenessMs 변경 후 저장소에 반영되기까지 최대 시간(FILE, PREFERENCES)
      * @throws IllegalArgumentException if context is null
      */
-    AppInsightorStore(final Context context) {
+    AppInsightorStore(final Context context, final StorageType type, final Map<LanePolicy.Lane, LanePolicy> lanePolicies,
+                      final QueueCapacity eventCapacity, final long maxStalenessMs) {
         if (context == null) {
             throw new IllegalArgumentException("valid context");
         }
         preferences_ = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);//0x0000(read+write)
+        File dir = new File(context.getFilesDir(), JOURNAL_DIR);
+        if (type == StorageType.MULTI_PROCESS) {
+            dir = new File(dir, MULTI_PROCESS_DIR);
+            dir.mkdirs();
+            codec_ = new RecordCodec(null);//문자열 테이블은 프로세스마다 달라지므로 문자열을 레코드에 직접 기록한다.
+            sequence_ = openSequence(new File(dir, SEQUENCE_FILE));
+            election_ = new UploaderElection(new File(dir, UPLOADER_LOCK_FILE));
+            processName_ = processName();
+        } else {
+            codec_ = new RecordCodec(new StringTable(preferences_));
+            sequence_ = new SequenceGenerator(preferences_);
+            election_ = null;
+            processName_ = null;
+        }
+        maxStalenessMs_ = maxStalenessMs;
+        flusher_ = type == StorageType.MEMORY || type == StorageType.MULTI_PROCESS ? null : Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "AppInsightor-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        openLane(type, dir, LanePolicy.Lane.CRASH, CRASH_CONNECTIONS_PREFERENCE, lanePolicies.get(LanePolicy.Lane.CRASH), null);
+        openLane(type, dir, LanePolicy.Lane.SESSION, CONNECTIONS_PREFERENCE, lanePolicies.get(LanePolicy.Lane.SESSION), ConnectionQueue.PRIORITY);
+        openLane(type, dir, LanePolicy.Lane.EVENTS, EVENT_CONNECTIONS_PREFERENCE, lanePolicies.get(LanePolicy.Lane.EVENTS), null);
+        events_ = new BoundedStorageBackend(
+                open(type, dir, EVENTS_PREFERENCE, eventCapacity),
+                type == StorageType.MULTI_PROCESS ? null : openSpill(dir, EVENTS_PREFERENCE, eventCapacity),
+                eventCapacity, null, EventQueue.SEQUENCE);
+        fatalCrash_ = type == StorageType.MEMORY ? null : openFatalCrash(new File(dir,
+                type == StorageType.MULTI_PROCESS ? "fatal-" + processName_ + ".crash" : FATAL_CRASH_FILE));
+
+        compactor_ = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "AppInsightor-compactor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        compactor_.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (RuntimeException e) {//다음 주기에 다시 수행
+                    Log.w(AppInsightor.TAG, "storage compaction error", e);
+                }
+            }
+        }, COMPACTION_DELAY_MS, COMPACTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    AppInsightorStore(final Context context, final StorageType type) {
+        this(context, type, LanePolicy.defaults(), QueueCapacity.DEFAULT_EVENTS, DEFAULT_MAX_STALENESS_MS);
+    }
+
+    AppInsightorStore(final Context context) {
+        this(context, StorageType.FILE);
     }
 
     /**
-     * ok-
-     * 현재 SharedPreferences에 의해 저장된 connections의 배열 값을 반환한다.<br />
-     * 수신 서버에 전송하기 위한 Queue(local store)
-     * @return unsorted data array
+     * 전송 lane 의 Queue 저장소를 연다.
+     * @param priority SESSION lane 에 남아있는 이전 버전 레코드의 우선순위(DROP_LOWEST_PRIORITY)
      */
-    public String[] connections() {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        final String joinedConnStr = preferences_.getString(CONNECTIONS_PREFERENCE, "");
-        return joinedConnStr.length() == 0 ? new String[0] : joinedConnStr.split(DELIMITER);
+    private void openLane(final StorageType type, final File dir, final LanePolicy.Lane lane, final String name, final LanePolicy policy,
+                          final BoundedStorageBackend.Priority priority) {
+        lanes_.put(new UploadLane(lane, policy, new BoundedStorageBackend(
+                open(type, dir, name, policy.capacity),
+                type == StorageType.MULTI_PROCESS ? null : openSpill(dir, name, policy.capacity),
+                policy.capacity, priority, ConnectionQueue.SEQUENCE), type == StorageType.MEMORY ? null : preferences_));
     }
 
     /**
-     * ok-
-     * 현재 SharedPreferences에 의해 저장된 events의 JSON 문자열의 배열 값을 반환한다.<br />
-     * 이벤트 데이터를 저장하기 위한 Queue(local store)
-     * @return unsorted data array
+     * 지정한 종류의 Queue 저장소를 연다.
+     * @param name Queue 이름 (CONNECTIONS, EVENTS)
      */
-    public String[] events() {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        final String joinedEventsStr = preferences_.getString(EVENTS_PREFERENCE, "");
-        return joinedEventsStr.length() == 0 ? new String[0] : joinedEventsStr.split(DELIMITER);
+    private StorageBackend open(final StorageType type, final File dir, final String name, final QueueCapacity capacity) {
+        if (type == StorageType.PREFERENCES) {
+            return new CachedStorageBackend(new PreferencesStorageBackend(preferences_, name), flusher_, maxStalenessMs_);
+        } else if (type == StorageType.MEMORY) {
+            return new MemoryStorageBackend(capacity.maxRecords);
+        } else if (type == StorageType.MULTI_PROCESS) {
+            return openMultiProcess(new File(dir, name.toLowerCase(Locale.US)), name);
+        }
+        final StorageBackend journal = openJournal(new File(dir, name.toLowerCase(Locale.US)));
+        migrate(preferences_, name, journal);
+        return new CachedStorageBackend(journal, flusher_, maxStalenessMs_);
     }
 
     /**
-     * Returns a list of the current stored events, sorted by timestamp from oldest to newest.
+     * SPILL_TO_DISK 인 경우 보조 디스크 저장소를 연다.
      */
-    public List<Event> eventsList() {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        final String[] array = events();
-        final List<Event> events = new ArrayList<>(array.length);
-        for (String s : array) {
-            try {
-                final Event event = Event.fromJSON(new JSONObject(s));
-                if (event != null) {
-                    events.add(event);
-                }
-            } catch (JSONException ignored) {}
+    private static StorageBackend openSpill(final File dir, final String name, final QueueCapacity capacity) {
+        if (capacity.overflowPolicy != QueueCapacity.OverflowPolicy.SPILL_TO_DISK) {
+            return null;
         }
-        // order the events from least to most recent
-        Collections.sort(events, new Comparator<Event>() {
-            @Override
-            public int compare(final Event e1, final Event e2) {
-                return (int)(e1.timestamp - e2.timestamp);
-            }
-        });
-        return events;
+        return openJournal(new File(dir, name.toLowerCase(Locale.US) + "-spill"));
     }
 
     /**
-     * ok-
-     * 현재 SarhedPreferences connections의 전송할 요청데이터가 없다면 true, 있다면 false를 리턴한다.
-     * 즉, connection ConnectionProcessor를 실행하기 위해서는 data가 있어야 한다.
-     * @return boolean
+     * 저널을 연다. 열 수 없는 경우 메모리 Queue 로 대신한다.
      */
-    public boolean isEmptyConnections() {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        return preferences_.getString(CONNECTIONS_PREFERENCE, "").length() == 0;
+    private static StorageBackend openJournal(final File dir) {
+        try {
+            return new FileJournal(dir);
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "journal open error : " + dir, e);
+            return new MemoryStorageBackend();
+        }
     }
 
     /**
-     * ok-
-     * 요청한 메시지를 SharedPreferences(local store)에 저장한다.
-     * 이때 기존의 데이터를 배열 형태로 읽어들어 최대 Queue Size를 체크하고,
-     * 조건이 맞다면 배열에 추가하고, local store에 분리자를 이용하여 하나의 String으로 기록한다.
-     * @param str 요청 메시지
+     * 이 프로세스의 MULTI_PROCESS 저널을 연다. 열 수 없는 경우 메모리 Queue 로 대신한다.<br />
+     * 이전 버전의 SharedPreferences Queue 는 전송 프로세스만 옮긴다.
      */
-    public synchronized void addConnection(final String str) {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        if (str != null && str.length() > 0) {
-            final List<String> connections = new ArrayList<>(Arrays.asList(connections()));
-            if (connections.size() < MAX_REQUESTS) {
-                connections.add(str);
-                preferences_.edit().putString(CONNECTIONS_PREFERENCE, join(connections, DELIMITER)).commit();
+    private StorageBackend openMultiProcess(final File dir, final String name) {
+        try {
+            final StorageBackend backend = new MultiProcessStorageBackend(dir, processName_, election_,
+                    name.equals(EVENTS_PREFERENCE) ? EventQueue.SEQUENCE : ConnectionQueue.SEQUENCE);
+            if (election_.isUploader()) {
+                migrate(preferences_, name, backend);
             }
+            return backend;
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "multi process journal open error : " + dir, e);
+            return new MemoryStorageBackend();
         }
     }
 
     /**
-     * Removes a connection from the local store.
+     * 프로세스 사이에서 공유하는 일련번호 파일을 연다. 열 수 없는 경우 SharedPreferences 에 예약한다.
      */
-    public synchronized void removeConnection(final String str) {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        if (str != null && str.length() > 0) {
-            final List<String> connections = new ArrayList<>(Arrays.asList(connections()));
-            if (connections.remove(str)) {
-                preferences_.edit().putString(CONNECTIONS_PREFERENCE, join(connections, DELIMITER)).commit();
-            }
+    private SequenceGenerator openSequence(final File file) {
+        try {
+            return new SequenceGenerator(file, MULTI_PROCESS_SEQUENCE_BLOCK);
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "sequence file open error : " + file, e);
+            return new SequenceGenerator(preferences_);
         }
     }
 
     /**
-     * Adds a custom event to the local store.
+     * /proc/self/cmdline 의 프로세스 이름(e.g. com.example:sync)과 pid 로 프로세스 디렉토리 이름을 만든다.
      */
-    void addEvent(final Event event) {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        final List<Event> events = eventsList();
-        if (events.size() < MAX_EVENTS) {
-            events.add(event);
-            preferences_.edit().putString(EVENTS_PREFERENCE, joinEvents(events, DELIMITER)).commit();
+    private static String processName() {
+        final int pid = android.os.Process.myPid();
+        String name = null;
+        try {
+            final FileInputStream in = new FileInputStream("/proc/self/cmdline");
+            try {
+                final byte[] buffer = new byte[256];
+                int length = in.read(buffer);
+                int end = 0;
+                while (end < length && buffer[end] != 0) {
+                    end++;
+                }
+                name = new String(buffer, 0, end, "UTF-8");
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "process name read error", e);
+        }
+        if (name == null || name.length() == 0) {
+            return "pid-" + pid;
         }
+        return name.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + pid;
     }
-    public synchronized void addEvent(final String key, final Map<String, String> segmentation, final long timestamp, final double dur) {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        final Event event = new Event();
-        event.key = key;
-        event.segmentation = segmentation;
-        event.timestamp = timestamp;
-        event.count = 1;
-        event.dur = dur;
 
-        addEvent(event);
+    /**
+     * fatal crash 파일을 미리 열어둔다. 열 수 없는 경우 crash 는 connections Queue 로 저장한다.
+     */
+    private static FatalCrashStore openFatalCrash(final File file) {
+        try {
+            return new FatalCrashStore(file);
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "fatal crash file open error : " + file, e);
+            return null;
+        }
     }
 
     /**
-     * Removes the specified events from the local store.
+     * 이전 버전의 SharedPreferences Queue 문자열을 저널로 옮기고 SharedPreferences 에서 제거한다.<br />
+     * 옮긴 레코드는 MIGRATE_BATCH 개마다 이전 Queue 에서 제거(commit)하므로, 다시 실행하면 남은 레코드부터 이어서 옮긴다.
+     * 저널에 추가하지 못하면 멈추고 나머지 레코드는 이전 Queue 에 남겨둔다.
+     * 옮기는 도중 종료된 경우에만 마지막 MIGRATE_BATCH 개 이하의 레코드가 다시 옮겨질 수 있다.
+     * @param preferences 이전 버전 Queue 가 저장된 SharedPreferences
+     * @param preference Queue 이름 (CONNECTIONS, EVENTS)
+     * @param backend 옮길 저장소
+     * @return 옮긴 레코드 수
      */
-    public synchronized void removeEvents(final Collection<Event> eventsToRemove) {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        if (eventsToRemove != null && eventsToRemove.size() > 0) {
-            final List<Event> events = eventsList();
-            if (events.removeAll(eventsToRemove)) {
-                preferences_.edit().putString(EVENTS_PREFERENCE, joinEvents(events, DELIMITER)).commit();
+    static int migrate(final SharedPreferences preferences, final String preference, final StorageBackend backend) {
+        final PreferencesStorageBackend legacy = new PreferencesStorageBackend(preferences, preference);
+        int moved = 0;
+        int pending = 0;//옮겼지만 이전 Queue 에서 아직 제거하지 않은 레코드 수
+        for (byte[] record : legacy.peek(Integer.MAX_VALUE)) {
+            if (!backend.append(record)) {
+                Log.w(AppInsightor.TAG, "legacy queue migration stopped : " + preference + ", moved " + moved);
+                break;
+            }
+            moved++;
+            if (++pending == MIGRATE_BATCH) {
+                legacy.ack(pending);
+                pending = 0;
             }
         }
+        legacy.ack(pending);
+        return moved;
     }
 
     /**
-     * Converts a collection of Event objects to URL-encoded JSON to a string, with each
-     * event JSON string delimited by the specified delimiter.
+     * 수신 서버에 전송하기 위한 요청 메시지 Queue(local store), lane 별로 나누어 저장한다.
+     * @return 전송 lane 묶음
      */
-    static String joinEvents(final Collection<Event> collection, final String delimiter) {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        final List<String> strings = new ArrayList<>();
-        for (Event e : collection) {
-            strings.add(e.toJSON().toString());
+    UploadLanes getLanes() {
+        return lanes_;
+    }
+
+    /**
+     * 이벤트 데이터를 저장하기 위한 Queue(local store)
+     * @return events 저장소
+     */
+    BoundedStorageBackend getEvents() {
+        return events_;
+    }
+
+    /**
+     * 처리되지 않은 예외(fatal crash) 전용 저장소
+     * @return fatal crash 저장소, MEMORY 이거나 파일을 열 수 없는 경우 null
+     */
+    FatalCrashStore getFatalCrashStore() {
+        return fatalCrash_;
+    }
+
+    /**
+     * Queue 레코드의 binary 변환(요청 메시지, 이벤트)
+     * @return codec
+     */
+    RecordCodec getCodec() {
+        return codec_;
+    }
+
+    /**
+     * Queue 레코드 일련번호(재시작 후에도 증가)
+     * @return 일련번호 생성기
+     */
+    SequenceGenerator getSequence() {
+        return sequence_;
+    }
+
+    /**
+     * MULTI_PROCESS 인 경우 선출된 프로세스 하나만 수신서버에 전송한다.
+     * @return 이 프로세스가 요청 메시지를 전송해야 하면 true
+     */
+    boolean isUploader() {
+        return election_ == null || election_.isUploader();
+    }
+
+    /**
+     * 만료된 요청 메시지를 제거하고 조각난 저장소(tombstone, ack 된 영역)를 다시 기록한다.(compactor 스레드)
+     * @return 줄어든 저장소 byte 수
+     */
+    long compact() {
+        final long now = System.currentTimeMillis();
+        final long reclaimed = lanes_.compact(now) + events_.compact(null, now).reclaimedBytes;
+        if (reclaimed > 0 && AppInsightor.sharedInstance().isLoggingEnabled()) {
+            Log.d(AppInsightor.TAG, "storage compaction reclaimed " + reclaimed + " bytes");
         }
-        return join(strings, delimiter);
+        return reclaimed;
     }
 
     /**
-     * ok-
-     * List, Set, ArrayList 등의 순서나 집합적인 저장데이터 Collection의 모든 문자열을
-     * 지정된 분리자로 연결, 단일 문자열로 조인한다.
-     * @param collection List, Set 등의 collection type data
-     * @param delimiter 분리자
-     * @return string
+     * 메모리 캐시의 변경 내용을 즉시 저장소에 기록한다.(APP 종료, crash 발생시)
      */
-    static String join(final Collection<String> collection, final String delimiter) {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        final StringBuilder builder = new StringBuilder();
+    void flush() {
+        lanes_.flush();
+        events_.flush();
+    }
 
-        int i = 0;
-        for (String s : collection) {
-            builder.append(s);
-            if (++i < collection.size()) {
-                builder.append(delimiter);
-            }
+    /**
+     * 변경 내용을 기록한 후 flusher, compactor 를 종료하고 저널, 파일을 닫는다.(halt)<br />
+     * 진행중인 compaction 은 끝난 후에 닫으며, 이후 이 저장소는 사용할 수 없다. 다시 init 하면 새 저장소를 연다.
+     */
+    void close() {
+        compactor_.shutdown();//다음 주기의 compaction 취소
+        if (flusher_ != null) {
+            flusher_.shutdown();//이후의 변경은 아래에서 한번에 기록한다.
+        }
+        lanes_.close();
+        events_.close();
+        if (fatalCrash_ != null) {
+            fatalCrash_.close();
+        }
+        sequence_.close();
+        if (election_ != null) {
+            election_.close();
+        }
+    }
+
+    /**
+     * 문자열 레코드를 저장소에 기록하기 위한 UTF-8 byte 배열로 변환한다.
+     */
+    static byte[] toBytes(final String str) {
+        try {
+            return str.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 저장소에서 읽은 UTF-8 byte 배열을 문자열로 변환한다.
+     */
+    static String toString(final byte[] record) {
+        try {
+            return new String(record, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
         }
-        return builder.toString();
     }
 
 
@@ -245,5 +462,8 @@ public class AppInsightorStore {
         prefsEditor.remove(CONNECTIONS_PREFERENCE);
         prefsEditor.clear();
         prefsEditor.commit();
+        sequence_.save();//초기화 후에도 이전 번호를 다시 쓰지 않도록 한다.
+        lanes_.clear();
+        events_.clear();
     }
 }
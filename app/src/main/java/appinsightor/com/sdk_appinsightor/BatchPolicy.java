@@ -0,0 +1,48 @@
+package appinsightor.com.sdk_appinsightor;
+
+/**
+ * events Queue 의 이벤트를 하나의 요청 메시지로 묶어 수신서버에 전송하는 조건<br />
+ * 이벤트 수(maxEvents), 저장된 크기(maxBytes), 첫 이벤트가 저장된 후 지난 시간(maxAgeMs) 중 먼저 도달한 조건에서 전송한다.<br />
+ * 백그라운드 전환(onStop)과 AppInsightor.flushEvents() 호출시에는 조건과 관계없이 바로 전송한다.<br />
+ * init 또는 AppInsightor.setBatchPolicy() 로 지정하며, 지정하지 않으면 IMMEDIATE(이전 버전 동작)로 전송한다.
+ *
+ * <p>e.g.</p>
+ * new BatchPolicy(50, 32 * 1024, 30000) - 50개, 32KB, 30초<br />
+ * BatchPolicy.IMMEDIATE - 이벤트마다 바로 전송(기본, 이전 버전 동작)
+ */
+public class BatchPolicy {
+    /** 이벤트마다 바로 전송(기본) */
+    public static final BatchPolicy IMMEDIATE = new BatchPolicy(1, Long.MAX_VALUE, 0);
+
+    final int maxEvents;
+    final long maxBytes;
+    final long maxAgeMs;
+
+    /**
+     * @param maxEvents 전송할 이벤트 수
+     * @param maxBytes 전송할 events Queue 저장 크기(byte, binary 레코드 기준)
+     * @param maxAgeMs 첫 이벤트 저장 후 전송까지 최대 시간(0 이면 시간 조건 없음)
+     * @throws IllegalArgumentException 값이 올바르지 않은 경우
+     */
+    public BatchPolicy(int maxEvents, long maxBytes, long maxAgeMs) {
+        if (maxEvents <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxEvents and maxBytes must be positive");
+        }
+        if (maxAgeMs < 0) {
+            throw new IllegalArgumentException("maxAgeMs must not be negative");
+        }
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @param size events Queue 이벤트 수
+     * @param bytes events Queue 저장 크기
+     * @param ageMs 첫 이벤트 저장 후 지난 시간
+     * @return 전송해야 하면 true
+     */
+    boolean isDue(final int size, final long bytes, final long ageMs) {
+        return size > 0 && (size >= maxEvents || bytes >= maxBytes || (maxAgeMs > 0 && ageMs >= maxAgeMs));
+    }
+}
@@ -0,0 +1,456 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue 저장소에 {@link QueueCapacity} 의 레코드 수, byte 수 제한과 용량 초과시 처리 방식을 적용한다.<br />
+ * 용량 초과로 버려진 레코드는 drop counter 에 집계하며, ConnectionQueue 가 다음 요청 메시지에 함께 기록한다.
+ *
+ * <p>SPILL_TO_DISK</p>
+ * 주 저장소가 가득 차면 보조 저장소에 이어서 저장한다. 순서를 유지하기 위해 보조 저장소가 비워질 때까지는
+ * 새 레코드도 보조 저장소에 저장하며, peek/ack 는 주 저장소 다음에 보조 저장소를 이어서 처리한다.
+ *
+ * <p>compaction</p>
+ * compact() 는 만료된 레코드를 제거하고, 저장소가 {@link Compactable} 인 경우 tombstone 과 ack 된 영역을 제외하고 다시 기록한다.<br />
+ * 레코드는 일련번호로 ack 하므로(ackUpTo) 전송 중에 앞쪽 레코드가 제거되어도 다른 레코드가 ack 되지 않는다.
+ */
+class BoundedStorageBackend implements StorageBackend {
+
+    /**
+     * DROP_LOWEST_PRIORITY 처리시 레코드의 우선순위(값이 클수록 중요)
+     */
+    interface Priority {
+        int of(byte[] record);
+    }
+
+    /**
+     * 레코드의 일련번호(0 이면 일련번호가 없는 이전 버전 레코드)
+     */
+    interface Sequence {
+        long of(byte[] record);
+    }
+
+    /**
+     * 레코드의 만료 시간(0 이면 만료되지 않음)
+     */
+    interface Expiry {
+        long of(byte[] record);
+    }
+
+    /**
+     * 만료된 레코드를 제외하고 저장소를 다시 기록할 수 있는 저장소
+     */
+    interface Compactable {
+        /**
+         * @param expiry 레코드 만료 시간(null 이면 다시 기록만 한다.)
+         * @param now 현재 시간
+         * @param result 제거한 레코드 수와 줄어든 byte 수를 더한다.
+         */
+        void compact(Expiry expiry, long now, Compaction result);
+    }
+
+    /**
+     * 용량 제한과 eviction 을 저장소의 일부에만 적용하는 저장소<br />
+     * e.g. MULTI_PROCESS 전송 프로세스는 다른 프로세스의 레코드도 읽지만, 그 레코드는 소유 프로세스가 제한하므로 버리지 않는다.
+     */
+    interface Evictable {
+        /**
+         * @return 용량을 계산하고 용량 초과시 레코드를 제거할 저장소
+         */
+        StorageBackend evictionTarget();
+    }
+
+    /**
+     * compaction 결과
+     */
+    static final class Compaction {
+        int expired;//제거한 만료 레코드 수
+        long reclaimedBytes;//줄어든 저장소 byte 수
+    }
+
+    private final StorageBackend primary_;
+    private final StorageBackend bounded_;//용량 제한 대상(primary_ 또는 그 일부)
+    private final StorageBackend spill_;
+    private final QueueCapacity capacity_;
+    private final Priority priority_;
+    private final Sequence sequence_;
+    private final AtomicLong dropped_ = new AtomicLong();
+    private PriorityIndex index_;//DROP_LOWEST_PRIORITY 용량 초과시 만들며, 알 수 없게 되면 null
+
+    /**
+     * @param primary 주 저장소
+     * @param spill SPILL_TO_DISK 인 경우 보조 저장소(그 외 null)
+     * @param capacity 용량
+     * @param priority 레코드 우선순위(null 이면 모두 같은 우선순위)
+     * @param sequence 레코드 일련번호(ackUpTo)
+     */
+    BoundedStorageBackend(final StorageBackend primary, final StorageBackend spill, final QueueCapacity capacity, final Priority priority,
+                          final Sequence sequence) {
+        primary_ = primary;
+        bounded_ = primary instanceof Evictable ? ((Evictable) primary).evictionTarget() : primary;
+        spill_ = spill;
+        capacity_ = capacity;
+        priority_ = priority;
+        sequence_ = sequence;
+    }
+
+    private boolean isFull(final StorageBackend backend, final int recordBytes) {
+        return backend.size() >= capacity_.maxRecords || backend.bytes() + recordBytes > capacity_.maxBytes;
+    }
+
+    private int priorityOf(final byte[] record) {
+        return priority_ == null ? 0 : priority_.of(record);
+    }
+
+    @Override
+    public synchronized boolean append(final byte[] record) {
+        if (record.length > capacity_.maxBytes) {
+            dropped_.incrementAndGet();
+            return false;
+        }
+        if (spill_ != null && (spill_.size() > 0 || isFull(bounded_, record.length))) {
+            if (spill_.bytes() + record.length > capacity_.spillMaxBytes) {
+                dropped_.incrementAndGet();
+                return false;
+            }
+            return spill_.append(record);
+        }
+        if (isFull(bounded_, record.length)) {
+            switch (capacity_.overflowPolicy) {
+                case DROP_OLDEST:
+                    while (bounded_.size() > 0 && isFull(bounded_, record.length)) {
+                        bounded_.ack(1);
+                        dropped_.incrementAndGet();
+                    }
+                    break;
+                case DROP_LOWEST_PRIORITY:
+                    if (!evictLowerPriority(record)) {
+                        dropped_.incrementAndGet();
+                        return false;
+                    }
+                    break;
+                default:
+                    dropped_.incrementAndGet();
+                    return false;
+            }
+        }
+        if (!primary_.append(record)) {
+            return false;
+        }
+        if (index_ != null) {
+            index_.add(priorityOf(record), record.length);
+        }
+        return true;
+    }
+
+    /**
+     * 새 레코드보다 우선순위가 낮거나 같은 레코드 중 가장 낮은 우선순위, 오래된 것부터 공간이 생길때까지 제거한다.<br />
+     * 저장된 레코드를 다시 읽지 않도록 우선순위 색인을 사용하며, 색인은 처음 용량을 초과했을 때와
+     * 저장소가 이 객체를 거치지 않고 바뀐 경우(크기가 다른 경우)에만 다시 만든다.<br />
+     * 주 저장소가 {@link Evictable} 이면 그 일부(eviction 대상)만 색인한다.
+     * @return 새 레코드를 저장할 공간을 만들었다면 true
+     */
+    private boolean evictLowerPriority(final byte[] record) {
+        final PriorityIndex index = priorityIndex();
+        final int incoming = priorityOf(record);
+        final long bytes = bounded_.bytes();
+        int[] victims = new int[4];
+        int count = 0;
+        long freedBytes = 0;
+        int level = Integer.MIN_VALUE;
+        while (true) {
+            final int next = index.nextLevel(level, incoming);
+            if (next == level) {
+                return false;
+            }
+            level = next;
+            for (int i = 0; i < index.size(); i++) {
+                if (index.priority(i) != level) {
+                    continue;
+                }
+                if (count == victims.length) {
+                    victims = Arrays.copyOf(victims, count * 2);
+                }
+                victims[count++] = i;
+                freedBytes += index.length(i);
+                if (index.size() - count < capacity_.maxRecords && bytes - freedBytes + record.length <= capacity_.maxBytes) {
+                    Arrays.sort(victims, 0, count);
+                    for (int k = count - 1; k >= 0; k--) {//뒤에서부터 제거해야 index 가 바뀌지 않는다.
+                        bounded_.remove(victims[k]);
+                        index.remove(victims[k]);
+                        dropped_.incrementAndGet();
+                    }
+                    return true;
+                }
+            }
+        }
+    }
+
+    private PriorityIndex priorityIndex() {
+        if (index_ == null || index_.size() != bounded_.size()) {
+            index_ = new PriorityIndex();
+            for (byte[] stored : bounded_.peek(Integer.MAX_VALUE)) {
+                index_.add(priorityOf(stored), stored.length);
+            }
+        }
+        return index_;
+    }
+
+    @Override
+    public synchronized List<byte[]> peek(final int max) {
+        final List<byte[]> records = primary_.peek(max);
+        if (spill_ != null && records.size() < max) {
+            records.addAll(spill_.peek(max - records.size()));
+        }
+        return records;
+    }
+
+    @Override
+    public synchronized void ack(final int count) {
+        final int fromPrimary = Math.min(count, primary_.size());
+        primary_.ack(fromPrimary);
+        if (index_ != null && bounded_ == primary_) {//Evictable 이면 크기를 비교하여 다시 만든다.
+            index_.removeHead(fromPrimary);
+        }
+        if (spill_ != null && count > fromPrimary) {
+            spill_.ack(count - fromPrimary);
+        }
+    }
+
+    /**
+     * 앞에서부터 최대 max 개 레코드를 읽고 바로 제거한다.<br />
+     * 읽기와 제거 사이에 다른 스레드의 append(용량 초과 제거 포함)가 끼어들지 않으므로 읽은 레코드만 정확히 제거된다.
+     * @return 읽은(제거한) 레코드
+     */
+    synchronized List<byte[]> take(final int max) {
+        final List<byte[]> records = peek(max);
+        ack(records.size());
+        return records;
+    }
+
+    /**
+     * 일련번호가 seq 이하인 레코드를 Queue 의 앞에서부터 제거한다.(범위 ack)<br />
+     * 전송 중에 용량 초과로 앞쪽 레코드가 제거되었더라도 전송한 레코드까지만 정확히 제거된다.
+     * 일련번호가 없는 이전 버전 레코드는 모든 일련번호보다 앞선 것으로 본다.
+     * @param seq 마지막으로 전송한 레코드의 일련번호
+     */
+    synchronized void ackUpTo(final long seq) {
+        if (seq <= 0) {
+            return;
+        }
+        int count = 0;
+        for (int max = 16; ; max *= 2) {
+            final List<byte[]> head = peek(max);
+            while (count < head.size() && sequence_.of(head.get(count)) <= seq) {
+                count++;
+            }
+            if (count < head.size() || head.size() < max) {
+                break;
+            }
+        }
+        ack(count);
+    }
+
+    @Override
+    public synchronized void remove(final int index) {
+        if (index < primary_.size()) {
+            primary_.remove(index);
+            if (index_ != null && bounded_ == primary_) {
+                index_.remove(index);
+            }
+        } else if (spill_ != null) {
+            spill_.remove(index - primary_.size());
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return primary_.size() + (spill_ == null ? 0 : spill_.size());
+    }
+
+    @Override
+    public synchronized long bytes() {
+        return primary_.bytes() + (spill_ == null ? 0 : spill_.bytes());
+    }
+
+    @Override
+    public synchronized void clear() {
+        primary_.clear();
+        index_ = null;
+        if (spill_ != null) {
+            spill_.clear();
+        }
+    }
+
+    /**
+     * 만료된 레코드를 제거하고 조각난 저장소를 다시 기록한다.(백그라운드 compaction)
+     * @param expiry 레코드 만료 시간(null 이면 만료 검사를 하지 않는다.)
+     * @param now 현재 시간
+     * @return 제거한 레코드 수와 줄어든 byte 수
+     */
+    synchronized Compaction compact(final Expiry expiry, final long now) {
+        final Compaction result = new Compaction();
+        compact(primary_, expiry, now, result);
+        index_ = null;
+        if (spill_ != null) {
+            compact(spill_, expiry, now, result);
+        }
+        return result;
+    }
+
+    private static void compact(final StorageBackend backend, final Expiry expiry, final long now, final Compaction result) {
+        if (backend instanceof Compactable) {
+            ((Compactable) backend).compact(expiry, now, result);
+        } else {
+            removeExpired(backend, expiry, now, result);
+        }
+    }
+
+    /**
+     * 다시 기록할 수 없는 저장소에서 만료된 레코드를 하나씩 제거한다.(뒤에서부터 제거해야 index 가 바뀌지 않는다.)
+     */
+    static void removeExpired(final StorageBackend backend, final Expiry expiry, final long now, final Compaction result) {
+        if (expiry == null) {
+            return;
+        }
+        final List<byte[]> records = backend.peek(Integer.MAX_VALUE);
+        for (int i = records.size() - 1; i >= 0; i--) {
+            if (isExpired(expiry, records.get(i), now)) {
+                backend.remove(i);
+                result.expired++;
+                result.reclaimedBytes += records.get(i).length;
+            }
+        }
+    }
+
+    static boolean isExpired(final Expiry expiry, final byte[] record, final long now) {
+        if (expiry == null) {
+            return false;
+        }
+        final long expiresAt = expiry.of(record);
+        return expiresAt > 0 && now >= expiresAt;
+    }
+
+    /**
+     * 주 저장소가 {@link CachedStorageBackend} 인 경우 변경 내용을 즉시 기록한다.<br />
+     * 기록하는 동안 append, peek 가 막히지 않도록 이 객체의 lock 을 잡지 않는다.
+     */
+    void flush() {
+        if (primary_ instanceof CachedStorageBackend) {
+            ((CachedStorageBackend) primary_).flush();
+        }
+    }
+
+    /**
+     * 변경 내용을 기록한 후 주 저장소와 보조 디스크 저장소를 닫는다.(AppInsightorStore.close())<br />
+     * 진행중인 compaction 이 끝난 후에 닫는다.
+     */
+    synchronized void close() {
+        close(primary_);
+        if (spill_ != null) {
+            close(spill_);
+        }
+    }
+
+    /**
+     * 파일을 열어둔 저장소라면 닫는다. 그 밖의 저장소는 닫을 것이 없다.
+     */
+    static void close(final StorageBackend backend) {
+        if (backend instanceof CachedStorageBackend) {
+            ((CachedStorageBackend) backend).close();
+        } else if (backend instanceof FileJournal) {
+            ((FileJournal) backend).close();
+        } else if (backend instanceof MultiProcessStorageBackend) {
+            ((MultiProcessStorageBackend) backend).close();
+        }
+    }
+
+    /**
+     * 마지막으로 가져간 이후 버려진 레코드 수를 반환하고 0 으로 초기화한다.
+     * @return 버려진 레코드 수
+     */
+    long takeDropped() {
+        return dropped_.getAndSet(0);
+    }
+
+    /**
+     * 저장소에 도달하기 전에 버려진 레코드 수를 더한다.(e.g. 수집 ring buffer 용량 초과)
+     * @param count 버려진 레코드 수
+     */
+    void addDropped(final long count) {
+        dropped_.addAndGet(count);
+    }
+
+    /**
+     * takeDropped() 로 가져간 값을 전송하지 못한 경우 되돌린다.
+     * @param count 되돌릴 레코드 수
+     */
+    void restoreDropped(final long count) {
+        dropped_.addAndGet(count);
+    }
+
+    /**
+     * eviction 대상 레코드의 우선순위와 byte 수(저장 순서), append, ack, remove 에 맞춰 유지한다.
+     */
+    private static final class PriorityIndex {
+        private int[] priorities_ = new int[16];
+        private int[] lengths_ = new int[16];
+        private int head_;
+        private int size_;
+
+        int size() {
+            return size_;
+        }
+
+        int priority(final int index) {
+            return priorities_[head_ + index];
+        }
+
+        int length(final int index) {
+            return lengths_[head_ + index];
+        }
+
+        void add(final int priority, final int length) {
+            if (head_ + size_ == priorities_.length) {
+                final int capacity = Math.max(16, size_ * 2);
+                priorities_ = Arrays.copyOfRange(priorities_, head_, head_ + capacity);
+                lengths_ = Arrays.copyOfRange(lengths_, head_, head_ + capacity);
+                head_ = 0;
+            }
+            priorities_[head_ + size_] = priority;
+            lengths_[head_ + size_] = length;
+            size_++;
+        }
+
+        void removeHead(final int count) {
+            final int removed = Math.min(count, size_);
+            head_ = size_ == removed ? 0 : head_ + removed;
+            size_ -= removed;
+        }
+
+        void remove(final int index) {
+            if (index < 0 || index >= size_) {
+                return;
+            }
+            System.arraycopy(priorities_, head_ + index + 1, priorities_, head_ + index, size_ - index - 1);
+            System.arraycopy(lengths_, head_ + index + 1, lengths_, head_ + index, size_ - index - 1);
+            size_--;
+        }
+
+        /**
+         * @return after 보다 크고 max 이하인 가장 낮은 우선순위, 없으면 after
+         */
+        int nextLevel(final int after, final int max) {
+            int next = after;
+            for (int i = head_; i < head_ + size_; i++) {
+                final int priority = priorities_[i];
+                if (priority > after && priority <= max && (next == after || priority < next)) {
+                    next = priority;
+                }
+            }
+            return next;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 디스크 저장소 앞에 두는 write-behind 메모리 캐시<br />
+ * Queue 의 모든 레코드를 메모리에 유지하여(authoritative) size, peek 는 디스크를 읽지 않고 바로 반환하며,
+ * append, ack 는 메모리에만 반영한 후 백그라운드 flusher 가 모아서(group commit) 디스크 저장소에 기록한다.<br />
+ * 마지막 변경 후 최대 maxStalenessMs 안에 디스크에 반영되며, flush() 로 즉시 반영할 수 있다.
+ *
+ * <p>캐시 구성</p>
+ * [durable 레코드 ... | 기록중(in-flight) 레코드 ... | 기록 대기(pending) 레코드 ...]<br />
+ * 디스크 저장소에는 아직 반영되지 않은 ack(pendingAcks) 만큼의 레코드가 앞에 더 남아있다.<br />
+ * compaction 은 변경 내용을 모두 기록한 후 디스크 저장소를 다시 기록하고 캐시를 다시 채우며, 그 동안 append, peek 는 대기한다.
+ */
+class CachedStorageBackend implements StorageBackend, BoundedStorageBackend.Compactable {
+    private final StorageBackend backend_;
+    private final ScheduledExecutorService flusher_;
+    private final long maxStalenessMs_;
+    private final Object flushLock_ = new Object();//flush 는 한번에 하나만 수행
+
+    private final ArrayDeque<byte[]> cache_ = new ArrayDeque<>();
+    private long bytes_;
+    private int durable_;
+    private int inFlight_;
+    private ArrayList<byte[]> pending_ = new ArrayList<>();
+    private int pendingAcks_;
+    private boolean resync_;//디스크 기록 오류 발생시 다음 flush 에서 전체를 다시 기록
+    private boolean scheduled_;
+    private boolean closed_;//close() 이후에는 디스크 저장소에 기록하지 않는다.
+
+    private final Runnable flushTask_ = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param backend 디스크 저장소
+     * @param flusher flush 를 수행할 백그라운드 executor(단일 스레드)
+     * @param maxStalenessMs 변경 후 디스크에 반영되기까지 최대 시간
+     */
+    CachedStorageBackend(final StorageBackend backend, final ScheduledExecutorService flusher, final long maxStalenessMs) {
+        backend_ = backend;
+        flusher_ = flusher;
+        maxStalenessMs_ = maxStalenessMs;
+        reload();
+    }
+
+    /**
+     * 디스크 저장소의 내용으로 캐시를 다시 채운다.(init 시 호출)
+     */
+    void reload() {
+        synchronized (flushLock_) {
+            final List<byte[]> records = backend_.peek(Integer.MAX_VALUE);
+            synchronized (this) {
+                cache_.clear();
+                bytes_ = 0;
+                for (byte[] record : records) {
+                    cache_.addLast(record);
+                    bytes_ += record.length;
+                }
+                durable_ = records.size();
+                inFlight_ = 0;
+                pending_.clear();
+                pendingAcks_ = 0;
+                resync_ = false;
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!scheduled_) {
+            scheduled_ = true;
+            try {
+                flusher_.schedule(flushTask_, maxStalenessMs_, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {//저장소를 닫는 중, close() 에서 기록한다.
+                scheduled_ = false;
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean append(final byte[] record) {
+        cache_.addLast(record);
+        bytes_ += record.length;
+        pending_.add(record);
+        scheduleFlush();
+        return true;
+    }
+
+    @Override
+    public synchronized List<byte[]> peek(final int max) {
+        final List<byte[]> result = new ArrayList<>(Math.min(max, cache_.size()));
+        final Iterator<byte[]> it = cache_.iterator();
+        while (it.hasNext() && result.size() < max) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void ack(int count) {
+        count = Math.min(count, cache_.size());
+        if (count <= 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            bytes_ -= cache_.pollFirst().length;
+        }
+        //durable, in-flight 레코드는 디스크에서도 ack 해야 하며, pending 레코드는 기록하지 않는다.
+        final int fromDurable = Math.min(count, durable_);
+        durable_ -= fromDurable;
+        count -= fromDurable;
+        final int fromInFlight = Math.min(count, inFlight_);
+        inFlight_ -= fromInFlight;
+        count -= fromInFlight;
+        pendingAcks_ += fromDurable + fromInFlight;
+        if (count > 0) {
+            pending_.subList(0, count).clear();
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * 용량 초과시 eviction, 디스크에 먼저 반영한 후 양쪽에서 제거한다.
+     */
+    @Override
+    public void remove(final int index) {
+        synchronized (flushLock_) {
+            flush();
+            synchronized (this) {
+                if (index < 0 || index >= cache_.size()) {
+                    return;
+                }
+                final Iterator<byte[]> it = cache_.iterator();
+                for (int i = 0; it.hasNext(); i++) {
+                    final byte[] record = it.next();
+                    if (i == index) {
+                        it.remove();
+                        bytes_ -= record.length;
+                        break;
+                    }
+                }
+                if (index < durable_) {
+                    backend_.remove(index);
+                    durable_--;
+                } else {
+                    pending_.remove(index - durable_);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return cache_.size();
+    }
+
+    @Override
+    public synchronized long bytes() {
+        return bytes_;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (flushLock_) {
+            synchronized (this) {
+                cache_.clear();
+                bytes_ = 0;
+                durable_ = 0;
+                inFlight_ = 0;
+                pending_.clear();
+                pendingAcks_ = 0;
+                resync_ = false;
+            }
+            backend_.clear();
+        }
+    }
+
+    @Override
+    public void compact(final BoundedStorageBackend.Expiry expiry, final long now, final BoundedStorageBackend.Compaction result) {
+        synchronized (flushLock_) {
+            synchronized (this) {
+                flush();
+                if (resync_) {
+                    return;//디스크 저장소와 캐시가 다름, 다음 flush 후에 수행한다.
+                }
+                if (backend_ instanceof BoundedStorageBackend.Compactable) {
+                    ((BoundedStorageBackend.Compactable) backend_).compact(expiry, now, result);
+                    reload();
+                } else {
+                    BoundedStorageBackend.removeExpired(this, expiry, now, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * 쌓여있는 ack, append 를 디스크 저장소에 한번에 기록한다.<br />
+     * 디스크 기록 중에도 append, ack, peek 는 막히지 않는다.
+     */
+    void flush() {
+        synchronized (flushLock_) {
+            if (closed_) {
+                return;
+            }
+            final int acks;
+            final List<byte[]> batch;
+            final boolean resync;
+            synchronized (this) {
+                scheduled_ = false;
+                resync = resync_;
+                if (resync) {
+                    batch = new ArrayList<>(cache_);
+                    pending_.clear();
+                    durable_ = 0;
+                    acks = 0;
+                    resync_ = false;
+                } else {
+                    if (pendingAcks_ == 0 && pending_.isEmpty()) {
+                        return;
+                    }
+                    batch = pending_;
+                    pending_ = new ArrayList<>();
+                    acks = pendingAcks_;
+                }
+                pendingAcks_ = 0;
+                inFlight_ = batch.size();
+            }
+
+            boolean ok = true;
+            if (resync) {
+                backend_.clear();
+            } else if (acks > 0) {
+                backend_.ack(acks);
+            }
+            for (byte[] record : batch) {
+                ok &= backend_.append(record);
+            }
+
+            synchronized (this) {
+                durable_ += inFlight_;
+                inFlight_ = 0;
+                if (!ok) {
+                    if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                        Log.w(AppInsightor.TAG, "write-behind flush failed, resync on next flush");
+                    }
+                    resync_ = true;
+                    scheduleFlush();
+                }
+            }
+        }
+    }
+
+    /**
+     * 변경 내용을 기록한 후 디스크 저장소를 닫는다. 이후의 변경은 메모리에만 반영된다.
+     */
+    void close() {
+        synchronized (flushLock_) {
+            flush();
+            closed_ = true;
+            BoundedStorageBackend.close(backend_);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.io.UnsupportedEncodingException;
+import java.util.zip.Adler32;
+
+/**
+ * 요청 메시지 압축용 preset dictionary(Deflater.setDictionary)<br />
+ * tools/DictionaryBuilder 로 ConnectionQueue, CrashDetails 요청 메시지 sample 에서 생성한 파일이므로 직접 수정하지 않는다.<br />
+ * 다시 생성하면 VERSION 을 올리고, 수신서버에 같은 ID 의 dictionary 를 먼저 등록해야 한다.
+ */
+final class CompressionDictionary {
+    static final int VERSION = 1;
+
+    private static final String DICTIONARY =
+            "117671653\",\"sdk_28329075%7D%2C%7B%22key%22%3A%22tab_select%22%2Camp%22%3A1760170129386%2C%22dur%"
+            + "22%3A1843%7D%2C%stamp%22%3A1760714504434%2C%22dur%22%3A596%7D%2Cple.bank\",\"app_version\":\"3.18.3\""
+            + ",\"device_id\":\"d0ple.shop\",\"app_version\":\"4.10.6\",\"device_id\":\"3cC%22screen%22%3A%22Search%22%7D%"
+            + "7D%5D,\"seq\":\"243760880136445%7D%2C%7B%22key%22%3A%22search%22%2Cmple.bank\",\"app_version\":\"2.19.5"
+            + "\",\"device_id\":\"6%22%3A%22Settings%22%7D%2C%22dur%22%3A388%7D%2C%\",\"metrics\":%7B%22_device%22%3A%"
+            + "22Pixel+7%22%2C%e\",\"metrics\":%7B%22_device%22%3A%22SM-A536N%22%2A%22Android%22%2C%22_os_version%"
+            + "22%3A%2210%22%2Ce\",\"metrics\":%7B%22_device%22%3A%22SM-G991N%22%2A%22Android%22%2C%22_os_version%"
+            + "22%3A%2212%22%2C%22Android%22%2C%22_os_version%22%3A%2214%22%2C%\",\"metrics\":%7B%22_device%22%3A%"
+            + "22SM-S918N%22%2C\",\"metrics\":%7B%22_device%22%3A%22LM-V510N%22%2C\",\"metrics\":%7B%22_device%22%3A%"
+            + "22SM-F711N%22%2C22Home%22%7D%7D%2C%7B%22key%22%3A%22logout%22%2CC%22_ram_total%22%3A%227984%22%2"
+            + "C%22_disk_currenecyclerView%24Adapter.onBindViewHolder%28Recycle2%2C%22_root%22%3A%22false%22%2C"
+            + "%22_online%22%3A1760049015149%7D%2C%7B%22key%22%3A%22share%22%2Ction.RealCall.execute%28RealCall"
+            + ".kt%3A154%29%5Cndroidx.fragment.app.Fragment.requireContext%28Fr+java.lang.Thread.run%28Thread.j"
+            + "ava%3A1012%29%5Cetrics\":%7B%22_device%22%3A%22Redmi+Note+11%22%2ndroid.app.Activity.performCreat"
+            + "e%28Activity.javur%22%3A974%7D%2C%7B%22key%22%3A%22purchase%22%2%5Ctat+com.android.internal.os.R"
+            + "untimeInit%24MetC%22_logs%22%3A%22MainActivity%3A+onResume%5CnCatrics\":%7B%22_device%22%3A%22Gal"
+            + "axy+Tab+S8%22%2Ct+java.lang.reflect.Method.invoke%28Native+Metho,\"metrics\":%7B%22_device%22%3A%2"
+            + "2Pixel+6a%22%2C%id.os.Looper.loopOnce%28Looper.java%3A226%29%5Cn%5Ctat+kotlin.coroutines.jvm.int"
+            + "ernal.BaseContinndroid.view.View.performClick%28View.java%3A7506tionImpl.kt%3A33%29%5Cn%22%2C%22"
+            + "_app_build%22%3A2C%22_manufacture%22%3A%22samsung%22%2C%22_cpu%2androidx.recyclerview.widget.Rec"
+            + "yclerView.dispat%22%3A%22screen_view%22%2C%22count%22%3A2%2C%22t2C%22_opengl%22%3A%223%22%2C%22_"
+            + "ram_current%22%33A%221440x3088%22%2C%22_density%22%3A%22XXXHDPI%9882212%7D%2C%7B%22key%22%3A%22v"
+            + "ideo_play%22%2C%%3A%221080x2400%22%2C%22_density%22%3A%22XXHDPI%r%22%3A166%7D%2C%7B%22key%22%3A%"
+            + "22tab_select%22%%5Ctat+java.util.concurrent.ThreadPoolExecutor.r22Settings%22%7D%7D%2C%7B%22key%"
+            + "22%3A%22search%2%28Handler.java%3A942%29%5Cn%5Ctat+android.os.Lo%2C%22_muted%22%3A%22true%22%2C%"
+            + "22_background%2222%3A%2213%22%2C%22_carrier%22%3A%22LG+U%2B%22%2,\"metrics\":%7B%22_device%22%3A%2"
+            + "2SM-N986N%22%2C%A%2211%22%2C%22_carrier%22%3A%22SKTelecom%22%2C%n%22%3A%229%22%2C%22_carrier%22%"
+            + "3A%22olleh%22%2Cn%22%3A%7B%22screen%22%3A%22ProductDetail%22%7D%events\":%5B%7B%22key%22%3A%22ban"
+            + "ner_click%22%2C%2%3A%228.1.0%22%2C%22_carrier%22%3A%22Verizon%22ey%22%3A%22push_open%22%2C%22cou"
+            + "nt%22%3A4%2C%22t2%3A%22720x1600%22%2C%22_density%22%3A%22XHDPI%2%22%3A%22A%22%2C%22screen%22%3A%"
+            + "22Checkout%22%7D\":\"com.example.bank\",\"app_version\":\"4.3.9\",\"devi%22%3A%22%22%2C%22_nonfatal%22%3"
+            + "A%22false%22%2C%izon%22%2C%22_resolution%22%3A%221080x2340%22%2C%22%3A%22add_to_cart%22%2C%22cou"
+            + "nt%22%3A5%2C%22t22Search%22%7D%7D%2C%7B%22key%22%3A%22login%22%222%3A%22scroll_depth%22%2C%22cou"
+            + "nt%22%3A3%2C%22te%22%3A%22ja_JP%22%7D,\"crash\":%7B%22_error%22%3Aegmentation%22%3A%7B%22ab_group%"
+            + "22%3A%22B%22%2C%XXHDPI%22%2C%22_locale%22%3A%22ko_KR%22%7D,\"seq\"2%3A%221440x3200%22%2C%22_densit"
+            + "y%22%3A%22XXXHDPxample.news\",\"app_version\":\"3.6.1\",\"device_id\":\"-6ed0ace70ffb\",\"timestamp\":\"1760"
+            + "746727487\",\"sdk_2%2C%22screen%22%3A%22Home%22%7D%7D%5D,\"seq\":\"512%3A%22Cart%22%7D%2C%22dur%22%3A"
+            + "887%7D%2C%7B%22kcom.example.shop\",\"app_version\":\"2.7.4\",\"device_%2C%22segmentation%22%3A%7B%22sc"
+            + "reen%22%3A%22Sea%22%3A%22en_US%22%7D,\"events\":%5B%7B%22key%22%3A,\"sdk_version\":\"1.0\",\"session_st"
+            + "atus\":\"inactive\"in%22%2C%22count%22%3A1%2C%22timestamp%22%3A1760%2C%22_carrier%22%3A%22KT%22%2C%"
+            + "22_resolution%22%2C%22_density%22%3A%22HDPI%22%2C%22_locale%22%3_status\":\"active\",\"metrics\":%7B%"
+            + "22_device%22%3A%c={\"t\":\"ne\",\"category\":\"app\",\"app_name\":\"com.exaC%22_os%22%3A%22Android%22%2C%22"
+            + "_os_version%22%3\",\"sdk_name\":\"appinsightor-android\",\"sdk_version"
+            ;//adler32 7d8d907d
+
+    private static final byte[] BYTES = toBytes(DICTIONARY);
+
+    /** 수신서버에 전송하는 dictionary ID(VERSION-adler32) */
+    static final String ID = VERSION + "-" + adler32(BYTES);
+
+    private CompressionDictionary() {
+    }
+
+    /**
+     * @return dictionary(수정하지 않는다.)
+     */
+    static byte[] bytes() {
+        return BYTES;
+    }
+
+    private static byte[] toBytes(final String dictionary) {
+        try {
+            return dictionary.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String adler32(final byte[] bytes) {
+        final Adler32 adler = new Adler32();
+        adler.update(bytes, 0, bytes.length);
+        return Long.toHexString(adler.getValue());
+    }
+}
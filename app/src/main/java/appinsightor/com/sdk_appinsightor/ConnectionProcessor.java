@@ -1,20 +1,20 @@
 package appinsightor.com.sdk_appinsightor;
 
-import android.os.Build;
 import android.util.Log;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.MessageDigest;
+import java.util.List;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -30,49 +30,61 @@ import static android.content.ContentValues.TAG;
  * 요청메시지 데이터를 수신서버로 전송한다.
  * 요청메시지 데이터가 crash 데이터 또는 2048 길이보다 클 경우 POST 방식으로 전달하며 그 외에는 GET 방식으로 전달한다.
  * HttpPostOnlyRequest 값이 true 일경우 모든 요청 메시지를 강제적으로 POST 방식으로 전달한다.
+ * compressionThreshold 이상인 POST 본문은 gzip 으로 압축하여 전달한다.(Content-Encoding: gzip)
+ * compressionDictionary 값이 true 일경우 preset dictionary 로 압축하여 전달한다.(Content-Encoding: deflate)
+ * 요청메시지 본문은 {@link EnvelopeWriter} 로 저장된 레코드에서 바로 기록한다.(query string, JSONObject 변환 없음)
  */
 public class ConnectionProcessor implements Runnable {
     private static final int CONNECT_TIMEOUT_IN_MILLISECONDS = 30000;
     private static final int READ_TIMEOUT_IN_MILLISECONDS = 30000;
 
-    private final AppInsightorStore store_;
+    private final UploadLanes lanes_;
+    private final RecordCodec codec_;
     private final String deviceId_;
     private final String serverURL_;
+    private final UploadBatchPolicy batchPolicy_;
+    private final PayloadCompressor compressor_;
+    private final EnvelopeWriter body_;//요청 본문("c=...")
+    private String contentEncoding_;//마지막 요청 본문의 Content-Encoding(gzip, deflate), 압축하지 않았으면 null
 
     protected static String checksum;
     protected static Boolean HttpPostOnlyRequest = false;
+    protected static volatile int compressionThreshold = -1;//이 길이 이상인 POST 본문을 gzip 압축(음수이면 압축하지 않음)
+    protected static volatile boolean compressionDictionary = false;//preset dictionary 압축(CompressionDictionary)
 
 
     /**
-     * FROYO(API 8 Level) 이전의 안드로이드에서 HttpURLConnection을 사용할 경우 readable input stream에서 close()를 호출하면
-     * 전체 connection pool에 쓰레기값이 들어갈 수도 있는 현상이 발생하므로, connection pooling을 off 해주어야 한다.
-     * e.g. if (Integer.parseInt(Build.VERSION_SDK) < Build.VERSION_CODES.FROYO) {
-     *      System.setProperty("http.keepAlive", "false");
-     *      }
+     * 요청이 끝나면 응답 본문을 끝까지 읽고 닫아서 연결을 재사용한다.({@link UploadTransport})
      * @param serverURL 수신 서버
-     * @param store 보낼 요청 메시지
+     * @param lanes 보낼 요청 메시지 Queue(전송 lane 묶음)
+     * @param codec 요청 메시지 binary 변환
      * @param deviceId
+     * @param batchPolicy 여러 요청 메시지를 묶어 전송하는 조건
+     * @param compressor POST 본문 gzip 압축(ConnectionQueue 에서 재사용)
+     * @param writer 요청 본문 기록(ConnectionQueue 에서 재사용)
      */
-    ConnectionProcessor(final String serverURL, final AppInsightorStore store, final String deviceId) {
+    ConnectionProcessor(final String serverURL, final UploadLanes lanes, final RecordCodec codec, final String deviceId,
+                        final UploadBatchPolicy batchPolicy, final PayloadCompressor compressor, final EnvelopeWriter writer) {
         AppInsightor.sharedInstance().logShowPrinting("");
         serverURL_ = serverURL;
-        store_ = store;
+        batchPolicy_ = batchPolicy;
+        compressor_ = compressor;
+        body_ = writer;
+        lanes_ = lanes;
+        codec_ = codec;
         deviceId_ = deviceId;
-
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO) {//API 8 Level
-            System.setProperty("http.keepAlive", "false");
-        }
     }
 
     /**
      * 요청 메시지 데이타 전송
      * 메시지가 crash 데이타 또는 2048 길이보다 클 경우 POST 방식으로 전달하며 그 외에는 GET 방식으로 전달
      * HttpPostOnlyRequest 값이 true 일경우 모든 요청 메시지를 강제적으로 POST 방식으로 전달한다.
-     * @param eventData 요청메시지 데이타
+     * 요청메시지 데이타는 body_ 에 기록되어 있다.
+     * @param crash crash 요청메시지이면 true
      * @return HttpURLConnection conn
      * @throws IOException
      */
-    URLConnection urlConnectionForEventData(final String eventData) throws IOException {
+    URLConnection urlConnectionForEventData(final boolean crash) throws IOException {
         AppInsightor.sharedInstance().logShowPrinting("start");
 
 //        String urlStr = serverURL_ + "/i.php?";
@@ -80,8 +92,9 @@ public class ConnectionProcessor implements Runnable {
 
 
         //별도로 checksum의 값만 GET 방식으로 전달
-        if(!HttpPostOnlyRequest && !eventData.contains("&crash=") && eventData.length() < 2048) {
-            urlStr += eventData;
+        final boolean get = !HttpPostOnlyRequest && !crash && body_.length() < 2048;
+        if(get) {
+            urlStr += body_.toString();
             if (checksum != null) urlStr += "&checksum=" + sha1Hash(checksum);
         } else {
             if (checksum != null)urlStr += "checksum=" + sha1Hash(checksum);
@@ -102,22 +115,19 @@ public class ConnectionProcessor implements Runnable {
 //            });
 
         conn = (HttpURLConnection) url.openConnection();
+        UploadTransport.prepare(conn);
         conn.setConnectTimeout(CONNECT_TIMEOUT_IN_MILLISECONDS);
         conn.setReadTimeout(READ_TIMEOUT_IN_MILLISECONDS);
         conn.setUseCaches(false);
         conn.setDoInput(true);
 
-        if(!HttpPostOnlyRequest && !eventData.contains("&crash=") && eventData.length() < 2048) {
+        contentEncoding_ = null;
+        if(get) {
             conn.setDoOutput(true);
         } else {
             conn.setDoOutput(true);
             conn.setRequestMethod("POST");
-            OutputStream os = conn.getOutputStream();
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
-            writer.write(eventData);
-            writer.flush();
-            writer.close();
-            os.close();
+            writeBody(conn);
         }
 
         AppInsightor.sharedInstance().logShowPrinting("end");
@@ -132,112 +142,451 @@ public class ConnectionProcessor implements Runnable {
      * 300번대(리다이렉션) 해당 요구 사항을 처리하기 위해 사용자 에이전트에 의해 수행되어야 할 추가적인 동작이 있음을 의미한다.
      * 400번대(클라이언트 측 에러) 클라이언트에 오류가 발생한 경우 사용된다. 예를 들면 클라이언트가 서버에 보내는 요구 메시지를 완전히 처리하지 못한 경우 등이다.
      * 500번대(서버 측 에러) 서버 자체에서 발생된 오류 상황이나 요구 사항을 제대로 처리할 수 없을 때 사용된다.
+     *
+     * <p>전송 lane</p>
+     * {@link UploadLanes#next(long)} 가 고른 lane 의 요청 메시지를 전송하며(crash 우선, 나머지는 weight 비율),
+     * EVENTS lane 은 연속된 이벤트 요청 메시지를 최대 maxCoalesce 개까지 하나로 합쳐 전송한다.<br />
+     * 전송에 실패한 lane 은 재시도 대기 상태가 되고 다른 lane 을 계속 전송하며, 전송할 lane 이 없으면 종료한다.
+     *
+     * <p>batch 전송</p>
+     * {@link UploadBatchPolicy} 가 batch 전송이면 lane 의 요청 메시지를 여러 개씩 POST 요청 1건으로 묶어 전송하며,
+     * 응답 처리는 UploadBatchPolicy.AckMode 를 따른다.
+     *
+     * <p>만료, 최대 전송 시도</p>
+     * 만료된 요청 메시지는 전송하지 않고 버린다.<br />
+     * 3xx, 5xx 응답은 가장 앞 요청 메시지의 전송 시도 횟수를 늘리며, maxAttempts 에 이르면 해당 요청 메시지를 버린다.
+     * 예외(네트워크 연결 실패 등)는 요청 메시지의 문제가 아니므로 횟수에 포함하지 않는다.
      */
     @Override
     public void run() {
         AppInsightor.sharedInstance().logShowPrinting("start");
-        final JSONObject json = new JSONObject();
+        int batchLimit = batchPolicy_.maxRecords;//413 응답시 줄인다.
 
         while(true) {
-            final String[] storedEvents = store_.connections();
-            if (storedEvents == null || storedEvents.length == 0) {
+            final long now = System.currentTimeMillis();
+            final UploadLane lane = lanes_.next(now);
+            if (lane == null) {
+                break;
+            }
+            final List<byte[]> stored = lane.queue.peek(batchPolicy_.batch ? batchLimit : lane.policy.maxCoalesce);
+            if (stored.isEmpty()) {
                 //throw new IllegalStateException("error!");
                 break;
             }
-
+            final ConnectionRecord record = codec_.decode(stored.get(0));
+            if (record.isExpired(now)) {
+                if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                    Log.d(AppInsightor.TAG, "drop expired request seq=" + record.seq);
+                }
+                dropHead(lane, record);
+                lane.onDropped(false);
+                continue;
+            }
 
             //deviceID check
             if (deviceId_ == null) {
                 if (AppInsightor.sharedInstance().isLoggingEnabled()) {
-                    Log.w(AppInsightor.TAG, "No Device ID available yet, skipping request " + storedEvents[0]);
+                    Log.w(AppInsightor.TAG, "No Device ID available yet, skipping request " + record.toQueryString());
                 }
                 break;
             }
 
+            if (batchPolicy_.batch) {
+                batchLimit = sendBatch(lane, stored, record, now, batchLimit);
+            } else {
+                send(lane, stored, record, now);
+            }
+        }
+        AppInsightor.sharedInstance().logShowPrinting("end");
+    }
+
+    /**
+     * 가장 앞 요청 메시지(EVENTS lane 은 합칠 수 있는 요청 메시지까지)를 HTTP 요청 1건으로 전송한다.
+     */
+    private void send(final UploadLane lane, final List<byte[]> stored, final ConnectionRecord record, final long now) {
+        int count = 1;
+        long waitMs = Math.max(0, now - record.timestamp);
+        long maxWaitMs = waitMs;
+        while (count < stored.size()) {
+            final ConnectionRecord next = codec_.decode(stored.get(count));
+            if (!record.canCoalesce(next) || next.isExpired(now)) {
+                break;
+            }
+            record.coalesce(next);
+            final long wait = Math.max(0, now - next.timestamp);
+            waitMs += wait;
+            maxWaitMs = Math.max(maxWaitMs, wait);
+            count++;
+        }
+
+        //전체 데이터를 JSON으로 기록
+        body_.reset();
+        body_.writeAscii("c=");
+        body_.writeRecord(record);
+
+        //String eventData = storedEvents[0];
+        //Log.e("Log.String: ","---");
+        //Log.e("Log.String: ",store_.getPreference(""));
+        //Log.e("Log.String: ",store_.getPreference("CONNECTIONS"));
+        //Log.e("Log.String: ",store_.getPreference("EVENTS"));
+        //위의 store_.getpreference(~~) 를 호출할때 데이터가 사라진다???
 
 
-            //전체 데이터를 JSON으로 변환
-            String[] values = storedEvents[0].split("&");
-            String[][] tokens = new String[values.length][2];
-            for (int i = 0; i < values.length; i++) {
-                tokens[i] = values[i].split("=");
-                try {
-                    json.put(tokens[i][0], tokens[i][1]);
-                } catch (JSONException ignored) {
+
+        URLConnection conn = null;
+        boolean responded = false;
+        try {
+            //initialize and open connection
+            final long startNanos = AppInsightor.monotonicNanos();
+            conn = urlConnectionForEventData(record.crash != null);
+            conn.connect();
+
+            //response code has to be 2xx to be considered a success
+            boolean success = true;
+            final int responseCode;
+            if (conn instanceof HttpURLConnection) {
+                final HttpURLConnection httpConn = (HttpURLConnection) conn;
+                responseCode = httpConn.getResponseCode();
+                responded = true;
+                UploadTransport.onResponse(conn, startNanos);
+                if (isCompressionRejected(httpConn, responseCode)) {
+                    return;//압축하지 않고 바로 다시 전송한다.
                 }
+                success = responseCode >= 200 && responseCode < 300;//success true or false set
+                if (!success && AppInsightor.sharedInstance().isLoggingEnabled()) {
+                    Log.w(AppInsightor.TAG, "HTTP error response code was " + responseCode + " from submitting event data: " + body_);
+                }
+            } else {
+                responseCode = 0;
             }
-            String eventData = "c=" + json.toString().replace("\"%7B","%7B")
-                                                     .replace("%7D\"","%7D")
-                                                     .replace("\"%5B","%5B")
-                                                     .replace("%5D\"","%5D");
-
-            //String eventData = storedEvents[0];
-            //Log.e("Log.String: ","---");
-            //Log.e("Log.String: ",store_.getPreference(""));
-            //Log.e("Log.String: ",store_.getPreference("CONNECTIONS"));
-            //Log.e("Log.String: ",store_.getPreference("EVENTS"));
-            //위의 store_.getpreference(~~) 를 호출할때 데이터가 사라진다???
-
-
-
-            URLConnection conn = null;
-            try {
-                //initialize and open connection
-                conn = urlConnectionForEventData(eventData);
-                conn.connect();
-
-                //response code has to be 2xx to be considered a success
-                boolean success = true;
-                final int responseCode;
-                if (conn instanceof HttpURLConnection) {
-                    final HttpURLConnection httpConn = (HttpURLConnection) conn;
-                    responseCode = httpConn.getResponseCode();
-                    success = responseCode >= 200 && responseCode < 300;//success true or false set
-                    if (!success && AppInsightor.sharedInstance().isLoggingEnabled()) {
-                        Log.w(AppInsightor.TAG, "HTTP error response code was " + responseCode + " from submitting event data: " + eventData);
-                    }
-                } else {
-                    responseCode = 0;
+
+            if (success) {
+                if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                    Log.d(AppInsightor.TAG, "send ok ->" + body_);
                 }
 
-                if (success) {
-                    if (AppInsightor.sharedInstance().isLoggingEnabled()) {
-                        Log.d(AppInsightor.TAG, "send ok ->" + eventData);
-                    }
+                //정상적인 수신서버 전송 후 local store Queue 의 데이터를 제거한다.
+                ack(lane, record, count);
+                lane.onSent(count, waitMs, maxWaitMs);
+
+                //response code 가 400번대로써 클라이언트 오류가 발생한 경우 response code 와 함께 Queue 에서도 제거한다.
+            } else if (responseCode >= 400 && responseCode < 500) {
+                if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                    Log.d(AppInsightor.TAG, "send fail " + responseCode + " ->" + body_);
+                }
+                ack(lane, record, count);
+                lane.onSent(count, waitMs, maxWaitMs);
+            } else {
+                //그외 300번대(리다이렉션), 500번대(서버측에러)의 경우 이 lane 은 재시도 대기 후 다음 틱에서 다시 시도하도록 한다.
+                //throw new IllegalStateException("error!");
+                onRetryableFailure(lane, record, now);
+            }
+        } catch (Exception e) {
+            if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                Log.w(AppInsightor.TAG, "Got exception while trying to submit event data: " + body_, e);
+                Log.w(AppInsightor.TAG, "AA" + e);
+            }
+            //예외가 발생하였다면 이 lane 은 재시도 대기 후 다음 틱에서 다시 시도하도록 한다.
+            //throw new IllegalStateException("error!");
+            lane.onFailure(now);
+        } finally {
+            //free connection resources - 응답 본문을 끝까지 읽고 닫아서 연결을 재사용한다.
+            UploadTransport.release(conn, responded);
+        }
+    }
 
-                    //정상적인 수신서버 전송 후 local store Queue 의 데이터를 제거한다.
-                    store_.removeConnection(storedEvents[0]);
+    /**
+     * 가장 앞에서부터 최대 limit 개, 본문 maxBytes 까지의 요청 메시지를 POST 요청 1건으로 묶어 전송한다.(batch 전송)<br />
+     * EVENTS lane 의 연속된 이벤트 요청 메시지는 단건 전송과 같이 하나의 항목으로 합친다.
+     * 만료된 요청 메시지는 묶지 않고, 가장 앞이 되었을 때 버린다.
+     * @param record 가장 앞 요청 메시지
+     * @param limit 한번에 전송할 최대 요청 메시지 수
+     * @return 다음 batch 의 최대 요청 메시지 수(413 응답시 절반으로 줄인다.)
+     */
+    private int sendBatch(final UploadLane lane, final List<byte[]> stored, final ConnectionRecord record, final long now,
+                          final int limit) {
+        final int size = stored.size();
+        final ConnectionRecord[] items = new ConnectionRecord[size];
+        final int[] ends = new int[size];//항목까지의 레코드 수
+        final long[] waits = new long[size];
+        final long[] maxWaits = new long[size];
+        body_.reset();
+        body_.writeAscii("c=[");
+        int count = 0;
+        int index = 0;
+        ConnectionRecord item = record;
+        while (item != null) {
+            int end = index + 1;
+            long waitMs = Math.max(0, now - item.timestamp);
+            long maxWaitMs = waitMs;
+            ConnectionRecord next = null;
+            while (end < size) {
+                next = codec_.decode(stored.get(end));
+                if (next.isExpired(now) || end - index >= lane.policy.maxCoalesce || !item.canCoalesce(next)) {
+                    break;
+                }
+                item.coalesce(next);
+                final long wait = Math.max(0, now - next.timestamp);
+                waitMs += wait;
+                maxWaitMs = Math.max(maxWaitMs, wait);
+                next = null;
+                end++;
+            }
+            final int mark = body_.length();
+            if (count > 0) {
+                body_.writeAscii(",");
+            }
+            body_.writeRecord(item);
+            if (count > 0 && body_.length() + 1 > batchPolicy_.maxBytes) {
+                body_.truncate(mark);
+                break;
+            }
+            items[count] = item;
+            ends[count] = end;
+            waits[count] = waitMs;
+            maxWaits[count] = maxWaitMs;
+            count++;
+            index = end;
+            item = next == null || next.isExpired(now) ? null : next;
+        }
+        body_.writeAscii("]");
 
-                    //response code 가 400번대로써 클라이언트 오류가 발생한 경우 response code 와 함께 Queue 에서도 제거한다.
-                } else if (responseCode >= 400 && responseCode < 500) {
-                    if (AppInsightor.sharedInstance().isLoggingEnabled()) {
-                        Log.d(AppInsightor.TAG, "send fail " + responseCode + " ->" + eventData);
+        HttpURLConnection conn = null;
+        boolean responded = false;
+        try {
+            final long startNanos = AppInsightor.monotonicNanos();
+            conn = urlConnectionForBatch();
+            conn.connect();
+            final int responseCode = conn.getResponseCode();
+            responded = true;
+            UploadTransport.onResponse(conn, startNanos);
+            if (isCompressionRejected(conn, responseCode)) {
+                return limit;//압축하지 않고 바로 다시 전송한다.
+            }
+            if (responseCode >= 200 && responseCode < 300) {
+                final int[] results = batchPolicy_.ackMode == UploadBatchPolicy.AckMode.PER_ITEM ? readResults(conn, count) : null;
+                int acked = count;
+                if (results != null) {
+                    acked = 0;
+                    while (acked < count && !isRetryable(results[acked])) {
+                        acked++;
                     }
-                    store_.removeConnection(storedEvents[0]);
-                } else {
-                    //그외 300번대(리다이렉션), 500번대(서버측에러)의 경우  처리를 중지하고 다음 틱에서 다시 시도하도록 한다.
-                    //throw new IllegalStateException("error!");
-                    break;
                 }
-            } catch (Exception e) {
                 if (AppInsightor.sharedInstance().isLoggingEnabled()) {
-                    Log.w(AppInsightor.TAG, "Got exception while trying to submit event data: " + eventData, e);
-                    Log.w(AppInsightor.TAG, "AA" + e);
+                    Log.d(AppInsightor.TAG, "send batch ok " + acked + "/" + count + " ->" + body_);
                 }
-                //예외가 발생하였다면 처리를 중지하고 다음 틱에서 다시 시도하도록 한다.
-                //throw new IllegalStateException("error!");
-                break;
-            } finally {
-                //free connection resources
-                if (conn != null && conn instanceof HttpURLConnection) {
-                    ((HttpURLConnection) conn).disconnect();
+                if (acked > 0) {
+                    ackItems(lane, items, ends, waits, maxWaits, acked);
+                }
+                if (acked < count) {
+                    //3xx, 5xx 인 첫 항목부터 다음 틱에서 다시 시도한다.
+                    onRetryableFailure(lane, items[acked], now);
+                }
+            } else if (responseCode == 413 && ends[count - 1] > 1) {
+                //본문이 너무 크면 바로 절반씩 나누어 다시 전송한다.
+                if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                    Log.d(AppInsightor.TAG, "send batch too large " + ends[count - 1] + " records");
+                }
+                return Math.max(1, ends[count - 1] / 2);
+            } else if (responseCode >= 400 && responseCode < 500) {
+                if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                    Log.d(AppInsightor.TAG, "send batch fail " + responseCode + " ->" + body_);
                 }
+                ackItems(lane, items, ends, waits, maxWaits, count);
+            } else {
+                if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                    Log.w(AppInsightor.TAG, "HTTP error response code was " + responseCode + " from submitting batch data: " + body_);
+                }
+                onRetryableFailure(lane, record, now);
+            }
+        } catch (Exception e) {
+            if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                Log.w(AppInsightor.TAG, "Got exception while trying to submit batch data: " + body_, e);
             }
+            lane.onFailure(now);
+        } finally {
+            UploadTransport.release(conn, responded);
+        }
+        return limit;
+    }
+
+    /**
+     * batch 전송 요청("c=[...]" 본문은 body_ 에 기록되어 있다.)
+     */
+    HttpURLConnection urlConnectionForBatch() throws IOException {
+        String urlStr = serverURL_ + "/ne.nfl?batch=1";
+        if (checksum != null) urlStr += "&checksum=" + sha1Hash(checksum);
+
+        final HttpURLConnection conn = (HttpURLConnection) new URL(urlStr).openConnection();
+        UploadTransport.prepare(conn);
+        conn.setConnectTimeout(CONNECT_TIMEOUT_IN_MILLISECONDS);
+        conn.setReadTimeout(READ_TIMEOUT_IN_MILLISECONDS);
+        conn.setUseCaches(false);
+        conn.setDoInput(true);
+        conn.setDoOutput(true);
+        conn.setRequestMethod("POST");
+        contentEncoding_ = null;
+        writeBody(conn);
+        return conn;
+    }
+
+    /**
+     * POST 본문(body_) 기록 - Content-Length 와 함께 전송하며, compressionThreshold(byte) 이상이면 압축한다.<br />
+     * compressionDictionary 이면 preset dictionary(zlib)로, 아니면(또는 수신서버가 dictionary 를 거부했으면) gzip 으로 압축한다.
+     */
+    private void writeBody(final HttpURLConnection conn) throws IOException {
+        final int threshold = compressionThreshold;
+        final int bodyLength = body_.length();
+        if (threshold >= 0 && bodyLength >= threshold && compressor_ != null && !compressor_.isRejected()) {
+            final boolean dictionary = compressionDictionary && !compressor_.isDictionaryRejected();
+            final long startNanos = AppInsightor.monotonicNanos();
+            final int length = dictionary ? compressor_.deflateWithDictionary(body_.buffer(), bodyLength)
+                                          : compressor_.gzip(body_.buffer(), bodyLength);
+            UploadTransport.onCompressed(bodyLength, length, AppInsightor.monotonicNanos() - startNanos, dictionary);
+            contentEncoding_ = dictionary ? "deflate" : "gzip";
+            conn.setRequestProperty("Content-Encoding", contentEncoding_);
+            if (dictionary) {
+                conn.setRequestProperty(PayloadCompressor.DICTIONARY_HEADER, CompressionDictionary.ID);
+            }
+            conn.setFixedLengthStreamingMode(length);
+            final OutputStream os = conn.getOutputStream();
+            os.write(compressor_.buffer(), 0, length);
+            os.close();
+            return;
+        }
+        conn.setFixedLengthStreamingMode(bodyLength);
+        final OutputStream os = conn.getOutputStream();
+        body_.writeTo(os);
+        os.close();
+    }
+
+    /**
+     * 압축하여 전송한 요청을 수신서버가 거부(415 Unsupported Media Type)한 경우<br />
+     * dictionary 본문이면 이후 gzip 으로, gzip 본문이면 이후 압축하지 않고 전송한다.<br />
+     * dictionary 본문은 400 응답에 DICTIONARY_HEADER 가 있는 경우(수신서버에 없는 dictionary ID)에도 거부된 것으로 본다.
+     * 그 밖의 400 은 요청 메시지 자체의 오류일 수 있으므로 다른 4xx 와 같이 Queue 에서 제거한다.
+     * @return 바로 다시 전송해야 하면 true
+     */
+    private boolean isCompressionRejected(final HttpURLConnection conn, final int responseCode) {
+        if (contentEncoding_ == null) {
+            return false;
+        }
+        if (responseCode != 415 && !(responseCode == 400 && "deflate".equals(contentEncoding_)
+                && conn.getHeaderField(PayloadCompressor.DICTIONARY_HEADER) != null)) {
+            return false;
+        }
+        if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+            Log.w(AppInsightor.TAG, "server rejected " + contentEncoding_ + " body with " + responseCode + ", falling back");
+        }
+        if ("deflate".equals(contentEncoding_)) {
+            compressor_.rejectDictionary();
+        } else {
+            compressor_.reject();
+        }
+        UploadTransport.onCompressionRejected("deflate".equals(contentEncoding_));
+        return true;
+    }
+
+    /**
+     * batch 응답 본문의 항목별 응답 코드 {"results": [200, 200, 503, ...]}
+     * @param count 전송한 항목 수
+     * @return 본문이 없거나 형식, 항목 수가 맞지 않으면 null
+     */
+    private static int[] readResults(final HttpURLConnection conn, final int count) {
+        try {
+            final InputStream in = conn.getInputStream();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            in.close();
+            if (out.size() == 0) {
+                return null;
+            }
+            final JSONArray array = new JSONObject(out.toString("UTF-8")).optJSONArray("results");
+            if (array == null || array.length() != count) {
+                if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                    Log.w(AppInsightor.TAG, "batch results do not match " + count + " items, acking whole batch");
+                }
+                return null;
+            }
+            final int[] results = new int[count];
+            for (int i = 0; i < count; i++) {
+                results[i] = array.getInt(i);
+            }
+            return results;
+        } catch (IOException | JSONException e) {
+            if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                Log.w(AppInsightor.TAG, "Cannot read batch results, acking whole batch", e);
+            }
+            return null;
         }
-        AppInsightor.sharedInstance().logShowPrinting("end");
     }
 
+    /**
+     * @return 3xx, 5xx(다시 전송해야 하는 응답 코드)이면 true
+     */
+    private static boolean isRetryable(final int responseCode) {
+        return responseCode < 200 || (responseCode >= 300 && responseCode < 400) || responseCode >= 500;
+    }
 
+    /**
+     * 앞에서부터 count 개 항목의 요청 메시지를 Queue 에서 제거한다.
+     */
+    private static void ackItems(final UploadLane lane, final ConnectionRecord[] items, final int[] ends,
+                                 final long[] waits, final long[] maxWaits, final int count) {
+        long waitMs = 0;
+        long maxWaitMs = 0;
+        for (int i = 0; i < count; i++) {
+            waitMs += waits[i];
+            maxWaitMs = Math.max(maxWaitMs, maxWaits[i]);
+        }
+        ack(lane, items[count - 1], ends[count - 1]);
+        lane.onSent(ends[count - 1], waitMs, maxWaitMs);
+    }
+
+    /**
+     * 3xx, 5xx 응답 - 이 lane 은 재시도 대기 후 다음 틱에서 다시 시도하도록 한다.<br />
+     * 가장 앞 요청 메시지의 전송 시도 횟수를 늘리며, 최대 전송 시도 횟수에 이른 요청 메시지는 버린다.
+     */
+    private static void onRetryableFailure(final UploadLane lane, final ConnectionRecord record, final long now) {
+        final int attempts = lane.onAttemptFailed(record.seq);
+        if (record.maxAttempts > 0 && attempts >= record.maxAttempts) {
+            if (AppInsightor.sharedInstance().isLoggingEnabled()) {
+                Log.w(AppInsightor.TAG, "drop request after " + attempts + " attempts seq=" + record.seq);
+            }
+            dropHead(lane, record);
+            lane.onDropped(true);
+        }
+        lane.onFailure(now);
+    }
+
+
+
+    /**
+     * 전송한 요청 메시지를 Queue 에서 제거한다.<br />
+     * 일련번호가 있으면 전송한 마지막 일련번호까지 범위 ack 하며, 이전 버전 레코드는 전송한 갯수만큼 ack 한다.
+     */
+    private static void ack(final UploadLane lane, final ConnectionRecord record, final int count) {
+        if (record.seq > 0) {
+            lane.queue.ackUpTo(Math.max(record.seq, record.seqEnd));
+        } else {
+            lane.queue.ack(count);
+        }
+    }
+
+    /**
+     * 가장 앞 요청 메시지 1개만 Queue 에서 제거한다.(합쳐서 전송한 나머지 메시지는 남긴다.)
+     */
+    private static void dropHead(final UploadLane lane, final ConnectionRecord record) {
+        if (record.seq > 0) {
+            lane.queue.ackUpTo(record.seq);
+        } else {
+            lane.queue.ack(1);
+        }
+    }
 
     /**
      * ok-
@@ -308,6 +657,6 @@ public class ConnectionProcessor implements Runnable {
     }
 
     //String getServerURL() { return serverURL_; }
-    //AppInsightorStore getAppInsightorStore() { return store_; }
+    //UploadLanes getLanes() { return lanes_; }
     //DeviceId getDeviceId() { return deviceId_; }
 }
@@ -2,6 +2,7 @@ package appinsightor.com.sdk_appinsightor;
 
 import android.content.Context;
 
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -10,14 +11,63 @@ import java.util.concurrent.Future;
  * ConnectionQueue Class
  */
 public class ConnectionQueue {
+    /**
+     * SESSION lane 용량 초과시(DROP_LOWEST_PRIORITY) 레코드 우선순위 - crash &gt; session &gt; events<br />
+     * 이전 버전에서 저장된 요청 메시지는 종류와 관계없이 SESSION lane 에 남아있으므로 우선순위를 구분한다.
+     */
+    static final BoundedStorageBackend.Priority PRIORITY = new BoundedStorageBackend.Priority() {
+        @Override
+        public int of(byte[] record) {
+            switch (RecordCodec.typeOf(record)) {
+                case ConnectionRecord.TYPE_CRASH:
+                    return 2;
+                case ConnectionRecord.TYPE_EVENTS:
+                    return 0;
+                case ConnectionRecord.TYPE_LEGACY:
+                    final String data = AppInsightorStore.toString(record);
+                    if (data.contains("&crash=")) {
+                        return 2;
+                    }
+                    return data.contains("&events=") ? 0 : 1;
+                default:
+                    return 1;
+            }
+        }
+    };
+
+    /**
+     * 요청 메시지의 일련번호(범위 ack)
+     */
+    static final BoundedStorageBackend.Sequence SEQUENCE = new BoundedStorageBackend.Sequence() {
+        @Override
+        public long of(byte[] record) {
+            return RecordCodec.seqOf(record);
+        }
+    };
+
+    /**
+     * 요청 메시지의 만료 시간(compaction)
+     */
+    static final BoundedStorageBackend.Expiry EXPIRY = new BoundedStorageBackend.Expiry() {
+        @Override
+        public long of(byte[] record) {
+            return RecordCodec.expiresAtOf(record);
+        }
+    };
+
     private AppInsightorStore store_;
+    private UploadLanes lanes_;
     private ExecutorService executor_;
     private String appName_;
     private String appVersion_;
     private Context context_;
     private String serverURL_;
     private Future<?> connectionProcessorFuture_;
+    private volatile UploadBatchPolicy uploadBatchPolicy_ = UploadBatchPolicy.SINGLE;//여러 요청 메시지를 묶어 전송하는 조건
+    private final PayloadCompressor compressor_ = new PayloadCompressor();//ConnectionProcessor 가 한번에 하나씩 실행되므로 재사용
+    private final EnvelopeWriter envelopeWriter_ = new EnvelopeWriter();//ConnectionProcessor 가 한번에 하나씩 실행되므로 재사용
     private String deviceId_;
+    private ConnectionRecord fatalCrashRecord_;//fatal crash context snapshot
 
     String getAppName() {
         return appName_;
@@ -46,11 +96,19 @@ public class ConnectionQueue {
         serverURL_ = serverURL;
     }
 
+    UploadBatchPolicy getUploadBatchPolicy() {
+        return uploadBatchPolicy_;
+    }
+    void setUploadBatchPolicy(final UploadBatchPolicy uploadBatchPolicy) {
+        uploadBatchPolicy_ = uploadBatchPolicy;
+    }
+
     AppInsightorStore getAppInsightorStore() {
         return store_;
     }
     void setAppInsightorStore(final AppInsightorStore appinsightorStore) {
         store_ = appinsightorStore;
+        lanes_ = appinsightorStore == null ? null : appinsightorStore.getLanes();
     }
 
     String getDeviceId() {
@@ -73,7 +131,7 @@ public class ConnectionQueue {
         if (appName_ == null || appName_.length() == 0) {
             throw new IllegalStateException("app name has not been set");
         }
-        if (store_ == null) {
+        if (store_ == null || lanes_ == null) {
             throw new IllegalStateException("appinsightor store has not been set");
         }
         if (serverURL_ == null || !AppInsightor.isValidURL(serverURL_)) {
@@ -82,24 +140,36 @@ public class ConnectionQueue {
     }
 
 
+    /**
+     * 공통 envelope 값을 채운 요청 메시지를 생성한다.
+     * @param type ConnectionRecord.TYPE_*
+     * @return 요청 메시지
+     */
+    ConnectionRecord newRecord(final int type) {
+        final ConnectionRecord record = new ConnectionRecord();
+        record.type = type;
+        record.serverName = AppInsightor.APPLICATION_SERVER_NAME;
+        record.category = AppInsightor.APPINSIGHTOR_SAVE_CATEGORY;
+        record.appName = appName_;
+        record.appVersion = appVersion_;
+        record.deviceId = AppInsightor.getDeviceId();
+        record.timestamp = AppInsightor.currentTimestampMs();
+        record.sdkName = AppInsightor.APPINSIGHTOR_SDK_NAME_STRING;
+        record.sdkVersion = AppInsightor.APPINSIGHTOR_SDK_VERSION_STRING;
+        return record;
+    }
+
     /**
      * session 시작 이벤트를 기록하고 AppInsightor 서버에 전송
      */
     void beginSession() {
         AppInsightor.sharedInstance().logShowPrinting("start");
         checkInternalState();
-        final String data = "t=" + AppInsightor.APPLICATION_SERVER_NAME
-                          + "&category=" + AppInsightor.APPINSIGHTOR_SAVE_CATEGORY
-                          + "&app_name=" + appName_
-                          + "&app_version=" + appVersion_
-                          + "&device_id=" + AppInsightor.getDeviceId()
-                          + "&timestamp=" + AppInsightor.currentTimestampMs()
-                          + "&sdk_name=" + AppInsightor.APPINSIGHTOR_SDK_NAME_STRING
-                          + "&sdk_version=" + AppInsightor.APPINSIGHTOR_SDK_VERSION_STRING
-                          + "&session_status=active"
-                          + "&metrics=" + DeviceInfo.getMetrics(context_);
-
-        store_.addConnection(data);
+        final ConnectionRecord record = newRecord(ConnectionRecord.TYPE_SESSION);
+        record.sessionStatus = "active";
+        record.metrics = DeviceInfo.getMetricsJSON(context_);
+
+        addConnection(record);
 
         tick();
         AppInsightor.sharedInstance().logShowPrinting("end");
@@ -111,18 +181,11 @@ public class ConnectionQueue {
     void endSession() {
         AppInsightor.sharedInstance().logShowPrinting("start");
         checkInternalState();
-        String data = "t=" + AppInsightor.APPLICATION_SERVER_NAME
-                    + "&category=" + AppInsightor.APPINSIGHTOR_SAVE_CATEGORY
-                    + "&app_name=" + appName_
-                    + "&app_version=" + appVersion_
-                    + "&device_id=" + AppInsightor.getDeviceId()
-                    + "&timestamp=" + AppInsightor.currentTimestampMs()
-                    + "&sdk_name=" + AppInsightor.APPINSIGHTOR_SDK_NAME_STRING
-                    + "&sdk_version=" + AppInsightor.APPINSIGHTOR_SDK_VERSION_STRING
-                    + "&session_status=inactive"
-        + "&metrics=" + DeviceInfo.getMetrics(context_);
-
-        store_.addConnection(data);
+        final ConnectionRecord record = newRecord(ConnectionRecord.TYPE_SESSION);
+        record.sessionStatus = "inactive";
+        record.metrics = DeviceInfo.getMetricsJSON(context_);
+
+        addConnection(record);
 
         tick();
         AppInsightor.sharedInstance().logShowPrinting("end");
@@ -144,7 +207,7 @@ public class ConnectionQueue {
     //                    + "&hour=" + AppInsightor.currentHour()
     //                    + "&week=" + AppInsightor.currentDayOfWeek()
     //                    + userdata;
-    //            store_.addConnection(data);
+    //            addConnection(data);
     //
     //            tick();
     //        }
@@ -163,47 +226,127 @@ public class ConnectionQueue {
     void sendCrashReport(String error, boolean nonfatal) {
         AppInsightor.sharedInstance().logShowPrinting("start");
         checkInternalState();
-        final String data = "t=" + AppInsightor.APPLICATION_SERVER_NAME
-                + "&category=" + AppInsightor.APPINSIGHTOR_SAVE_CATEGORY
-                + "&app_name=" + appName_
-                + "&app_version=" + appVersion_
-                + "&device_id=" + AppInsightor.getDeviceId()
-                + "&timestamp=" + AppInsightor.currentTimestampMs()
-                + "&sdk_name=" + AppInsightor.APPINSIGHTOR_SDK_NAME_STRING
-                + "&sdk_version=" + AppInsightor.APPINSIGHTOR_SDK_VERSION_STRING
-                + "&metrics=" + DeviceInfo.getMetrics(context_)
-                + "&crash=" + CrashDetails.getCrashData(context_, error, nonfatal);
+        final ConnectionRecord record = newRecord(ConnectionRecord.TYPE_CRASH);
+        record.metrics = DeviceInfo.getMetricsJSON(context_);
+        record.crash = CrashDetails.getCrashJSON(context_, error, nonfatal);
 
         //local store add & connection
-        store_.addConnection(data);
+        addConnection(record);
 
         tick();
         AppInsightor.sharedInstance().logShowPrinting("end");
     }
 
+    /**
+     * 이전 실행에서 {@link FatalCrashStore} 에 기록된 fatal crash 를 crash 요청 메시지로 완성하여 connections Queue 로 옮기고,
+     * 이번 실행의 fatal crash 를 위한 context snapshot 을 준비한다.(init 시 호출)
+     */
+    void prepareFatalCrash() {
+        final FatalCrashStore fatalCrash = store_.getFatalCrashStore();
+        if (fatalCrash == null) {
+            return;
+        }
+        final FatalCrashStore.FatalCrash crash = fatalCrash.take();
+        if (crash != null) {
+            final ConnectionRecord record = store_.getCodec().decode(crash.snapshot);
+            if (record != null && record.type == ConnectionRecord.TYPE_CRASH) {
+                record.timestamp = crash.timestamp;
+                record.crash = CrashDetails.completeCrashJSON(record.crash, crash.error, crash.runningTimeMs, crash.background);
+                addConnection(record);
+                tick();
+            }
+        }
+
+        fatalCrashRecord_ = newRecord(ConnectionRecord.TYPE_CRASH);
+        fatalCrashRecord_.metrics = DeviceInfo.getMetricsJSON(context_);
+        updateFatalCrash();
+    }
+
+    /**
+     * crash report 에 포함되는 값(custom segments, 로그)이 바뀐 경우 fatal crash context snapshot 을 다시 만든다.
+     */
+    void updateFatalCrash() {
+        if (fatalCrashRecord_ == null || store_ == null || store_.getFatalCrashStore() == null) {
+            return;
+        }
+        fatalCrashRecord_.crash = CrashDetails.getCrashSnapshotJSON(context_);
+        store_.getFatalCrashStore().prepare(store_.getCodec().encode(fatalCrashRecord_));
+    }
+
+    /**
+     * uncaught exception handler 에서 호출, fatal crash 를 {@link FatalCrashStore} 에 바로 기록한다.<br />
+     * 요청 메시지 생성과 전송은 다음 실행의 init 에서 처리한다.
+     * @param error 처리되지 않은 예외
+     * @return 기록 여부, false 이면 sendCrashReport() 로 처리해야 한다.
+     */
+    boolean writeFatalCrash(final Throwable error) {
+        final AppInsightorStore store = store_;
+        final FatalCrashStore fatalCrash = store == null ? null : store.getFatalCrashStore();
+        if (fatalCrash == null || fatalCrashRecord_ == null) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        return fatalCrash.write(error, now, now - CrashDetails.getStartTime(), Boolean.parseBoolean(CrashDetails.isInBackground()));
+    }
+
     /**
      * 임의로 지정한 이벤트를 기록하고 서버로 전송
+     * @param events EventQueue 에서 꺼낸 이벤트 목록
+     */
+    void recordEvents(final List<Event> events) {
+        recordEvents(events, null);
+    }
+
+    /**
+     * 임의로 지정한 이벤트와 app metrics 변화량을 기록하고 서버로 전송
+     * @param events EventQueue 에서 꺼낸 이벤트 목록
+     * @param appMetrics MetricsRegistry.snapshot() JSON, 없으면 null
      */
-    void recordEvents(final String events) {
+    void recordEvents(final List<Event> events, final String appMetrics) {
         AppInsightor.sharedInstance().logShowPrinting("start");
         checkInternalState();
-        final String data = "t=" + AppInsightor.APPLICATION_SERVER_NAME
-                            + "&category=" + AppInsightor.APPINSIGHTOR_SAVE_CATEGORY
-                            + "&app_name=" + appName_
-                            + "&app_version=" + appVersion_
-                            + "&device_id=" + AppInsightor.getDeviceId()
-                            + "&timestamp=" + AppInsightor.currentTimestampMs()
-                            + "&sdk_name=" + AppInsightor.APPINSIGHTOR_SDK_NAME_STRING
-                            + "&sdk_version=" + AppInsightor.APPINSIGHTOR_SDK_VERSION_STRING
-                            + "&metrics=" + DeviceInfo.getMetrics(context_)
-                            + "&session_status=" + (CrashDetails.isInBackground() == "false" ? "active" : "inactive")
-                            + "&events=" + events;
-
-        store_.addConnection(data);
+        final ConnectionRecord record = newRecord(ConnectionRecord.TYPE_EVENTS);
+        record.metrics = DeviceInfo.getMetricsJSON(context_);
+        record.sessionStatus = CrashDetails.isInBackground() == "false" ? "active" : "inactive";
+        record.events = events;
+        record.appMetrics = appMetrics;
+
+        addConnection(record);
         tick();
         AppInsightor.sharedInstance().logShowPrinting("end");
     }
 
+    /**
+     * 요청 메시지를 종류에 맞는 전송 lane 에 저장한다.<br />
+     * 이전 요청 이후 용량 초과로 버려진 레코드 수(dropped_requests, dropped_events)가 있다면 함께 기록하며,
+     * 이 요청 메시지도 저장되지 못한 경우 다음 요청 메시지에서 다시 기록한다.<br />
+     * 저장시 일련번호를 부여하며, 수신서버 전송시 idempotency key(seq)로 함께 전달된다.<br />
+     * lane 의 ttlMs, maxAttempts 로 만료 시간과 최대 전송 시도 횟수를 함께 기록한다.
+     * @param record 요청 메시지
+     */
+    void addConnection(final ConnectionRecord record) {
+        final UploadLane lane = lanes_.of(record.type);
+        synchronized (lane.queue) {//lane 안에서 일련번호 순서와 저장 순서가 같아야 범위 ack(ackUpTo)가 정확하다.
+            append(lane, record);
+        }
+    }
+
+    private void append(final UploadLane lane, final ConnectionRecord record) {
+        record.seq = store_.getSequence().next();
+        if (lane.policy.ttlMs > 0) {
+            record.expiresAt = (record.timestamp > 0 ? record.timestamp : System.currentTimeMillis()) + lane.policy.ttlMs;
+        }
+        record.maxAttempts = lane.policy.maxAttempts;
+        final long droppedRequests = lanes_.takeDropped();
+        final long droppedEvents = store_.getEvents().takeDropped();
+        record.droppedRequests = droppedRequests;
+        record.droppedEvents = droppedEvents;
+        if (!lane.queue.append(store_.getCodec().encode(record))) {
+            lanes_.restoreDropped(droppedRequests);
+            store_.getEvents().restoreDropped(droppedEvents);
+        }
+    }
+
     /**
      * ok-
      * ConnectionProcessor instances 가 생성되었는지 확인
@@ -222,14 +365,18 @@ public class ConnectionQueue {
      * ok-
      * ConnectionProcessor instances를 백그라운드로 실행하고(Runnable), queue data를 처리한다.
      * 전송할 데이터가 없거나 ConnectionProcessor가 이미 실행중인 경우에는 수행하지 않는다.
+     * MULTI_PROCESS 저장소에서 전송 프로세스로 선출되지 않은 경우에도 수행하지 않는다.
      *
      * 지정된 태스크를 submit, 실행 결과를 Future 형태로 리턴한다.
      */
     void tick() {
         AppInsightor.sharedInstance().logShowPrinting("");
-        if (!store_.isEmptyConnections() && (connectionProcessorFuture_ == null || connectionProcessorFuture_.isDone())) {
+        if (!store_.isUploader()) {
+            return;
+        }
+        if (lanes_.size() > 0 && (connectionProcessorFuture_ == null || connectionProcessorFuture_.isDone())) {
             ensureExecutor();
-            connectionProcessorFuture_ = executor_.submit(new ConnectionProcessor(serverURL_, store_, deviceId_));
+            connectionProcessorFuture_ = executor_.submit(new ConnectionProcessor(serverURL_, lanes_, store_.getCodec(), deviceId_, uploadBatchPolicy_, compressor_, envelopeWriter_));
         }
     }
 
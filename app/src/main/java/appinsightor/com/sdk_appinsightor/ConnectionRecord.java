@@ -0,0 +1,138 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.json.JSONArray;
+
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+/**
+ * connections Queue 에 저장되는 요청 메시지 1건<br />
+ * 공통 envelope(t, category, app_name, app_version, device_id, timestamp, sdk_name, sdk_version)와
+ * 요청 종류에 따른 내용(session_status, metrics, crash, events, app_metrics)을 가진다.<br />
+ * 저장시 {@link RecordCodec} 으로 binary 변환하며, 전송시 {@link EnvelopeWriter} 로 수신서버 요청 본문에 바로 기록한다.<br />
+ * 일련번호(seq)는 재전송된 요청을 수신서버에서 중복 제거할 수 있도록 함께 전송한다.
+ */
+class ConnectionRecord {
+    static final int TYPE_LEGACY = 0;//이전 버전에서 저장된 query string 레코드
+    static final int TYPE_SESSION = 1;
+    static final int TYPE_CRASH = 2;
+    static final int TYPE_EVENTS = 3;
+
+    int type;
+    String serverName;
+    String category;
+    String appName;
+    String appVersion;
+    String deviceId;
+    long timestamp;
+    String sdkName;
+    String sdkVersion;
+    String sessionStatus;
+    String metrics;//JSON 문자열(URL encoding 되지 않은 값)
+    String crash;//JSON 문자열(URL encoding 되지 않은 값)
+    List<Event> events;
+    String appMetrics;//JSON 문자열(URL encoding 되지 않은 값), 이전 전송 이후 app metrics 변화량(MetricsRegistry)
+    long droppedRequests;
+    long droppedEvents;
+    String legacy;//TYPE_LEGACY 인 경우 저장된 query string
+    long seq;//Queue 일련번호, 수신서버 중복 제거용 idempotency key (이전 버전 레코드는 0)
+    long seqEnd;//여러 메시지를 합쳐서 전송하는 경우 마지막 메시지의 일련번호
+    long expiresAt;//이 시간 이후에는 전송하지 않고 버린다.(0 이면 만료되지 않음, 수신서버에 전송하지 않음)
+    int maxAttempts;//최대 전송 시도 횟수(0 이면 제한 없음, 수신서버에 전송하지 않음)
+
+    /**
+     * 수신서버 요청 형식의 query string 으로 변환한다.(log 용, 전송 본문은 EnvelopeWriter)<br />
+     * metrics, crash, events 는 JSON 문자열을 URL encoding 하여 기록한다.
+     * @return e.g. "t=...&category=...&app_name=...&metrics=..."
+     */
+    String toQueryString() {
+        if (type == TYPE_LEGACY) {
+            return legacy;
+        }
+        final StringBuilder data = new StringBuilder(256);
+        data.append("t=").append(serverName)
+            .append("&category=").append(category)
+            .append("&app_name=").append(appName)
+            .append("&app_version=").append(appVersion)
+            .append("&device_id=").append(deviceId)
+            .append("&timestamp=").append(timestamp)
+            .append("&sdk_name=").append(sdkName)
+            .append("&sdk_version=").append(sdkVersion);
+        if (sessionStatus != null) {
+            data.append("&session_status=").append(sessionStatus);
+        }
+        if (metrics != null) {
+            data.append("&metrics=").append(urlEncode(metrics));
+        }
+        if (crash != null) {
+            data.append("&crash=").append(urlEncode(crash));
+        }
+        if (events != null) {
+            final JSONArray eventArray = new JSONArray();
+            for (Event e : events) {
+                eventArray.put(e.toJSON());
+            }
+            data.append("&events=").append(urlEncode(eventArray.toString()));
+        }
+        if (appMetrics != null) {
+            data.append("&app_metrics=").append(urlEncode(appMetrics));
+        }
+        if (droppedRequests > 0) {
+            data.append("&dropped_requests=").append(droppedRequests);
+        }
+        if (droppedEvents > 0) {
+            data.append("&dropped_events=").append(droppedEvents);
+        }
+        if (seq > 0) {
+            data.append("&seq=").append(seq);
+            if (seqEnd > seq) {
+                data.append("&seq_end=").append(seqEnd);
+            }
+        }
+        return data.toString();
+    }
+
+    /**
+     * 이벤트 요청 메시지를 하나로 합칠 수 있는지 확인한다.(EVENTS lane 전송시)<br />
+     * 두 메시지 모두 일련번호가 있는 이벤트 요청 메시지이고 envelope 와 session_status, metrics 가 같아야 한다.<br />
+     * app_metrics 변화량은 합칠 수 없으므로 다른 메시지에 app_metrics 가 없어야 한다.
+     */
+    boolean canCoalesce(final ConnectionRecord other) {
+        return type == TYPE_EVENTS && seq > 0 && other.seq > 0 && other.type == TYPE_EVENTS && events != null && other.events != null
+                && equal(serverName, other.serverName) && equal(category, other.category)
+                && equal(appName, other.appName) && equal(appVersion, other.appVersion)
+                && equal(deviceId, other.deviceId) && equal(sdkName, other.sdkName) && equal(sdkVersion, other.sdkVersion)
+                && equal(sessionStatus, other.sessionStatus) && equal(metrics, other.metrics) && other.appMetrics == null;
+    }
+
+    /**
+     * 다른 이벤트 요청 메시지의 이벤트와 drop counter 를 이 메시지에 합친다.(seq ~ seq_end 범위로 전송)
+     */
+    void coalesce(final ConnectionRecord other) {
+        events.addAll(other.events);
+        if (other.seq > 0) {
+            seqEnd = other.seq;
+        }
+        droppedRequests += other.droppedRequests;
+        droppedEvents += other.droppedEvents;
+    }
+
+    /**
+     * @return now 기준으로 만료되었다면 true
+     */
+    boolean isExpired(final long now) {
+        return expiresAt > 0 && now >= expiresAt;
+    }
+
+    private static boolean equal(final String a, final String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    static String urlEncode(final String str) {
+        try {
+            return java.net.URLEncoder.encode(str, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return str;
+        }
+    }
+}
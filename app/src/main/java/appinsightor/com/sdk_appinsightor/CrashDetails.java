@@ -38,6 +38,7 @@ import java.util.regex.Pattern;
 class CrashDetails {
     private static ArrayList<String> logs = new ArrayList<String>();
     private static long startTime = AppInsightor.currentTimestampMs();//변경
+    private static final long startNanos = AppInsightor.monotonicNanos();//실행 시간 측정(시스템 시간 변경의 영향을 받지 않음)
     private static Map<String,String> customSegments = null;
     private static boolean inBackground = true;
     private static long totalMemory = 0;
@@ -261,9 +262,14 @@ class CrashDetails {
                 return null;
         }
     }
+    //Get app start time (fatal crash running time)
+    static long getStartTime() {
+        return startTime;
+    }
+
     //Get app's running time before crashing.
     static String getRunningTime() {
-        return Long.toString(AppInsightor.currentTimestampMs() - startTime);//변경
+        return Long.toString(AppInsightor.elapsedMs(startNanos));
     }
 
     //Checks if device is rooted.
@@ -311,6 +317,19 @@ class CrashDetails {
      * Returns a URL-encoded JSON string containing the device crash report
      */
     static String getCrashData(final Context context, String error, Boolean nonfatal) {
+        String result = getCrashJSON(context, error, nonfatal);
+
+        try {
+            result = java.net.URLEncoder.encode(result, "UTF-8");
+        } catch (UnsupportedEncodingException ignored) {}
+
+        return result;
+    }
+
+    /**
+     * Returns a JSON string containing the device crash report (not URL-encoded)
+     */
+    static String getCrashJSON(final Context context, String error, Boolean nonfatal) {
         AppInsightor.sharedInstance().logShowPrinting("start");
         final JSONObject json = new JSONObject();
 
@@ -345,14 +364,64 @@ class CrashDetails {
             json.put("_custom", getCustomSegments());
         } catch (JSONException e) { //no custom segments
         }
-        String result = json.toString();
+        AppInsightor.sharedInstance().logShowPrinting("end");
+        return json.toString();
+    }
+
+    /**
+     * fatal crash 발생시 함께 기록하기 위해 미리 만들어 두는 crash report(context snapshot)<br />
+     * crash 시점에만 알 수 있는 _error, _run, _background 와 조회 비용이 큰 현재 상태값(ram, disk, battery 등)은 제외한다.<br />
+     * 로그는 비우지 않고 현재까지의 내용을 포함한다.
+     * @return JSON string (not URL-encoded)
+     */
+    static String getCrashSnapshotJSON(final Context context) {
+        final JSONObject json = new JSONObject();
+        final StringBuilder allLogs = new StringBuilder();
+        for (String s : logs) {
+            allLogs.append(s).append('\n');
+        }
+
+        fillJSONIfValuesNotEmpty(json,
+                "_nonfatal", "false",
+                "_logs", allLogs.toString(),
+                "_device", DeviceInfo.getDevice(),
+                "_os", DeviceInfo.getOS(),
+                "_os_version", DeviceInfo.getOSVersion(),
+                "_resolution", DeviceInfo.getResolution(context),
+                "_app_version", DeviceInfo.getAppVersion(context),
+                "_manufacture", getManufacturer(),
+                "_cpu", getCpu(),
+                "_opengl", getOpenGL(context),
+                "_ram_total", getRamTotal(context),
+                "_disk_total", getDiskTotal(),
+                "_root", isRooted()
+                );
 
         try {
-            result = java.net.URLEncoder.encode(result, "UTF-8");
-        } catch (UnsupportedEncodingException ignored) {}
+            json.put("_custom", getCustomSegments());
+        } catch (JSONException e) { //no custom segments
+        }
+        return json.toString();
+    }
 
-        AppInsightor.sharedInstance().logShowPrinting("end");
-        return result;
+    /**
+     * context snapshot 에 crash 시점의 값을 더해 crash report 를 완성한다.(다음 실행시 fatal crash 전송)
+     * @param snapshot getCrashSnapshotJSON() 값
+     * @return JSON string (not URL-encoded)
+     */
+    static String completeCrashJSON(final String snapshot, final String error, final long runningTimeMs, final boolean background) {
+        JSONObject json;
+        try {
+            json = new JSONObject(snapshot);
+        } catch (JSONException e) {
+            json = new JSONObject();
+        }
+        fillJSONIfValuesNotEmpty(json,
+                "_error", error,
+                "_run", Long.toString(runningTimeMs),
+                "_background", Boolean.toString(background)
+                );
+        return json.toString();
     }
 
     /**
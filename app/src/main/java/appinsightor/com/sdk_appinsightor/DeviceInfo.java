@@ -255,6 +255,20 @@ class DeviceInfo {
      * @return URL-encoded JSON string, Device Information
      */
     static String getMetrics(final Context context) {
+        String result = getMetricsJSON(context);
+
+        try {
+            result = java.net.URLEncoder.encode(result, "UTF-8");
+        } catch (UnsupportedEncodingException ignored) {}
+
+        return result;
+    }
+
+    /**
+     * device key-value 값들에 대해 json 형태로 변환한다.(URL encoding 하지 않음)
+     * @return JSON string, Device Information
+     */
+    static String getMetricsJSON(final Context context) {
         final JSONObject json = new JSONObject();
 
         fillJSONIfValuesNotEmpty(json,
@@ -270,13 +284,7 @@ class DeviceInfo {
         // geolocation의 Value가 JSONObject 타입이라 별도로 추가
         fillJSONIfValuesNotEmpty(json, "_geolocation", getGeolocation(context));
 
-        String result = json.toString();
-
-        try {
-            result = java.net.URLEncoder.encode(result, "UTF-8");
-        } catch (UnsupportedEncodingException ignored) {}
-
-        return result;
+        return json.toString();
     }
 
     /**
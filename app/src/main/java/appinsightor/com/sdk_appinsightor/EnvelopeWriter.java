@@ -0,0 +1,381 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * 요청 메시지 본문("c=" JSON) streaming writer<br />
+ * ConnectionRecord 의 envelope 와 metrics, crash, events, app_metrics 를 query string, JSONObject 를 거치지 않고
+ * 재사용하는 byte buffer 에 UTF-8 로 바로 기록한다. 전송시 buffer 를 요청 OutputStream 에 그대로 기록하거나 압축한다.
+ * (Content-Length, 압축, batch 크기 제한을 위해 전송 전에 길이를 알아야 하므로 buffer 에 기록한다.)<br />
+ * 전송 스레드(ConnectionProcessor)에서만 사용한다.
+ *
+ * <p>형식(이전 버전과 같음)</p>
+ * envelope 값은 모두 JSON 문자열이며, metrics, crash, events, app_metrics 는 JSON 을 URL encoding 하여 따옴표 없이 기록한다.<br />
+ * e.g. {"t":"...","timestamp":"1500000000000","metrics":%7B%22_os%22%3A%22Android%22%7D,"seq":"12"}
+ */
+class EnvelopeWriter {
+    private static final byte[] HEX = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;//이보다 큰 buffer 는 reset() 시 줄인다.
+    private static final int MAX_DEPTH = 16;
+
+    private byte[] buffer_ = new byte[DEFAULT_BUFFER_SIZE];
+    private int length_;
+    private boolean urlEncoding_;//true 이면 기록하는 byte 를 URL encoding
+    private final boolean[] first_ = new boolean[MAX_DEPTH];//object, array 의 첫 항목 여부(쉼표)
+    private int depth_;
+    private final byte[] digits_ = new byte[19];//writeLong
+
+    void reset() {
+        if (buffer_.length > MAX_RETAINED_BUFFER_SIZE) {
+            buffer_ = new byte[DEFAULT_BUFFER_SIZE];
+        }
+        length_ = 0;
+        urlEncoding_ = false;
+        depth_ = 0;
+    }
+
+    /**
+     * @return 기록한 byte 수
+     */
+    int length() {
+        return length_;
+    }
+
+    /**
+     * @return 기록한 내용(앞에서부터 length() byte)
+     */
+    byte[] buffer() {
+        return buffer_;
+    }
+
+    /**
+     * 기록한 내용을 length byte 까지로 줄인다.(batch 크기 초과시 마지막 항목 취소)
+     */
+    void truncate(final int length) {
+        length_ = length;
+    }
+
+    void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer_, 0, length_);
+    }
+
+    /**
+     * @return 기록한 내용(GET 요청, log 용)
+     */
+    @Override
+    public String toString() {
+        try {
+            return new String(buffer_, 0, length_, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return "";
+        }
+    }
+
+    /**
+     * 요청 메시지 1개를 JSON object 로 기록한다.
+     */
+    void writeRecord(final ConnectionRecord record) {
+        if (record.type == ConnectionRecord.TYPE_LEGACY) {
+            writeAscii(legacyJSON(record.legacy));
+            return;
+        }
+        beginObject();
+        field("t", record.serverName);
+        field("category", record.category);
+        field("app_name", record.appName);
+        field("app_version", record.appVersion);
+        field("device_id", record.deviceId);
+        field("timestamp", record.timestamp);
+        field("sdk_name", record.sdkName);
+        field("sdk_version", record.sdkVersion);
+        if (record.sessionStatus != null) {
+            field("session_status", record.sessionStatus);
+        }
+        if (record.metrics != null) {
+            encodedField("metrics", record.metrics);
+        }
+        if (record.crash != null) {
+            encodedField("crash", record.crash);
+        }
+        if (record.events != null) {
+            name("events");
+            urlEncoding_ = true;
+            beginArray();
+            for (Event event : record.events) {
+                event.writeJSON(this);
+            }
+            endArray();
+            urlEncoding_ = false;
+        }
+        if (record.appMetrics != null) {
+            encodedField("app_metrics", record.appMetrics);
+        }
+        if (record.droppedRequests > 0) {
+            field("dropped_requests", record.droppedRequests);
+        }
+        if (record.droppedEvents > 0) {
+            field("dropped_events", record.droppedEvents);
+        }
+        if (record.seq > 0) {
+            field("seq", record.seq);
+            if (record.seqEnd > record.seq) {
+                field("seq_end", record.seqEnd);
+            }
+        }
+        endObject();
+    }
+
+    /** 문자열 값 */
+    private void field(final String name, final String value) {
+        name(name);
+        value(String.valueOf(value));
+    }
+
+    /** 숫자도 문자열 값으로 기록한다.(이전 버전 형식) */
+    private void field(final String name, final long value) {
+        name(name);
+        separator();
+        writeByte('"');
+        writeLong(value);
+        writeByte('"');
+    }
+
+    /** JSON 문자열을 URL encoding 하여 따옴표 없이 기록한다. */
+    private void encodedField(final String name, final String json) {
+        name(name);
+        separator();
+        urlEncoding_ = true;
+        writeChars(json);
+        urlEncoding_ = false;
+    }
+
+    void beginObject() {
+        separator();
+        writeByte('{');
+        push();
+    }
+
+    void endObject() {
+        depth_--;
+        writeByte('}');
+    }
+
+    void beginArray() {
+        separator();
+        writeByte('[');
+        push();
+    }
+
+    void endArray() {
+        depth_--;
+        writeByte(']');
+    }
+
+    /**
+     * object 의 key, 다음에 값을 기록한다.
+     */
+    void name(final String name) {
+        separator();
+        writeString(name);
+        writeByte(':');
+        first_[depth_ - 1] = true;//값 앞에는 쉼표를 쓰지 않는다.
+    }
+
+    void value(final String value) {
+        separator();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+    }
+
+    void value(final long value) {
+        separator();
+        writeLong(value);
+    }
+
+    /**
+     * 정수인 double 은 정수로 기록한다.(JSONObject 형식)
+     */
+    void value(final double value) {
+        separator();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeAscii("null");
+        } else if (value == (long) value && !(value == 0 && 1 / value < 0)) {
+            writeLong((long) value);
+        } else if (value == 0) {
+            writeAscii("-0");
+        } else {
+            writeAscii(Double.toString(value));
+        }
+    }
+
+    private void push() {
+        first_[depth_++] = true;
+    }
+
+    private void separator() {
+        if (depth_ == 0) {
+            return;
+        }
+        if (first_[depth_ - 1]) {
+            first_[depth_ - 1] = false;
+        } else {
+            writeByte(',');
+        }
+    }
+
+    /**
+     * JSON 문자열(JSONObject 와 같은 escape)
+     */
+    private void writeString(final String value) {
+        writeByte('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    writeByte('\\');
+                    writeByte(c);
+                    break;
+                case '\t':
+                    writeAscii("\\t");
+                    break;
+                case '\b':
+                    writeAscii("\\b");
+                    break;
+                case '\n':
+                    writeAscii("\\n");
+                    break;
+                case '\r':
+                    writeAscii("\\r");
+                    break;
+                case '\f':
+                    writeAscii("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        writeAscii("\\u00");
+                        writeByte(Character.toLowerCase((char) HEX[c >> 4]));
+                        writeByte(Character.toLowerCase((char) HEX[c & 0xF]));
+                    } else {
+                        i = writeChar(value, i);
+                    }
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeChars(final String value) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            i = writeChar(value, i);
+        }
+    }
+
+    /**
+     * 문자 1개를 UTF-8 로 기록한다.
+     * @return surrogate pair 이면 다음 index, 아니면 index
+     */
+    private int writeChar(final String value, int index) {
+        final char c = value.charAt(index);
+        if (c < 0x80) {
+            writeByte(c);
+        } else if (c < 0x800) {
+            writeByte(0xC0 | (c >> 6));
+            writeByte(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            final int codePoint = Character.toCodePoint(c, value.charAt(++index));
+            writeByte(0xF0 | (codePoint >> 18));
+            writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+            writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+            writeByte(0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            writeByte('?');//짝이 없는 surrogate(String.getBytes 와 같음)
+        } else {
+            writeByte(0xE0 | (c >> 12));
+            writeByte(0x80 | ((c >> 6) & 0x3F));
+            writeByte(0x80 | (c & 0x3F));
+        }
+        return index;
+    }
+
+    /**
+     * 문자열을 만들지 않고 10진수로 기록한다.
+     */
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int position = digits_.length;
+        do {
+            digits_[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (position < digits_.length) {
+            writeByte(digits_[position++]);
+        }
+    }
+
+    void writeAscii(final String value) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            writeByte(value.charAt(i));
+        }
+    }
+
+    /**
+     * byte 1개를 기록한다.(urlEncoding_ 이면 URLEncoder 와 같이 변환)
+     */
+    private void writeByte(final int b) {
+        if (length_ + 3 > buffer_.length) {
+            buffer_ = Arrays.copyOf(buffer_, buffer_.length * 2);
+        }
+        if (!urlEncoding_ || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '.' || b == '-' || b == '*' || b == '_') {
+            buffer_[length_++] = (byte) b;
+        } else if (b == ' ') {
+            buffer_[length_++] = '+';
+        } else {
+            buffer_[length_++] = '%';
+            buffer_[length_++] = HEX[(b >> 4) & 0xF];
+            buffer_[length_++] = HEX[b & 0xF];
+        }
+    }
+
+    /**
+     * 이전 버전에서 저장된 query string 레코드를 JSON 으로 변환한다.<br />
+     * URL encoding 된 JSON 값(metrics, crash, events)은 문자열이 아닌 값으로 기록한다.
+     */
+    private static String legacyJSON(final String query) {
+        final JSONObject json = new JSONObject();
+        String[] values = query.split("&");
+        String[][] tokens = new String[values.length][2];
+        for (int i = 0; i < values.length; i++) {
+            tokens[i] = values[i].split("=");
+            try {
+                json.put(tokens[i][0], tokens[i][1]);
+            } catch (JSONException ignored) {
+            } catch (ArrayIndexOutOfBoundsException ignored) {//값이 없는 항목
+            }
+        }
+        return json.toString().replace("\"%7B","%7B")
+                              .replace("%7D\"","%7D")
+                              .replace("\"%5B","%5B")
+                              .replace("%5D\"","%5D");
+    }
+}
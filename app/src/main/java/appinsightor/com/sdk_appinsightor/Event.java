@@ -2,6 +2,7 @@ package appinsightor.com.sdk_appinsightor;
 
 import android.util.Log;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -19,21 +20,134 @@ class Event {
     private static final String KEY_KEY = "key";
     private static final String COUNT_KEY = "count";
     private static final String DUR_KEY = "dur";
+    private static final String DUR_MIN_KEY = "dur_min";
+    private static final String DUR_MAX_KEY = "dur_max";
+    private static final String SAMPLE_RATE_KEY = "sample_rate";
+    private static final String HISTOGRAM_KEY = "histogram";
+    private static final String HISTOGRAM_SCHEME_KEY = "scheme";
+    private static final String HISTOGRAM_SCHEME = "log-linear";
+    private static final String HISTOGRAM_SUB_BUCKET_BITS_KEY = "sub_bucket_bits";
+    private static final String HISTOGRAM_BUCKETS_KEY = "buckets";
+    private static final String MEASUREMENTS_KEY = "measurements";
+    private static final String MEASUREMENTS_MIN_KEY = "measurements_min";
+    private static final String MEASUREMENTS_MAX_KEY = "measurements_max";
     private static final String TIMESTAMP_KEY = "timestamp";
 
     public String key;
     public Map<String, String> segmentation;
     public int count;
-    public double dur;
+    public double dur;//합쳐진 이벤트(count > 1)는 합계
+    double durMin;//합쳐진 이벤트의 dur 최소, 최대(EventAggregator)
+    double durMax;
     public long timestamp;
+    Measurements measurements;//숫자 측정값, 없으면 null
+    double sampleRate = EventSampler.FULL_RATE;//적용한 sampling rate(EventSampler)
+    long[] histogram;//처리 시간 분포 [bucket index, count, ...](LatencyHistogram), 없으면 null
+    long seq;//events Queue 일련번호(toJSON 에는 포함하지 않음)
+    long startNanos;//timed event 시작 시점(AppInsightor.monotonicNanos, 저장하지 않음)
+
+    /**
+     * Event pool - android.os.Message 와 같이 obtain() 으로 꺼내고 recycle() 로 돌려준다.<br />
+     * recordEvent 경로에서 이벤트를 events Queue 에 저장(또는 합치기, 버림)한 후 이벤트 스레드가 돌려준다.
+     */
+    private static final Object POOL_LOCK = new Object();
+    private static final int MAX_POOL_SIZE = 256;
+    private static Event pool_;
+    private static int poolSize_;
+    private Event next_;
+    private boolean pooled_;//obtain() 으로 만든 이벤트
+    private boolean inPool_;
+    private SegmentationMap segmentationBuffer_;//재사용하는 segmentation
+    private Measurements measurementsBuffer_;//재사용하는 측정값
 
 
     Event () {}
 
+    /**
+     * @return pool 에서 꺼낸 이벤트, 없으면 새 이벤트
+     */
+    static Event obtain() {
+        synchronized (POOL_LOCK) {
+            if (pool_ != null) {
+                final Event event = pool_;
+                pool_ = event.next_;
+                event.next_ = null;
+                event.inPool_ = false;
+                poolSize_--;
+                return event;
+            }
+        }
+        final Event event = new Event();
+        event.pooled_ = true;
+        return event;
+    }
+
+    /**
+     * 이벤트를 비우고 pool 에 돌려준다.(obtain() 으로 만든 이벤트만, 호출 후에는 사용하지 않아야 한다.)
+     */
+    void recycle() {
+        if (!pooled_) {
+            return;
+        }
+        if (inPool_) {
+            Log.w(AppInsightor.TAG, "Event already recycled");
+            return;
+        }
+        key = null;
+        segmentation = null;
+        if (segmentationBuffer_ != null) {
+            segmentationBuffer_.clear();
+        }
+        measurements = null;
+        if (measurementsBuffer_ != null) {
+            measurementsBuffer_.clear();
+        }
+        count = 0;
+        dur = 0;
+        durMin = 0;
+        durMax = 0;
+        timestamp = 0;
+        sampleRate = EventSampler.FULL_RATE;
+        histogram = null;
+        seq = 0;
+        startNanos = 0;
+        synchronized (POOL_LOCK) {
+            if (poolSize_ < MAX_POOL_SIZE) {
+                inPool_ = true;
+                next_ = pool_;
+                pool_ = this;
+                poolSize_++;
+            }
+        }
+    }
+
+    /**
+     * @return 재사용하는 segmentation Map(segmentation 으로 지정)
+     */
+    SegmentationMap segmentationBuffer() {
+        if (segmentationBuffer_ == null) {
+            segmentationBuffer_ = new SegmentationMap();
+        }
+        segmentation = segmentationBuffer_;
+        return segmentationBuffer_;
+    }
+
+    /**
+     * @return 재사용하는 측정값(measurements 로 지정)
+     */
+    Measurements measurementsBuffer() {
+        if (measurementsBuffer_ == null) {
+            measurementsBuffer_ = new Measurements();
+        }
+        measurements = measurementsBuffer_;
+        return measurementsBuffer_;
+    }
+
     public Event (String key) {
         AppInsightor.sharedInstance().logShowPrinting("");
         this.key = key;
         this.timestamp = AppInsightor.currentTimestampMs();
+        this.startNanos = AppInsightor.monotonicNanos();
     }
 
     JSONObject toJSON() {
@@ -52,6 +166,31 @@ class Event {
             if (dur > 0) {
                 json.put(DUR_KEY, dur);
             }
+
+            if (count > 1 && durMax > 0) {
+                json.put(DUR_MIN_KEY, durMin);
+                json.put(DUR_MAX_KEY, durMax);
+            }
+
+            if (sampleRate < EventSampler.FULL_RATE) {
+                json.put(SAMPLE_RATE_KEY, sampleRate);
+            }
+
+            if (histogram != null) {
+                final JSONObject buckets = new JSONObject();
+                buckets.put(HISTOGRAM_SCHEME_KEY, HISTOGRAM_SCHEME);
+                buckets.put(HISTOGRAM_SUB_BUCKET_BITS_KEY, LatencyHistogram.SUB_BUCKET_BITS);
+                final JSONArray array = new JSONArray();
+                for (long value : histogram) {
+                    array.put(value);
+                }
+                buckets.put(HISTOGRAM_BUCKETS_KEY, array);
+                json.put(HISTOGRAM_KEY, buckets);
+            }
+
+            if (measurements != null && measurements.size() > 0) {
+                measurements.toJSON(json, MEASUREMENTS_KEY, MEASUREMENTS_MIN_KEY, MEASUREMENTS_MAX_KEY, count > 1);
+            }
         }
         catch (JSONException e) {
             if (AppInsightor.sharedInstance().isLoggingEnabled()) {
@@ -62,6 +201,77 @@ class Event {
         return json;
     }
 
+    /**
+     * toJSON() 과 같은 내용을 JSONObject 없이 요청 메시지 본문에 바로 기록한다.(EnvelopeWriter)
+     */
+    void writeJSON(final EnvelopeWriter writer) {
+        writer.beginObject();
+        if (key != null) {
+            writer.name(KEY_KEY);
+            writer.value(key);
+        }
+        writer.name(COUNT_KEY);
+        writer.value(count);
+        writer.name(TIMESTAMP_KEY);
+        writer.value(timestamp);
+
+        if (segmentation != null) {
+            writer.name(SEGMENTATION_KEY);
+            writer.beginObject();
+            if (segmentation instanceof SegmentationMap) {
+                final SegmentationMap map = (SegmentationMap) segmentation;
+                for (int i = 0; i < map.size(); i++) {
+                    writer.name(map.keyAt(i));
+                    writer.value(map.valueAt(i));
+                }
+            } else {
+                for (Map.Entry<String, String> entry : segmentation.entrySet()) {
+                    writer.name(entry.getKey());
+                    writer.value(entry.getValue());
+                }
+            }
+            writer.endObject();
+        }
+
+        if (dur > 0) {
+            writer.name(DUR_KEY);
+            writer.value(dur);
+        }
+
+        if (count > 1 && durMax > 0) {
+            writer.name(DUR_MIN_KEY);
+            writer.value(durMin);
+            writer.name(DUR_MAX_KEY);
+            writer.value(durMax);
+        }
+
+        if (sampleRate < EventSampler.FULL_RATE) {
+            writer.name(SAMPLE_RATE_KEY);
+            writer.value(sampleRate);
+        }
+
+        if (histogram != null) {
+            writer.name(HISTOGRAM_KEY);
+            writer.beginObject();
+            writer.name(HISTOGRAM_SCHEME_KEY);
+            writer.value(HISTOGRAM_SCHEME);
+            writer.name(HISTOGRAM_SUB_BUCKET_BITS_KEY);
+            writer.value(LatencyHistogram.SUB_BUCKET_BITS);
+            writer.name(HISTOGRAM_BUCKETS_KEY);
+            writer.beginArray();
+            for (long value : histogram) {
+                writer.value(value);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+
+        if (measurements != null && measurements.size() > 0) {
+            measurements.writeJSON(writer, MEASUREMENTS_KEY, MEASUREMENTS_MIN_KEY, MEASUREMENTS_MAX_KEY, count > 1);
+        }
+        writer.endObject();
+    }
+
     static Event fromJSON(final JSONObject json) {
         AppInsightor.sharedInstance().logShowPrinting("");
         Event event = new Event();
@@ -72,6 +282,9 @@ class Event {
             }
             event.count = json.optInt(COUNT_KEY);
             event.dur = json.optDouble(DUR_KEY, 0.0d);
+            event.durMin = json.optDouble(DUR_MIN_KEY, 0.0d);
+            event.durMax = json.optDouble(DUR_MAX_KEY, 0.0d);
+            event.sampleRate = json.optDouble(SAMPLE_RATE_KEY, EventSampler.FULL_RATE);
             event.timestamp = json.optLong(TIMESTAMP_KEY);
 
             if (!json.isNull(SEGMENTATION_KEY)) {
@@ -86,6 +299,19 @@ class Event {
                 }
                 event.segmentation = segmentation;
             }
+
+            if (!json.isNull(HISTOGRAM_KEY)) {
+                final JSONArray array = json.getJSONObject(HISTOGRAM_KEY).getJSONArray(HISTOGRAM_BUCKETS_KEY);
+                event.histogram = new long[array.length()];
+                for (int i = 0; i < array.length(); i++) {
+                    event.histogram[i] = array.getLong(i);
+                }
+            }
+
+            if (!json.isNull(MEASUREMENTS_KEY)) {
+                event.measurementsBuffer().fromJSON(json.getJSONObject(MEASUREMENTS_KEY),
+                        json.optJSONObject(MEASUREMENTS_MIN_KEY), json.optJSONObject(MEASUREMENTS_MAX_KEY));
+            }
         }
         catch (JSONException e) {
             if (AppInsightor.sharedInstance().isLoggingEnabled()) {
@@ -0,0 +1,148 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * events Queue 에 저장하기 전 같은 이벤트를 하나로 합치는 단계<br />
+ * key 와 segmentation 이 같은 이벤트는 전송(BatchPolicy) 전까지 메모리에서 하나의 이벤트로 합쳐 count 를 더하고
+ * dur 과 측정값(measurements)의 합계, 최소, 최대를 누적한다. 합쳐진 이벤트의 timestamp 는 처음 이벤트의 값이다.
+ *
+ * <p>용량</p>
+ * 서로 다른 (key, segmentation) 조합이 maxKeys 에 이르면 새 조합의 이벤트는 합치지 않고 그대로 events Queue 에 저장한다.<br />
+ * maxKeys 가 0 이면 합치지 않는다.(기본, AppInsightor.setEventAggregation() 으로 사용)
+ *
+ * <p>보존</p>
+ * 합치는 중인 이벤트는 메모리에만 있으므로 BatchPolicy 조건, onStop(백그라운드 전환), flushEvents(), crash 처리에서 events Queue 로 옮긴다.
+ */
+class EventAggregator {
+    static final int DEFAULT_MAX_KEYS = 0;//이벤트마다 저장(이전 버전 동작)
+
+    /**
+     * 집계 key - 이벤트 key, segmentation, sampling rate
+     */
+    private static final class Key {
+        String key;
+        Map<String, String> segmentation;
+        double sampleRate;
+        int hash;
+
+        Key set(final Event event) {
+            key = event.key;
+            segmentation = event.segmentation;
+            sampleRate = event.sampleRate;
+            hash = key.hashCode() * 31 + (segmentation == null ? 0 : segmentation.hashCode());
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key k = (Key) o;
+            return hash == k.hash && key.equals(k.key) && sampleRate == k.sampleRate
+                    && (segmentation == null ? k.segmentation == null : segmentation.equals(k.segmentation));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final LinkedHashMap<Key, Event> events_ = new LinkedHashMap<>();
+    private final Key probe_ = new Key();//조회용 key 재사용
+    private volatile int maxKeys_;
+    private long firstAddedAt_;//합치는 중인 첫 이벤트를 받은 시간(ms), 비어있으면 0
+
+    EventAggregator(final int maxKeys) {
+        maxKeys_ = maxKeys;
+    }
+
+    /**
+     * @param maxKeys 합치는 (key, segmentation) 조합 최대 수, 0 이면 합치지 않음(이미 합치는 중인 이벤트는 전송시까지 유지)
+     */
+    void setMaxKeys(final int maxKeys) {
+        maxKeys_ = maxKeys;
+    }
+
+    /**
+     * 같은 이벤트가 있으면 합치고, 없으면 용량 안에서 새로 추가한다.<br />
+     * 추가한 이벤트 객체는 합계를 누적하는데 사용하므로 호출자가 더 이상 변경하지 않아야 한다.(합친 이벤트는 pool 에 돌려준다.)
+     * @param now 현재 시간(ms)
+     * @return 용량 초과 또는 합치지 않는 설정으로 그대로 저장해야 하면 false
+     */
+    synchronized boolean add(final Event event, final long now) {
+        final Event aggregate = events_.get(probe_.set(event));
+        if (aggregate != null) {
+            aggregate.count += event.count;
+            aggregate.dur += event.dur;
+            aggregate.durMin = Math.min(aggregate.durMin, event.dur);
+            aggregate.durMax = Math.max(aggregate.durMax, event.dur);
+            if (event.measurements != null && event.measurements.size() > 0) {
+                if (aggregate.measurements == null) {
+                    aggregate.measurementsBuffer();
+                }
+                aggregate.measurements.merge(event.measurements);
+            }
+            event.recycle();
+            return true;
+        }
+        if (events_.size() >= maxKeys_) {
+            return false;
+        }
+        event.durMin = event.dur;
+        event.durMax = event.dur;
+        events_.put(new Key().set(event), event);
+        if (firstAddedAt_ == 0) {
+            firstAddedAt_ = now;
+        }
+        return true;
+    }
+
+    /**
+     * @return 합치는 중인 이벤트 수
+     */
+    synchronized int size() {
+        return events_.size();
+    }
+
+    /**
+     * @param now 현재 시간(ms)
+     * @return 합치는 중인 첫 이벤트를 받은 후 지난 시간(ms), 비어있으면 0
+     */
+    synchronized long ageMs(final long now) {
+        return firstAddedAt_ == 0 ? 0 : Math.max(0, now - firstAddedAt_);
+    }
+
+    /**
+     * 합치는 중인 이벤트를 버린다.(halt)
+     */
+    synchronized void clear() {
+        for (Event event : events_.values()) {
+            event.recycle();
+        }
+        events_.clear();
+        firstAddedAt_ = 0;
+    }
+
+    /**
+     * 합친 이벤트를 모두 events Queue 에 저장하고 비운다.
+     * @return 저장한 이벤트 수
+     */
+    synchronized int drainTo(final EventQueue eventQueue) {
+        int count = 0;
+        final Iterator<Event> it = events_.values().iterator();
+        while (it.hasNext()) {
+            final Event event = it.next();
+            it.remove();
+            eventQueue.recordEvent(event);
+            event.recycle();
+            count++;
+        }
+        firstAddedAt_ = 0;
+        return count;
+    }
+}
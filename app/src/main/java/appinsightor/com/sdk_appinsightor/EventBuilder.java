@@ -0,0 +1,152 @@
+package appinsightor.com.sdk_appinsightor;
+
+/**
+ * 이벤트 기록 builder - AppInsightor.event(key) 로 시작한다.<br />
+ * 스레드마다 하나의 builder 를 재사용하고 이벤트는 pool 에서 꺼내므로, 반복 기록시 호출 스레드에서 객체를 만들지 않는다.<br />
+ * sampling(AppInsightor.setSampleRate) 에서 제외된 key 는 event(key) 에서 확인하고 record() 까지 나머지 호출을 무시한다.
+ * builder 는 record() 전까지만 사용하며 다른 스레드에 넘기지 않는다.
+ *
+ * <p>e.g.</p>
+ * AppInsightor.event("item_impression").seg("item", itemId).seg("list", "home").record();<br />
+ * AppInsightor.event("load").dur(0.35).record();<br />
+ * AppInsightor.event("purchase").seg("item", itemId).measure("price", 12.5).measure("quantity", 2).record();
+ */
+public final class EventBuilder {
+    private final AppInsightor appInsightor_;
+    private Event event_;//record() 전까지 작성중인 이벤트
+    private boolean skipped_;//sample 에 포함되지 않아 record() 까지 무시
+
+    EventBuilder(final AppInsightor appInsightor) {
+        appInsightor_ = appInsightor;
+    }
+
+    /**
+     * 새 이벤트 작성을 시작한다.(record() 하지 않은 이전 이벤트는 버린다.)
+     */
+    EventBuilder begin(final String key) {
+        if (key == null || key.length() == 0) {
+            throw new IllegalArgumentException("Event 이름 필요");
+        }
+        if (event_ != null) {
+            event_.recycle();
+            event_ = null;
+        }
+        final double sampleRate = appInsightor_.sampleRate(key);
+        skipped_ = sampleRate == 0;
+        if (skipped_) {
+            return this;
+        }
+        event_ = Event.obtain();
+        event_.key = key;
+        event_.count = 1;
+        event_.sampleRate = sampleRate;
+        return this;
+    }
+
+    private Event event() {
+        if (event_ == null) {
+            throw new IllegalStateException("AppInsightor.event(key) 호출 필요");
+        }
+        return event_;
+    }
+
+    /**
+     * segmentation key-value 추가
+     * @throws IllegalArgumentException key 또는 value 가 null 이거나 비어 있는 경우
+     */
+    public EventBuilder seg(final String key, final String value) {
+        if (skipped_) {
+            return this;
+        }
+        final Event event = event();
+        if (key == null || key.length() == 0) {
+            throw new IllegalArgumentException("segmentation의 key가 null 또는 비어 있어 있으면 안됨");
+        }
+        if (value == null || value.length() == 0) {
+            throw new IllegalArgumentException("segmentation의 값이 null 또는 비어 있어 있으면 안됨");
+        }
+        event.segmentationBuffer().put(key, value);
+        return this;
+    }
+
+    /**
+     * @param count 이벤트 횟수 (기본 1)
+     * @throws IllegalArgumentException count 가 1 보다 작은 경우
+     */
+    public EventBuilder count(final int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count 는 1 이상이어야 함");
+        }
+        if (skipped_) {
+            return this;
+        }
+        event().count = count;
+        return this;
+    }
+
+    /**
+     * 숫자 측정값 추가(문자열로 바꾸지 않고 저장, 같은 이벤트를 합치면 합계, 최소, 최대를 누적)
+     * @param name 측정값 이름
+     * @param value 값(e.g. 수량, 크기)
+     * @throws IllegalArgumentException name 이 null 이거나 비어 있는 경우
+     */
+    public EventBuilder measure(final String name, final long value) {
+        if (skipped_) {
+            return this;
+        }
+        measurements(name).put(name, value);
+        return this;
+    }
+
+    /**
+     * 숫자 측정값 추가(문자열로 바꾸지 않고 저장, 같은 이벤트를 합치면 합계, 최소, 최대를 누적)
+     * @param name 측정값 이름
+     * @param value 값(e.g. 가격, 지연 시간)
+     * @throws IllegalArgumentException name 이 null 이거나 비어 있는 경우, value 가 NaN 또는 무한대인 경우
+     */
+    public EventBuilder measure(final String name, final double value) {
+        if (skipped_) {
+            return this;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("측정값은 유한한 숫자여야 함");
+        }
+        measurements(name).put(name, value);
+        return this;
+    }
+
+    private Measurements measurements(final String name) {
+        final Event event = event();
+        if (name == null || name.length() == 0) {
+            throw new IllegalArgumentException("측정값 이름이 null 또는 비어 있어 있으면 안됨");
+        }
+        return event.measurementsBuffer();
+    }
+
+    /**
+     * @param dur 이벤트 처리 시간(second)
+     */
+    public EventBuilder dur(final double dur) {
+        if (skipped_) {
+            return this;
+        }
+        event().dur = dur;
+        return this;
+    }
+
+    /**
+     * 작성한 이벤트를 수집 ring buffer 에 넣는다.(lock, 디스크 I/O 없음)<br />
+     * 호출 후 builder 는 다음 AppInsightor.event(key) 까지 사용할 수 없다.
+     * @throws IllegalStateException AppInsightor SDK 초기화가 되지 않았거나, event(key) 로 시작하지 않은 경우
+     */
+    public void record() {
+        if (skipped_) {
+            skipped_ = false;
+            return;//sample 에 포함되지 않음(AppInsightor.setSampleRate)
+        }
+        final Event event = event();
+        event_ = null;
+        event.timestamp = System.currentTimeMillis();
+        appInsightor_.publishEvent(event);
+    }
+}
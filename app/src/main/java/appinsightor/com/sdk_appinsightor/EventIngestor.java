@@ -0,0 +1,217 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * recordEvent 수집 경로 - {@link EventRing} 과 이벤트 스레드<br />
+ * recordEvent 를 호출한 스레드는 publish() 로 ring buffer 에 넣고 바로 반환하며(lock, 디스크 I/O 없음),
+ * "AppInsightor-events" 스레드가 ring buffer 를 비우면서 이벤트를 {@link Sink} 로 전달한다.
+ *
+ * <p>소비자</p>
+ * ring buffer 는 한번에 한 스레드만 비울 수 있으므로 drain() 은 consumer lock 을 잡는다.
+ * 이벤트 스레드 외에 onStop(백그라운드 전환), crash 처리, CALLER_RUNS 의 호출 스레드가 직접 drain() 할 수 있다.<br />
+ * Sink.onDrained() 는 consumer lock 을 놓은 후 호출하므로, 그 안에서 AppInsightor lock 을 잡아도 교착되지 않는다.
+ *
+ * <p>시간 조건</p>
+ * Sink.onDrained() 가 다음 확인까지의 시간을 반환하면, 이벤트 스레드는 그 시간이 지나면 새 이벤트가 없어도 다시 호출한다.(BatchPolicy.maxAgeMs)
+ */
+class EventIngestor implements Runnable {
+    private static final long SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);//SLEEPING 대기 간격
+    private static final long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);//BLOCK 생산자 대기 간격
+    private static final int SPINS = 100;//잠들기 전에 다시 확인하는 횟수
+
+    /**
+     * ring buffer 에서 꺼낸 이벤트를 받는 쪽(이벤트 스레드 또는 drain() 호출 스레드에서 호출)
+     */
+    interface Sink {
+        /**
+         * 이벤트 1개를 저장한다.
+         */
+        void accept(Event event);
+
+        /**
+         * 한번에 꺼낸 이벤트를 모두 저장한 후, 또는 이전에 반환한 시간이 지난 후 호출한다.(consumer lock 을 잡지 않은 상태)
+         * @return 새 이벤트가 없어도 다시 호출할 때까지의 시간(ms), 0 이하이면 다시 호출하지 않음
+         */
+        long onDrained();
+
+        /**
+         * DROP_NEWEST 로 버린 이벤트 수를 집계한다.
+         */
+        void onDropped(long count);
+    }
+
+    private final EventRing ring_;
+    private final IngestionPolicy policy_;
+    private final Sink sink_;
+    private final Object consumerLock_ = new Object();
+    private final AtomicBoolean waiting_ = new AtomicBoolean();//이벤트 스레드가 잠들어 있음(BLOCKING)
+    private final Thread thread_;
+    private volatile boolean stopped_;
+    private volatile long deadlineNanos_;//다음 onDrained() 호출 시각(System.nanoTime), 0 이면 없음
+
+    EventIngestor(final IngestionPolicy policy, final Sink sink) {
+        ring_ = new EventRing(policy.capacity);
+        policy_ = policy;
+        sink_ = sink;
+        thread_ = new Thread(this, "AppInsightor-events");
+        thread_.setDaemon(true);
+    }
+
+    void start() {
+        deadlineNanos_ = System.nanoTime();//이전 실행에서 남은 이벤트 확인
+        thread_.start();
+    }
+
+    /**
+     * 이벤트 스레드를 종료한다. 남은 이벤트는 Sink 로 전달한다.
+     */
+    void stop() {
+        stopped_ = true;
+        LockSupport.unpark(thread_);
+        drain();
+    }
+
+    /**
+     * 새 이벤트가 없어도 이벤트 스레드가 Sink.onDrained() 를 바로 호출하도록 요청한다.(ring buffer 를 거치지 않고 모은 값, e.g. LatencyHistogram)
+     */
+    void requestCheck() {
+        deadlineNanos_ = System.nanoTime();
+        LockSupport.unpark(thread_);
+    }
+
+    /**
+     * 이벤트를 ring buffer 에 넣는다.(여러 스레드에서 동시에 호출 가능)<br />
+     * 가득 찬 경우 OverflowStrategy 에 따라 처리한다.
+     */
+    void publish(final Event event) {
+        if (!ring_.offer(event)) {
+            overflow(event);
+        }
+        if (policy_.waitStrategy == IngestionPolicy.WaitStrategy.BLOCKING && waiting_.get() && waiting_.compareAndSet(true, false)) {
+            LockSupport.unpark(thread_);
+        }
+    }
+
+    private void overflow(final Event event) {
+        switch (policy_.overflowStrategy) {
+            case DROP_NEWEST:
+                event.recycle();
+                sink_.onDropped(1);
+                return;
+            case BLOCK:
+                for (int spins = 0; !ring_.offer(event); spins++) {
+                    if (waiting_.compareAndSet(true, false)) {
+                        LockSupport.unpark(thread_);
+                    }
+                    if (spins < SPINS) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(BLOCK_NANOS);
+                    }
+                }
+                return;
+            default://CALLER_RUNS
+                do {
+                    drain();
+                } while (!ring_.offer(event));
+        }
+    }
+
+    /**
+     * ring buffer 에 있는 이벤트를 모두 Sink 로 전달한다.
+     * @return 전달한 이벤트 수
+     */
+    int drain() {
+        int count = 0;
+        synchronized (consumerLock_) {
+            Event event;
+            while ((event = ring_.poll()) != null) {
+                try {
+                    sink_.accept(event);
+                } catch (RuntimeException e) {
+                    Log.w(AppInsightor.TAG, "event ingestion error", e);
+                }
+                count++;
+            }
+        }
+        if (count > 0) {
+            notifyDrained();
+        }
+        return count;
+    }
+
+    private void notifyDrained() {
+        final long delayMs = sink_.onDrained();
+        deadlineNanos_ = delayMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs) : 0;
+        if (delayMs > 0 && Thread.currentThread() != thread_) {
+            LockSupport.unpark(thread_);//새 시각으로 다시 대기하도록 깨움
+        }
+    }
+
+    /**
+     * @return 다음 onDrained() 호출까지 남은 시간(ns), 호출할 때가 되었으면 0, 없으면 Long.MAX_VALUE
+     */
+    private long remainingNanos() {
+        final long deadline = deadlineNanos_;
+        if (deadline == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * 이벤트 스레드 - ring buffer 를 비우고, 비어있으면 WaitStrategy 에 따라 대기한다.
+     */
+    @Override
+    public void run() {
+        int idle = 0;
+        while (!stopped_) {
+            try {
+                if (drain() > 0) {
+                    idle = 0;
+                    continue;
+                }
+                if (remainingNanos() == 0) {
+                    notifyDrained();
+                }
+            } catch (RuntimeException e) {
+                Log.w(AppInsightor.TAG, "event ingestion error", e);
+            }
+            if (idle++ < SPINS) {
+                Thread.yield();
+                continue;
+            }
+            switch (policy_.waitStrategy) {
+                case YIELDING:
+                    Thread.yield();
+                    break;
+                case SLEEPING:
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                    break;
+                default://BLOCKING
+                    waiting_.set(true);
+                    if (isEmpty()) {
+                        final long remaining = remainingNanos();
+                        if (remaining == Long.MAX_VALUE) {
+                            LockSupport.park(this);
+                        } else if (remaining > 0) {
+                            LockSupport.parkNanos(this, remaining);
+                        }
+                    }
+                    waiting_.set(false);
+                    break;
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        synchronized (consumerLock_) {
+            return ring_.isEmpty();
+        }
+    }
+}
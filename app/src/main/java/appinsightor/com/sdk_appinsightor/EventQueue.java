@@ -2,71 +2,134 @@ package appinsightor.com.sdk_appinsightor;
 
 import android.util.Log;
 
-import org.json.JSONArray;
-
-import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
 
 /**
  * EventQueue Class
- * 이벤트 데이터, 큐 및 JSON으로 변환
+ * 이벤트 데이터, 큐 및 binary 레코드 변환
  */
 public class EventQueue {
-    private final AppInsightorStore appinsightorStore_;
+    /**
+     * 이벤트 레코드의 일련번호(범위 ack)
+     */
+    static final BoundedStorageBackend.Sequence SEQUENCE = new BoundedStorageBackend.Sequence() {
+        @Override
+        public long of(byte[] record) {
+            return RecordCodec.eventSeqOf(record);
+        }
+    };
 
+    private final BoundedStorageBackend events_;
+    private final RecordCodec codec_;
+    private final SequenceGenerator sequence_;
+    private volatile long firstQueuedAt_;//전송되지 않은 첫 이벤트를 저장한 시간(ms), 비어있으면 0
 
-    EventQueue(final AppInsightorStore appinsightorStore) {
+
+    EventQueue(final BoundedStorageBackend events, final RecordCodec codec, final SequenceGenerator sequence) {
         AppInsightor.sharedInstance().logShowPrinting("");
-        appinsightorStore_ = appinsightorStore;
+        events_ = events;
+        codec_ = codec;
+        sequence_ = sequence;
+        if (events_.size() > 0) {
+            firstQueuedAt_ = 1;//이전 실행에서 남은 이벤트는 BatchPolicy.maxAgeMs 를 넘긴 것으로 보고 바로 전송
+        }
     }
 
     /**
      * Returns the number of events in the local event queue.
      */
     int size() {
-        return appinsightorStore_.events().length;
+        return events_.size();
    }
 
     /**
-     * Removes all current events from the local queue and returns them.
+     * @return events Queue 에 저장된 레코드 크기(byte)
      */
-    String events() {
-        AppInsightor.sharedInstance().logShowPrinting("");
-        String result;
-
-        final List<Event> events = appinsightorStore_.eventsList();
-        final JSONArray eventArray = new JSONArray();
-        for (Event e : events) {
-            eventArray.put(e.toJSON());
-            //Log.e("Log.Test >",String.valueOf(e.toJSON()));
-        }
-
-        result = eventArray.toString();
+    long bytes() {
+        return events_.bytes();
+    }
 
-        appinsightorStore_.removeEvents(events);
+    /**
+     * @param now 현재 시간(ms)
+     * @return 전송되지 않은 첫 이벤트를 저장한 후 지난 시간(ms), 비어있으면 0
+     */
+    long ageMs(final long now) {
+        final long firstQueuedAt = firstQueuedAt_;
+        return firstQueuedAt == 0 ? 0 : Math.max(0, now - firstQueuedAt);
+    }
 
-        try {
-            result = java.net.URLEncoder.encode(result, "UTF-8");
-        } catch (UnsupportedEncodingException e) {}
+    /**
+     * Returns a list of the current stored events, sorted by timestamp from oldest to newest.
+     * @param records 저장소에서 읽은 event 레코드
+     */
+    List<Event> eventsList(final List<byte[]> records) {
+        AppInsightor.sharedInstance().logShowPrinting("");
+        final List<Event> events = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            final Event event = codec_.decodeEvent(record);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        // order the events from least to most recent
+        Collections.sort(events, new Comparator<Event>() {
+            @Override
+            public int compare(final Event e1, final Event e2) {
+                return (int)(e1.timestamp - e2.timestamp);
+            }
+        });
+        return events;
+    }
 
-        return result;
+    /**
+     * Removes all current events from the local queue and returns them.<br />
+     * 읽은 레코드만 정확히 제거한다.(take) 일련번호는 번호 부여와 저장 사이에 다른 스레드가 끼어들 수 있어
+     * Queue 순서와 다를 수 있으므로 범위 ack 하지 않는다.
+     */
+    List<Event> events() {
+        AppInsightor.sharedInstance().logShowPrinting("");
+        final List<byte[]> records = events_.take(Integer.MAX_VALUE);
+        final List<Event> events = eventsList(records);
+        firstQueuedAt_ = events_.size() > 0 ? System.currentTimeMillis() : 0;
+        return events;
     }
 
     /**
-     * Records a custom event to the local event queue.
+     * Records a custom event to the local event queue.<br />
+     * Queue 용량 초과시 처리는 저장소의 QueueCapacity 설정을 따른다.
      */
     void recordEvent(final Event event) {
         AppInsightor.sharedInstance().logShowPrinting("");
-        appinsightorStore_.addEvent(event);
+        event.seq = sequence_.next();
+        events_.append(codec_.encodeEvent(event));
+        if (firstQueuedAt_ == 0) {
+            firstQueuedAt_ = System.currentTimeMillis();
+        }
     }
     void recordEvent(final String key, final Map<String, String> segmentation, final double dur) {
         AppInsightor.sharedInstance().logShowPrinting("");
-        final long timestamp = AppInsightor.currentTimestampMs();
-        appinsightorStore_.addEvent(key, segmentation, timestamp, dur);
+        final Event event = new Event();
+        event.key = key;
+        event.segmentation = segmentation;
+        event.timestamp = AppInsightor.currentTimestampMs();
+        event.count = 1;
+        event.dur = dur;
+
+        recordEvent(event);
     }
 
 
-    //AppInsightorStore getAppInsightorStore() { return appinsightorStore_; }
+    /**
+     * 수집 ring buffer 용량 초과로 버려진 이벤트 수를 dropped_events 에 더한다.
+     */
+    void addDropped(final long count) {
+        events_.addDropped(count);
+    }
+
+    //StorageBackend getEvents() { return events_; }
 }
@@ -0,0 +1,83 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 크기가 고정된 lock-free multi-producer / single-consumer ring buffer<br />
+ * 각 slot 은 일련번호를 가지며, 생산자는 tail 을 CAS 로 차지한 후 이벤트를 기록하고 slot 일련번호를 올려 공개(publish)한다.
+ * 소비자는 slot 일련번호로 공개 여부를 확인하고 꺼낸 후 slot 을 다음 바퀴의 생산자에게 돌려준다.
+ *
+ * <p>slot 일련번호</p>
+ * pos 위치의 slot 일련번호가 pos 이면 비어있음(생산자 차례), pos + 1 이면 공개됨(소비자 차례),
+ * 소비 후 pos + capacity 로 바꾸어 다음 바퀴의 생산자에게 돌려준다.<br />
+ * offer() 는 lock 을 잡지 않으며, 소비는 한번에 한 스레드만 하도록 poll() 호출자가 보장한다.
+ */
+class EventRing {
+    private final int mask_;
+    private final AtomicReferenceArray<Event> slots_;
+    private final AtomicLongArray sequences_;
+    private final AtomicLong tail_ = new AtomicLong();
+    private long head_;//소비자만 사용
+
+    /**
+     * @param capacity 2 의 거듭제곱
+     */
+    EventRing(final int capacity) {
+        mask_ = capacity - 1;
+        slots_ = new AtomicReferenceArray<>(capacity);
+        sequences_ = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences_.set(i, i);
+        }
+    }
+
+    /**
+     * 이벤트를 넣는다.(여러 스레드에서 동시에 호출 가능, lock 없음)
+     * @return 가득 찬 경우 false
+     */
+    boolean offer(final Event event) {
+        long pos = tail_.get();
+        while (true) {
+            final int index = (int) pos & mask_;
+            final long diff = sequences_.get(index) - pos;
+            if (diff == 0) {
+                if (tail_.compareAndSet(pos, pos + 1)) {
+                    slots_.lazySet(index, event);
+                    sequences_.set(index, pos + 1);//publish, 이후 대기중인 소비자 확인보다 먼저 보이도록 volatile 로 기록
+                    return true;
+                }
+                pos = tail_.get();
+            } else if (diff < 0) {
+                return false;//한 바퀴 전 이벤트를 아직 소비하지 않음
+            } else {
+                pos = tail_.get();//다른 생산자가 먼저 차지함
+            }
+        }
+    }
+
+    /**
+     * 가장 오래된 이벤트를 꺼낸다.(소비자 스레드 하나만 호출)
+     * @return 공개된 이벤트가 없으면 null
+     */
+    Event poll() {
+        final long pos = head_;
+        final int index = (int) pos & mask_;
+        if (sequences_.get(index) != pos + 1) {
+            return null;
+        }
+        final Event event = slots_.get(index);
+        slots_.lazySet(index, null);
+        sequences_.lazySet(index, pos + mask_ + 1);
+        head_ = pos + 1;
+        return event;
+    }
+
+    /**
+     * @return 비어있다면 true(소비자 스레드에서 호출)
+     */
+    boolean isEmpty() {
+        return sequences_.get((int) head_ & mask_) != head_ + 1;
+    }
+}
@@ -0,0 +1,118 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 이벤트 key 별 sampling<br />
+ * key 또는 prefix("scroll_*") 별로 rate(0 ~ 1)를 지정하면, device ID 와 key 의 hash 로 전송 여부를 정한다.
+ * 같은 device 는 같은 key 에 대해 항상 같은 결과(모두 전송 또는 모두 버림)를 얻는다.<br />
+ * 전송하는 이벤트에는 적용한 rate 를 기록하여(sample_rate) 수신서버가 count 를 보정할 수 있게 한다.
+ *
+ * <p>설정</p>
+ * 설정은 바꿀 때마다 새 table 로 교체하므로(copy-on-write) recordEvent 는 lock 없이 hash 계산과 table 조회만 한다.<br />
+ * 정확한 key 가 prefix 보다 우선하며, prefix 는 긴 것이 우선한다.
+ */
+class EventSampler {
+    static final double FULL_RATE = 1.0d;
+
+    /**
+     * sampling 설정 table(변경하지 않음)
+     */
+    private static final class Rates {
+        final Map<String, Double> exact;
+        final String[] prefixes;//긴 것부터
+        final double[] prefixRates;
+
+        Rates(final Map<String, Double> exact, final Map<String, Double> prefixes) {
+            this.exact = exact;
+            final List<String> sorted = new ArrayList<>(prefixes.keySet());
+            Collections.sort(sorted, new Comparator<String>() {
+                @Override
+                public int compare(final String a, final String b) {
+                    return b.length() - a.length();
+                }
+            });
+            this.prefixes = sorted.toArray(new String[sorted.size()]);
+            this.prefixRates = new double[this.prefixes.length];
+            for (int i = 0; i < this.prefixes.length; i++) {
+                prefixRates[i] = prefixes.get(this.prefixes[i]);
+            }
+        }
+    }
+
+    private final Map<String, Double> exact_ = new HashMap<>();//설정 원본(lock)
+    private final Map<String, Double> prefixes_ = new HashMap<>();
+    private volatile Rates rates_ = new Rates(Collections.<String, Double>emptyMap(), Collections.<String, Double>emptyMap());
+
+    /**
+     * @param key 이벤트 key, "*" 로 끝나면 prefix
+     * @param rate 0 ~ 1, 1 이면 설정 제거
+     */
+    synchronized void setRate(final String key, final double rate) {
+        final boolean prefix = key.endsWith("*");
+        final Map<String, Double> target = prefix ? prefixes_ : exact_;
+        final String name = prefix ? key.substring(0, key.length() - 1) : key;
+        if (rate >= FULL_RATE) {
+            target.remove(name);
+        } else {
+            target.put(name, rate);
+        }
+        publish();
+    }
+
+    synchronized void clear() {
+        exact_.clear();
+        prefixes_.clear();
+        publish();
+    }
+
+    private void publish() {
+        rates_ = new Rates(new HashMap<>(exact_), prefixes_);
+    }
+
+    /**
+     * @return key 에 적용할 rate, 설정이 없으면 1
+     */
+    double rateOf(final String key) {
+        final Rates rates = rates_;
+        if (!rates.exact.isEmpty()) {
+            final Double rate = rates.exact.get(key);
+            if (rate != null) {
+                return rate;
+            }
+        }
+        final String[] prefixes = rates.prefixes;
+        for (int i = 0; i < prefixes.length; i++) {
+            if (key.startsWith(prefixes[i])) {
+                return rates.prefixRates[i];
+            }
+        }
+        return FULL_RATE;
+    }
+
+    /**
+     * device ID 와 key 로 정한 이 device 의 sampling 위치가 rate 안에 있는지 확인한다.
+     * @return 전송하면 true
+     */
+    static boolean isSampled(final String deviceId, final String key, final double rate) {
+        if (rate >= FULL_RATE) {
+            return true;
+        }
+        if (rate <= 0) {
+            return false;
+        }
+        long h = (deviceId == null ? 0 : deviceId.hashCode()) * 0x9E3779B97F4A7C15L + key.hashCode();
+        //murmur3 fmix64
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53 < rate;
+    }
+}
@@ -0,0 +1,260 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+/**
+ * 처리되지 않은 예외(fatal crash) 전용 저장소<br />
+ * uncaught exception handler 는 곧 종료될 스레드에서 실행되므로 JSON 생성, Queue 저장, 전송 요청 등을 하지 않고,
+ * init 시 미리 열어둔 파일과 미리 할당한 buffer 에 stack trace 와 미리 만들어 둔 crash 요청 메시지(context snapshot)를
+ * 한번에 기록한다. 기록된 crash 는 다음 실행의 init 에서 connections Queue 로 옮겨 전송한다.
+ *
+ * <p>파일 구성</p>
+ * files/appinsightor/fatal.crash - [4byte magic][4byte payload 길이][payload]<br />
+ * payload - [8byte timestamp][8byte 실행 시간][1byte background][4byte snapshot 길이][snapshot][stack trace(UTF-8)]<br />
+ * payload 를 먼저 기록하고 헤더를 마지막에 기록하므로, 중간에 종료된 경우 다음 실행에서 무시된다.
+ */
+class FatalCrashStore {
+    static final int BUFFER_BYTES = 64 * 1024;//crash 1건 최대 크기, 초과하는 stack trace 는 잘린다.
+    private static final int MAGIC = 0x41494643;//"AIFC"
+    private static final int HEADER_BYTES = 8;
+    private static final int FIXED_BYTES = 8 + 8 + 1 + 4;//timestamp, 실행 시간, background, snapshot 길이
+
+    private final RandomAccessFile file_;
+    private final byte[] buffer_ = new byte[BUFFER_BYTES];
+    private final BufferWriter writer_ = new BufferWriter();
+    private final PrintWriter printWriter_ = new PrintWriter(writer_);
+    private int snapshotLength_ = -1;//prepare 전에는 기록하지 않는다.
+    private boolean written_;//한 프로세스에서 처음 발생한 crash 만 기록
+
+    /**
+     * crash 파일을 열어둔다.
+     * @param file crash 파일
+     * @throws IOException 파일을 열 수 없는 경우
+     */
+    FatalCrashStore(final File file) throws IOException {
+        final File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create directory " + dir);
+        }
+        file_ = new RandomAccessFile(file, "rw");
+    }
+
+    /**
+     * crash 발생시 함께 기록할 요청 메시지(context snapshot)를 buffer 에 미리 복사해 둔다.
+     * @param snapshot {@link RecordCodec} 으로 변환한 crash 요청 메시지(_error 등 crash 시점의 값 제외)
+     */
+    synchronized void prepare(final byte[] snapshot) {
+        if (written_) {
+            return;
+        }
+        if (HEADER_BYTES + FIXED_BYTES + snapshot.length > BUFFER_BYTES / 2) {
+            Log.w(AppInsightor.TAG, "crash snapshot too large : " + snapshot.length);
+            snapshotLength_ = -1;
+            return;
+        }
+        System.arraycopy(snapshot, 0, buffer_, HEADER_BYTES + FIXED_BYTES, snapshot.length);
+        snapshotLength_ = snapshot.length;
+    }
+
+    /**
+     * uncaught exception handler 에서 호출, crash 를 파일에 한번에 기록한다.<br />
+     * 메모리 할당과 lock 대기를 최소화하기 위해 미리 할당한 buffer 에 직접 UTF-8 로 기록하며,
+     * 프로세스 종료만으로는 기록된 내용이 유실되지 않으므로 fsync 는 하지 않는다.
+     * @param error 처리되지 않은 예외
+     * @param timestamp 발생 시간
+     * @param runningTimeMs 앱 실행 후 발생까지 시간
+     * @param background background 실행 여부
+     * @return 기록 여부, false 이면 기존 방식(sendCrashReport)으로 처리해야 한다.
+     */
+    synchronized boolean write(final Throwable error, final long timestamp, final long runningTimeMs, final boolean background) {
+        if (snapshotLength_ < 0 || written_) {
+            return written_;
+        }
+        written_ = true;
+        int pos = HEADER_BYTES;
+        pos = putLong(buffer_, pos, timestamp);
+        pos = putLong(buffer_, pos, runningTimeMs);
+        buffer_[pos++] = (byte) (background ? 1 : 0);
+        putInt(buffer_, pos, snapshotLength_);
+        writer_.pos = HEADER_BYTES + FIXED_BYTES + snapshotLength_;
+        try {
+            error.printStackTrace(printWriter_);
+            printWriter_.flush();
+        } catch (Throwable ignored) {}//기록된 만큼만 남긴다.
+        final int payload = writer_.pos - HEADER_BYTES;
+        try {
+            file_.seek(HEADER_BYTES);
+            file_.write(buffer_, HEADER_BYTES, payload);
+            putInt(buffer_, 0, MAGIC);
+            putInt(buffer_, 4, payload);
+            file_.seek(0);
+            file_.write(buffer_, 0, HEADER_BYTES);
+            return true;
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "fatal crash write error", e);
+            written_ = false;
+            return false;
+        }
+    }
+
+    /**
+     * 이전 실행에서 기록된 crash 를 읽고 파일을 비운다.
+     * @return 기록된 crash, 없는 경우 null
+     */
+    synchronized FatalCrash take() {
+        try {
+            if (file_.length() < HEADER_BYTES + FIXED_BYTES) {
+                return null;
+            }
+            file_.seek(0);
+            final int magic = file_.readInt();
+            final int payload = file_.readInt();
+            if (magic != MAGIC || payload < FIXED_BYTES || HEADER_BYTES + payload > file_.length()) {
+                return null;
+            }
+            final FatalCrash crash = new FatalCrash();
+            crash.timestamp = file_.readLong();
+            crash.runningTimeMs = file_.readLong();
+            crash.background = file_.readByte() != 0;
+            final int snapshotLength = file_.readInt();
+            if (snapshotLength < 0 || FIXED_BYTES + snapshotLength > payload) {
+                return null;
+            }
+            crash.snapshot = new byte[snapshotLength];
+            file_.readFully(crash.snapshot);
+            final byte[] stack = new byte[payload - FIXED_BYTES - snapshotLength];
+            file_.readFully(stack);
+            crash.error = AppInsightorStore.toString(stack);
+            return crash;
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "fatal crash read error", e);
+            return null;
+        } finally {
+            try {
+                file_.setLength(0);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * crash 파일을 닫는다. 이후의 crash 는 기록하지 않으며 기존 방식(sendCrashReport)으로 처리된다.
+     */
+    synchronized void close() {
+        snapshotLength_ = -1;
+        try {
+            file_.close();
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "fatal crash file close error", e);
+        }
+    }
+
+    private static int putLong(final byte[] buf, final int pos, final long value) {
+        putInt(buf, pos, (int) (value >>> 32));
+        return putInt(buf, pos + 4, (int) value);
+    }
+
+    private static int putInt(final byte[] buf, int pos, final int value) {
+        buf[pos++] = (byte) (value >>> 24);
+        buf[pos++] = (byte) (value >>> 16);
+        buf[pos++] = (byte) (value >>> 8);
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * 이전 실행에서 기록된 crash
+     */
+    static class FatalCrash {
+        long timestamp;
+        long runningTimeMs;
+        boolean background;
+        byte[] snapshot;
+        String error;
+    }
+
+    /**
+     * buffer_ 에 UTF-8 로 직접 기록하는 Writer, buffer 가 가득 차면 이후 내용은 버린다.
+     */
+    private class BufferWriter extends Writer {
+        int pos;
+        private char high_;//앞에서 받은 surrogate 쌍의 앞부분
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            for (int i = off; i < off + len; i++) {
+                put(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) {
+            for (int i = off; i < off + len; i++) {
+                put(str.charAt(i));
+            }
+        }
+
+        @Override
+        public void write(final int c) {
+            put((char) c);
+        }
+
+        private void put(final char c) {
+            if (high_ != 0) {
+                final char high = high_;
+                high_ = 0;
+                if (Character.isLowSurrogate(c)) {
+                    final int cp = Character.toCodePoint(high, c);
+                    if (room(4)) {
+                        buffer_[pos++] = (byte) (0xf0 | (cp >> 18));
+                        buffer_[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                        buffer_[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                        buffer_[pos++] = (byte) (0x80 | (cp & 0x3f));
+                    }
+                    return;
+                }
+                put('?');
+            }
+            if (Character.isHighSurrogate(c)) {
+                high_ = c;
+            } else if (Character.isLowSurrogate(c)) {
+                put('?');
+            } else if (c < 0x80) {
+                if (room(1)) {
+                    buffer_[pos++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                if (room(2)) {
+                    buffer_[pos++] = (byte) (0xc0 | (c >> 6));
+                    buffer_[pos++] = (byte) (0x80 | (c & 0x3f));
+                }
+            } else if (room(3)) {
+                buffer_[pos++] = (byte) (0xe0 | (c >> 12));
+                buffer_[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer_[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        /**
+         * 남은 공간이 없으면 buffer 를 가득 찬 것으로 처리하여 이후 내용이 섞여 기록되지 않도록 한다.
+         */
+        private boolean room(final int bytes) {
+            if (pos + bytes <= BUFFER_BYTES) {
+                return true;
+            }
+            pos = BUFFER_BYTES;
+            return false;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
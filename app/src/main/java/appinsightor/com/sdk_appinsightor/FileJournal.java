@@ -0,0 +1,640 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 요청 메시지를 저장하는 append-only 세그먼트 파일 저널<br />
+ * 각 레코드는 [4byte 길이][payload] 형태로 세그먼트 파일 끝에 추가되며, 세그먼트가 지정한 크기를 넘으면 새 세그먼트를 생성한다.<br />
+ * 전송이 끝난 레코드는 삭제하지 않고 ack 위치(세그먼트 번호 + offset)만 앞으로 이동시키며,
+ * 모든 레코드가 ack 된 세그먼트 파일은 통째로 삭제한다.<br />
+ * Queue 중간의 레코드 제거(용량 초과시 eviction)는 길이 헤더를 음수(~길이)로 덮어써 tombstone 으로 표시한다.<br />
+ * compaction 은 만료된 레코드와 tombstone, ack 된 영역을 제외한 레코드를 새 세그먼트(.tmp)에 기록하고 이름을 바꾼 후
+ * ack 위치를 새 세그먼트로 옮긴다. ack 위치 기록 전에 종료된 경우 이전 세그먼트와 새 세그먼트의 레코드가 모두 남으며,
+ * 중복된 레코드는 일련번호로 함께 ack 되고 수신서버에서 제거된다.
+ *
+ * <p>SharedPreferences 문자열 방식과의 차이</p>
+ * 추가(append)와 ack 모두 Queue 크기와 무관하게 O(1) 의 디스크 쓰기만 발생한다.<br />
+ * 전체 Queue 를 다시 읽고 join 해서 XML 파일 전체를 commit 하던 방식을 대체한다.
+ *
+ * <p>파일 구성</p>
+ * e.g. files/appinsightor/connections/0000000000000000001.seg, ..., ack<br />
+ * 파일 I/O 오류는 로그로 남기고, 추가에 실패한 레코드는 버려진다.
+ */
+class FileJournal implements StorageBackend, BoundedStorageBackend.Compactable {
+    static final int DEFAULT_SEGMENT_BYTES = 256 * 1024;//세그먼트 파일 최대 크기(레코드 1개가 이보다 크면 해당 세그먼트는 레코드 1개만 가진다)
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";//compaction 중인 새 세그먼트
+    private static final String ACK_FILE = "ack";//ack 위치 저장 파일 [8byte segment id][8byte offset]
+    private static final int HEADER_BYTES = 4;
+    private static final int ACK_BYTES = 16;
+
+    private final File dir_;
+    private final int segmentBytes_;
+    private final List<Long> segments_ = new ArrayList<>();//오래된 순서의 세그먼트 id
+    private final RandomAccessFile ackFile_;
+    private final ByteBuffer ackBuffer_ = ByteBuffer.allocate(ACK_BYTES);
+
+    private long headSegment_;//ack 되지 않은 첫 레코드 위치
+    private long headOffset_;
+    private RandomAccessFile tail_;//현재 기록중인 세그먼트
+    private long tailOffset_;
+    private int size_;
+    private long bytes_;
+
+    /**
+     * 디렉토리의 세그먼트들을 읽어 ack 위치 이후의 레코드 수와 크기를 복원한다.<br />
+     * 마지막 세그먼트의 끝에 중간까지만 기록된 레코드가 있으면 잘라낸다.
+     * @param dir 저널 디렉토리
+     * @param segmentBytes 세그먼트 파일 최대 크기
+     * @throws IOException 디렉토리 또는 파일을 열 수 없는 경우
+     */
+    FileJournal(final File dir, final int segmentBytes) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create journal directory " + dir);
+        }
+        dir_ = dir;
+        segmentBytes_ = segmentBytes;
+        ackFile_ = new RandomAccessFile(new File(dir, ACK_FILE), "rw");
+
+        final File[] temps = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(TEMP_SUFFIX);
+            }
+        });
+        if (temps != null) {
+            for (File temp : temps) {
+                temp.delete();//compaction 도중 종료됨, 이전 세그먼트가 그대로 남아있다.
+            }
+        }
+        final File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        final long[] ids = new long[files == null ? 0 : files.length];
+        for (int i = 0; i < ids.length; i++) {
+            final String name = files[i].getName();
+            ids[i] = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(ids);
+
+        long ackSegment = -1;
+        long ackOffset = 0;
+        if (ackFile_.length() >= ACK_BYTES) {
+            ackFile_.seek(0);
+            ackSegment = ackFile_.readLong();
+            ackOffset = ackFile_.readLong();
+        }
+        for (long id : ids) {
+            if (id < ackSegment) {
+                segmentFile(id).delete();//이미 모두 ack 된 세그먼트
+            } else {
+                segments_.add(id);
+            }
+        }
+        if (segments_.isEmpty()) {
+            segments_.add(ackSegment < 0 ? 1L : ackSegment + 1);
+        }
+        headSegment_ = segments_.get(0);
+        headOffset_ = headSegment_ == ackSegment ? ackOffset : 0;
+
+        recover();
+    }
+
+    FileJournal(final File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * head 위치부터 끝까지 레코드 헤더를 따라가며 size, bytes 를 계산한다.
+     */
+    private void recover() throws IOException {
+        final long lastId = segments_.get(segments_.size() - 1);
+        for (long id : segments_) {
+            final RandomAccessFile raf = new RandomAccessFile(segmentFile(id), "rw");
+            try {
+                final long length = raf.length();
+                long offset = id == headSegment_ ? headOffset_ : 0;
+                while (offset + HEADER_BYTES <= length) {
+                    raf.seek(offset);
+                    final int header = raf.readInt();
+                    final int recordLength = header < 0 ? ~header : header;
+                    if (offset + HEADER_BYTES + recordLength > length) {
+                        break;
+                    }
+                    offset += HEADER_BYTES + recordLength;
+                    if (header >= 0) {
+                        size_++;
+                        bytes_ += HEADER_BYTES + recordLength;
+                    }
+                }
+                if (offset < length) {
+                    raf.setLength(offset);//기록 도중 종료된 레코드 제거
+                }
+                if (id == lastId) {
+                    tailOffset_ = offset;
+                }
+            } finally {
+                raf.close();
+            }
+        }
+        tail_ = new RandomAccessFile(segmentFile(lastId), "rw");
+    }
+
+    private File segmentFile(final long id) {
+        return new File(dir_, String.format(Locale.US, "%019d", id) + SEGMENT_SUFFIX);
+    }
+
+    private long tailSegment() {
+        return segments_.get(segments_.size() - 1);
+    }
+
+    /**
+     * 레코드를 마지막 세그먼트 끝에 추가한다. 세그먼트가 가득 찼다면 새 세그먼트를 연다.
+     * @param record payload
+     */
+    @Override
+    public synchronized boolean append(final byte[] record) {
+        try {
+            write(record);
+            return true;
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "journal write error : " + dir_, e);
+            return false;
+        }
+    }
+
+    private void write(final byte[] record) throws IOException {
+        final int recordBytes = HEADER_BYTES + record.length;
+        if (tailOffset_ > 0 && tailOffset_ + recordBytes > segmentBytes_) {
+            roll();
+        }
+        final byte[] buffer = new byte[recordBytes];
+        buffer[0] = (byte) (record.length >>> 24);
+        buffer[1] = (byte) (record.length >>> 16);
+        buffer[2] = (byte) (record.length >>> 8);
+        buffer[3] = (byte) record.length;
+        System.arraycopy(record, 0, buffer, HEADER_BYTES, record.length);
+        tail_.seek(tailOffset_);
+        tail_.write(buffer);
+        tailOffset_ += recordBytes;
+        size_++;
+        bytes_ += recordBytes;
+    }
+
+    /**
+     * 새 세그먼트를 생성한다. 이전 세그먼트가 모두 ack 된 상태라면 바로 삭제한다.
+     */
+    private void roll() throws IOException {
+        tail_.close();
+        final long previous = tailSegment();
+        final long next = previous + 1;
+        segments_.add(next);
+        tail_ = new RandomAccessFile(segmentFile(next), "rw");
+        tailOffset_ = 0;
+        if (size_ == 0 && headSegment_ == previous) {
+            segments_.remove(0);
+            segmentFile(previous).delete();
+            headSegment_ = next;
+            headOffset_ = 0;
+            writeAck();
+        }
+    }
+
+    /**
+     * ack 되지 않은 레코드를 오래된 순서로 최대 max 개까지 읽는다.(Queue 에서 제거하지 않음)
+     * @param max 최대 레코드 수
+     * @return 레코드 목록
+     */
+    @Override
+    public synchronized List<byte[]> peek(final int max) {
+        try {
+            return read(max);
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "journal read error : " + dir_, e);
+            return new ArrayList<>();
+        }
+    }
+
+    private List<byte[]> read(final int max) throws IOException {
+        final List<byte[]> records = new ArrayList<>(Math.min(max, size_));
+        long offset = headOffset_;
+        for (int i = 0; i < segments_.size() && records.size() < max; i++) {
+            final long id = segments_.get(i);
+            if (id < headSegment_) {
+                continue;
+            }
+            final RandomAccessFile raf = id == tailSegment() ? tail_ : new RandomAccessFile(segmentFile(id), "r");
+            try {
+                final long end = id == tailSegment() ? tailOffset_ : raf.length();
+                while (offset + HEADER_BYTES <= end && records.size() < max) {
+                    raf.seek(offset);
+                    final int header = raf.readInt();
+                    if (header < 0) {
+                        offset += HEADER_BYTES + ~header;//tombstone
+                        continue;
+                    }
+                    final byte[] record = new byte[header];
+                    raf.readFully(record);
+                    records.add(record);
+                    offset += HEADER_BYTES + record.length;
+                }
+            } finally {
+                if (raf != tail_) {
+                    raf.close();
+                }
+            }
+            offset = 0;
+        }
+        return records;
+    }
+
+    /**
+     * 오래된 순서로 count 개의 레코드를 ack 처리한다.<br />
+     * ack 위치만 이동하며, 모두 ack 된 세그먼트 파일은 삭제한다.
+     * @param count ack 할 레코드 수
+     */
+    @Override
+    public synchronized void ack(final int count) {
+        try {
+            advance(Math.min(count, size_));
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "journal ack error : " + dir_, e);
+        }
+    }
+
+    private void advance(int count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        RandomAccessFile raf = null;
+        try {
+            while (count > 0) {
+                final boolean isTail = headSegment_ == tailSegment();
+                if (raf == null) {
+                    raf = isTail ? tail_ : new RandomAccessFile(segmentFile(headSegment_), "r");
+                }
+                final long end = isTail ? tailOffset_ : raf.length();
+                if (headOffset_ + HEADER_BYTES > end) {
+                    //현재 세그먼트를 모두 소비함, 다음 세그먼트로 이동 후 삭제
+                    if (raf != tail_) {
+                        raf.close();
+                    }
+                    raf = null;
+                    segmentFile(segments_.remove(0)).delete();
+                    headSegment_ = segments_.get(0);
+                    headOffset_ = 0;
+                    continue;
+                }
+                raf.seek(headOffset_);
+                final int header = raf.readInt();
+                if (header < 0) {
+                    headOffset_ += HEADER_BYTES + ~header;//tombstone, 이미 size 에서 제외됨
+                    continue;
+                }
+                final int recordBytes = HEADER_BYTES + header;
+                headOffset_ += recordBytes;
+                bytes_ -= recordBytes;
+                size_--;
+                count--;
+            }
+        } finally {
+            if (raf != null && raf != tail_) {
+                raf.close();
+            }
+        }
+        if (size_ == 0 && headSegment_ != tailSegment()) {
+            //남은 세그먼트들은 끝까지 소비된 상태
+            while (segments_.size() > 1) {
+                segmentFile(segments_.remove(0)).delete();
+            }
+            headSegment_ = tailSegment();
+            headOffset_ = tailOffset_;
+        }
+        writeAck();
+    }
+
+    /**
+     * index 번째 레코드를 tombstone 으로 표시하여 제거한다.<br />
+     * head 부터 헤더를 따라가야 하므로 O(index) 이며, 용량 초과시 eviction 에만 사용한다.
+     * @param index 0 부터 시작하는 Queue 내 위치
+     */
+    @Override
+    public synchronized void remove(final int index) {
+        if (index < 0 || index >= size_) {
+            return;
+        }
+        if (index == 0) {
+            ack(1);
+            return;
+        }
+        try {
+            int remaining = index;
+            long offset = headOffset_;
+            for (int i = 0; i < segments_.size(); i++) {
+                final long id = segments_.get(i);
+                final RandomAccessFile raf = id == tailSegment() ? tail_ : new RandomAccessFile(segmentFile(id), "rw");
+                try {
+                    final long end = id == tailSegment() ? tailOffset_ : raf.length();
+                    while (offset + HEADER_BYTES <= end) {
+                        raf.seek(offset);
+                        final int header = raf.readInt();
+                        if (header >= 0 && remaining-- == 0) {
+                            raf.seek(offset);
+                            raf.writeInt(~header);
+                            size_--;
+                            bytes_ -= HEADER_BYTES + header;
+                            return;
+                        }
+                        offset += HEADER_BYTES + (header < 0 ? ~header : header);
+                    }
+                } finally {
+                    if (raf != tail_) {
+                        raf.close();
+                    }
+                }
+                offset = 0;
+            }
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "journal remove error : " + dir_, e);
+        }
+    }
+
+    private void writeAck() throws IOException {
+        writeAck(headSegment_, headOffset_);
+    }
+
+    /**
+     * ack 위치(세그먼트 번호, offset)를 한번에 기록한다.<br />
+     * 나누어 기록하면 도중에 종료된 경우 새 세그먼트 번호와 이전 offset 이 짝지어져,
+     * 재시작시 잘못된 위치부터 헤더를 읽고 ack 되지 않은 레코드를 잘라낼 수 있다.
+     */
+    private void writeAck(final long segment, final long offset) throws IOException {
+        ackBuffer_.clear();
+        ackBuffer_.putLong(segment).putLong(offset);
+        ackFile_.seek(0);
+        ackFile_.write(ackBuffer_.array(), 0, ACK_BYTES);
+    }
+
+    /**
+     * @return ack 되지 않은 레코드 수
+     */
+    @Override
+    public synchronized int size() {
+        return size_;
+    }
+
+    /**
+     * @return ack 되지 않은 레코드가 차지하는 byte 수(헤더 포함)
+     */
+    @Override
+    public synchronized long bytes() {
+        return bytes_;
+    }
+
+    /**
+     * 모든 세그먼트를 삭제하고 빈 저널로 초기화한다.
+     */
+    @Override
+    public synchronized void clear() {
+        try {
+            reset();
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "journal clear error : " + dir_, e);
+        }
+    }
+
+    private void reset() throws IOException {
+        tail_.close();
+        final long next = tailSegment() + 1;
+        for (long id : segments_) {
+            segmentFile(id).delete();
+        }
+        segments_.clear();
+        segments_.add(next);
+        tail_ = new RandomAccessFile(segmentFile(next), "rw");
+        tailOffset_ = 0;
+        headSegment_ = next;
+        headOffset_ = 0;
+        size_ = 0;
+        bytes_ = 0;
+        writeAck();
+    }
+
+    /**
+     * 만료된 레코드를 제거하고, 만료된 레코드가 있거나 tombstone 과 ack 된 영역이 세그먼트 크기의 1/4 이상이면 저널을 다시 기록한다.
+     */
+    @Override
+    public synchronized void compact(final BoundedStorageBackend.Expiry expiry, final long now,
+                                     final BoundedStorageBackend.Compaction result) {
+        try {
+            rewrite(expiry, now, result);
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "journal compaction error : " + dir_, e);
+        }
+    }
+
+    private void rewrite(final BoundedStorageBackend.Expiry expiry, final long now,
+                         final BoundedStorageBackend.Compaction result) throws IOException {
+        final List<byte[]> records = read(Integer.MAX_VALUE);
+        final List<byte[]> keep = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            if (!BoundedStorageBackend.isExpired(expiry, record, now)) {
+                keep.add(record);
+            }
+        }
+        final int expired = records.size() - keep.size();
+        final long diskBytes = diskBytes();
+        if (expired == 0 && diskBytes - bytes_ < segmentBytes_ / 4) {
+            return;
+        }
+
+        final long firstId = tailSegment() + 1;
+        final List<Long> ids = new ArrayList<>();
+        long keptBytes = 0;
+        try {
+            DataOutputStream out = null;
+            FileOutputStream file = null;
+            long written = 0;
+            try {
+                for (int i = 0; i <= keep.size(); i++) {
+                    final byte[] record = i < keep.size() ? keep.get(i) : null;
+                    if (out == null || (record != null && written > 0 && written + HEADER_BYTES + record.length > segmentBytes_)) {
+                        if (out != null) {
+                            out.flush();
+                            file.getFD().sync();
+                            out.close();
+                        }
+                        final long id = firstId + ids.size();
+                        ids.add(id);
+                        file = new FileOutputStream(tempFile(id));
+                        out = new DataOutputStream(new BufferedOutputStream(file));
+                        written = 0;
+                    }
+                    if (record != null) {
+                        out.writeInt(record.length);
+                        out.write(record);
+                        written += HEADER_BYTES + record.length;
+                        keptBytes += HEADER_BYTES + record.length;
+                    }
+                }
+                out.flush();
+                file.getFD().sync();
+            } finally {
+                if (out != null) {
+                    out.close();
+                }
+            }
+            for (long id : ids) {
+                if (!tempFile(id).renameTo(segmentFile(id))) {
+                    throw new IOException("cannot rename " + tempFile(id));
+                }
+            }
+            //새 세그먼트로 ack 위치를 옮긴다.(이 시점 이후 재시작하면 이전 세그먼트는 삭제된다.)
+            writeAck(firstId, 0);
+        } catch (IOException e) {
+            for (long id : ids) {
+                tempFile(id).delete();
+                segmentFile(id).delete();
+            }
+            throw e;
+        }
+
+        tail_.close();
+        final List<Long> previous = new ArrayList<>(segments_);
+        segments_.clear();
+        segments_.addAll(ids);
+        headSegment_ = firstId;
+        headOffset_ = 0;
+        for (long id : previous) {
+            segmentFile(id).delete();
+        }
+        tail_ = new RandomAccessFile(segmentFile(tailSegment()), "rw");
+        tailOffset_ = tail_.length();
+        size_ = keep.size();
+        bytes_ = keptBytes;
+
+        result.expired += expired;
+        result.reclaimedBytes += Math.max(0, diskBytes - diskBytes());
+    }
+
+    private File tempFile(final long id) {
+        return new File(dir_, String.format(Locale.US, "%019d", id) + SEGMENT_SUFFIX + TEMP_SUFFIX);
+    }
+
+    /**
+     * @return 세그먼트 파일이 차지하는 byte 수(ack 된 영역과 tombstone 포함)
+     */
+    private long diskBytes() {
+        long bytes = 0;
+        for (long id : segments_) {
+            bytes += id == tailSegment() ? tailOffset_ : segmentFile(id).length();
+        }
+        return bytes;
+    }
+
+    /**
+     * 저널을 닫는다. 이후 이 객체는 사용할 수 없다.
+     */
+    synchronized void close() {
+        try {
+            tail_.close();
+            ackFile_.close();
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "journal close error : " + dir_, e);
+        }
+    }
+
+    /**
+     * 다른 프로세스가 기록중인 저널을 읽기 전용으로 읽는다.(파일을 수정하지 않음)<br />
+     * 기록 도중인 마지막 레코드와, 읽는 도중 ack 되어 삭제된 세그먼트는 건너뛴다.
+     * @param dir 저널 디렉토리
+     * @param max 최대 레코드 수
+     * @param sequence 레코드 일련번호
+     * @param afterSeq 이 일련번호 이하의 레코드는 건너뛴다.(이미 전송된 레코드)
+     * @return ack 되지 않은 레코드 목록
+     */
+    static List<byte[]> scan(final File dir, final int max, final BoundedStorageBackend.Sequence sequence, final long afterSeq) {
+        final List<byte[]> records = new ArrayList<>();
+        long ackSegment = -1;
+        long ackOffset = 0;
+        final File ack = new File(dir, ACK_FILE);
+        if (ack.length() >= 16) {
+            try {
+                final RandomAccessFile raf = new RandomAccessFile(ack, "r");
+                try {
+                    ackSegment = raf.readLong();
+                    ackOffset = raf.readLong();
+                } finally {
+                    raf.close();
+                }
+            } catch (IOException e) {
+                return records;
+            }
+        }
+        final File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return records;
+        }
+        final long[] ids = new long[files.length];
+        for (int i = 0; i < ids.length; i++) {
+            final String name = files[i].getName();
+            ids[i] = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(ids);
+        for (long id : ids) {
+            if (id < ackSegment || records.size() >= max) {
+                continue;
+            }
+            try {
+                final RandomAccessFile raf = new RandomAccessFile(new File(dir, String.format(Locale.US, "%019d", id) + SEGMENT_SUFFIX), "r");
+                try {
+                    final long length = raf.length();
+                    long offset = id == ackSegment ? ackOffset : 0;
+                    while (offset + HEADER_BYTES <= length && records.size() < max) {
+                        raf.seek(offset);
+                        final int header = raf.readInt();
+                        final int recordLength = header < 0 ? ~header : header;
+                        if (offset + HEADER_BYTES + recordLength > length) {
+                            break;//기록 도중
+                        }
+                        offset += HEADER_BYTES + recordLength;
+                        if (header < 0) {
+                            continue;//tombstone
+                        }
+                        final byte[] record = new byte[header];
+                        raf.readFully(record);
+                        if (sequence.of(record) > afterSeq) {
+                            records.add(record);
+                        }
+                    }
+                } finally {
+                    raf.close();
+                }
+            } catch (IOException e) {
+                //읽는 도중 ack 되어 삭제된 세그먼트
+            }
+        }
+        return records;
+    }
+}
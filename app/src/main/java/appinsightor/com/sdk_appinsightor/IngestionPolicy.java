@@ -0,0 +1,60 @@
+package appinsightor.com.sdk_appinsightor;
+
+/**
+ * recordEvent 수집 ring buffer 의 크기와 대기, 용량 초과시 처리 방식<br />
+ * recordEvent 는 이벤트를 검사한 후 ring buffer 에 넣고 바로 반환하며, SDK 의 이벤트 스레드 하나가 꺼내서 events Queue 에 저장한다.<br />
+ * AppInsightor.setIngestionPolicy() 로 init 호출 전에 지정한다.
+ *
+ * <p>e.g.</p>
+ * new IngestionPolicy(4096, IngestionPolicy.WaitStrategy.SLEEPING, IngestionPolicy.OverflowStrategy.DROP_NEWEST)
+ */
+public class IngestionPolicy {
+
+    /**
+     * ring buffer 가 비어있을 때 이벤트 스레드의 대기 방식
+     */
+    public enum WaitStrategy {
+        /** 이벤트가 들어올 때까지 잠든다.(recordEvent 가 깨움, 기본) */
+        BLOCKING,
+        /** 짧게 잠들었다가 다시 확인한다.(recordEvent 가 깨우지 않음) */
+        SLEEPING,
+        /** 다른 스레드에 양보하며 계속 확인한다.(지연이 가장 짧고 CPU 를 가장 많이 사용) */
+        YIELDING
+    }
+
+    /**
+     * ring buffer 가 가득 찼을 때 recordEvent 의 처리 방식
+     */
+    public enum OverflowStrategy {
+        /** 호출한 스레드가 ring buffer 를 직접 비운 후 넣는다.(유실 없음, 기본) */
+        CALLER_RUNS,
+        /** 빈 자리가 생길 때까지 호출한 스레드가 기다린다. */
+        BLOCK,
+        /** 새 이벤트를 버리고 dropped_events 로 집계한다. */
+        DROP_NEWEST
+    }
+
+    static final IngestionPolicy DEFAULT = new IngestionPolicy(1024, WaitStrategy.BLOCKING, OverflowStrategy.CALLER_RUNS);
+
+    final int capacity;
+    final WaitStrategy waitStrategy;
+    final OverflowStrategy overflowStrategy;
+
+    /**
+     * @param capacity ring buffer 크기(2 의 거듭제곱으로 올림)
+     * @param waitStrategy 이벤트 스레드 대기 방식
+     * @param overflowStrategy 가득 찼을 때 처리 방식
+     * @throws IllegalArgumentException 값이 올바르지 않은 경우
+     */
+    public IngestionPolicy(int capacity, WaitStrategy waitStrategy, OverflowStrategy overflowStrategy) {
+        if (capacity <= 0 || capacity > (1 << 20)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^20");
+        }
+        if (waitStrategy == null || overflowStrategy == null) {
+            throw new IllegalArgumentException("valid waitStrategy and overflowStrategy are required");
+        }
+        this.capacity = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.waitStrategy = waitStrategy;
+        this.overflowStrategy = overflowStrategy;
+    }
+}
@@ -0,0 +1,137 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.EnumMap;
+
+/**
+ * 전송 lane 별 용량, 재시도 방식, 스케줄링 가중치<br />
+ * 요청 메시지는 종류에 따라 CRASH, SESSION, EVENTS lane 에 나누어 저장되며, lane 마다 별도의 Queue 와 용량을 가진다.
+ * 따라서 이벤트 요청 메시지가 많아도 session, crash 요청 메시지가 버려지지 않는다.<br />
+ * AppInsightor.setLanePolicy() 로 init 호출 전에 지정한다.
+ *
+ * <p>전송 순서</p>
+ * CRASH lane 은 항상 먼저 전송하며, SESSION, EVENTS lane 은 weight 비율로 번갈아 전송한다.<br />
+ * 전송에 실패한 lane 은 retryBaseMs 부터 2배씩 늘어나는(최대 retryMaxMs) 시간 동안 전송하지 않고, 그 동안 다른 lane 을 전송한다.
+ *
+ * <p>만료</p>
+ * 요청 메시지는 저장시 이 lane 의 ttlMs 로 만료 시간을, maxAttempts 로 최대 전송 시도 횟수를 함께 기록한다.<br />
+ * 만료된 요청 메시지는 전송하지 않고 백그라운드 compaction 에서 제거하며,
+ * 수신서버가 3xx, 5xx 로 응답한 전송 시도가 maxAttempts 번에 이른 요청 메시지(poisoned)는 버린다.
+ *
+ * <p>e.g.</p>
+ * new LanePolicy(new QueueCapacity(1000, 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST), 1, 1000, 60000, 20)<br />
+ * new LanePolicy(new QueueCapacity(1000, 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST), 1, 1000, 60000, 20,
+ * 7L * 24 * 60 * 60 * 1000, 10)
+ */
+public class LanePolicy {
+
+    /**
+     * 전송 lane
+     */
+    public enum Lane {
+        /** crash report(항상 먼저 전송) */
+        CRASH,
+        /** session 시작/종료, 이전 버전에서 저장된 요청 메시지 */
+        SESSION,
+        /** 이벤트 */
+        EVENTS
+    }
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    static final long DEFAULT_TTL_MS = 7 * DAY_MS;
+    static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    static final LanePolicy DEFAULT_CRASH = new LanePolicy(
+            new QueueCapacity(100, 2L * 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_NEWEST), 1, 1000, 60000, 1, 30 * DAY_MS, 20);
+    static final LanePolicy DEFAULT_SESSION = new LanePolicy(QueueCapacity.DEFAULT_CONNECTIONS, 2, 1000, 60000, 1,
+            14 * DAY_MS, DEFAULT_MAX_ATTEMPTS);
+    static final LanePolicy DEFAULT_EVENTS = new LanePolicy(
+            new QueueCapacity(1000, 4L * 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST), 1, 5000, 300000, 20,
+            DEFAULT_TTL_MS, DEFAULT_MAX_ATTEMPTS);
+
+    final QueueCapacity capacity;
+    final int weight;
+    final long retryBaseMs;
+    final long retryMaxMs;
+    final int maxCoalesce;
+    final long ttlMs;
+    final int maxAttempts;
+    private final boolean laneDefaults_;//만료 시간, 최대 전송 시도 횟수를 지정하지 않음(lane 기본값 사용)
+
+    /**
+     * @param capacity lane Queue 용량
+     * @param weight 스케줄링 가중치(CRASH lane 은 사용하지 않음)
+     * @param retryBaseMs 전송 실패시 첫 재시도 대기 시간
+     * @param retryMaxMs 연속 실패시 최대 재시도 대기 시간
+     * @param maxCoalesce 한번에 합쳐서 전송할 최대 요청 메시지 수(EVENTS lane 의 이벤트 요청 메시지만 합친다)
+     * @param ttlMs 요청 메시지 생성 후 만료까지 시간(0 이면 만료되지 않음)
+     * @param maxAttempts 요청 메시지 1개의 최대 전송 시도 횟수(0 이면 제한 없음)
+     * @throws IllegalArgumentException 값이 올바르지 않은 경우
+     */
+    public LanePolicy(QueueCapacity capacity, int weight, long retryBaseMs, long retryMaxMs, int maxCoalesce,
+                      long ttlMs, int maxAttempts) {
+        this(capacity, weight, retryBaseMs, retryMaxMs, maxCoalesce, ttlMs, maxAttempts, false);
+    }
+
+    /**
+     * 만료 시간, 최대 전송 시도 횟수는 설정하는 lane 의 기본값을 사용하는 정책<br />
+     * (CRASH 30일/20회, SESSION 14일/10회, EVENTS 7일/10회)
+     */
+    public LanePolicy(QueueCapacity capacity, int weight, long retryBaseMs, long retryMaxMs, int maxCoalesce) {
+        this(capacity, weight, retryBaseMs, retryMaxMs, maxCoalesce, DEFAULT_TTL_MS, DEFAULT_MAX_ATTEMPTS, true);
+    }
+
+    private LanePolicy(QueueCapacity capacity, int weight, long retryBaseMs, long retryMaxMs, int maxCoalesce,
+                       long ttlMs, int maxAttempts, boolean laneDefaults) {
+        if (capacity == null) {
+            throw new IllegalArgumentException("valid capacity is required");
+        }
+        if (weight <= 0 || maxCoalesce <= 0) {
+            throw new IllegalArgumentException("weight and maxCoalesce must be positive");
+        }
+        if (retryBaseMs < 0 || retryMaxMs < retryBaseMs) {
+            throw new IllegalArgumentException("retryBaseMs must not be negative and not greater than retryMaxMs");
+        }
+        if (ttlMs < 0 || maxAttempts < 0) {
+            throw new IllegalArgumentException("ttlMs and maxAttempts must not be negative");
+        }
+        this.capacity = capacity;
+        this.weight = weight;
+        this.retryBaseMs = retryBaseMs;
+        this.retryMaxMs = retryMaxMs;
+        this.maxCoalesce = maxCoalesce;
+        this.ttlMs = ttlMs;
+        this.maxAttempts = maxAttempts;
+        laneDefaults_ = laneDefaults;
+    }
+
+    /**
+     * 용량만 바꾼 정책
+     */
+    LanePolicy withCapacity(final QueueCapacity capacity) {
+        return new LanePolicy(capacity, weight, retryBaseMs, retryMaxMs, maxCoalesce, ttlMs, maxAttempts, laneDefaults_);
+    }
+
+    /**
+     * 만료 시간, 최대 전송 시도 횟수를 지정하지 않은 정책이라면 lane 의 기본값을 적용한다.(setLanePolicy)
+     * @param lane 정책을 설정할 lane
+     * @return lane 에 적용할 정책
+     */
+    LanePolicy forLane(final Lane lane) {
+        if (!laneDefaults_) {
+            return this;
+        }
+        final LanePolicy defaults = defaults().get(lane);
+        return new LanePolicy(capacity, weight, retryBaseMs, retryMaxMs, maxCoalesce, defaults.ttlMs, defaults.maxAttempts);
+    }
+
+    /**
+     * @return lane 별 기본 정책
+     */
+    static EnumMap<Lane, LanePolicy> defaults() {
+        final EnumMap<Lane, LanePolicy> policies = new EnumMap<>(Lane.class);
+        policies.put(Lane.CRASH, DEFAULT_CRASH);
+        policies.put(Lane.SESSION, DEFAULT_SESSION);
+        policies.put(Lane.EVENTS, DEFAULT_EVENTS);
+        return policies;
+    }
+}
@@ -0,0 +1,56 @@
+package appinsightor.com.sdk_appinsightor;
+
+/**
+ * 전송 lane 의 현재 상태(AppInsightor.getLaneStats())<br />
+ * 대기 시간은 요청 메시지가 생성된 시간부터 수신서버 전송이 끝난 시간까지이다.
+ */
+public class LaneStats {
+    /** lane */
+    public final LanePolicy.Lane lane;
+    /** Queue 에 남아있는 요청 메시지 수 */
+    public final int depth;
+    /** Queue 에 남아있는 요청 메시지 byte 수 */
+    public final long bytes;
+    /** 가장 오래된 요청 메시지의 대기 시간(ms), 비어있으면 0 */
+    public final long oldestWaitMs;
+    /** 전송 완료된 요청 메시지 수(4xx 응답으로 버려진 메시지 포함) */
+    public final long sent;
+    /** 전송 완료된 요청 메시지의 평균 대기 시간(ms) */
+    public final long averageWaitMs;
+    /** 전송 완료된 요청 메시지의 최대 대기 시간(ms) */
+    public final long maxWaitMs;
+    /** 전송 실패 횟수(재시도 대상) */
+    public final long failures;
+    /** 다음 재시도까지 남은 시간(ms), 재시도 대기중이 아니면 0 */
+    public final long retryInMs;
+    /** 만료되어 전송하지 않고 버린 요청 메시지 수 */
+    public final long expired;
+    /** 최대 전송 시도 횟수에 이르러 버린 요청 메시지 수 */
+    public final long poisoned;
+    /** compaction 으로 줄어든 저장소 byte 수 */
+    public final long reclaimedBytes;
+
+    LaneStats(LanePolicy.Lane lane, int depth, long bytes, long oldestWaitMs, long sent, long averageWaitMs, long maxWaitMs,
+              long failures, long retryInMs, long expired, long poisoned, long reclaimedBytes) {
+        this.lane = lane;
+        this.depth = depth;
+        this.bytes = bytes;
+        this.oldestWaitMs = oldestWaitMs;
+        this.sent = sent;
+        this.averageWaitMs = averageWaitMs;
+        this.maxWaitMs = maxWaitMs;
+        this.failures = failures;
+        this.retryInMs = retryInMs;
+        this.expired = expired;
+        this.poisoned = poisoned;
+        this.reclaimedBytes = reclaimedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return lane + "{depth=" + depth + ", bytes=" + bytes + ", oldestWaitMs=" + oldestWaitMs + ", sent=" + sent
+                + ", averageWaitMs=" + averageWaitMs + ", maxWaitMs=" + maxWaitMs + ", failures=" + failures
+                + ", retryInMs=" + retryInMs + ", expired=" + expired + ", poisoned=" + poisoned
+                + ", reclaimedBytes=" + reclaimedBytes + "}";
+    }
+}
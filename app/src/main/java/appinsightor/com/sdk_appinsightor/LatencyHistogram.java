@@ -0,0 +1,124 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * timed event 처리 시간(ms) 분포 - log-linear(HDR 방식) bucket 의 primitive counter<br />
+ * 2 의 거듭제곱 구간마다 2^SUB_BUCKET_BITS 개의 같은 폭 bucket 으로 나누므로 상대 오차는 1/2^SUB_BUCKET_BITS 이하이다.
+ * record() 는 lock 없이 bucket counter 와 count, sum, min, max 를 갱신한다.
+ *
+ * <p>bucket index</p>
+ * v &lt; 2^SUB_BUCKET_BITS 이면 v, 그 외에는 (e - SUB_BUCKET_BITS + 1) * 2^SUB_BUCKET_BITS + (v &gt;&gt; (e - SUB_BUCKET_BITS)) - 2^SUB_BUCKET_BITS
+ * (e = v 의 최상위 bit 위치)<br />
+ * 수신서버는 같은 식으로 bucket 의 범위를 계산하여 p50 / p95 / p99 를 구한다.
+ *
+ * <p>전송</p>
+ * snapshot() 은 bucket 을 비우면서 0 이 아닌 bucket 만 [index, count, index, count, ...] 로 돌려준다.
+ * 비우는 동안 기록된 값은 다음 snapshot 에 포함될 수 있다.
+ */
+class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;//2^41 ms 이상은 마지막 bucket
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    final String key;
+    private final AtomicLongArray counts_ = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count_ = new AtomicLong();
+    private final AtomicLong sum_ = new AtomicLong();
+    private final AtomicLong min_ = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max_ = new AtomicLong(Long.MIN_VALUE);
+    private volatile long firstRecordedAt_;//snapshot 후 처음 기록한 시간(ms)
+
+    LatencyHistogram(final String key) {
+        this.key = key;
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @param valueMs 처리 시간(ms)
+     * @return snapshot 후 처음 기록한 값이면 true
+     */
+    boolean record(final long valueMs) {
+        counts_.incrementAndGet(indexOf(valueMs));
+        final boolean first = count_.incrementAndGet() == 1;
+        if (first) {
+            firstRecordedAt_ = System.currentTimeMillis();
+        }
+        sum_.addAndGet(valueMs);
+        long min;
+        while (valueMs < (min = min_.get()) && !min_.compareAndSet(min, valueMs)) {
+            //retry
+        }
+        long max;
+        while (valueMs > (max = max_.get()) && !max_.compareAndSet(max, valueMs)) {
+            //retry
+        }
+        return first;
+    }
+
+    /**
+     * @param now 현재 시간(ms)
+     * @return snapshot 후 처음 기록한 뒤 지난 시간(ms), 기록된 값이 없으면 -1
+     */
+    long ageMs(final long now) {
+        if (count_.get() == 0) {
+            return -1;
+        }
+        return Math.max(0, now - firstRecordedAt_);
+    }
+
+    /**
+     * 기록된 분포를 이벤트로 옮기고 비운다.
+     * @return 기록된 값이 없으면 null
+     */
+    Event snapshot() {
+        final long count = count_.getAndSet(0);
+        if (count == 0) {
+            return null;
+        }
+        final Event event = new Event();
+        event.key = key;
+        final long firstRecordedAt = firstRecordedAt_;
+        event.timestamp = firstRecordedAt > 0 ? firstRecordedAt : System.currentTimeMillis();//분포를 모으기 시작한 시간
+        event.count = (int) Math.min(count, Integer.MAX_VALUE);
+        event.dur = sum_.getAndSet(0);
+        event.durMin = min_.getAndSet(Long.MAX_VALUE);
+        event.durMax = max_.getAndSet(Long.MIN_VALUE);
+        if (event.durMin > event.durMax) {
+            event.durMin = event.durMax = 0;//동시에 기록중인 값의 min, max 가 아직 반영되지 않음
+        }
+        int buckets = 0;
+        long[] sparse = new long[16];
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts_.get(i) == 0) {
+                continue;
+            }
+            final long bucketCount = counts_.getAndSet(i, 0);
+            if (buckets * 2 == sparse.length) {
+                final long[] grown = new long[sparse.length * 2];
+                System.arraycopy(sparse, 0, grown, 0, sparse.length);
+                sparse = grown;
+            }
+            sparse[buckets * 2] = i;
+            sparse[buckets * 2 + 1] = bucketCount;
+            buckets++;
+        }
+        final long[] histogram = new long[buckets * 2];
+        System.arraycopy(sparse, 0, histogram, 0, histogram.length);
+        event.histogram = histogram;
+        return event;
+    }
+}
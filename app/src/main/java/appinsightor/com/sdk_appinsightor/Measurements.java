@@ -0,0 +1,235 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * 이벤트의 숫자 측정값(long / double) - segmentation 과 달리 문자열로 바꾸지 않고 primitive 배열에 저장한다.<br />
+ * 값은 long 또는 double 의 bit 로 long 배열에 저장하며, 합쳐진 이벤트(EventAggregator)는 value 에 합계를, min / max 에 최소, 최대를 누적한다.
+ * 같은 이름에 long 과 double 이 함께 들어오면 double 로 바꾸어 누적한다.<br />
+ * put, clear 는 객체를 만들지 않으므로(배열을 늘리는 경우 제외) pool 에서 꺼낸 {@link Event} 에 다시 사용한다.
+ * 동기화하지 않으므로 한번에 한 스레드만 사용한다.
+ *
+ * <p>JSON</p>
+ * "measurements": {"price": 12.5, "items": 3}<br />
+ * 합쳐진 이벤트는 "measurements_min", "measurements_max" 를 함께 기록한다.
+ */
+class Measurements {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] names_ = new String[INITIAL_CAPACITY];
+    private boolean[] doubles_ = new boolean[INITIAL_CAPACITY];//true 이면 double bit
+    private long[] values_ = new long[INITIAL_CAPACITY];
+    private long[] mins_ = new long[INITIAL_CAPACITY];
+    private long[] maxs_ = new long[INITIAL_CAPACITY];
+    private int size_;
+
+    int size() {
+        return size_;
+    }
+
+    String name(final int index) {
+        return names_[index];
+    }
+
+    boolean isDouble(final int index) {
+        return doubles_[index];
+    }
+
+    /**
+     * @return long 값 또는 double 의 bit
+     */
+    long bits(final int index) {
+        return values_[index];
+    }
+
+    long minBits(final int index) {
+        return mins_[index];
+    }
+
+    long maxBits(final int index) {
+        return maxs_[index];
+    }
+
+    private int indexOf(final String name) {
+        for (int i = 0; i < size_; i++) {
+            if (names_[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 측정값을 지정한다.(같은 이름이 있으면 바꿈)
+     */
+    void put(final String name, final long value) {
+        set(name, false, value, value, value);
+    }
+
+    void put(final String name, final double value) {
+        final long bits = Double.doubleToRawLongBits(value);
+        set(name, true, bits, bits, bits);
+    }
+
+    /**
+     * 저장된 값을 그대로 지정한다.(RecordCodec)
+     */
+    void set(final String name, final boolean isDouble, final long bits, final long minBits, final long maxBits) {
+        int index = indexOf(name);
+        if (index < 0) {
+            index = append(name);
+        }
+        doubles_[index] = isDouble;
+        values_[index] = bits;
+        mins_[index] = minBits;
+        maxs_[index] = maxBits;
+    }
+
+    private int append(final String name) {
+        if (size_ == names_.length) {
+            final int capacity = size_ * 2;
+            final String[] names = new String[capacity];
+            final boolean[] doubles = new boolean[capacity];
+            final long[] values = new long[capacity];
+            final long[] mins = new long[capacity];
+            final long[] maxs = new long[capacity];
+            System.arraycopy(names_, 0, names, 0, size_);
+            System.arraycopy(doubles_, 0, doubles, 0, size_);
+            System.arraycopy(values_, 0, values, 0, size_);
+            System.arraycopy(mins_, 0, mins, 0, size_);
+            System.arraycopy(maxs_, 0, maxs, 0, size_);
+            names_ = names;
+            doubles_ = doubles;
+            values_ = values;
+            mins_ = mins;
+            maxs_ = maxs;
+        }
+        names_[size_] = name;
+        return size_++;
+    }
+
+    /**
+     * 다른 이벤트의 측정값을 합계, 최소, 최대로 누적한다.(EventAggregator)
+     */
+    void merge(final Measurements other) {
+        for (int i = 0; i < other.size_; i++) {
+            final int index = indexOf(other.names_[i]);
+            if (index < 0) {
+                set(other.names_[i], other.doubles_[i], other.values_[i], other.mins_[i], other.maxs_[i]);
+                continue;
+            }
+            if (doubles_[index] || other.doubles_[i]) {
+                toDouble(index);
+                final double value = asDouble(other.doubles_[i], other.values_[i]);
+                final double min = asDouble(other.doubles_[i], other.mins_[i]);
+                final double max = asDouble(other.doubles_[i], other.maxs_[i]);
+                values_[index] = Double.doubleToRawLongBits(Double.longBitsToDouble(values_[index]) + value);
+                mins_[index] = Double.doubleToRawLongBits(Math.min(Double.longBitsToDouble(mins_[index]), min));
+                maxs_[index] = Double.doubleToRawLongBits(Math.max(Double.longBitsToDouble(maxs_[index]), max));
+            } else {
+                values_[index] += other.values_[i];
+                mins_[index] = Math.min(mins_[index], other.mins_[i]);
+                maxs_[index] = Math.max(maxs_[index], other.maxs_[i]);
+            }
+        }
+    }
+
+    private void toDouble(final int index) {
+        if (!doubles_[index]) {
+            doubles_[index] = true;
+            values_[index] = Double.doubleToRawLongBits((double) values_[index]);
+            mins_[index] = Double.doubleToRawLongBits((double) mins_[index]);
+            maxs_[index] = Double.doubleToRawLongBits((double) maxs_[index]);
+        }
+    }
+
+    private static double asDouble(final boolean isDouble, final long bits) {
+        return isDouble ? Double.longBitsToDouble(bits) : (double) bits;
+    }
+
+    void clear() {
+        for (int i = 0; i < size_; i++) {
+            names_[i] = null;
+        }
+        size_ = 0;
+    }
+
+    /**
+     * @param aggregated true 이면 최소, 최대를 함께 기록
+     */
+    void toJSON(final JSONObject json, final String valuesKey, final String minKey, final String maxKey, final boolean aggregated) throws JSONException {
+        json.put(valuesKey, toJSON(values_));
+        if (aggregated) {
+            json.put(minKey, toJSON(mins_));
+            json.put(maxKey, toJSON(maxs_));
+        }
+    }
+
+    private JSONObject toJSON(final long[] bits) throws JSONException {
+        final JSONObject json = new JSONObject();
+        for (int i = 0; i < size_; i++) {
+            if (doubles_[i]) {
+                json.put(names_[i], Double.longBitsToDouble(bits[i]));
+            } else {
+                json.put(names_[i], bits[i]);
+            }
+        }
+        return json;
+    }
+
+    /**
+     * toJSON 과 같은 내용을 JSON 객체 없이 기록한다.(EnvelopeWriter)
+     * @param aggregated true 이면 최소, 최대를 함께 기록
+     */
+    void writeJSON(final EnvelopeWriter writer, final String valuesKey, final String minKey, final String maxKey, final boolean aggregated) {
+        writer.name(valuesKey);
+        writeJSON(writer, values_);
+        if (aggregated) {
+            writer.name(minKey);
+            writeJSON(writer, mins_);
+            writer.name(maxKey);
+            writeJSON(writer, maxs_);
+        }
+    }
+
+    private void writeJSON(final EnvelopeWriter writer, final long[] bits) {
+        writer.beginObject();
+        for (int i = 0; i < size_; i++) {
+            writer.name(names_[i]);
+            if (doubles_[i]) {
+                writer.value(Double.longBitsToDouble(bits[i]));
+            } else {
+                writer.value(bits[i]);
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * toJSON 으로 기록한 측정값을 읽는다.(min, max 가 없으면 값과 같음)
+     */
+    void fromJSON(final JSONObject values, final JSONObject mins, final JSONObject maxs) throws JSONException {
+        final Iterator<String> names = values.keys();
+        while (names.hasNext()) {
+            final String name = names.next();
+            final Object value = values.get(name);
+            if (!(value instanceof Number)) {
+                continue;
+            }
+            final boolean isDouble = value instanceof Double || value instanceof Float;
+            final long bits = bitsOf((Number) value, isDouble);
+            final Object min = mins == null ? null : mins.opt(name);
+            final Object max = maxs == null ? null : maxs.opt(name);
+            set(name, isDouble, bits,
+                    min instanceof Number ? bitsOf((Number) min, isDouble) : bits,
+                    max instanceof Number ? bitsOf((Number) max, isDouble) : bits);
+        }
+    }
+
+    private static long bitsOf(final Number value, final boolean isDouble) {
+        return isDouble ? Double.doubleToRawLongBits(value.doubleValue()) : value.longValue();
+    }
+}
@@ -0,0 +1,86 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 메모리에만 유지되는 Queue 저장소<br />
+ * 디스크 쓰기가 없으므로 kiosk 등 유실을 허용하는 배포에 사용하며, 프로세스가 종료되면 Queue 의 내용은 사라진다.<br />
+ * 최대 레코드 수를 넘는 추가 요청은 버려진다.
+ */
+class MemoryStorageBackend implements StorageBackend {
+    static final int DEFAULT_MAX_RECORDS = 1000;
+
+    private final int maxRecords_;
+    private final ArrayDeque<byte[]> records_ = new ArrayDeque<>();
+    private long bytes_;
+
+    MemoryStorageBackend(final int maxRecords) {
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("maxRecords must be positive");
+        }
+        maxRecords_ = maxRecords;
+    }
+
+    MemoryStorageBackend() {
+        this(DEFAULT_MAX_RECORDS);
+    }
+
+    @Override
+    public synchronized boolean append(final byte[] record) {
+        if (records_.size() >= maxRecords_) {
+            return false;
+        }
+        records_.addLast(record);
+        bytes_ += record.length;
+        return true;
+    }
+
+    @Override
+    public synchronized List<byte[]> peek(final int max) {
+        final List<byte[]> result = new ArrayList<>(Math.min(max, records_.size()));
+        final Iterator<byte[]> it = records_.iterator();
+        while (it.hasNext() && result.size() < max) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void ack(int count) {
+        while (count-- > 0 && !records_.isEmpty()) {
+            bytes_ -= records_.pollFirst().length;
+        }
+    }
+
+    @Override
+    public synchronized void remove(final int index) {
+        final Iterator<byte[]> it = records_.iterator();
+        for (int i = 0; it.hasNext(); i++) {
+            final byte[] record = it.next();
+            if (i == index) {
+                it.remove();
+                bytes_ -= record.length;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return records_.size();
+    }
+
+    @Override
+    public synchronized long bytes() {
+        return bytes_;
+    }
+
+    @Override
+    public synchronized void clear() {
+        records_.clear();
+        bytes_ = 0;
+    }
+}
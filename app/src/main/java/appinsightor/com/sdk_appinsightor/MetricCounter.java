@@ -0,0 +1,68 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * app metrics counter - AppInsightor.sharedInstance().counter(name) 으로 얻는다.<br />
+ * 여러 스레드에서 동시에 더해도 경합하지 않도록 스레드마다 다른 cell(cache line 간격)에 더하고, snapshot 시 합계를 구한다.(LongAdder 방식)
+ * 수신서버에는 이전 전송 이후 증가량(delta)만 전송한다.
+ *
+ * <p>e.g.</p>
+ * final MetricCounter cacheHit = AppInsightor.sharedInstance().counter("cache_hit");<br />
+ * cacheHit.increment();
+ */
+public final class MetricCounter {
+    private static final int PADDING = 8;//cell 간격(long 8개 = 64 byte)
+    private static final int STRIPES = stripes();
+
+    final String name;
+    private final AtomicLongArray cells_ = new AtomicLongArray(STRIPES * PADDING);
+    private long reported_;//마지막으로 전송한 합계(snapshot 스레드만 사용)
+
+    MetricCounter(final String name) {
+        this.name = name;
+    }
+
+    private static int stripes() {
+        final int cpus = Runtime.getRuntime().availableProcessors();
+        final int stripes = Integer.highestOneBit(Math.max(1, cpus)) << 1;
+        return Math.min(stripes, 64);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * @param delta 더할 값
+     */
+    public void add(final long delta) {
+        final long id = Thread.currentThread().getId();
+        final int cell = ((int) (id * 0x9E3779B9L) >>> 16 & (STRIPES - 1)) * PADDING;
+        final long value = cells_.get(cell);
+        if (!cells_.compareAndSet(cell, value, value + delta)) {
+            cells_.getAndAdd(((cell / PADDING + 1) & (STRIPES - 1)) * PADDING, delta);//경합시 옆 cell
+        }
+    }
+
+    /**
+     * @return 현재 합계
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells_.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * @return 이전 호출 이후 증가량(snapshot 스레드에서만 호출)
+     */
+    long delta() {
+        final long sum = sum();
+        final long delta = sum - reported_;
+        reported_ = sum;
+        return delta;
+    }
+}
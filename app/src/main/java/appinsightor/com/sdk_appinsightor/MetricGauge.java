@@ -0,0 +1,18 @@
+package appinsightor.com.sdk_appinsightor;
+
+/**
+ * app metrics gauge - AppInsightor.sharedInstance().registerGauge(name, gauge) 로 등록한다.<br />
+ * 값은 기록하지 않고 app metrics 를 전송할 때만 value() 를 호출하여 읽으며, 이전 전송 이후 값이 바뀐 경우에만 전송한다.
+ * value() 는 SDK 의 이벤트 스레드 또는 전송을 요청한 스레드에서 호출되므로 짧게 끝나야 한다.
+ *
+ * <p>e.g.</p>
+ * AppInsightor.sharedInstance().registerGauge("memory_used", new MetricGauge() {<br />
+ * &nbsp;&nbsp;&nbsp;&nbsp;public double value() { return runtime.totalMemory() - runtime.freeMemory(); }<br />
+ * });
+ */
+public interface MetricGauge {
+    /**
+     * @return 현재 값
+     */
+    double value();
+}
@@ -0,0 +1,42 @@
+package appinsightor.com.sdk_appinsightor;
+
+/**
+ * app metrics timer - AppInsightor.sharedInstance().timer(name) 으로 얻는다.<br />
+ * 처리 시간(ms)을 {@link LatencyHistogram} 에 lock 없이 기록하고, 이전 전송 이후 기록한 count, sum, min, max 와 bucket 배열을 전송한다.
+ *
+ * <p>e.g.</p>
+ * final MetricTimer dbWait = AppInsightor.sharedInstance().timer("db_pool_wait");<br />
+ * final long start = dbWait.start();<br />
+ * ...<br />
+ * dbWait.stop(start);
+ */
+public final class MetricTimer {
+    final String name;
+    final LatencyHistogram histogram;
+
+    MetricTimer(final String name) {
+        this.name = name;
+        this.histogram = new LatencyHistogram(name);
+    }
+
+    /**
+     * @return 측정 시작 시점(stop 에 전달)
+     */
+    public long start() {
+        return AppInsightor.monotonicNanos();
+    }
+
+    /**
+     * @param start start() 가 반환한 값
+     */
+    public void stop(final long start) {
+        histogram.record(AppInsightor.elapsedMs(start));
+    }
+
+    /**
+     * @param durationMs 처리 시간(ms)
+     */
+    public void record(final long durationMs) {
+        histogram.record(durationMs);
+    }
+}
@@ -0,0 +1,135 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * app metrics(counter, gauge, timer) 등록과 전송할 변화량 snapshot<br />
+ * 이벤트 전송(BatchPolicy, onStop, flushEvents)시 snapshot() 으로 이전 전송 이후 변화량만 JSON 으로 만들어 이벤트 요청 메시지의 app_metrics 로 전송한다.
+ *
+ * <p>app_metrics</p>
+ * {"interval_ms": 이전 snapshot 이후 시간, "counters": {name: 증가량}, "gauges": {name: 값(바뀐 경우)},
+ * "timers": {name: {"count", "sum", "min", "max", "buckets": [index, count, ...]}}}
+ */
+class MetricsRegistry {
+    private final ConcurrentHashMap<String, MetricCounter> counters_ = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, MetricGauge> gauges_ = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, MetricTimer> timers_ = new ConcurrentHashMap<>();
+    private final Map<String, Double> reportedGauges_ = new ConcurrentHashMap<>();//마지막으로 전송한 gauge 값
+    private long lastSnapshotNanos_ = AppInsightor.monotonicNanos();
+
+    MetricCounter counter(final String name) {
+        MetricCounter counter = counters_.get(name);
+        if (counter == null) {
+            final MetricCounter created = new MetricCounter(name);
+            counter = counters_.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    MetricTimer timer(final String name) {
+        MetricTimer timer = timers_.get(name);
+        if (timer == null) {
+            final MetricTimer created = new MetricTimer(name);
+            timer = timers_.putIfAbsent(name, created);
+            if (timer == null) {
+                timer = created;
+            }
+        }
+        return timer;
+    }
+
+    void registerGauge(final String name, final MetricGauge gauge) {
+        gauges_.put(name, gauge);
+    }
+
+    void unregisterGauge(final String name) {
+        gauges_.remove(name);
+        reportedGauges_.remove(name);
+    }
+
+    /**
+     * 이전 snapshot 이후 변화량을 JSON 으로 만든다.(한번에 한 스레드만 호출)
+     * @return 변화가 없으면 null
+     */
+    synchronized String snapshot() {
+        try {
+            final JSONObject counters = new JSONObject();
+            for (MetricCounter counter : counters_.values()) {
+                final long delta = counter.delta();
+                if (delta != 0) {
+                    counters.put(counter.name, delta);
+                }
+            }
+
+            final JSONObject gauges = new JSONObject();
+            for (Map.Entry<String, MetricGauge> entry : gauges_.entrySet()) {
+                final double value;
+                try {
+                    value = entry.getValue().value();
+                } catch (RuntimeException e) {
+                    Log.w(AppInsightor.TAG, "gauge " + entry.getKey() + " error", e);
+                    continue;
+                }
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    continue;
+                }
+                final Double reported = reportedGauges_.put(entry.getKey(), value);
+                if (reported == null || reported != value) {
+                    gauges.put(entry.getKey(), value);
+                }
+            }
+
+            final JSONObject timers = new JSONObject();
+            for (MetricTimer timer : timers_.values()) {
+                final Event snapshot = timer.histogram.snapshot();
+                if (snapshot == null) {
+                    continue;
+                }
+                final JSONObject json = new JSONObject();
+                json.put("count", snapshot.count);
+                json.put("sum", (long) snapshot.dur);
+                json.put("min", (long) snapshot.durMin);
+                json.put("max", (long) snapshot.durMax);
+                final JSONArray buckets = new JSONArray();
+                for (long value : snapshot.histogram) {
+                    buckets.put(value);
+                }
+                json.put("buckets", buckets);
+                timers.put(timer.name, json);
+            }
+
+            final long now = AppInsightor.monotonicNanos();
+            final long intervalMs = (now - lastSnapshotNanos_) / 1000000L;
+            lastSnapshotNanos_ = now;
+            if (counters.length() == 0 && gauges.length() == 0 && timers.length() == 0) {
+                return null;
+            }
+            final JSONObject metrics = new JSONObject();
+            metrics.put("interval_ms", intervalMs);
+            if (counters.length() > 0) {
+                metrics.put("counters", counters);
+            }
+            if (gauges.length() > 0) {
+                metrics.put("gauges", gauges);
+            }
+            if (timers.length() > 0) {
+                metrics.put("sub_bucket_bits", LatencyHistogram.SUB_BUCKET_BITS);
+                metrics.put("timers", timers);
+            }
+            return metrics.toString();
+        } catch (JSONException e) {
+            Log.w(AppInsightor.TAG, "app metrics JSON error", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 여러 Android 프로세스(e.g. :sync, :media)가 함께 사용하는 Queue 저장소(StorageType.MULTI_PROCESS)<br />
+ * 각 프로세스는 자신의 디렉토리에 있는 {@link FileJournal} 에만 기록하므로 서로의 레코드를 덮어쓰지 않으며,
+ * {@link UploaderElection} 으로 선출된 전송 프로세스 하나만 모든 프로세스의 레코드를 읽어서 전송한다.
+ *
+ * <p>디렉토리 구성</p>
+ * e.g. files/appinsightor/mp/connections/&lt;프로세스명&gt;-&lt;pid&gt;/ - 세그먼트, ack, owner.lock, consumed<br />
+ * owner.lock - 디렉토리를 소유한 프로세스가 살아있는 동안 lock 을 유지한다.<br />
+ * consumed - 전송 프로세스가 기록하는, 전송이 끝난 마지막 일련번호. 소유 프로세스가 읽고 자신의 저널에서 ack 한다.
+ *
+ * <p>전송 프로세스</p>
+ * 다른 프로세스의 저널은 읽기만 하며(consumed 이하 레코드 제외), 전송 후 consumed 만 기록한다.<br />
+ * owner.lock 을 잡을 수 있는 디렉토리는 소유 프로세스가 종료된 것이므로, 저널을 직접 열어 전송하고 비워지면 삭제한다.<br />
+ * peek/ack 는 한번에 한 디렉토리(source)의 레코드만 다루며, source 가 비워질 때까지 바꾸지 않는다.
+ * 따라서 전송 도중 다른 프로세스가 레코드를 추가해도 전송하지 않은 레코드가 ack 되지 않는다.<br />
+ * 전송 후 consumed 기록 전에 종료된 경우 다시 전송될 수 있으며, 수신서버는 일련번호(seq)로 중복을 제거한다.
+ *
+ * <p>제약</p>
+ * 용량 제한과 eviction 은 자신의 저널에만 적용하며({@link #evictionTarget()}), 각 프로세스가 자신의 레코드를 제한한다.
+ * 따라서 전송 프로세스가 읽는 전체 레코드 수는 용량보다 많을 수 있다. compaction 도 자신의 저널만 수행한다.
+ */
+class MultiProcessStorageBackend implements StorageBackend, BoundedStorageBackend.Compactable, BoundedStorageBackend.Evictable {
+    private static final String OWNER_LOCK = "owner.lock";
+    private static final String CONSUMED_FILE = "consumed";
+    private static final long REFRESH_MS = 1000;//다른 프로세스 Queue 크기를 다시 계산하는 간격
+    private static final int READ_AHEAD = 256;//실행중인 다른 프로세스의 저널에서 한번에 읽는 레코드 수
+
+    private final File laneDir_;
+    private final UploaderElection election_;
+    private final BoundedStorageBackend.Sequence sequence_;
+    private final Owned own_;
+    private final Map<File, Owned> adopted_ = new LinkedHashMap<>();//종료된 프로세스의 디렉토리
+    private File current_;//전송중인 source 디렉토리
+    private File pendingDir_;//pending_ 을 읽은 디렉토리
+    private final List<byte[]> pending_ = new ArrayList<>();//실행중인 다른 프로세스에서 미리 읽은 레코드
+    private long ownConsumed_;
+    private int othersSize_;
+    private long othersBytes_;
+    private long refreshedAt_;
+    private final StorageBackend ownJournal_ = new OwnJournal();
+
+    /**
+     * 이 프로세스의 디렉토리를 열고 owner.lock 을 잡는다.
+     * @param laneDir Queue 디렉토리
+     * @param processName 프로세스 디렉토리 이름
+     * @param election 전송 프로세스 선출
+     * @param sequence 레코드 일련번호
+     * @throws IOException 디렉토리 또는 파일을 열 수 없는 경우
+     */
+    MultiProcessStorageBackend(final File laneDir, final String processName, final UploaderElection election,
+                               final BoundedStorageBackend.Sequence sequence) throws IOException {
+        laneDir_ = laneDir;
+        election_ = election;
+        sequence_ = sequence;
+        if (!laneDir.isDirectory() && !laneDir.mkdirs()) {
+            throw new IOException("cannot create directory " + laneDir);
+        }
+        Owned own = Owned.create(laneDir, processName);
+        if (own == null) {//pid 재사용 등으로 같은 이름의 디렉토리가 남아있거나 다른 프로세스가 사용중
+            try {
+                own = Owned.tryOpen(new File(laneDir, processName));
+            } catch (IOException ignored) {//전송 프로세스가 삭제중
+            }
+        }
+        if (own == null) {
+            own = Owned.create(laneDir, processName + "-" + System.currentTimeMillis());
+        }
+        if (own == null) {
+            throw new IOException("cannot lock process directory in " + laneDir);
+        }
+        own_ = own;
+    }
+
+    /**
+     * 소유한(lock 을 잡은) 디렉토리의 저널
+     */
+    private static final class Owned {
+        final File dir;
+        final FileJournal journal;
+        final RandomAccessFile lockFile;
+        final FileLock lock;
+
+        private Owned(final File dir, final FileJournal journal, final RandomAccessFile lockFile, final FileLock lock) {
+            this.dir = dir;
+            this.journal = journal;
+            this.lockFile = lockFile;
+            this.lock = lock;
+        }
+
+        /**
+         * 임시 디렉토리에서 owner.lock 을 잡은 후 이름을 바꾼다.
+         * 전송 프로세스가 lock 을 잡기 전의 새 디렉토리를 종료된 프로세스의 디렉토리로 보고 삭제하지 않도록 한다.
+         * @return 같은 이름의 디렉토리가 이미 있으면 null
+         */
+        static Owned create(final File laneDir, final String name) throws IOException {
+            final File dir = new File(laneDir, name);
+            if (dir.exists()) {
+                return null;
+            }
+            final File tmp = new File(laneDir, "." + name);
+            if (!tmp.isDirectory() && !tmp.mkdirs()) {
+                throw new IOException("cannot create directory " + tmp);
+            }
+            final RandomAccessFile lockFile = new RandomAccessFile(new File(tmp, OWNER_LOCK), "rw");
+            final FileLock lock = lockFile.getChannel().lock();
+            if (!tmp.renameTo(dir)) {
+                lock.release();
+                lockFile.close();
+                new File(tmp, OWNER_LOCK).delete();
+                tmp.delete();
+                return null;
+            }
+            return new Owned(dir, new FileJournal(dir), lockFile, lock);
+        }
+
+        /**
+         * @return owner.lock 을 잡지 못하면(소유 프로세스가 살아있으면) null
+         */
+        static Owned tryOpen(final File dir) throws IOException {
+            if (!dir.isDirectory()) {
+                return null;
+            }
+            final RandomAccessFile lockFile = new RandomAccessFile(new File(dir, OWNER_LOCK), "rw");
+            FileLock lock = null;
+            try {
+                lock = lockFile.getChannel().tryLock();
+            } catch (OverlappingFileLockException ignored) {//이 프로세스가 이미 잡고 있음
+            } finally {
+                if (lock == null) {
+                    lockFile.close();
+                }
+            }
+            return lock == null ? null : new Owned(dir, new FileJournal(dir), lockFile, lock);
+        }
+
+        /**
+         * 저널을 닫고 lock 을 해제한다. 디렉토리는 남겨두며 다음 실행이나 전송 프로세스가 다시 연다.
+         */
+        void close() {
+            journal.close();
+            try {
+                lock.release();
+                lockFile.close();
+            } catch (IOException ignored) {}
+        }
+
+        /**
+         * 저널을 닫고 디렉토리를 삭제한 후 lock 을 해제한다.
+         */
+        void delete() {
+            journal.close();
+            final File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.getName().equals(OWNER_LOCK)) {
+                        file.delete();
+                    }
+                }
+            }
+            new File(dir, OWNER_LOCK).delete();
+            dir.delete();
+            try {
+                lock.release();
+                lockFile.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static long readConsumed(final File dir) {
+        final File file = new File(dir, CONSUMED_FILE);
+        if (file.length() < 8) {
+            return 0;
+        }
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                final FileLock lock = raf.getChannel().lock();
+                try {
+                    return raf.readLong();
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "consumed read error : " + dir, e);
+            return 0;
+        }
+    }
+
+    private static void writeConsumed(final File dir, final long seq) {
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(new File(dir, CONSUMED_FILE), "rw");
+            try {
+                final FileLock lock = raf.getChannel().lock();
+                try {
+                    raf.writeLong(seq);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "consumed write error : " + dir, e);
+        }
+    }
+
+    /**
+     * 전송 프로세스가 기록한 consumed 이하의 레코드를 저널에서 ack 한다.
+     */
+    private static long applyConsumed(final Owned owned, final long applied, final BoundedStorageBackend.Sequence sequence) {
+        final long consumed = readConsumed(owned.dir);
+        if (consumed <= applied) {
+            return applied;
+        }
+        int count = 0;
+        for (int max = 16; ; max *= 2) {
+            final List<byte[]> head = owned.journal.peek(max);
+            while (count < head.size() && sequence.of(head.get(count)) <= consumed) {
+                count++;
+            }
+            if (count < head.size() || head.size() < max) {
+                break;
+            }
+        }
+        owned.journal.ack(count);
+        return consumed;
+    }
+
+    private void applyOwnConsumed() {
+        ownConsumed_ = applyConsumed(own_, ownConsumed_, sequence_);
+    }
+
+    /**
+     * 다른 프로세스 디렉토리 목록
+     */
+    private List<File> otherDirs() {
+        final File[] dirs = laneDir_.listFiles();
+        final List<File> result = new ArrayList<>();
+        if (dirs != null) {
+            Arrays.sort(dirs);
+            for (File dir : dirs) {
+                if (dir.isDirectory() && !dir.getName().startsWith(".") && !dir.equals(own_.dir)) {
+                    result.add(dir);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 종료된 프로세스의 디렉토리라면 저널을 직접 연다.
+     * @return 종료된 프로세스의 저널, 소유 프로세스가 살아있으면 null
+     */
+    private Owned adopt(final File dir) {
+        Owned owned = adopted_.get(dir);
+        if (owned != null) {
+            return owned;
+        }
+        try {
+            owned = Owned.tryOpen(dir);
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "process directory open error : " + dir, e);
+            return null;
+        }
+        if (owned != null) {
+            applyConsumed(owned, 0, sequence_);
+            adopted_.put(dir, owned);
+        }
+        return owned;
+    }
+
+    /**
+     * source 디렉토리의 레코드를 읽는다.
+     */
+    private List<byte[]> peekSource(final File dir, final int max) {
+        if (dir.equals(own_.dir)) {
+            return own_.journal.peek(max);
+        }
+        final Owned owned = adopt(dir);
+        if (owned != null) {
+            return owned.journal.peek(max);
+        }
+        return peekLive(dir, max);
+    }
+
+    /**
+     * 실행중인 다른 프로세스의 저널에서 전송하지 않은 레코드를 READ_AHEAD 개씩 미리 읽는다.
+     */
+    private List<byte[]> peekLive(final File dir, final int max) {
+        if (!dir.equals(pendingDir_)) {
+            pending_.clear();
+            pendingDir_ = dir;
+        }
+        if (pending_.size() < max) {
+            final long afterSeq = pending_.isEmpty() ? readConsumed(dir) : sequence_.of(pending_.get(pending_.size() - 1));
+            pending_.addAll(FileJournal.scan(dir, Math.max(max, READ_AHEAD) - pending_.size(), sequence_, afterSeq));
+        }
+        return new ArrayList<>(pending_.subList(0, Math.min(max, pending_.size())));
+    }
+
+    /**
+     * 전송할 source 를 정한다. 전송중인 source 가 비워질 때까지 유지하며, 이 프로세스의 레코드를 먼저 전송한다.
+     */
+    private File currentSource() {
+        if (current_ != null && !peekSource(current_, 1).isEmpty()) {
+            return current_;
+        }
+        current_ = null;
+        releaseEmptyAdopted();
+        if (own_.journal.size() > 0) {
+            current_ = own_.dir;
+        } else if (election_.isUploader()) {
+            for (File dir : otherDirs()) {
+                if (!peekSource(dir, 1).isEmpty()) {
+                    current_ = dir;
+                    break;
+                }
+            }
+            releaseEmptyAdopted();
+        }
+        return current_;
+    }
+
+    /**
+     * 비워진 종료 프로세스 디렉토리를 삭제한다.
+     */
+    private void releaseEmptyAdopted() {
+        final Iterator<Owned> it = adopted_.values().iterator();
+        while (it.hasNext()) {
+            final Owned owned = it.next();
+            if (owned.journal.size() == 0 && !owned.dir.equals(current_)) {
+                owned.delete();
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean append(final byte[] record) {
+        return own_.journal.append(record);
+    }
+
+    @Override
+    public synchronized List<byte[]> peek(final int max) {
+        applyOwnConsumed();
+        final File source = currentSource();
+        return source == null ? new ArrayList<byte[]>() : peekSource(source, max);
+    }
+
+    @Override
+    public synchronized void ack(final int count) {
+        if (count <= 0) {
+            return;
+        }
+        applyOwnConsumed();
+        final File source = currentSource();
+        if (source == null) {
+            return;
+        }
+        if (source.equals(own_.dir)) {
+            own_.journal.ack(count);
+        } else {
+            final Owned owned = adopt(source);
+            if (owned != null) {
+                owned.journal.ack(count);
+            } else {
+                final List<byte[]> acked = peekLive(source, count);
+                if (!acked.isEmpty()) {
+                    writeConsumed(source, sequence_.of(acked.get(acked.size() - 1)));
+                    pending_.subList(0, acked.size()).clear();
+                }
+            }
+            refreshedAt_ = 0;
+        }
+    }
+
+    @Override
+    public synchronized void remove(final int index) {
+        applyOwnConsumed();
+        final File source = currentSource();
+        if (source == null) {
+            return;
+        }
+        if (source.equals(own_.dir)) {
+            own_.journal.remove(index);
+            return;
+        }
+        final Owned owned = adopt(source);
+        if (owned != null) {
+            owned.journal.remove(index);
+            refreshedAt_ = 0;
+        }
+        //실행중인 다른 프로세스의 레코드는 제거할 수 없다.
+    }
+
+    /**
+     * 다른 프로세스의 Queue 크기를 다시 계산한다.(전송 프로세스만, 최대 REFRESH_MS 마다)
+     */
+    private void refreshOthers() {
+        final long now = System.currentTimeMillis();
+        if (now - refreshedAt_ < REFRESH_MS) {
+            return;
+        }
+        refreshedAt_ = now;
+        othersSize_ = 0;
+        othersBytes_ = 0;
+        if (!election_.isUploader()) {
+            return;
+        }
+        for (File dir : otherDirs()) {
+            final Owned owned = adopt(dir);
+            if (owned != null) {
+                othersSize_ += owned.journal.size();
+                othersBytes_ += owned.journal.bytes();
+            } else {
+                for (byte[] record : FileJournal.scan(dir, Integer.MAX_VALUE, sequence_, readConsumed(dir))) {
+                    othersSize_++;
+                    othersBytes_ += record.length;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        applyOwnConsumed();
+        refreshOthers();
+        return own_.journal.size() + othersSize_;
+    }
+
+    @Override
+    public synchronized long bytes() {
+        applyOwnConsumed();
+        refreshOthers();
+        return own_.journal.bytes() + othersBytes_;
+    }
+
+    /**
+     * 이 프로세스의 저널만 다루는 저장소(용량 제한, eviction 대상)<br />
+     * 전송중인 source 와 관계없이 항상 이 프로세스의 레코드만 읽고 제거한다.
+     */
+    private final class OwnJournal implements StorageBackend {
+        @Override
+        public boolean append(final byte[] record) {
+            return MultiProcessStorageBackend.this.append(record);
+        }
+
+        @Override
+        public List<byte[]> peek(final int max) {
+            synchronized (MultiProcessStorageBackend.this) {
+                applyOwnConsumed();
+                return own_.journal.peek(max);
+            }
+        }
+
+        @Override
+        public void ack(final int count) {
+            synchronized (MultiProcessStorageBackend.this) {
+                applyOwnConsumed();
+                own_.journal.ack(count);
+            }
+        }
+
+        @Override
+        public void remove(final int index) {
+            synchronized (MultiProcessStorageBackend.this) {
+                applyOwnConsumed();
+                own_.journal.remove(index);
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (MultiProcessStorageBackend.this) {
+                applyOwnConsumed();
+                return own_.journal.size();
+            }
+        }
+
+        @Override
+        public long bytes() {
+            synchronized (MultiProcessStorageBackend.this) {
+                applyOwnConsumed();
+                return own_.journal.bytes();
+            }
+        }
+
+        @Override
+        public void clear() {
+            MultiProcessStorageBackend.this.clear();
+        }
+    }
+
+    /**
+     * @return 이 프로세스의 저널만 다루는 저장소, 다른 프로세스의 레코드는 용량 초과로 버리지 않는다.
+     */
+    @Override
+    public StorageBackend evictionTarget() {
+        return ownJournal_;
+    }
+
+    /**
+     * 이 프로세스의 저널만 compaction 한다.
+     */
+    @Override
+    public synchronized void compact(final BoundedStorageBackend.Expiry expiry, final long now,
+                                     final BoundedStorageBackend.Compaction result) {
+        applyOwnConsumed();
+        own_.journal.compact(expiry, now, result);
+    }
+
+    /**
+     * 이 프로세스의 Queue 만 비운다.
+     */
+    @Override
+    public synchronized void clear() {
+        own_.journal.clear();
+        ownConsumed_ = 0;
+        new File(own_.dir, CONSUMED_FILE).delete();
+    }
+
+    /**
+     * 이 프로세스와 종료된 프로세스의 저널을 닫고 owner.lock 을 해제한다. 이후 이 객체는 사용할 수 없다.
+     */
+    synchronized void close() {
+        own_.close();
+        for (Owned owned : adopted_.values()) {
+            owned.close();
+        }
+        adopted_.clear();
+        pending_.clear();
+        current_ = null;
+    }
+}
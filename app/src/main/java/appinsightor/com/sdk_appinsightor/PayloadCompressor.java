@@ -0,0 +1,131 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * POST 본문 압축(Content-Encoding: gzip, deflate)<br />
+ * Deflater 와 출력 buffer 를 재사용하며, gzip header/trailer(CRC32, 길이)는 직접 기록한다.
+ * 압축 결과의 길이를 먼저 알아야 Content-Length 로 전송할 수 있으므로 buffer 에 압축한 후 전송한다.<br />
+ * 전송 스레드(ConnectionProcessor)에서만 사용한다.
+ *
+ * <p>preset dictionary</p>
+ * 요청 메시지마다 반복되는 envelope, metrics, crash key 와 stack trace 를 {@link CompressionDictionary} 로 미리 알려주어
+ * 작은 요청 메시지도 압축되도록 한다. gzip 은 preset dictionary 를 지원하지 않으므로 zlib 형식(FDICT, Content-Encoding: deflate)으로
+ * 전송하며, 수신서버는 DICTIONARY_HEADER 의 ID 로 dictionary 를 고른다.
+ *
+ * <p>fallback</p>
+ * 수신서버가 gzip 본문을 거부(415)하면 reject() 를 호출하며, 이후 앱 프로세스가 끝날 때까지 압축하지 않는다.<br />
+ * dictionary 본문을 거부(415, 또는 DICTIONARY_HEADER 가 있는 400)하면 rejectDictionary() 를 호출하며,
+ * 이후 dictionary 없이 gzip 으로 압축한다.
+ */
+class PayloadCompressor {
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };//magic, CM, FLG, MTIME(4), XFL, OS(unknown)
+    private static final int TRAILER_LENGTH = 8;//CRC32, ISIZE
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;//이보다 큰 buffer 는 다음 압축시 줄인다.
+
+    static final String DICTIONARY_HEADER = "X-AppInsightor-Dictionary";//요청: dictionary ID, 응답(400): 수신서버에 없는 dictionary
+
+    private final Deflater deflater_ = new Deflater(Deflater.DEFAULT_COMPRESSION, true);//nowrap(raw deflate)
+    private final Deflater dictionaryDeflater_ = new Deflater(Deflater.DEFAULT_COMPRESSION);//zlib(FDICT)
+    private final CRC32 crc_ = new CRC32();
+    private byte[] buffer_ = new byte[DEFAULT_BUFFER_SIZE];
+    private volatile boolean rejected_;
+    private volatile boolean dictionaryRejected_;
+
+    /**
+     * @return 수신서버가 gzip 본문을 거부했으면 true
+     */
+    boolean isRejected() {
+        return rejected_;
+    }
+
+    void reject() {
+        rejected_ = true;
+    }
+
+    /**
+     * @return 수신서버가 dictionary 본문을 거부했으면 true
+     */
+    boolean isDictionaryRejected() {
+        return dictionaryRejected_;
+    }
+
+    void rejectDictionary() {
+        dictionaryRejected_ = true;
+    }
+
+    /**
+     * @param input 압축할 본문(앞에서부터 inputLength byte)
+     * @return 압축 결과 길이(결과는 buffer() 의 앞에서부터)
+     */
+    int gzip(final byte[] input, final int inputLength) {
+        trimBuffer(inputLength);
+        System.arraycopy(GZIP_HEADER, 0, buffer_, 0, GZIP_HEADER.length);
+        deflater_.reset();
+        int length = deflate(deflater_, input, inputLength, GZIP_HEADER.length);
+
+        crc_.reset();
+        crc_.update(input, 0, inputLength);
+        if (length + TRAILER_LENGTH > buffer_.length) {
+            buffer_ = Arrays.copyOf(buffer_, length + TRAILER_LENGTH);
+        }
+        length = writeIntLE(buffer_, length, (int) crc_.getValue());
+        return writeIntLE(buffer_, length, inputLength);
+    }
+
+    /**
+     * CompressionDictionary 를 preset dictionary 로 사용하여 zlib 형식으로 압축한다.
+     * @param input 압축할 본문(앞에서부터 inputLength byte)
+     * @return 압축 결과 길이(결과는 buffer() 의 앞에서부터)
+     */
+    int deflateWithDictionary(final byte[] input, final int inputLength) {
+        trimBuffer(inputLength);
+        dictionaryDeflater_.reset();
+        final byte[] dictionary = CompressionDictionary.bytes();
+        dictionaryDeflater_.setDictionary(dictionary, 0, dictionary.length);
+        return deflate(dictionaryDeflater_, input, inputLength, 0);
+    }
+
+    private void trimBuffer(final int inputLength) {
+        final int estimate = GZIP_HEADER.length + inputLength / 2 + 64 + TRAILER_LENGTH;
+        if (buffer_.length > MAX_RETAINED_BUFFER_SIZE && estimate <= MAX_RETAINED_BUFFER_SIZE) {
+            buffer_ = new byte[DEFAULT_BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * @param offset buffer 에 기록을 시작할 위치
+     * @return 기록이 끝난 위치
+     */
+    private int deflate(final Deflater deflater, final byte[] input, final int inputLength, int offset) {
+        deflater.setInput(input, 0, inputLength);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (offset == buffer_.length) {
+                buffer_ = Arrays.copyOf(buffer_, buffer_.length * 2);
+            }
+            offset += deflater.deflate(buffer_, offset, buffer_.length - offset);
+        }
+        return offset;
+    }
+
+    /**
+     * @return 마지막 gzip(), deflateWithDictionary() 결과
+     */
+    byte[] buffer() {
+        return buffer_;
+    }
+
+    private static int writeIntLE(final byte[] buffer, int offset, final int value) {
+        buffer[offset++] = (byte) value;
+        buffer[offset++] = (byte) (value >>> 8);
+        buffer[offset++] = (byte) (value >>> 16);
+        buffer[offset++] = (byte) (value >>> 24);
+        return offset;
+    }
+}
@@ -0,0 +1,127 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 이전 버전의 SharedPreferences Queue 저장소<br />
+ * 모든 레코드를 분리자(":::")로 연결한 하나의 문자열로 저장하며, 추가/제거시마다 전체 문자열을 다시 만들어 commit 한다.<br />
+ * 호환성과 비교 측정을 위해 유지한다.<br />
+ * binary 레코드는 Base64 로 변환하여 "~" 를 앞에 붙여 저장하며, 그 외의 문자열은 이전 버전의 UTF-8 문자열 레코드로 읽는다.
+ */
+class PreferencesStorageBackend implements StorageBackend {
+    static final String DELIMITER = ":::";//Queue에 쌓여 있는 요청 항목들간의 문자열 전환시 분리자
+    private static final String BINARY_PREFIX = "~";
+
+    private final SharedPreferences preferences_;
+    private final String key_;
+
+    /**
+     * @param preferences SharedPreferences
+     * @param key Queue 문자열을 저장할 preference key (e.g. "CONNECTIONS", "EVENTS")
+     */
+    PreferencesStorageBackend(final SharedPreferences preferences, final String key) {
+        preferences_ = preferences;
+        key_ = key;
+    }
+
+    private List<String> records() {
+        final String joined = preferences_.getString(key_, "");
+        return joined.length() == 0 ? new ArrayList<String>() : new ArrayList<>(Arrays.asList(joined.split(DELIMITER)));
+    }
+
+    private void commit(final List<String> records) {
+        if (records.isEmpty()) {
+            preferences_.edit().remove(key_).commit();
+        } else {
+            preferences_.edit().putString(key_, join(records, DELIMITER)).commit();
+        }
+    }
+
+    @Override
+    public synchronized boolean append(final byte[] record) {
+        final List<String> records = records();
+        records.add(BINARY_PREFIX + Base64.encodeToString(record, Base64.NO_WRAP));
+        commit(records);
+        return true;
+    }
+
+    @Override
+    public synchronized List<byte[]> peek(final int max) {
+        final List<String> records = records();
+        final List<byte[]> result = new ArrayList<>(Math.min(max, records.size()));
+        for (int i = 0; i < records.size() && result.size() < max; i++) {
+            result.add(toRecord(records.get(i)));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void ack(final int count) {
+        final List<String> records = records();
+        if (count > 0 && !records.isEmpty()) {
+            commit(records.subList(Math.min(count, records.size()), records.size()));
+        }
+    }
+
+    @Override
+    public synchronized void remove(final int index) {
+        final List<String> records = records();
+        if (index >= 0 && index < records.size()) {
+            records.remove(index);
+            commit(records);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return records().size();
+    }
+
+    @Override
+    public synchronized long bytes() {
+        long bytes = 0;
+        for (String s : records()) {
+            bytes += toRecord(s).length;
+        }
+        return bytes;
+    }
+
+    private static byte[] toRecord(final String str) {
+        if (str.startsWith(BINARY_PREFIX)) {
+            return Base64.decode(str.substring(BINARY_PREFIX.length()), Base64.NO_WRAP);
+        }
+        return AppInsightorStore.toBytes(str);
+    }
+
+    @Override
+    public synchronized void clear() {
+        preferences_.edit().remove(key_).commit();
+    }
+
+    /**
+     * ok-
+     * List, Set, ArrayList 등의 순서나 집합적인 저장데이터 Collection의 모든 문자열을
+     * 지정된 분리자로 연결, 단일 문자열로 조인한다.
+     * @param collection List, Set 등의 collection type data
+     * @param delimiter 분리자
+     * @return string
+     */
+    static String join(final Collection<String> collection, final String delimiter) {
+        final StringBuilder builder = new StringBuilder();
+
+        int i = 0;
+        for (String s : collection) {
+            builder.append(s);
+            if (++i < collection.size()) {
+                builder.append(delimiter);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package appinsightor.com.sdk_appinsightor;
+
+/**
+ * 요청 메시지 Queue 의 용량(레코드 수, byte 수)과 용량 초과시 처리 방식<br />
+ * AppInsightor.setConnectionQueueCapacity(), setEventQueueCapacity() 로 init 호출 전에 지정한다.
+ *
+ * <p>e.g.</p>
+ * new QueueCapacity(1000, 4 * 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST)
+ */
+public class QueueCapacity {
+
+    /**
+     * Queue 가 가득 찼을 때 새 레코드의 처리 방식<br />
+     * 버려진 레코드는 모두 drop counter 에 집계되어 다음 전송시 수신서버에 함께 전달된다.
+     */
+    public enum OverflowPolicy {
+        /** 새 레코드를 버린다.(이전 버전의 동작) */
+        DROP_NEWEST,
+        /** 가장 오래된 레코드를 버리고 새 레코드를 저장한다. */
+        DROP_OLDEST,
+        /** 우선순위가 가장 낮은 레코드 중 가장 오래된 것을 버린다. 새 레코드의 우선순위가 가장 낮다면 새 레코드를 버린다. */
+        DROP_LOWEST_PRIORITY,
+        /** 보조 디스크 저장소에 이어서 저장한다. 보조 저장소도 가득 차면 새 레코드를 버린다. */
+        SPILL_TO_DISK
+    }
+
+    static final QueueCapacity DEFAULT_CONNECTIONS = new QueueCapacity(1000, 4L * 1024 * 1024, OverflowPolicy.DROP_LOWEST_PRIORITY);
+    static final QueueCapacity DEFAULT_EVENTS = new QueueCapacity(1000, 1024L * 1024, OverflowPolicy.DROP_OLDEST);
+
+    final int maxRecords;
+    final long maxBytes;
+    final OverflowPolicy overflowPolicy;
+    final long spillMaxBytes;
+
+    /**
+     * @param maxRecords 최대 레코드 수
+     * @param maxBytes 최대 byte 수
+     * @param overflowPolicy 용량 초과시 처리 방식
+     * @param spillMaxBytes SPILL_TO_DISK 인 경우 보조 디스크 저장소의 최대 byte 수
+     * @throws IllegalArgumentException 값이 올바르지 않은 경우
+     */
+    public QueueCapacity(int maxRecords, long maxBytes, OverflowPolicy overflowPolicy, long spillMaxBytes) {
+        if (maxRecords <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxRecords and maxBytes must be positive");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("valid overflowPolicy is required");
+        }
+        if (spillMaxBytes < 0) {
+            throw new IllegalArgumentException("spillMaxBytes must not be negative");
+        }
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.overflowPolicy = overflowPolicy;
+        this.spillMaxBytes = spillMaxBytes;
+    }
+
+    public QueueCapacity(int maxRecords, long maxBytes, OverflowPolicy overflowPolicy) {
+        this(maxRecords, maxBytes, overflowPolicy, overflowPolicy == OverflowPolicy.SPILL_TO_DISK ? 16L * 1024 * 1024 : 0);
+    }
+}
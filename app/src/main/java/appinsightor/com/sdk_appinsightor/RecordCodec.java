@@ -0,0 +1,521 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Queue 에 저장되는 요청 메시지({@link ConnectionRecord})와 이벤트({@link Event})의 binary 변환<br />
+ * query string 과 JSON 문자열을 ":::" 로 연결하던 방식 대신, 필드 tag 와 varint 길이를 가진 binary 형식으로 저장한다.
+ *
+ * <p>형식(version 1)</p>
+ * [version byte][필드]... 이벤트 레코드<br />
+ * [version byte][type varint][필드]... 요청 메시지 레코드<br />
+ * 필드 = [tag varint = (field number &lt;&lt; 3) | wire type][값]
+ * <ul>
+ *     <li>WIRE_VARINT - varint 정수</li>
+ *     <li>WIRE_FIXED64 - 8byte little-endian (double)</li>
+ *     <li>WIRE_BYTES - varint 길이 + UTF-8 문자열 또는 중첩 레코드</li>
+ *     <li>WIRE_STRING_REF - {@link StringTable} 번호(varint)</li>
+ * </ul>
+ * 일련번호(seq)는 ack 시 빠르게 확인할 수 있도록 첫 필드로, 만료 시간은 compaction 시 빠르게 확인할 수 있도록 두번째 필드로 기록한다.<br />
+ * 알 수 없는 필드는 wire type 에 따라 건너뛰므로 필드를 추가해도 이전 레코드를 읽을 수 있다.<br />
+ * 첫 byte 가 version 이 아닌 레코드는 이전 버전의 query string / JSON 문자열로 읽는다.
+ */
+class RecordCodec {
+    static final int VERSION = 1;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_BYTES = 2;
+    private static final int WIRE_STRING_REF = 3;
+
+    //ConnectionRecord fields
+    private static final int F_SERVER_NAME = 1;
+    private static final int F_CATEGORY = 2;
+    private static final int F_APP_NAME = 3;
+    private static final int F_APP_VERSION = 4;
+    private static final int F_DEVICE_ID = 5;
+    private static final int F_TIMESTAMP = 6;
+    private static final int F_SDK_NAME = 7;
+    private static final int F_SDK_VERSION = 8;
+    private static final int F_SESSION_STATUS = 9;
+    private static final int F_METRICS = 10;
+    private static final int F_CRASH = 11;
+    private static final int F_EVENT = 12;
+    private static final int F_DROPPED_REQUESTS = 13;
+    private static final int F_DROPPED_EVENTS = 14;
+    private static final int F_SEQ = 15;
+    private static final int F_EXPIRES_AT = 16;
+    private static final int F_MAX_ATTEMPTS = 17;
+    private static final int F_APP_METRICS = 18;
+
+    //Event fields
+    private static final int E_KEY = 1;
+    private static final int E_COUNT = 2;
+    private static final int E_TIMESTAMP = 3;
+    private static final int E_DUR = 4;
+    private static final int E_SEGMENT_KEY = 5;
+    private static final int E_SEGMENT_VALUE = 6;
+    private static final int E_SEQ = 7;//Queue 레코드에만 기록(요청 메시지에 포함된 이벤트는 기록하지 않음)
+    private static final int E_DUR_MIN = 8;//합쳐진 이벤트(count > 1)에만 기록
+    private static final int E_DUR_MAX = 9;
+    private static final int E_MEASURE_NAME = 10;//측정값 = 이름, 값(long 또는 double), 합쳐진 이벤트는 최소, 최대
+    private static final int E_MEASURE_LONG = 11;
+    private static final int E_MEASURE_DOUBLE = 12;
+    private static final int E_MEASURE_MIN = 13;
+    private static final int E_MEASURE_MAX = 14;
+    private static final int E_SAMPLE_RATE = 15;//sampling 된 이벤트(rate < 1)에만 기록
+    private static final int E_HISTOGRAM = 16;//처리 시간 분포 - varint 배열 [bucket index, count, ...]
+
+    private final StringTable strings_;
+
+    /**
+     * @param strings 문자열 테이블, null 이면 문자열을 레코드에 그대로 기록한다.(여러 프로세스가 같은 Queue 를 읽는 경우)
+     */
+    RecordCodec(final StringTable strings) {
+        strings_ = strings;
+    }
+
+    /**
+     * 요청 메시지를 binary 레코드로 변환한다.
+     */
+    byte[] encode(final ConnectionRecord record) {
+        if (record.type == ConnectionRecord.TYPE_LEGACY) {
+            return AppInsightorStore.toBytes(record.legacy);
+        }
+        final Output out = new Output(256);
+        out.writeByte(VERSION);
+        out.writeVarint(record.type);
+        writeVarint(out, F_SEQ, record.seq);
+        writeVarint(out, F_EXPIRES_AT, record.expiresAt);
+        writeVarint(out, F_MAX_ATTEMPTS, record.maxAttempts);
+        writeString(out, F_SERVER_NAME, record.serverName, true);
+        writeString(out, F_CATEGORY, record.category, true);
+        writeString(out, F_APP_NAME, record.appName, true);
+        writeString(out, F_APP_VERSION, record.appVersion, true);
+        writeString(out, F_DEVICE_ID, record.deviceId, true);
+        writeVarint(out, F_TIMESTAMP, record.timestamp);
+        writeString(out, F_SDK_NAME, record.sdkName, true);
+        writeString(out, F_SDK_VERSION, record.sdkVersion, true);
+        writeString(out, F_SESSION_STATUS, record.sessionStatus, true);
+        writeString(out, F_METRICS, record.metrics, false);
+        writeString(out, F_CRASH, record.crash, false);
+        writeString(out, F_APP_METRICS, record.appMetrics, false);
+        if (record.events != null) {
+            for (Event event : record.events) {
+                final byte[] nested = encodeEventFields(event, new Output(64)).toByteArray();
+                out.writeTag(F_EVENT, WIRE_BYTES);
+                out.writeVarint(nested.length);
+                out.write(nested);
+            }
+        }
+        writeVarint(out, F_DROPPED_REQUESTS, record.droppedRequests);
+        writeVarint(out, F_DROPPED_EVENTS, record.droppedEvents);
+        return out.toByteArray();
+    }
+
+    /**
+     * binary 레코드를 요청 메시지로 변환한다. JSON 객체를 만들지 않는다.
+     */
+    ConnectionRecord decode(final byte[] data) {
+        final ConnectionRecord record = new ConnectionRecord();
+        if (data.length == 0 || data[0] != VERSION) {
+            record.type = ConnectionRecord.TYPE_LEGACY;
+            record.legacy = AppInsightorStore.toString(data);
+            return record;
+        }
+        final Input in = new Input(data, 1, data.length);
+        record.type = (int) in.readVarint();
+        while (in.hasMore()) {
+            final int tag = (int) in.readVarint();
+            final int field = tag >>> 3;
+            final int wire = tag & 0x07;
+            switch (field) {
+                case F_SERVER_NAME: record.serverName = readString(in, wire); break;
+                case F_CATEGORY: record.category = readString(in, wire); break;
+                case F_APP_NAME: record.appName = readString(in, wire); break;
+                case F_APP_VERSION: record.appVersion = readString(in, wire); break;
+                case F_DEVICE_ID: record.deviceId = readString(in, wire); break;
+                case F_TIMESTAMP: record.timestamp = in.readVarint(); break;
+                case F_SDK_NAME: record.sdkName = readString(in, wire); break;
+                case F_SDK_VERSION: record.sdkVersion = readString(in, wire); break;
+                case F_SESSION_STATUS: record.sessionStatus = readString(in, wire); break;
+                case F_METRICS: record.metrics = readString(in, wire); break;
+                case F_CRASH: record.crash = readString(in, wire); break;
+                case F_APP_METRICS: record.appMetrics = readString(in, wire); break;
+                case F_EVENT:
+                    final int length = (int) in.readVarint();
+                    if (record.events == null) {
+                        record.events = new ArrayList<>();
+                    }
+                    record.events.add(decodeEventFields(new Input(data, in.pos, in.pos + length)));
+                    in.pos += length;
+                    break;
+                case F_DROPPED_REQUESTS: record.droppedRequests = in.readVarint(); break;
+                case F_DROPPED_EVENTS: record.droppedEvents = in.readVarint(); break;
+                case F_SEQ: record.seq = in.readVarint(); break;
+                case F_EXPIRES_AT: record.expiresAt = in.readVarint(); break;
+                case F_MAX_ATTEMPTS: record.maxAttempts = (int) in.readVarint(); break;
+                default: in.skip(wire); break;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * 레코드 전체를 읽지 않고 요청 메시지 종류만 확인한다.
+     * @return ConnectionRecord.TYPE_*
+     */
+    static int typeOf(final byte[] data) {
+        if (data.length == 0 || data[0] != VERSION) {
+            return ConnectionRecord.TYPE_LEGACY;
+        }
+        return (int) new Input(data, 1, data.length).readVarint();
+    }
+
+    /**
+     * 레코드 전체를 읽지 않고 요청 메시지의 일련번호만 확인한다.
+     * @return 일련번호, 이전 버전 레코드는 0
+     */
+    static long seqOf(final byte[] data) {
+        if (data.length == 0 || data[0] != VERSION) {
+            return 0;
+        }
+        final Input in = new Input(data, 1, data.length);
+        in.readVarint();//type
+        return findVarint(in, F_SEQ);
+    }
+
+    /**
+     * 레코드 전체를 읽지 않고 요청 메시지의 만료 시간만 확인한다.
+     * @return 만료 시간, 만료되지 않는 레코드(이전 버전 레코드 포함)는 0
+     */
+    static long expiresAtOf(final byte[] data) {
+        if (data.length == 0 || data[0] != VERSION) {
+            return 0;
+        }
+        final Input in = new Input(data, 1, data.length);
+        in.readVarint();//type
+        return findVarint(in, F_EXPIRES_AT);
+    }
+
+    /**
+     * 레코드 전체를 읽지 않고 이벤트의 일련번호만 확인한다.
+     * @return 일련번호, 이전 버전 레코드는 0
+     */
+    static long eventSeqOf(final byte[] data) {
+        if (data.length == 0 || data[0] != VERSION) {
+            return 0;
+        }
+        return findVarint(new Input(data, 1, data.length), E_SEQ);
+    }
+
+    private static long findVarint(final Input in, final int field) {
+        while (in.hasMore()) {
+            final int tag = (int) in.readVarint();
+            if (tag >>> 3 == field && (tag & 0x07) == WIRE_VARINT) {
+                return in.readVarint();
+            }
+            in.skip(tag & 0x07);
+        }
+        return 0;
+    }
+
+    /**
+     * 이벤트를 binary 레코드로 변환한다.
+     */
+    byte[] encodeEvent(final Event event) {
+        final Output out = new Output(64);
+        out.writeByte(VERSION);
+        writeVarint(out, E_SEQ, event.seq);
+        return encodeEventFields(event, out).toByteArray();
+    }
+
+    /**
+     * binary 레코드를 이벤트로 변환한다. 이전 버전의 JSON 레코드도 읽는다.
+     * @return 이벤트, key 가 없는 잘못된 레코드인 경우 null
+     */
+    Event decodeEvent(final byte[] data) {
+        if (data.length == 0 || data[0] != VERSION) {
+            try {
+                return Event.fromJSON(new JSONObject(AppInsightorStore.toString(data)));
+            } catch (JSONException e) {
+                return null;
+            }
+        }
+        final Event event = decodeEventFields(new Input(data, 1, data.length));
+        return event.key != null && event.key.length() > 0 ? event : null;
+    }
+
+    private Output encodeEventFields(final Event event, final Output out) {
+        writeString(out, E_KEY, event.key, true);
+        writeVarint(out, E_COUNT, event.count);
+        writeVarint(out, E_TIMESTAMP, event.timestamp);
+        if (event.dur > 0) {
+            out.writeTag(E_DUR, WIRE_FIXED64);
+            out.writeFixed64(Double.doubleToLongBits(event.dur));
+        }
+        if (event.sampleRate < EventSampler.FULL_RATE) {
+            out.writeTag(E_SAMPLE_RATE, WIRE_FIXED64);
+            out.writeFixed64(Double.doubleToLongBits(event.sampleRate));
+        }
+        if (event.count > 1 && event.durMax > 0) {
+            out.writeTag(E_DUR_MIN, WIRE_FIXED64);
+            out.writeFixed64(Double.doubleToLongBits(event.durMin));
+            out.writeTag(E_DUR_MAX, WIRE_FIXED64);
+            out.writeFixed64(Double.doubleToLongBits(event.durMax));
+        }
+        if (event.segmentation != null) {
+            for (Map.Entry<String, String> entry : event.segmentation.entrySet()) {
+                writeString(out, E_SEGMENT_KEY, entry.getKey(), true);
+                writeString(out, E_SEGMENT_VALUE, entry.getValue(), false);
+            }
+        }
+        if (event.histogram != null) {
+            final Output buckets = new Output(event.histogram.length * 2 + 8);
+            for (long value : event.histogram) {
+                buckets.writeVarint(value);
+            }
+            out.writeTag(E_HISTOGRAM, WIRE_BYTES);
+            out.writeVarint(buckets.count);
+            out.write(buckets.toByteArray());
+        }
+        final Measurements measurements = event.measurements;
+        if (measurements != null) {
+            for (int i = 0; i < measurements.size(); i++) {
+                writeString(out, E_MEASURE_NAME, measurements.name(i), true);
+                out.writeTag(measurements.isDouble(i) ? E_MEASURE_DOUBLE : E_MEASURE_LONG, WIRE_FIXED64);
+                out.writeFixed64(measurements.bits(i));
+                if (event.count > 1) {
+                    out.writeTag(E_MEASURE_MIN, WIRE_FIXED64);
+                    out.writeFixed64(measurements.minBits(i));
+                    out.writeTag(E_MEASURE_MAX, WIRE_FIXED64);
+                    out.writeFixed64(measurements.maxBits(i));
+                }
+            }
+        }
+        return out;
+    }
+
+    private Event decodeEventFields(final Input in) {
+        final Event event = new Event();
+        String segmentKey = null;
+        String measureName = null;
+        boolean measureDouble = false;
+        long measureBits = 0;
+        long measureMin = 0;
+        while (in.hasMore()) {
+            final int tag = (int) in.readVarint();
+            final int field = tag >>> 3;
+            final int wire = tag & 0x07;
+            switch (field) {
+                case E_KEY: event.key = readString(in, wire); break;
+                case E_COUNT: event.count = (int) in.readVarint(); break;
+                case E_TIMESTAMP: event.timestamp = in.readVarint(); break;
+                case E_DUR: event.dur = Double.longBitsToDouble(in.readFixed64()); break;
+                case E_SAMPLE_RATE: event.sampleRate = Double.longBitsToDouble(in.readFixed64()); break;
+                case E_DUR_MIN: event.durMin = Double.longBitsToDouble(in.readFixed64()); break;
+                case E_DUR_MAX: event.durMax = Double.longBitsToDouble(in.readFixed64()); break;
+                case E_SEQ: event.seq = in.readVarint(); break;
+                case E_SEGMENT_KEY: segmentKey = readString(in, wire); break;
+                case E_SEGMENT_VALUE:
+                    if (event.segmentation == null) {
+                        event.segmentation = new HashMap<>();
+                    }
+                    event.segmentation.put(segmentKey, readString(in, wire));
+                    break;
+                case E_HISTOGRAM:
+                    event.histogram = readVarints(in, (int) in.readVarint());
+                    break;
+                case E_MEASURE_NAME: measureName = readString(in, wire); break;
+                case E_MEASURE_LONG:
+                case E_MEASURE_DOUBLE:
+                    measureDouble = field == E_MEASURE_DOUBLE;
+                    measureBits = measureMin = in.readFixed64();
+                    event.measurementsBuffer().set(measureName, measureDouble, measureBits, measureBits, measureBits);
+                    break;
+                case E_MEASURE_MIN: measureMin = in.readFixed64(); break;
+                case E_MEASURE_MAX://최소 다음에 기록
+                    event.measurementsBuffer().set(measureName, measureDouble, measureBits, measureMin, in.readFixed64());
+                    break;
+                default: in.skip(wire); break;
+            }
+        }
+        return event;
+    }
+
+    private static long[] readVarints(final Input in, final int length) {
+        final int end = in.pos + length;
+        long[] values = new long[16];
+        int count = 0;
+        while (in.pos < end) {
+            if (count == values.length) {
+                final long[] grown = new long[count * 2];
+                System.arraycopy(values, 0, grown, 0, count);
+                values = grown;
+            }
+            values[count++] = in.readVarint();
+        }
+        final long[] result = new long[count];
+        System.arraycopy(values, 0, result, 0, count);
+        return result;
+    }
+
+    private void writeString(final Output out, final int field, final String value, final boolean intern) {
+        if (value == null) {
+            return;
+        }
+        final int index = intern && strings_ != null ? strings_.indexOf(value) : -1;
+        if (index >= 0) {
+            out.writeTag(field, WIRE_STRING_REF);
+            out.writeVarint(index);
+        } else {
+            final byte[] bytes = AppInsightorStore.toBytes(value);
+            out.writeTag(field, WIRE_BYTES);
+            out.writeVarint(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeVarint(final Output out, final int field, final long value) {
+        if (value != 0) {
+            out.writeTag(field, WIRE_VARINT);
+            out.writeVarint(value);
+        }
+    }
+
+    private String readString(final Input in, final int wire) {
+        if (wire == WIRE_STRING_REF) {
+            final int index = (int) in.readVarint();
+            return strings_ == null ? null : strings_.get(index);
+        }
+        final int length = (int) in.readVarint();
+        try {
+            final String value = new String(in.data, in.pos, length, "UTF-8");
+            in.pos += length;
+            return value;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 크기가 늘어나는 byte buffer
+     */
+    static final class Output {
+        byte[] buf;
+        int count;
+
+        Output(final int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensure(final int extra) {
+            if (count + extra > buf.length) {
+                final byte[] grown = new byte[Math.max(buf.length * 2, count + extra)];
+                System.arraycopy(buf, 0, grown, 0, count);
+                buf = grown;
+            }
+        }
+
+        void writeByte(final int b) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        void write(final byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, count, bytes.length);
+            count += bytes.length;
+        }
+
+        void writeTag(final int field, final int wire) {
+            writeVarint((field << 3) | wire);
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[count++] = (byte) value;
+        }
+
+        void writeFixed64(final long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buf[count++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        byte[] toByteArray() {
+            final byte[] result = new byte[count];
+            System.arraycopy(buf, 0, result, 0, count);
+            return result;
+        }
+    }
+
+    /**
+     * byte 배열의 [pos, limit) 구간을 읽는다.
+     */
+    static final class Input {
+        final byte[] data;
+        int pos;
+        final int limit;
+
+        Input(final byte[] data, final int pos, final int limit) {
+            this.data = data;
+            this.pos = pos;
+            this.limit = limit;
+        }
+
+        boolean hasMore() {
+            return pos < limit;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = data[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            return value;
+        }
+
+        long readFixed64() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (long) (data[pos++] & 0xFF) << (8 * i);
+            }
+            return value;
+        }
+
+        void skip(final int wire) {
+            switch (wire) {
+                case WIRE_VARINT:
+                case WIRE_STRING_REF:
+                    readVarint();
+                    break;
+                case WIRE_FIXED64:
+                    pos += 8;
+                    break;
+                case WIRE_BYTES:
+                    final int length = (int) readVarint();
+                    pos += length;
+                    break;
+                default:
+                    pos = limit;//알 수 없는 wire type 이후는 읽지 않는다.
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 재사용하는 이벤트 segmentation Map - 배열에 key, value 를 순서대로 저장한다.<br />
+ * put, get, clear, hashCode 는 객체를 만들지 않으므로(배열을 늘리는 경우 제외) pool 에서 꺼낸 {@link Event} 에 다시 사용한다.<br />
+ * equals, hashCode 는 다른 Map 구현(HashMap 등)과 같은 규약을 따른다.<br />
+ * 동기화하지 않으므로 한번에 한 스레드만 사용한다.
+ */
+class SegmentationMap extends AbstractMap<String, String> {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] keys_ = new String[INITIAL_CAPACITY];
+    private String[] values_ = new String[INITIAL_CAPACITY];
+    private int size_;
+
+    @Override
+    public int size() {
+        return size_;
+    }
+
+    private int indexOf(final Object key) {
+        for (int i = 0; i < size_; i++) {
+            if (keys_[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(final Object key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : values_[index];
+    }
+
+    @Override
+    public String put(final String key, final String value) {
+        final int index = indexOf(key);
+        if (index >= 0) {
+            final String old = values_[index];
+            values_[index] = value;
+            return old;
+        }
+        if (size_ == keys_.length) {
+            final String[] keys = new String[size_ * 2];
+            final String[] values = new String[size_ * 2];
+            System.arraycopy(keys_, 0, keys, 0, size_);
+            System.arraycopy(values_, 0, values, 0, size_);
+            keys_ = keys;
+            values_ = values;
+        }
+        keys_[size_] = key;
+        values_[size_] = value;
+        size_++;
+        return null;
+    }
+
+    @Override
+    public void putAll(final Map<? extends String, ? extends String> m) {
+        for (Map.Entry<? extends String, ? extends String> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public String remove(final Object key) {
+        final int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        final String old = values_[index];
+        removeAt(index);
+        return old;
+    }
+
+    private void removeAt(final int index) {
+        final int moved = size_ - index - 1;
+        System.arraycopy(keys_, index + 1, keys_, index, moved);
+        System.arraycopy(values_, index + 1, values_, index, moved);
+        size_--;
+        keys_[size_] = null;
+        values_[size_] = null;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size_; i++) {
+            keys_[i] = null;
+            values_[i] = null;
+        }
+        size_ = 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < size_; i++) {
+            hash += keys_[i].hashCode() ^ (values_[i] == null ? 0 : values_[i].hashCode());
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!(o instanceof SegmentationMap)) {
+            return super.equals(o);
+        }
+        final SegmentationMap m = (SegmentationMap) o;
+        if (m.size_ != size_) {
+            return false;
+        }
+        for (int i = 0; i < size_; i++) {
+            final int index = m.indexOf(keys_[i]);
+            if (index < 0 || !equal(values_[i], m.values_[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(final String a, final String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * index 순서 접근(객체를 만들지 않는 JSON 기록, EnvelopeWriter)
+     */
+    String keyAt(final int index) {
+        return keys_[index];
+    }
+
+    String valueAt(final int index) {
+        return values_[index];
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int next_;
+                    private int last_ = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next_ < size_;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (next_ >= size_) {
+                            throw new NoSuchElementException();
+                        }
+                        last_ = next_++;
+                        return new AbstractMap.SimpleImmutableEntry<>(keys_[last_], values_[last_]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last_ < 0) {
+                            throw new IllegalStateException();
+                        }
+                        removeAt(last_);
+                        next_ = last_;
+                        last_ = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size_;
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+
+/**
+ * Queue 레코드에 부여하는 64bit 일련번호(1 부터 단조 증가)<br />
+ * 재시작 후에도 이전 번호보다 큰 번호를 부여하기 위해, 사용할 번호를 BLOCK 개씩 미리 SharedPreferences 에 예약한다.
+ * 프로세스가 종료되면 예약 후 사용하지 않은 번호는 건너뛴다.<br />
+ * 일련번호는 Queue 의 ack 위치와 수신서버 중복 제거용 idempotency key(seq) 로 사용한다.
+ *
+ * <p>MULTI_PROCESS</p>
+ * 여러 프로세스가 번호를 나누어 쓰는 경우 SharedPreferences 대신 파일에 예약 번호를 기록하며, 파일 lock 을 잡고 예약한다.
+ * 각 프로세스가 부여하는 번호는 프로세스 안에서 증가하고 프로세스 사이에서 겹치지 않는다.
+ */
+class SequenceGenerator {
+    static final int BLOCK = 1024;
+    private static final String SEQUENCE_PREFERENCE = "SEQUENCE";
+
+    private final SharedPreferences preferences_;
+    private final RandomAccessFile file_;
+    private final int block_;
+    private long next_;//마지막으로 부여한 번호
+    private long reserved_;//예약된 마지막 번호
+
+    /**
+     * @param preferences 예약 번호를 저장할 SharedPreferences
+     */
+    SequenceGenerator(final SharedPreferences preferences) {
+        preferences_ = preferences;
+        file_ = null;
+        block_ = BLOCK;
+        reserved_ = preferences_.getLong(SEQUENCE_PREFERENCE, 0);
+        next_ = reserved_;
+    }
+
+    /**
+     * 여러 프로세스가 함께 사용하는 일련번호
+     * @param file 예약 번호를 저장할 파일
+     * @param block 한번에 예약할 번호 수
+     * @throws IOException 파일을 열 수 없는 경우
+     */
+    SequenceGenerator(final File file, final int block) throws IOException {
+        preferences_ = null;
+        file_ = new RandomAccessFile(file, "rw");
+        block_ = block;
+    }
+
+    /**
+     * @return 다음 일련번호
+     */
+    synchronized long next() {
+        if (next_ >= reserved_) {
+            reserve();
+        }
+        return ++next_;
+    }
+
+    private void reserve() {
+        if (file_ == null) {
+            reserved_ = next_ + block_;
+            save();
+            return;
+        }
+        try {
+            final FileLock lock = file_.getChannel().lock();
+            try {
+                if (file_.length() >= 8) {
+                    file_.seek(0);
+                    next_ = Math.max(next_, file_.readLong());
+                }
+                reserved_ = next_ + block_;
+                file_.seek(0);
+                file_.writeLong(reserved_);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "sequence reserve error", e);
+            reserved_ = next_ + block_;
+        }
+    }
+
+    /**
+     * SharedPreferences 가 초기화된 경우(AppInsightorStore.clear()) 예약 번호를 다시 기록한다.
+     */
+    synchronized void save() {
+        if (preferences_ != null) {
+            preferences_.edit().putLong(SEQUENCE_PREFERENCE, reserved_).commit();
+        }
+    }
+
+    /**
+     * 예약 번호 파일을 닫는다.(MULTI_PROCESS)
+     */
+    synchronized void close() {
+        if (file_ == null) {
+            return;
+        }
+        try {
+            file_.close();
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "sequence file close error", e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.List;
+
+/**
+ * 요청 메시지 Queue 저장소 SPI<br />
+ * ConnectionQueue, EventQueue, ConnectionProcessor 는 이 interface 를 통해서만 Queue 에 접근한다.<br />
+ * Queue 는 FIFO 이며, 전송이 끝난 레코드는 앞에서부터 ack 하여 제거한다.
+ *
+ * <p>구현</p>
+ * <ul>
+ *     <li>{@link PreferencesStorageBackend} - 이전 버전의 SharedPreferences 문자열 방식</li>
+ *     <li>{@link FileJournal} - append-only 세그먼트 파일</li>
+ *     <li>{@link MemoryStorageBackend} - 최대 갯수가 제한된 메모리 Queue(프로세스 종료시 유실)</li>
+ * </ul>
+ * 저장소 오류는 구현 내부에서 로그로 처리하며 예외를 던지지 않는다.
+ */
+public interface StorageBackend {
+
+    /**
+     * 레코드를 Queue 의 끝에 추가한다.
+     * @param record payload
+     * @return 저장되었다면 true, 저장소 오류 또는 용량 초과로 버려졌다면 false
+     */
+    boolean append(byte[] record);
+
+    /**
+     * 오래된 순서로 최대 max 개의 레코드를 읽는다.(Queue 에서 제거하지 않음)
+     * @param max 최대 레코드 수
+     * @return 레코드 목록
+     */
+    List<byte[]> peek(int max);
+
+    /**
+     * Queue 의 앞에서부터 count 개의 레코드를 제거한다.
+     * @param count 제거할 레코드 수
+     */
+    void ack(int count);
+
+    /**
+     * Queue 중간의 레코드 하나를 제거한다.<br />
+     * 용량 초과시 eviction 용도이며 구현에 따라 O(n) 이 될 수 있다.
+     * @param index 0 부터 시작하는 Queue 내 위치
+     */
+    void remove(int index);
+
+    /**
+     * @return Queue 에 남아있는 레코드 수
+     */
+    int size();
+
+    /**
+     * @return Queue 에 남아있는 레코드가 차지하는 byte 수
+     */
+    long bytes();
+
+    /**
+     * Queue 를 비운다.
+     */
+    void clear();
+}
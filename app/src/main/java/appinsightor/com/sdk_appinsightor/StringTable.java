@@ -0,0 +1,78 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link RecordCodec} 에서 반복되는 문자열(app_name, app_version, device_id, sdk_version, 이벤트 key 등)을
+ * 레코드마다 기록하지 않고 번호로 참조하기 위한 문자열 테이블<br />
+ * 테이블은 추가만 가능하며(번호가 바뀌지 않음), 새 문자열이 추가될 때만 SharedPreferences 에 저장한다.<br />
+ * 최대 갯수에 도달하면 이후 문자열은 레코드에 그대로 기록된다.
+ */
+class StringTable {
+    static final int MAX_ENTRIES = 1024;
+    static final int MAX_LENGTH = 128;//이보다 긴 문자열은 테이블에 넣지 않는다.
+    private static final String TABLE_PREFERENCE = "STRING_TABLE";
+
+    private final SharedPreferences preferences_;
+    private final List<String> strings_ = new ArrayList<>();
+    private final Map<String, Integer> indexes_ = new HashMap<>();
+
+    /**
+     * @param preferences 테이블을 저장할 SharedPreferences (null 이면 메모리에만 유지)
+     */
+    StringTable(final SharedPreferences preferences) {
+        preferences_ = preferences;
+        if (preferences_ != null) {
+            final String saved = preferences_.getString(TABLE_PREFERENCE, null);
+            if (saved != null) {
+                try {
+                    final JSONArray array = new JSONArray(saved);
+                    for (int i = 0; i < array.length(); i++) {
+                        add(array.getString(i));
+                    }
+                } catch (JSONException ignored) {}
+            }
+        }
+    }
+
+    private void add(final String str) {
+        indexes_.put(str, strings_.size());
+        strings_.add(str);
+    }
+
+    /**
+     * 문자열의 번호를 반환하며, 테이블에 없다면 추가한다.
+     * @param str 문자열
+     * @return 번호, 테이블에 넣을 수 없는 경우 -1
+     */
+    synchronized int indexOf(final String str) {
+        final Integer index = indexes_.get(str);
+        if (index != null) {
+            return index;
+        }
+        if (strings_.size() >= MAX_ENTRIES || str.length() > MAX_LENGTH) {
+            return -1;
+        }
+        add(str);
+        if (preferences_ != null) {
+            preferences_.edit().putString(TABLE_PREFERENCE, new JSONArray(strings_).toString()).commit();
+        }
+        return strings_.size() - 1;
+    }
+
+    /**
+     * @param index 번호
+     * @return 문자열, 없는 번호인 경우 null
+     */
+    synchronized String get(final int index) {
+        return index >= 0 && index < strings_.size() ? strings_.get(index) : null;
+    }
+}
@@ -0,0 +1,151 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 진행중인 timed event table - 같은 key 의 이벤트를 여러개 동시에 측정할 수 있도록 key 대신 handle(long)로 구분한다.<br />
+ * lock 없는 open-addressed table 로, slot 상태를 CAS 로 바꾸어 차지하고 비운다.
+ *
+ * <p>handle</p>
+ * handle = (발급 번호 &lt;&lt; index bits) | slot index 이므로 종료시 탐색 없이 slot 을 찾으며,
+ * 발급 번호가 다르면 이미 종료, 취소 또는 만료된 handle 로 보고 무시한다.(0 은 발급하지 않음)
+ *
+ * <p>slot 상태</p>
+ * 0 = 비어있음, BUSY = 기록/삭제중, 그 외 = 진행중인 handle<br />
+ * key, 시작 시간은 BUSY 상태에서 기록한 후 handle 을 volatile 로 기록하여 공개한다.
+ *
+ * <p>제한</p>
+ * 진행중인 이벤트가 maxOpen 에 이르면 start 는 0 을 반환한다.
+ * staleTimeoutMs 가 지난 이벤트는 start 호출시 주기적으로 제거하므로 end 를 호출하지 않아도 계속 쌓이지 않는다.
+ */
+class TimedEventTable {
+    static final int DEFAULT_MAX_OPEN = 256;
+    static final long DEFAULT_STALE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+    static final int MAX_OPEN_LIMIT = 1 << 16;
+
+    private static final long BUSY = -1;
+
+    private final int maxOpen_;
+    private final long staleTimeoutNanos_;
+    private final int indexBits_;
+    private final int mask_;
+    private final AtomicLongArray states_;
+    private final String[] keys_;
+    private final long[] startNanos_;
+    private final long[] startWallMs_;
+    private final AtomicLong issued_ = new AtomicLong();
+    private final AtomicInteger open_ = new AtomicInteger();
+    private final AtomicLong nextSweepNanos_;
+
+    /**
+     * @param maxOpen 동시에 진행할 수 있는 이벤트 수
+     * @param staleTimeoutMs 진행중인 이벤트를 제거하는 시간(ms)
+     */
+    TimedEventTable(final int maxOpen, final long staleTimeoutMs) {
+        maxOpen_ = maxOpen;
+        staleTimeoutNanos_ = TimeUnit.MILLISECONDS.toNanos(staleTimeoutMs);
+        final int capacity = Integer.highestOneBit(maxOpen * 2 - 1) << 1;//maxOpen 의 2배 이상인 2 의 거듭제곱
+        indexBits_ = Integer.numberOfTrailingZeros(capacity);
+        mask_ = capacity - 1;
+        states_ = new AtomicLongArray(capacity);
+        keys_ = new String[capacity];
+        startNanos_ = new long[capacity];
+        startWallMs_ = new long[capacity];
+        nextSweepNanos_ = new AtomicLong(System.nanoTime() + staleTimeoutNanos_);
+    }
+
+    /**
+     * timed event 를 시작한다.
+     * @return handle, 진행중인 이벤트가 maxOpen 에 이르면 0
+     */
+    long start(final String key, final long timestampMs) {
+        final long now = System.nanoTime();
+        sweepIfNeeded(now);
+        if (open_.incrementAndGet() > maxOpen_) {
+            open_.decrementAndGet();
+            return 0;
+        }
+        final long issued = issued_.incrementAndGet();
+        int index = (int) (issued * 0x9E3779B9L) & mask_;
+        while (true) {//open_ 이 capacity 의 절반 이하이므로 빈 slot 이 있음
+            if (states_.get(index) == 0 && states_.compareAndSet(index, 0, BUSY)) {
+                final long handle = issued << indexBits_ | index;
+                keys_[index] = key;
+                startNanos_[index] = now;
+                startWallMs_[index] = timestampMs;
+                states_.set(index, handle);//publish
+                return handle;
+            }
+            index = (index + 1) & mask_;
+        }
+    }
+
+    /**
+     * timed event 를 종료하고 key, 시작 시간(timestamp), 처리 시간(dur, ms, monotonic 시간으로 측정)을 이벤트에 기록한다.
+     * @return handle 이 진행중이 아니면(종료, 취소, 만료) false
+     */
+    boolean end(final long handle, final Event event) {
+        final int index = claim(handle);
+        if (index < 0) {
+            return false;
+        }
+        event.key = keys_[index];
+        event.timestamp = startWallMs_[index];
+        event.dur = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos_[index]);
+        release(index);
+        return true;
+    }
+
+    /**
+     * timed event 를 기록하지 않고 취소한다.
+     * @return handle 이 진행중이 아니면 false
+     */
+    boolean cancel(final long handle) {
+        final int index = claim(handle);
+        if (index < 0) {
+            return false;
+        }
+        release(index);
+        return true;
+    }
+
+    /**
+     * @return 진행중인 이벤트 수
+     */
+    int openCount() {
+        return open_.get();
+    }
+
+    private int claim(final long handle) {
+        if (handle <= 0) {
+            return -1;
+        }
+        final int index = (int) handle & mask_;
+        return states_.compareAndSet(index, handle, BUSY) ? index : -1;
+    }
+
+    private void release(final int index) {
+        keys_[index] = null;
+        states_.set(index, 0);
+        open_.decrementAndGet();
+    }
+
+    /**
+     * staleTimeoutMs 가 지난 이벤트를 제거한다.(staleTimeoutMs 의 1/4 마다 한 스레드만 수행)
+     */
+    private void sweepIfNeeded(final long now) {
+        final long next = nextSweepNanos_.get();
+        if (now - next < 0 || !nextSweepNanos_.compareAndSet(next, now + staleTimeoutNanos_ / 4)) {
+            return;
+        }
+        for (int index = 0; index <= mask_; index++) {
+            final long state = states_.get(index);
+            if (state > 0 && now - startNanos_[index] > staleTimeoutNanos_ && states_.compareAndSet(index, state, BUSY)) {
+                release(index);
+            }
+        }
+    }
+}
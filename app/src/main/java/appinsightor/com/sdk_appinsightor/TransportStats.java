@@ -0,0 +1,69 @@
+package appinsightor.com.sdk_appinsightor;
+
+/**
+ * 수신서버 전송 연결 통계(AppInsightor.getTransportStats())<br />
+ * 앱 프로세스 시작 후 누적값이며, 연결 재사용은 https 요청만 확인할 수 있다.
+ */
+public class TransportStats {
+    /** 응답을 받은 요청 수 */
+    public final long requests;
+    /** 응답을 받은 https 요청 수 */
+    public final long tlsRequests;
+    /** 새 연결(TLS handshake) 수 */
+    public final long tlsHandshakes;
+    /** 요청 1건의 평균 시간(us, 연결 ~ 응답 코드) */
+    public final long averageRequestUs;
+    /** gzip 으로 압축하여 전송한 요청 수 */
+    public final long compressedRequests;
+    /** 압축한 요청의 압축 전 본문 byte 수 */
+    public final long uncompressedBytes;
+    /** 압축한 요청의 전송한 본문 byte 수 */
+    public final long compressedBytes;
+    /** 압축에 사용한 시간(us) */
+    public final long compressionUs;
+    /** 수신서버가 gzip 본문을 거부하여 압축하지 않고 전송중이면 true */
+    public final boolean compressionRejected;
+    /** 압축한 요청 중 preset dictionary 로 압축한 요청 수 */
+    public final long dictionaryRequests;
+    /** 수신서버가 preset dictionary 본문을 거부하여 gzip 으로 전송중이면 true */
+    public final boolean dictionaryRejected;
+
+    TransportStats(long requests, long tlsRequests, long tlsHandshakes, long averageRequestUs, long compressedRequests,
+                   long uncompressedBytes, long compressedBytes, long compressionUs, boolean compressionRejected,
+                   long dictionaryRequests, boolean dictionaryRejected) {
+        this.requests = requests;
+        this.tlsRequests = tlsRequests;
+        this.tlsHandshakes = tlsHandshakes;
+        this.averageRequestUs = averageRequestUs;
+        this.compressedRequests = compressedRequests;
+        this.uncompressedBytes = uncompressedBytes;
+        this.compressedBytes = compressedBytes;
+        this.compressionUs = compressionUs;
+        this.compressionRejected = compressionRejected;
+        this.dictionaryRequests = dictionaryRequests;
+        this.dictionaryRejected = dictionaryRejected;
+    }
+
+    /**
+     * @return 기존 연결을 재사용한 https 요청 비율(0 ~ 1), https 요청이 없으면 0
+     */
+    public double reuseRatio() {
+        return tlsRequests == 0 ? 0 : Math.max(0, tlsRequests - tlsHandshakes) / (double) tlsRequests;
+    }
+
+    /**
+     * @return 압축한 요청의 전송 byte 비율(압축 후 / 압축 전), 압축한 요청이 없으면 1
+     */
+    public double compressionRatio() {
+        return uncompressedBytes == 0 ? 1 : compressedBytes / (double) uncompressedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TransportStats{requests=" + requests + ", tlsRequests=" + tlsRequests + ", tlsHandshakes=" + tlsHandshakes
+                + ", reuseRatio=" + reuseRatio() + ", averageRequestUs=" + averageRequestUs
+                + ", compressedRequests=" + compressedRequests + ", compressionRatio=" + compressionRatio()
+                + ", compressionUs=" + compressionUs + ", compressionRejected=" + compressionRejected
+                + ", dictionaryRequests=" + dictionaryRequests + ", dictionaryRejected=" + dictionaryRejected + "}";
+    }
+}
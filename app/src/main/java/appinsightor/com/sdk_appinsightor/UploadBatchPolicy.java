@@ -0,0 +1,65 @@
+package appinsightor.com.sdk_appinsightor;
+
+/**
+ * 요청 메시지 여러 개를 하나의 POST 요청으로 묶어 수신서버에 전송하는 조건(batch 전송)<br />
+ * 기본값 SINGLE 은 요청 메시지마다 HTTP 요청 1건을 전송한다.(이전 버전 동작)<br />
+ * batch 전송은 lane 의 가장 앞에서부터 최대 maxRecords 개, 본문 maxBytes 까지의 요청 메시지를 "c=[...]" 배열로 묶어
+ * 수신서버의 batch endpoint(/ne.nfl?batch=1)로 전송한다. 배열의 각 항목은 단건 전송의 "c=" 값과 같은 형식이다.<br />
+ * AppInsightor.setUploadBatchPolicy() 로 지정하며, 다음 전송부터 적용된다.
+ *
+ * <p>ack</p>
+ * BATCH - 2xx 응답이면 묶어서 보낸 요청 메시지를 모두 Queue 에서 제거한다.<br />
+ * PER_ITEM - 2xx 응답 본문 {"results": [항목별 응답 코드, ...]} 로 항목마다 처리한다.
+ * 앞에서부터 2xx, 4xx 인 항목까지 제거하고, 3xx, 5xx 인 첫 항목부터는 Queue 에 남겨 재시도한다.
+ * (그 뒤에 성공한 항목도 다시 전송하며, 수신서버가 일련번호로 중복 제거한다.)
+ * 응답 본문이 없거나 항목 수가 맞지 않으면 BATCH 와 같이 처리한다.
+ *
+ * <p>e.g.</p>
+ * new UploadBatchPolicy(50, 256 * 1024, UploadBatchPolicy.AckMode.PER_ITEM) - 최대 50개, 256KB
+ */
+public class UploadBatchPolicy {
+
+    /**
+     * batch 전송 응답 처리 방식
+     */
+    public enum AckMode {
+        /** 묶어서 보낸 요청 메시지를 함께 처리 */
+        BATCH,
+        /** 응답 본문의 항목별 응답 코드로 처리 */
+        PER_ITEM
+    }
+
+    /** 요청 메시지마다 HTTP 요청 1건(이전 버전 동작) */
+    public static final UploadBatchPolicy SINGLE = new UploadBatchPolicy();
+
+    final boolean batch;
+    final int maxRecords;
+    final long maxBytes;
+    final AckMode ackMode;
+
+    /**
+     * @param maxRecords 한번에 전송할 최대 요청 메시지 수(저장된 레코드 기준)
+     * @param maxBytes 한번에 전송할 최대 본문 크기(첫 요청 메시지는 크기와 관계없이 전송한다.)
+     * @param ackMode 응답 처리 방식
+     * @throws IllegalArgumentException 값이 올바르지 않은 경우
+     */
+    public UploadBatchPolicy(int maxRecords, long maxBytes, AckMode ackMode) {
+        if (maxRecords <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxRecords and maxBytes must be positive");
+        }
+        if (ackMode == null) {
+            throw new IllegalArgumentException("valid ackMode is required");
+        }
+        this.batch = true;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.ackMode = ackMode;
+    }
+
+    private UploadBatchPolicy() {
+        this.batch = false;
+        this.maxRecords = 1;
+        this.maxBytes = Long.MAX_VALUE;
+        this.ackMode = AckMode.BATCH;
+    }
+}
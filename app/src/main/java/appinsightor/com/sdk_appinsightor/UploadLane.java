@@ -0,0 +1,174 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.content.SharedPreferences;
+
+import java.util.List;
+
+/**
+ * 전송 lane 1개 - 요청 메시지 Queue 와 재시도 대기 상태, 전송 통계<br />
+ * Queue 는 ConnectionQueue 가 추가하고 ConnectionProcessor 가 전송하므로, 상태 변경은 모두 synchronized 로 처리한다.<br />
+ * 항상 Queue 의 가장 앞 요청 메시지부터 전송하므로, 전송 시도 횟수는 가장 앞 요청 메시지의 것만 일련번호와 함께 SharedPreferences 에 기록한다.
+ * (e.g. ATTEMPTS_SESSION = "일련번호:횟수")
+ */
+class UploadLane {
+    final LanePolicy.Lane lane;
+    final LanePolicy policy;
+    final BoundedStorageBackend queue;
+    private final SharedPreferences preferences_;//전송 시도 횟수 저장, null 이면 메모리에만 유지
+    private final String attemptsPreference_;
+
+    private int failures_;//연속 실패 횟수
+    private long retryAt_;//이 시간 전까지 전송하지 않는다.
+    private long credit_;//weighted round robin
+    private long sent_;
+    private long totalWaitMs_;
+    private long maxWaitMs_;
+    private long failureCount_;
+    private long attemptSeq_;//전송 시도 횟수를 기록중인 요청 메시지의 일련번호
+    private int attempts_;
+    private long expired_;
+    private long poisoned_;
+    private long reclaimedBytes_;
+
+    /**
+     * @param preferences 전송 시도 횟수를 저장할 SharedPreferences(null 이면 메모리에만 유지)
+     */
+    UploadLane(final LanePolicy.Lane lane, final LanePolicy policy, final BoundedStorageBackend queue,
+               final SharedPreferences preferences) {
+        this.lane = lane;
+        this.policy = policy;
+        this.queue = queue;
+        preferences_ = preferences;
+        attemptsPreference_ = "ATTEMPTS_" + lane.name();
+        final String saved = preferences == null ? null : preferences.getString(attemptsPreference_, null);
+        if (saved != null) {
+            final int colon = saved.indexOf(':');
+            try {
+                attemptSeq_ = Long.parseLong(saved.substring(0, colon));
+                attempts_ = Integer.parseInt(saved.substring(colon + 1));
+            } catch (RuntimeException ignored) {//잘못된 값은 무시
+            }
+        }
+    }
+
+    UploadLane(final LanePolicy.Lane lane, final LanePolicy policy, final BoundedStorageBackend queue) {
+        this(lane, policy, queue, null);
+    }
+
+    /**
+     * @return 전송할 요청 메시지가 있고 재시도 대기중이 아닌 경우 true
+     */
+    synchronized boolean isReady(final long now) {
+        return now >= retryAt_ && queue.size() > 0;
+    }
+
+    synchronized long addCredit() {
+        credit_ += policy.weight;
+        return credit_;
+    }
+
+    synchronized void useCredit(final long total) {
+        credit_ -= total;
+    }
+
+    /**
+     * 전송 완료(또는 4xx 응답으로 버림), 연속 실패 횟수를 초기화한다.
+     * @param count 전송한 요청 메시지 수
+     * @param waitMs 전송한 요청 메시지들의 대기 시간 합
+     * @param maxWaitMs 전송한 요청 메시지 중 최대 대기 시간
+     */
+    synchronized void onSent(final int count, final long waitMs, final long maxWaitMs) {
+        resetAttempts();
+        failures_ = 0;
+        retryAt_ = 0;
+        sent_ += count;
+        totalWaitMs_ += waitMs;
+        maxWaitMs_ = Math.max(maxWaitMs_, maxWaitMs);
+    }
+
+    /**
+     * 전송 실패, retryBaseMs 부터 2배씩 늘어나는 시간 동안 이 lane 을 전송하지 않는다.
+     */
+    synchronized void onFailure(final long now) {
+        failureCount_++;
+        final long delay = policy.retryBaseMs << Math.min(failures_, 20);
+        failures_++;
+        retryAt_ = now + Math.min(delay, policy.retryMaxMs);
+    }
+
+    /**
+     * 수신서버가 3xx, 5xx 로 응답한 경우 가장 앞 요청 메시지의 전송 시도 횟수를 늘린다.
+     * @param seq 가장 앞 요청 메시지의 일련번호
+     * @return 전송 시도 횟수
+     */
+    synchronized int onAttemptFailed(final long seq) {
+        if (seq != attemptSeq_) {
+            attemptSeq_ = seq;
+            attempts_ = 0;
+        }
+        attempts_++;
+        saveAttempts();
+        return attempts_;
+    }
+
+    /**
+     * 가장 앞 요청 메시지를 전송하지 않고 버림
+     * @param poisoned 최대 전송 시도 횟수에 이른 경우 true, 만료된 경우 false
+     */
+    synchronized void onDropped(final boolean poisoned) {
+        if (poisoned) {
+            poisoned_++;
+        } else {
+            expired_++;
+        }
+        resetAttempts();
+    }
+
+    private void resetAttempts() {
+        if (attempts_ != 0) {
+            attemptSeq_ = 0;
+            attempts_ = 0;
+            saveAttempts();
+        }
+    }
+
+    private void saveAttempts() {
+        if (preferences_ != null) {
+            if (attempts_ == 0) {
+                preferences_.edit().remove(attemptsPreference_).commit();
+            } else {
+                preferences_.edit().putString(attemptsPreference_, attemptSeq_ + ":" + attempts_).commit();
+            }
+        }
+    }
+
+    /**
+     * 만료된 요청 메시지를 제거하고 조각난 저장소를 다시 기록한다.(백그라운드 compaction)
+     * @return 줄어든 저장소 byte 수
+     */
+    long compact(final long now) {
+        final BoundedStorageBackend.Compaction result = queue.compact(ConnectionQueue.EXPIRY, now);
+        synchronized (this) {
+            expired_ += result.expired;
+            reclaimedBytes_ += result.reclaimedBytes;
+        }
+        return result.reclaimedBytes;
+    }
+
+    /**
+     * @param codec 가장 오래된 요청 메시지의 생성 시간 확인용
+     */
+    synchronized LaneStats stats(final long now, final RecordCodec codec) {
+        long oldestWaitMs = 0;
+        final List<byte[]> head = queue.peek(1);
+        if (!head.isEmpty()) {
+            final ConnectionRecord record = codec.decode(head.get(0));
+            if (record != null && record.timestamp > 0) {
+                oldestWaitMs = Math.max(0, now - record.timestamp);
+            }
+        }
+        return new LaneStats(lane, queue.size(), queue.bytes(), oldestWaitMs, sent_,
+                sent_ == 0 ? 0 : totalWaitMs_ / sent_, maxWaitMs_, failureCount_, Math.max(0, retryAt_ - now),
+                expired_, poisoned_, reclaimedBytes_);
+    }
+}
@@ -0,0 +1,132 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 요청 메시지 종류별 전송 lane 묶음과 전송 순서 결정<br />
+ * CRASH lane 은 항상 먼저 전송하며, 나머지 lane 은 weight 비율에 따라 smooth weighted round robin 으로 번갈아 전송한다.
+ */
+class UploadLanes {
+    private final EnumMap<LanePolicy.Lane, UploadLane> lanes_ = new EnumMap<>(LanePolicy.Lane.class);
+
+    void put(final UploadLane lane) {
+        lanes_.put(lane.lane, lane);
+    }
+
+    UploadLane get(final LanePolicy.Lane lane) {
+        return lanes_.get(lane);
+    }
+
+    /**
+     * @param recordType ConnectionRecord.TYPE_*
+     * @return 요청 메시지를 저장할 lane
+     */
+    UploadLane of(final int recordType) {
+        switch (recordType) {
+            case ConnectionRecord.TYPE_CRASH:
+                return lanes_.get(LanePolicy.Lane.CRASH);
+            case ConnectionRecord.TYPE_EVENTS:
+                return lanes_.get(LanePolicy.Lane.EVENTS);
+            default:
+                return lanes_.get(LanePolicy.Lane.SESSION);
+        }
+    }
+
+    /**
+     * 다음에 전송할 lane 을 고른다.
+     * @return 전송할 lane, 모든 lane 이 비어있거나 재시도 대기중이면 null
+     */
+    synchronized UploadLane next(final long now) {
+        final UploadLane crash = lanes_.get(LanePolicy.Lane.CRASH);
+        if (crash.isReady(now)) {
+            return crash;
+        }
+        UploadLane selected = null;
+        long selectedCredit = Long.MIN_VALUE;
+        long total = 0;
+        for (UploadLane lane : lanes_.values()) {
+            if (lane == crash || !lane.isReady(now)) {
+                continue;
+            }
+            total += lane.policy.weight;
+            final long credit = lane.addCredit();
+            if (credit > selectedCredit) {
+                selected = lane;
+                selectedCredit = credit;
+            }
+        }
+        if (selected != null) {
+            selected.useCredit(total);
+        }
+        return selected;
+    }
+
+    /**
+     * @return 모든 lane 에 남아있는 요청 메시지 수
+     */
+    int size() {
+        int size = 0;
+        for (UploadLane lane : lanes_.values()) {
+            size += lane.queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * 모든 lane 의 용량 초과로 버려진 레코드 수를 가져오고 초기화한다.
+     */
+    long takeDropped() {
+        long dropped = 0;
+        for (UploadLane lane : lanes_.values()) {
+            dropped += lane.queue.takeDropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * takeDropped() 로 가져온 값을 기록하지 못한 경우 되돌린다.
+     */
+    void restoreDropped(final long dropped) {
+        lanes_.get(LanePolicy.Lane.SESSION).queue.restoreDropped(dropped);
+    }
+
+    void flush() {
+        for (UploadLane lane : lanes_.values()) {
+            lane.queue.flush();
+        }
+    }
+
+    void clear() {
+        for (UploadLane lane : lanes_.values()) {
+            lane.queue.clear();
+        }
+    }
+
+    void close() {
+        for (UploadLane lane : lanes_.values()) {
+            lane.queue.close();
+        }
+    }
+
+    /**
+     * 모든 lane 의 만료된 요청 메시지를 제거하고 조각난 저장소를 다시 기록한다.
+     * @return 줄어든 저장소 byte 수
+     */
+    long compact(final long now) {
+        long reclaimed = 0;
+        for (UploadLane lane : lanes_.values()) {
+            reclaimed += lane.compact(now);
+        }
+        return reclaimed;
+    }
+
+    Map<LanePolicy.Lane, LaneStats> stats(final RecordCodec codec) {
+        final long now = System.currentTimeMillis();
+        final EnumMap<LanePolicy.Lane, LaneStats> stats = new EnumMap<>(LanePolicy.Lane.class);
+        for (UploadLane lane : lanes_.values()) {
+            stats.put(lane.lane, lane.stats(now, codec));
+        }
+        return stats;
+    }
+}
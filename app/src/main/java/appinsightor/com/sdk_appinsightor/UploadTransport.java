@@ -0,0 +1,224 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 수신서버 전송 연결 재사용(keep-alive)과 통계<br />
+ * 요청마다 disconnect() 하지 않고 응답 본문을 끝까지 읽고 닫아서, HttpURLConnection 의 connection pool 이
+ * 같은 연결(TCP, TLS)을 다음 요청에 재사용하도록 한다. 네트워크 오류로 끝난 연결만 disconnect() 한다.<br />
+ * 사용하지 않는 연결은 http.keepAliveDuration(앱에서 지정하지 않은 경우 KEEP_ALIVE_DURATION_MS) 후 pool 에서 닫힌다.
+ *
+ * <p>TLS handshake 횟수</p>
+ * https 요청은 기본 SSLSocketFactory 를 감싼 하나의 factory 를 사용하여 새 연결(TLS handshake)을 센다.
+ * connection pool 은 SSLSocketFactory 가 같은 연결만 재사용하므로 항상 같은 factory 를 사용한다.<br />
+ * http 요청은 새 연결을 확인할 수 없으므로 요청 수만 센다.
+ */
+class UploadTransport {
+    static final long KEEP_ALIVE_DURATION_MS = 30000;//사용하지 않는 연결을 유지하는 시간(idle timeout)
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;//이보다 긴 응답 본문은 읽지 않고 연결을 닫는다.
+
+    private static final AtomicLong requests_ = new AtomicLong();
+    private static final AtomicLong tlsRequests_ = new AtomicLong();
+    private static final AtomicLong handshakes_ = new AtomicLong();
+    private static final AtomicLong requestNanos_ = new AtomicLong();
+    private static final AtomicLong compressedRequests_ = new AtomicLong();
+    private static final AtomicLong uncompressedBytes_ = new AtomicLong();
+    private static final AtomicLong compressedBytes_ = new AtomicLong();
+    private static final AtomicLong compressionNanos_ = new AtomicLong();
+    private static final AtomicLong dictionaryRequests_ = new AtomicLong();
+    private static volatile boolean compressionRejected_;
+    private static volatile boolean dictionaryRejected_;
+    private static CountingSocketFactory socketFactory_;
+
+    static {
+        if (System.getProperty("http.keepAliveDuration") == null) {
+            System.setProperty("http.keepAliveDuration", String.valueOf(KEEP_ALIVE_DURATION_MS));
+        }
+    }
+
+    private UploadTransport() {
+    }
+
+    /**
+     * 연결을 열기 전에 호출한다.(https 이면 handshake 를 세는 SSLSocketFactory 지정)
+     */
+    static void prepare(final URLConnection conn) {
+        if (conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setSSLSocketFactory(socketFactory());
+        }
+    }
+
+    /**
+     * 기본 SSLSocketFactory 가 바뀌지 않았으면 같은 factory 를 반환한다.(connection pool 재사용 조건)
+     */
+    private static synchronized SSLSocketFactory socketFactory() {
+        final SSLSocketFactory delegate = HttpsURLConnection.getDefaultSSLSocketFactory();
+        if (socketFactory_ == null || socketFactory_.delegate_ != delegate) {
+            socketFactory_ = new CountingSocketFactory(delegate);
+        }
+        return socketFactory_;
+    }
+
+    /**
+     * 응답을 받은 요청 1건을 기록한다.
+     * @param startNanos AppInsightor.monotonicNanos() 요청 시작 시점
+     */
+    static void onResponse(final URLConnection conn, final long startNanos) {
+        requests_.incrementAndGet();
+        if (conn instanceof HttpsURLConnection) {
+            tlsRequests_.incrementAndGet();
+        }
+        requestNanos_.addAndGet(AppInsightor.monotonicNanos() - startNanos);
+    }
+
+    /**
+     * gzip 으로 압축한 POST 본문 1건을 기록한다.
+     * @param uncompressed 압축 전 byte 수
+     * @param compressed 전송한 byte 수
+     * @param nanos 압축 시간
+     * @param dictionary preset dictionary 로 압축했으면 true
+     */
+    static void onCompressed(final int uncompressed, final int compressed, final long nanos, final boolean dictionary) {
+        compressedRequests_.incrementAndGet();
+        if (dictionary) {
+            dictionaryRequests_.incrementAndGet();
+        }
+        uncompressedBytes_.addAndGet(uncompressed);
+        compressedBytes_.addAndGet(compressed);
+        compressionNanos_.addAndGet(nanos);
+    }
+
+    /**
+     * 수신서버가 압축한 본문을 거부하였음을 기록한다.
+     * @param dictionary preset dictionary 본문이면 true, gzip 본문이면 false
+     */
+    static void onCompressionRejected(final boolean dictionary) {
+        if (dictionary) {
+            dictionaryRejected_ = true;
+        } else {
+            compressionRejected_ = true;
+        }
+    }
+
+    /**
+     * 요청이 끝난 연결을 정리한다.<br />
+     * 응답을 받았으면 남은 응답 본문을 끝까지 읽고 닫아서 연결을 pool 에 돌려주고, 그렇지 않으면 disconnect() 한다.
+     * @param responded 응답 코드를 받았으면 true
+     */
+    static void release(final URLConnection conn, final boolean responded) {
+        if (!(conn instanceof HttpURLConnection)) {
+            return;
+        }
+        final HttpURLConnection httpConn = (HttpURLConnection) conn;
+        if (!responded || !drain(httpConn)) {
+            httpConn.disconnect();
+        }
+    }
+
+    /**
+     * @return 응답 본문을 끝까지 읽고 닫았으면 true
+     */
+    private static boolean drain(final HttpURLConnection conn) {
+        InputStream in;
+        try {
+            in = conn.getInputStream();
+        } catch (IOException e) {
+            in = conn.getErrorStream();//4xx, 5xx 응답
+        }
+        if (in == null) {
+            return true;
+        }
+        try {
+            final byte[] buffer = new byte[1024];
+            int total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {//이미 읽고 닫은 응답 본문
+            return true;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    static TransportStats stats() {
+        final long requests = requests_.get();
+        return new TransportStats(requests, tlsRequests_.get(), handshakes_.get(),
+                requests == 0 ? 0 : requestNanos_.get() / requests / 1000,
+                compressedRequests_.get(), uncompressedBytes_.get(), compressedBytes_.get(),
+                compressionNanos_.get() / 1000, compressionRejected_, dictionaryRequests_.get(), dictionaryRejected_);
+    }
+
+    /**
+     * 새 연결(TLS handshake)을 세는 SSLSocketFactory
+     */
+    private static class CountingSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate_;
+
+        CountingSocketFactory(final SSLSocketFactory delegate) {
+            delegate_ = delegate;
+        }
+
+        private static Socket counted(final Socket socket) {
+            handshakes_.incrementAndGet();
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate_.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate_.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return counted(delegate_.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(final Socket s, final String host, final int port, final boolean autoClose) throws IOException {
+            return counted(delegate_.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port) throws IOException {
+            return counted(delegate_.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+            return counted(delegate_.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return counted(delegate_.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) throws IOException {
+            return counted(delegate_.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * MULTI_PROCESS 저장소에서 수신서버 전송을 담당할 프로세스 선출<br />
+ * uploader.lock 파일의 lock 을 잡은 프로세스 하나만 전송하며, lock 은 프로세스가 종료될 때까지 유지된다.
+ * 전송 프로세스가 종료되면 OS 가 lock 을 해제하므로, 다른 프로세스가 다음 확인 시점에 lock 을 잡고 전송을 이어받는다.
+ */
+class UploaderElection {
+    private static final long RETRY_MS = 1000;//lock 을 잡지 못한 경우 다시 시도하는 간격
+
+    private final File file_;
+    private RandomAccessFile raf_;
+    private FileLock lock_;
+    private long triedAt_;
+    private boolean closed_;
+
+    UploaderElection(final File file) {
+        file_ = file;
+    }
+
+    /**
+     * @return 이 프로세스가 전송 프로세스라면 true
+     */
+    synchronized boolean isUploader() {
+        if (closed_) {
+            return false;
+        }
+        if (lock_ != null) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        if (triedAt_ != 0 && now - triedAt_ < RETRY_MS) {
+            return false;
+        }
+        triedAt_ = now;
+        try {
+            if (raf_ == null) {
+                raf_ = new RandomAccessFile(file_, "rw");
+            }
+            lock_ = raf_.getChannel().tryLock();
+        } catch (IOException | OverlappingFileLockException e) {
+            Log.w(AppInsightor.TAG, "uploader lock error : " + file_, e);
+        }
+        return lock_ != null;
+    }
+
+    /**
+     * lock 을 해제하여 다른 프로세스가 바로 전송을 이어받을 수 있도록 한다. 이후에는 전송 프로세스가 되지 않는다.
+     */
+    synchronized void close() {
+        closed_ = true;
+        try {
+            if (lock_ != null) {
+                lock_.release();
+                lock_ = null;
+            }
+            if (raf_ != null) {
+                raf_.close();
+                raf_ = null;
+            }
+        } catch (IOException e) {
+            Log.w(AppInsightor.TAG, "uploader lock release error : " + file_, e);
+        }
+    }
+}
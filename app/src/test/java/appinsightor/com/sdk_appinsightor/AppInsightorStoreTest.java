@@ -0,0 +1,132 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * AppInsightorStore 테스트 - 이전 버전 SharedPreferences Queue 를 옮기는 과정이 중단되거나 반복되어도
+ * 레코드를 잃거나 중복하지 않는지 확인하고, compactor 가 수행하는 compact() 가 만료된 요청 메시지를 저널에서 제거하는지 확인한다.
+ */
+public class AppInsightorStoreTest {
+    private static final String QUEUE = "CONNECTIONS";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static List<String> legacyRecords(final int count) {
+        final List<String> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add("app_key=server&timestamp=1500000000&device_id=device&seq=" + i);
+        }
+        return records;
+    }
+
+    private static void putLegacyQueue(final SharedPreferences preferences, final List<String> records) {
+        preferences.edit().putString(QUEUE, PreferencesStorageBackend.join(records, PreferencesStorageBackend.DELIMITER)).commit();
+    }
+
+    private static List<String> strings(final StorageBackend backend) {
+        final List<String> strings = new ArrayList<>();
+        for (byte[] record : backend.peek(Integer.MAX_VALUE)) {
+            strings.add(AppInsightorStore.toString(record));
+        }
+        return strings;
+    }
+
+    @Test
+    public void migrate_movesLegacyQueueOnce() {
+        final SharedPreferences preferences = new MemoryPreferences();
+        final List<String> records = legacyRecords(250);
+        putLegacyQueue(preferences, records);
+        final MemoryStorageBackend backend = new MemoryStorageBackend();
+        assertEquals(250, AppInsightorStore.migrate(preferences, QUEUE, backend));
+        assertFalse(preferences.contains(QUEUE));
+        assertEquals(0, AppInsightorStore.migrate(preferences, QUEUE, backend));
+        assertEquals(records, strings(backend));
+    }
+
+    /**
+     * 추가에 실패하면 옮기지 못한 레코드는 이전 Queue 에 남고, 다음 실행에서 그 레코드부터 이어서 옮긴다.
+     */
+    @Test
+    public void migrate_appendFails_keepsRemainingRecords() {
+        final SharedPreferences preferences = new MemoryPreferences();
+        final List<String> records = legacyRecords(250);
+        putLegacyQueue(preferences, records);
+        final MemoryStorageBackend full = new MemoryStorageBackend(150);
+        assertEquals(150, AppInsightorStore.migrate(preferences, QUEUE, full));
+        assertEquals(records.subList(0, 150), strings(full));
+        assertEquals(records.subList(150, 250), strings(new PreferencesStorageBackend(preferences, QUEUE)));
+
+        final MemoryStorageBackend next = new MemoryStorageBackend();
+        assertEquals(100, AppInsightorStore.migrate(preferences, QUEUE, next));
+        assertEquals(records.subList(150, 250), strings(next));
+        assertFalse(preferences.contains(QUEUE));
+    }
+
+    /**
+     * FILE 저장소는 열 때 이전 Queue 를 저널로 옮기며, 다시 열어도 중복되지 않는다.
+     */
+    @Test
+    public void fileStore_migratesOnOpen() throws Exception {
+        final TestContext context = new TestContext(temp.newFolder("files"));
+        final SharedPreferences preferences = context.getSharedPreferences("APPINSIGHTOR_STORE", Context.MODE_PRIVATE);
+        final List<String> records = legacyRecords(3);
+        putLegacyQueue(preferences, records);
+
+        AppInsightorStore store = new AppInsightorStore(context);
+        assertEquals(records, strings(store.getLanes().get(LanePolicy.Lane.SESSION).queue));
+        assertFalse(preferences.contains(QUEUE));
+        store.close();
+
+        store = new AppInsightorStore(context);
+        assertEquals(records, strings(store.getLanes().get(LanePolicy.Lane.SESSION).queue));
+        store.close();
+    }
+
+    /**
+     * compact() 는 모든 lane 의 만료된 요청 메시지를 제거하고 LaneStats 에 반영하며, 다시 열어도 남은 요청 메시지만 읽힌다.
+     */
+    @Test
+    public void compact_removesExpiredRecordsFromJournal() throws Exception {
+        final TestContext context = new TestContext(temp.newFolder("files"));
+        AppInsightorStore store = new AppInsightorStore(context);
+        final long now = System.currentTimeMillis();
+        final UploadLane session = store.getLanes().get(LanePolicy.Lane.SESSION);
+        final UploadLane events = store.getLanes().get(LanePolicy.Lane.EVENTS);
+        for (int i = 1; i <= 6; i++) {
+            final ConnectionRecord record = new ConnectionRecord();
+            record.type = i % 2 == 0 ? ConnectionRecord.TYPE_EVENTS : ConnectionRecord.TYPE_SESSION;
+            record.seq = i;
+            record.deviceId = "device";
+            record.timestamp = now;
+            record.expiresAt = i <= 3 ? now - 1 : now + 60000;
+            assertTrue(store.getLanes().of(record.type).queue.append(store.getCodec().encode(record)));
+        }
+        store.flush();
+
+        assertTrue(store.compact() > 0);
+        assertEquals(1, session.queue.size());
+        assertEquals(2, events.queue.size());
+        final LaneStats sessionStats = session.stats(now, store.getCodec());
+        assertEquals(2, sessionStats.expired);
+        assertTrue(sessionStats.reclaimedBytes > 0);
+        assertEquals(1, events.stats(now, store.getCodec()).expired);
+        assertEquals(0, store.compact());
+        store.close();
+
+        store = new AppInsightorStore(context);
+        assertEquals(5, store.getCodec().decode(store.getLanes().get(LanePolicy.Lane.SESSION).queue.peek(1).get(0)).seq);
+        assertEquals(2, store.getLanes().get(LanePolicy.Lane.EVENTS).queue.size());
+        store.close();
+    }
+}
@@ -0,0 +1,94 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * BatchPolicy 테스트 - 이벤트 수, 저장 크기, 첫 이벤트 저장 후 시간 중 먼저 도달한 조건에서 전송하는지,
+ * EventQueue 가 시간 조건의 기준(첫 이벤트 저장 시간)을 기록하는지 확인한다.
+ */
+public class BatchPolicyTest {
+    private static final QueueCapacity CAPACITY = new QueueCapacity(1000, 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST);
+
+    private final BatchPolicy policy_ = new BatchPolicy(10, 1000, 30000);
+
+    @Test
+    public void isDue_eachTrigger() {
+        assertFalse(policy_.isDue(9, 999, 29999));
+        assertTrue(policy_.isDue(10, 0, 0));
+        assertTrue(policy_.isDue(1, 1000, 0));
+        assertTrue(policy_.isDue(1, 0, 30000));
+    }
+
+    /**
+     * 비어있으면 다른 조건과 관계없이 전송하지 않는다.
+     */
+    @Test
+    public void isDue_emptyNeverDue() {
+        assertFalse(policy_.isDue(0, 5000, 60000));
+        assertFalse(BatchPolicy.IMMEDIATE.isDue(0, 0, 0));
+    }
+
+    @Test
+    public void isDue_zeroMaxAgeDisablesTimeTrigger() {
+        final BatchPolicy policy = new BatchPolicy(10, 1000, 0);
+        assertFalse(policy.isDue(1, 0, Long.MAX_VALUE));
+        assertTrue(policy.isDue(10, 0, 0));
+    }
+
+    @Test
+    public void immediate_sendsEveryEvent() {
+        assertTrue(BatchPolicy.IMMEDIATE.isDue(1, 0, 0));
+    }
+
+    @Test
+    public void constructor_rejectsInvalidValues() {
+        final long[][] invalid = {{0, 1000, 0}, {10, 0, 0}, {-1, 1000, 0}, {10, 1000, -1}};
+        for (long[] values : invalid) {
+            try {
+                new BatchPolicy((int) values[0], values[1], values[2]);
+                fail("accepted " + values[0] + ", " + values[1] + ", " + values[2]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private static EventQueue eventQueue(final BoundedStorageBackend events) {
+        return new EventQueue(events, new RecordCodec(null), new SequenceGenerator(new MemoryPreferences()));
+    }
+
+    /**
+     * 시간 조건은 전송되지 않은 첫 이벤트를 저장한 시간부터 세며, 모두 가져가면 초기화한다.
+     */
+    @Test
+    public void eventQueueAge_startsAtFirstEvent() {
+        final EventQueue queue = eventQueue(new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, EventQueue.SEQUENCE));
+        final long before = System.currentTimeMillis();
+        assertEquals(0, queue.ageMs(before + 60000));
+
+        queue.recordEvent("first", null, 0);
+        final long after = System.currentTimeMillis();
+        queue.recordEvent("second", null, 0);
+        //두번째 이벤트는 기준 시간을 바꾸지 않는다.
+        assertTrue(queue.ageMs(after + 30000) >= 30000);
+        assertTrue(policy_.isDue(queue.size(), queue.bytes(), queue.ageMs(after + 30000)));
+        assertFalse(policy_.isDue(queue.size(), queue.bytes(), queue.ageMs(before + 29999)));
+
+        assertEquals(2, queue.events().size());
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.ageMs(after + 60000));
+    }
+
+    /**
+     * 이전 실행에서 남은 이벤트는 시간 조건을 넘긴 것으로 보고 바로 전송한다.
+     */
+    @Test
+    public void eventQueueAge_leftoverEventsAreDue() {
+        final BoundedStorageBackend events = new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, EventQueue.SEQUENCE);
+        eventQueue(events).recordEvent("left", null, 0);
+        final EventQueue reopened = eventQueue(events);
+        final long now = System.currentTimeMillis();
+        assertTrue(policy_.isDue(reopened.size(), reopened.bytes(), reopened.ageMs(now)));
+    }
+}
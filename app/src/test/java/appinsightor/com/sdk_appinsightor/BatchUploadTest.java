@@ -0,0 +1,279 @@
+package appinsightor.com.sdk_appinsightor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * batch 전송(UploadBatchPolicy) 테스트 - 로컬 HTTP 서버(com.sun.net.httpserver)에 전송하여
+ * 요청 수(처리량)와 AckMode 별 Queue 처리를 확인한다.
+ */
+public class BatchUploadTest {
+    private static final QueueCapacity CAPACITY = new QueueCapacity(10000, 64L * 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST);
+
+    /**
+     * batch 요청에 대한 응답
+     */
+    private interface Responder {
+        /**
+         * @param request 서버가 받은 요청 순서(0 부터)
+         * @param items 요청 본문의 항목 수
+         * @return {응답 코드, 응답 본문(null 이면 없음)}
+         */
+        Object[] respond(int request, int items);
+    }
+
+    private HttpServer server_;
+    private String url_;
+    private volatile Responder responder_;
+    private final AtomicInteger requests_ = new AtomicInteger();
+    private final List<Long> received_ = Collections.synchronizedList(new ArrayList<Long>());//서버가 받은 seq
+
+    private final RecordCodec codec_ = new RecordCodec(new StringTable(null));
+    private BoundedStorageBackend queue_;
+    private UploadLanes lanes_;
+
+    @Before
+    public void setUp() throws IOException {
+        server_ = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server_.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String body = read(exchange.getRequestBody());
+                int items = 0;
+                final String query = exchange.getRequestURI().getQuery();
+                if (query != null && query.contains("batch=1")) {
+                    try {
+                        final JSONArray array = new JSONArray(body.substring("c=".length()));
+                        items = array.length();
+                        for (int i = 0; i < items; i++) {
+                            received_.add(Long.parseLong(array.getJSONObject(i).getString("seq")));
+                        }
+                    } catch (Exception e) {
+                        throw new IOException(e);
+                    }
+                }
+                final Object[] response = responder_.respond(requests_.getAndIncrement(), items);
+                final byte[] responseBody = response[1] == null ? new byte[0] : ((String) response[1]).getBytes("UTF-8");
+                exchange.sendResponseHeaders((Integer) response[0], responseBody.length == 0 ? -1 : responseBody.length);
+                if (responseBody.length > 0) {
+                    exchange.getResponseBody().write(responseBody);
+                }
+                exchange.close();
+            }
+        });
+        server_.start();
+        url_ = "http://127.0.0.1:" + server_.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server_.stop(0);
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static Responder status(final int code, final String body) {
+        return new Responder() {
+            @Override
+            public Object[] respond(final int request, final int items) {
+                return new Object[] {code, body};
+            }
+        };
+    }
+
+    /**
+     * SESSION lane 에 seq 1 ~ count 요청 메시지를 저장한다.
+     * @param retryBaseMs 3xx, 5xx 응답 후 재시도 대기 시간(0 이면 같은 run() 에서 바로 재시도)
+     */
+    private void enqueue(final int count, final long retryBaseMs) {
+        queue_ = new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, ConnectionQueue.SEQUENCE);
+        for (int i = 1; i <= count; i++) {
+            final ConnectionRecord record = new ConnectionRecord();
+            record.type = ConnectionRecord.TYPE_SESSION;
+            record.seq = i;
+            record.serverName = "server";
+            record.category = "category";
+            record.appName = "app";
+            record.appVersion = "1.0";
+            record.deviceId = "device";
+            record.timestamp = System.currentTimeMillis();
+            record.sdkName = "sdk";
+            record.sdkVersion = "1.0";
+            record.sessionStatus = "active";
+            record.metrics = "{\"_os\":\"Android\",\"_device\":\"test\"}";
+            queue_.append(codec_.encode(record));
+        }
+        final LanePolicy policy = new LanePolicy(CAPACITY, 1, retryBaseMs, Math.max(retryBaseMs, 1), 1);
+        lanes_ = new UploadLanes();
+        lanes_.put(new UploadLane(LanePolicy.Lane.CRASH, policy,
+                new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, ConnectionQueue.SEQUENCE)));
+        lanes_.put(new UploadLane(LanePolicy.Lane.SESSION, policy, queue_));
+    }
+
+    private void upload(final UploadBatchPolicy policy) {
+        new ConnectionProcessor(url_, lanes_, codec_, "device", policy, new PayloadCompressor(), new EnvelopeWriter()).run();
+    }
+
+    private long headSeq() {
+        return codec_.decode(queue_.peek(1).get(0)).seq;
+    }
+
+    private void assertReceivedInOrder(final int count) {
+        assertEquals(count, received_.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i + 1, (long) received_.get(i));
+        }
+    }
+
+    @Test
+    public void batchAck_sendsFewerRequests() {
+        responder_ = status(200, null);
+        final boolean postOnly = ConnectionProcessor.HttpPostOnlyRequest;
+        ConnectionProcessor.HttpPostOnlyRequest = true;
+        try {
+            enqueue(200, 60000);
+            upload(UploadBatchPolicy.SINGLE);
+            assertEquals(0, queue_.size());
+            assertEquals(200, requests_.get());
+        } finally {
+            ConnectionProcessor.HttpPostOnlyRequest = postOnly;
+        }
+
+        requests_.set(0);
+        enqueue(200, 60000);
+        upload(new UploadBatchPolicy(50, 256 * 1024, UploadBatchPolicy.AckMode.BATCH));
+        assertEquals(0, queue_.size());
+        assertEquals("200 records in batches of 50", 4, requests_.get());
+        assertReceivedInOrder(200);
+    }
+
+    @Test
+    public void batchAck_maxBytesSplitsBatches() {
+        responder_ = status(200, null);
+        enqueue(100, 60000);
+        upload(new UploadBatchPolicy(100, 4 * 1024, UploadBatchPolicy.AckMode.BATCH));
+        assertEquals(0, queue_.size());
+        assertTrue("requests " + requests_.get(), requests_.get() > 1 && requests_.get() < 100);
+        assertReceivedInOrder(100);
+    }
+
+    @Test
+    public void batchAck_serverErrorKeepsBatch() {
+        responder_ = status(503, null);
+        enqueue(20, 60000);
+        upload(new UploadBatchPolicy(50, 256 * 1024, UploadBatchPolicy.AckMode.BATCH));
+        assertEquals(1, requests_.get());
+        assertEquals(20, queue_.size());
+        assertEquals(1, headSeq());
+    }
+
+    @Test
+    public void batchAck_clientErrorDropsBatch() {
+        responder_ = status(400, null);
+        enqueue(20, 60000);
+        upload(new UploadBatchPolicy(50, 256 * 1024, UploadBatchPolicy.AckMode.BATCH));
+        assertEquals(1, requests_.get());
+        assertEquals(0, queue_.size());
+    }
+
+    @Test
+    public void tooLarge_halvesBatch() {
+        responder_ = new Responder() {
+            @Override
+            public Object[] respond(final int request, final int items) {
+                return new Object[] {items > 10 ? 413 : 200, null};
+            }
+        };
+        enqueue(40, 60000);
+        upload(new UploadBatchPolicy(40, 256 * 1024, UploadBatchPolicy.AckMode.BATCH));
+        assertEquals(0, queue_.size());
+        //40, 20 (413) 후 10 개씩 4번
+        assertEquals(6, requests_.get());
+    }
+
+    @Test
+    public void perItem_retriesFromFirstRetryableItem() {
+        responder_ = new Responder() {
+            @Override
+            public Object[] respond(final int request, final int items) {
+                if (request > 0) {
+                    return new Object[] {200, null};
+                }
+                final StringBuilder results = new StringBuilder("{\"results\":[");
+                for (int i = 0; i < items; i++) {
+                    results.append(i == 0 ? "" : ",").append(i == 2 ? 503 : i == 3 ? 400 : 200);
+                }
+                return new Object[] {200, results.append("]}").toString()};
+            }
+        };
+        enqueue(10, 0);
+        upload(new UploadBatchPolicy(10, 256 * 1024, UploadBatchPolicy.AckMode.PER_ITEM));
+        assertEquals(0, queue_.size());
+        assertEquals(2, requests_.get());
+        //첫 요청의 1, 2 만 ack 되고 3 부터 다시 전송한다.
+        assertEquals(18, received_.size());
+        assertEquals(3, (long) received_.get(10));
+    }
+
+    @Test
+    public void perItem_retryableItemWaits() {
+        responder_ = status(200, "{\"results\":[200,200,200,503,200]}");
+        enqueue(5, 60000);
+        upload(new UploadBatchPolicy(10, 256 * 1024, UploadBatchPolicy.AckMode.PER_ITEM));
+        assertEquals(1, requests_.get());
+        assertEquals(2, queue_.size());
+        assertEquals(4, headSeq());
+    }
+
+    @Test
+    public void perItem_mismatchedResults_acksWholeBatch() {
+        responder_ = status(200, "{\"results\":[200,503]}");
+        enqueue(5, 60000);
+        upload(new UploadBatchPolicy(10, 256 * 1024, UploadBatchPolicy.AckMode.PER_ITEM));
+        assertEquals(1, requests_.get());
+        assertEquals(0, queue_.size());
+    }
+
+    @Test
+    public void perItem_unreadableResults_acksWholeBatch() {
+        responder_ = status(200, "<html>ok</html>");
+        enqueue(5, 60000);
+        upload(new UploadBatchPolicy(10, 256 * 1024, UploadBatchPolicy.AckMode.PER_ITEM));
+        assertEquals(1, requests_.get());
+        assertEquals(0, queue_.size());
+    }
+
+    @Test
+    public void perItem_emptyBody_acksWholeBatch() {
+        responder_ = status(200, null);
+        enqueue(5, 60000);
+        upload(new UploadBatchPolicy(10, 256 * 1024, UploadBatchPolicy.AckMode.PER_ITEM));
+        assertEquals(1, requests_.get());
+        assertEquals(0, queue_.size());
+    }
+}
@@ -0,0 +1,63 @@
+package appinsightor.com.sdk_appinsightor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 필요할 때만 실행하는 microbenchmark 공통 기능<br />
+ * 일반 테스트 실행에서는 건너뛰며, -Dappinsightor.benchmark=true 로 실행한 경우에만 측정하고 결과를 출력한다.
+ * (./gradlew test -Dappinsightor.benchmark=true)<br />
+ * 시간은 실행 환경에 따라 달라지므로 출력만 하고, 비교 결과는 환경과 무관하게 차이가 큰 값만 확인한다.
+ */
+final class Benchmark {
+    static final String PROPERTY = "appinsightor.benchmark";
+
+    private Benchmark() {
+    }
+
+    /**
+     * benchmark 실행이 지정되지 않았으면 테스트를 건너뛴다.
+     */
+    static void assumeEnabled() {
+        assumeTrue(PROPERTY + "=true 인 경우에만 실행", Boolean.getBoolean(PROPERTY));
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        final com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (!allocation.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        allocation.setThreadAllocatedMemoryEnabled(true);
+        return allocation;
+    }
+
+    /**
+     * @return 현재 스레드가 지금까지 할당한 byte 수, 측정할 수 없는 JVM 이면 건너뛴다.
+     */
+    static long allocatedBytes() {
+        final com.sun.management.ThreadMXBean allocation = allocationBean();
+        assumeTrue("thread allocation 측정 불가", allocation != null);
+        return allocation.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return 현재 스레드의 CPU 시간(ns), 측정할 수 없으면 경과 시간
+     */
+    static long cpuNanos() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads.isCurrentThreadCpuTimeSupported()) {
+            return threads.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    static void report(final String name, final String result) {
+        System.out.println("[benchmark] " + name + ": " + result);
+    }
+}
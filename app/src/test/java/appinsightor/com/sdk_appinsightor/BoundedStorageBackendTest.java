@@ -0,0 +1,309 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * BoundedStorageBackend 테스트 - 용량 초과시 처리 방식(DROP_OLDEST, DROP_NEWEST, DROP_LOWEST_PRIORITY, SPILL_TO_DISK),
+ * byte 수 제한, 버려진 레코드 수 집계와 ConnectionQueue 의 전달, compact() 의 만료 레코드 제거를 확인한다.
+ */
+public class BoundedStorageBackendTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /** 레코드 첫 byte 가 우선순위, 두번째 byte 가 구분 문자 */
+    private static final BoundedStorageBackend.Priority PRIORITY = new BoundedStorageBackend.Priority() {
+        @Override
+        public int of(final byte[] record) {
+            return record[0];
+        }
+    };
+
+    /** 레코드 첫 byte 를 만료 시간으로 사용(0 이면 만료되지 않음) */
+    private static final BoundedStorageBackend.Expiry EXPIRY = new BoundedStorageBackend.Expiry() {
+        @Override
+        public long of(final byte[] record) {
+            return record[0];
+        }
+    };
+
+    private static byte[] record(final int priority, final char id, final int length) {
+        final byte[] record = new byte[length];
+        record[0] = (byte) priority;
+        record[1] = (byte) id;
+        return record;
+    }
+
+    private static byte[] record(final int priority, final char id) {
+        return record(priority, id, 2);
+    }
+
+    private static BoundedStorageBackend bounded(final QueueCapacity capacity) {
+        return new BoundedStorageBackend(new MemoryStorageBackend(), null, capacity, PRIORITY, null);
+    }
+
+    /**
+     * @return 저장된 레코드의 구분 문자
+     */
+    private static String ids(final StorageBackend backend) {
+        final StringBuilder ids = new StringBuilder();
+        for (byte[] record : backend.peek(Integer.MAX_VALUE)) {
+            ids.append((char) record[1]);
+        }
+        return ids.toString();
+    }
+
+    @Test
+    public void dropOldest_evictsHeadUntilFits() {
+        final BoundedStorageBackend backend = bounded(new QueueCapacity(3, 1000, QueueCapacity.OverflowPolicy.DROP_OLDEST));
+        for (char id = 'a'; id <= 'e'; id++) {
+            assertTrue(backend.append(record(0, id)));
+        }
+        assertEquals("cde", ids(backend));
+        assertEquals(2, backend.takeDropped());
+        assertEquals(0, backend.takeDropped());
+    }
+
+    @Test
+    public void dropNewest_rejectsIncoming() {
+        final BoundedStorageBackend backend = bounded(new QueueCapacity(3, 1000, QueueCapacity.OverflowPolicy.DROP_NEWEST));
+        for (char id = 'a'; id <= 'e'; id++) {
+            assertEquals(id <= 'c', backend.append(record(0, id)));
+        }
+        assertEquals("abc", ids(backend));
+        assertEquals(2, backend.takeDropped());
+    }
+
+    /**
+     * 새 레코드보다 우선순위가 낮거나 같은 레코드 중 가장 낮은 우선순위, 오래된 것부터 제거하며,
+     * 그런 레코드가 없으면 새 레코드를 버린다.
+     */
+    @Test
+    public void dropLowestPriority_evictsLowestThenOldest() {
+        final BoundedStorageBackend backend = bounded(new QueueCapacity(3, 1000, QueueCapacity.OverflowPolicy.DROP_LOWEST_PRIORITY));
+        backend.append(record(0, 'a'));
+        backend.append(record(2, 'b'));
+        backend.append(record(1, 'c'));
+        assertTrue(backend.append(record(1, 'd')));
+        assertEquals("bcd", ids(backend));
+        assertTrue(backend.append(record(1, 'e')));
+        assertEquals("bde", ids(backend));
+        assertFalse(backend.append(record(0, 'f')));
+        assertEquals("bde", ids(backend));
+        assertTrue(backend.append(record(2, 'g')));
+        assertEquals("beg", ids(backend));
+        assertEquals(4, backend.takeDropped());
+    }
+
+    /**
+     * 큰 레코드를 위해 여러 레코드를 제거하며, 제거해도 공간이 부족하면 아무것도 제거하지 않는다.
+     */
+    @Test
+    public void dropLowestPriority_byteBudget() {
+        final BoundedStorageBackend backend = bounded(new QueueCapacity(10, 10, QueueCapacity.OverflowPolicy.DROP_LOWEST_PRIORITY));
+        backend.append(record(0, 'a', 3));
+        backend.append(record(2, 'b', 3));
+        backend.append(record(0, 'c', 3));
+        assertFalse(backend.append(record(1, 'd', 8)));//b 는 제거할 수 없으므로 8byte 를 만들 수 없다.
+        assertEquals("abc", ids(backend));
+        assertTrue(backend.append(record(1, 'e', 4)));
+        assertEquals("bce", ids(backend));
+        assertTrue(backend.append(record(1, 'f', 7)));//c, e 를 제거해야 7byte 를 만들 수 있다.
+        assertEquals("bf", ids(backend));
+        assertEquals(10, backend.bytes());
+        assertEquals(4, backend.takeDropped());
+    }
+
+    @Test
+    public void byteBudget_dropsOldestAndOversized() {
+        final BoundedStorageBackend backend = bounded(new QueueCapacity(100, 10, QueueCapacity.OverflowPolicy.DROP_OLDEST));
+        assertFalse(backend.append(record(0, 'x', 11)));
+        assertEquals(0, backend.size());
+        assertEquals(1, backend.takeDropped());
+        for (char id = 'a'; id <= 'c'; id++) {
+            assertTrue(backend.append(record(0, id, 4)));
+        }
+        assertEquals("bc", ids(backend));
+        assertEquals(8, backend.bytes());
+        assertEquals(1, backend.takeDropped());
+    }
+
+    /**
+     * 보조 저장소가 비워질 때까지는 주 저장소에 공간이 있어도 보조 저장소에 저장하여 순서를 유지하고,
+     * 보조 저장소도 가득 차면 새 레코드를 버린다.
+     */
+    @Test
+    public void spill_keepsOrderAndCapsSpill() {
+        final MemoryStorageBackend primary = new MemoryStorageBackend();
+        final MemoryStorageBackend spill = new MemoryStorageBackend();
+        final BoundedStorageBackend backend = new BoundedStorageBackend(primary, spill,
+                new QueueCapacity(2, 1000, QueueCapacity.OverflowPolicy.SPILL_TO_DISK, 10), null, null);
+        backend.append(record(0, 'a', 4));
+        backend.append(record(0, 'b', 4));
+        backend.append(record(0, 'c', 4));
+        assertEquals("ab", ids(primary));
+        assertEquals("c", ids(spill));
+        backend.ack(1);
+        backend.append(record(0, 'd', 4));
+        assertEquals("b", ids(primary));
+        assertEquals("cd", ids(spill));
+        assertFalse(backend.append(record(0, 'e', 4)));
+        assertEquals(1, backend.takeDropped());
+        assertEquals("bcd", ids(backend));
+        assertEquals(3, backend.size());
+        assertEquals(12, backend.bytes());
+
+        backend.remove(1);
+        assertEquals("bd", ids(backend));
+        assertEquals("bd", ids(new ArrayList<>(backend.take(10))));
+        assertEquals(0, backend.size());
+    }
+
+    private static String ids(final List<byte[]> records) {
+        final MemoryStorageBackend backend = new MemoryStorageBackend();
+        for (byte[] record : records) {
+            backend.append(record);
+        }
+        return ids(backend);
+    }
+
+    /**
+     * 우선순위 색인은 ack, remove, compact 와 이 객체를 거치지 않은 변경 후에도 저장소와 같다.
+     */
+    @Test
+    public void dropLowestPriority_indexFollowsChanges() {
+        final MemoryStorageBackend primary = new MemoryStorageBackend();
+        final BoundedStorageBackend backend = new BoundedStorageBackend(primary, null,
+                new QueueCapacity(4, 1000, QueueCapacity.OverflowPolicy.DROP_LOWEST_PRIORITY), PRIORITY, null);
+        backend.append(record(0, 'a'));
+        backend.append(record(1, 'b'));
+        backend.append(record(0, 'c'));
+        backend.append(record(1, 'd'));
+        backend.append(record(1, 'e'));
+        assertEquals("bcde", ids(backend));
+
+        backend.ack(1);
+        backend.remove(1);
+        assertEquals("ce", ids(backend));
+        backend.append(record(0, 'f'));
+        backend.append(record(0, 'g'));
+        backend.append(record(1, 'h'));
+        assertEquals("efgh", ids(backend));
+
+        primary.ack(1);//다른 경로로 변경
+        backend.append(record(1, 'i'));
+        backend.append(record(1, 'j'));
+        assertEquals("ghij", ids(backend));
+
+        final BoundedStorageBackend.Compaction compaction = backend.compact(new BoundedStorageBackend.Expiry() {
+            @Override
+            public long of(final byte[] record) {
+                return record[1] == 'g' ? 1 : 0;
+            }
+        }, 10);
+        assertEquals(1, compaction.expired);
+        assertEquals("hij", ids(backend));
+        backend.append(record(1, 'k'));
+        backend.append(record(2, 'l'));
+        assertEquals("ijkl", ids(backend));
+        assertEquals(4, backend.takeDropped());
+    }
+
+    /**
+     * ConnectionQueue 는 요청 메시지에 버려진 레코드 수를 기록하며, 저장하지 못하면 가져간 수를 되돌려 다음 요청 메시지에 기록한다.
+     */
+    @Test
+    public void connectionQueue_restoresDroppedCountsWhenAppendFails() {
+        final EnumMap<LanePolicy.Lane, LanePolicy> policies = LanePolicy.defaults();
+        policies.put(LanePolicy.Lane.CRASH, new LanePolicy(new QueueCapacity(10, 256, QueueCapacity.OverflowPolicy.DROP_NEWEST),
+                4, 1000, 60000, 1));
+        final AppInsightorStore store = new AppInsightorStore(new TestContext(null), AppInsightorStore.StorageType.MEMORY, policies,
+                QueueCapacity.DEFAULT_EVENTS, AppInsightorStore.DEFAULT_MAX_STALENESS_MS);
+        try {
+            final ConnectionQueue queue = new ConnectionQueue();
+            queue.setAppInsightorStore(store);
+            store.getLanes().restoreDropped(2);
+            store.getEvents().addDropped(3);
+
+            final ConnectionRecord crash = new ConnectionRecord();
+            crash.type = ConnectionRecord.TYPE_CRASH;
+            crash.crash = new String(new char[1024]).replace('\0', 'x');
+            queue.addConnection(crash);//256byte 보다 크므로 저장하지 못한다.
+            assertEquals(0, store.getLanes().get(LanePolicy.Lane.CRASH).queue.size());
+
+            final ConnectionRecord session = new ConnectionRecord();
+            session.type = ConnectionRecord.TYPE_SESSION;
+            session.sessionStatus = "active";
+            queue.addConnection(session);
+            final BoundedStorageBackend lane = store.getLanes().get(LanePolicy.Lane.SESSION).queue;
+            final ConnectionRecord stored = store.getCodec().decode(lane.peek(1).get(0));
+            assertEquals(3, stored.droppedRequests);//되돌린 2개와 저장하지 못한 crash
+            assertEquals(3, stored.droppedEvents);
+            assertEquals(0, store.getLanes().takeDropped());
+            assertEquals(0, store.getEvents().takeDropped());
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * 다시 기록할 수 없는 저장소(MemoryStorageBackend)는 만료된 레코드를 하나씩 제거하며, 보조 저장소도 함께 처리한다.
+     */
+    @Test
+    public void compact_removesExpiredFromPrimaryAndSpill() {
+        final MemoryStorageBackend primary = new MemoryStorageBackend();
+        final MemoryStorageBackend spill = new MemoryStorageBackend();
+        final BoundedStorageBackend backend = new BoundedStorageBackend(primary, spill,
+                new QueueCapacity(3, 1000, QueueCapacity.OverflowPolicy.SPILL_TO_DISK, 10), null, null);
+        backend.append(record(3, 'a', 4));
+        backend.append(record(0, 'b', 4));
+        backend.append(record(9, 'c', 4));
+        backend.append(record(5, 'd', 6));
+        backend.append(record(0, 'e', 4));
+        assertEquals("abc", ids(primary));
+        assertEquals("de", ids(spill));
+
+        final BoundedStorageBackend.Compaction result = backend.compact(EXPIRY, 5);
+        assertEquals(2, result.expired);
+        assertEquals(10, result.reclaimedBytes);
+        assertEquals("bce", ids(backend));
+        assertEquals(3, backend.size());
+        assertEquals(12, backend.bytes());
+
+        //expiry 가 null 이면 만료 검사를 하지 않는다.
+        assertEquals(0, backend.compact(null, 100).expired);
+        assertEquals("bce", ids(backend));
+    }
+
+    /**
+     * FileJournal 은 만료된 레코드를 제외하고 다시 기록하며, 다시 열어도 남은 레코드만 읽힌다.
+     */
+    @Test
+    public void compact_rewritesJournal() throws Exception {
+        final File dir = temp.newFolder("journal");
+        final FileJournal journal = new FileJournal(dir);
+        final BoundedStorageBackend backend = new BoundedStorageBackend(journal, null,
+                new QueueCapacity(100, 10000, QueueCapacity.OverflowPolicy.DROP_OLDEST), null, null);
+        for (char id = 'a'; id <= 'h'; id++) {
+            backend.append(record(id % 2 == 0 ? 0 : 2, id, 10));
+        }
+        backend.ack(1);
+        final BoundedStorageBackend.Compaction result = backend.compact(EXPIRY, 3);
+        assertEquals(3, result.expired);
+        assertTrue(String.valueOf(result.reclaimedBytes), result.reclaimedBytes >= 4 * (4 + 10));
+        assertEquals("bdfh", ids(backend));
+        assertEquals(0, backend.compact(EXPIRY, 3).expired);
+        backend.close();
+
+        assertEquals("bdfh", ids(new FileJournal(dir)));
+    }
+}
@@ -0,0 +1,211 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+/**
+ * CachedStorageBackend 테스트 - FileJournal 앞의 write-behind 캐시가 maxStalenessMs 안에 디스크에 반영되는지,
+ * 디스크 기록 오류 후 다음 flush 에서 전체를 다시 기록(resync)하는지, 닫은 후 다시 열면 디스크 내용으로 다시 채우는지 확인한다.
+ */
+public class CachedStorageBackendTest {
+    private static final long STALENESS_MS = 50;
+    private static final long NEVER_MS = 60 * 60 * 1000;//flush() 를 직접 호출하는 테스트
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private ScheduledExecutorService flusher_;
+
+    /**
+     * fail_ 인 동안 append 가 실패하는 디스크 저장소
+     */
+    private static final class FailingBackend implements StorageBackend {
+        private final StorageBackend backend_;
+        volatile boolean fail_;
+
+        FailingBackend(final StorageBackend backend) {
+            backend_ = backend;
+        }
+
+        @Override
+        public boolean append(final byte[] record) {
+            return !fail_ && backend_.append(record);
+        }
+
+        @Override
+        public List<byte[]> peek(final int max) {
+            return backend_.peek(max);
+        }
+
+        @Override
+        public void ack(final int count) {
+            backend_.ack(count);
+        }
+
+        @Override
+        public void remove(final int index) {
+            backend_.remove(index);
+        }
+
+        @Override
+        public int size() {
+            return backend_.size();
+        }
+
+        @Override
+        public long bytes() {
+            return backend_.bytes();
+        }
+
+        @Override
+        public void clear() {
+            backend_.clear();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        flusher_ = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        flusher_.shutdownNow();
+    }
+
+    private static byte[] record(final String value) {
+        return AppInsightorStore.toBytes(value);
+    }
+
+    private static void assertRecords(final List<byte[]> actual, final String... expected) {
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals("record " + i, record(expected[i]), actual.get(i));
+        }
+    }
+
+    @Test
+    public void append_flushedWithinMaxStaleness() throws Exception {
+        final FileJournal journal = new FileJournal(temp.newFolder("journal"));
+        final CachedStorageBackend cached = new CachedStorageBackend(journal, flusher_, STALENESS_MS);
+        final long start = System.nanoTime();
+        cached.append(record("a"));
+        cached.append(record("b"));
+        cached.append(record("c"));
+        assertEquals(3, cached.size());
+        assertEquals(0, journal.size());
+
+        //flusher 스레드가 늦게 실행되는 경우를 고려하여 충분히 기다린다.
+        final long deadline = start + 5000 * 1000000L;
+        while (journal.size() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue((System.nanoTime() - start) / 1000000 >= STALENESS_MS);
+        assertRecords(journal.peek(10), "a", "b", "c");
+
+        cached.ack(2);
+        assertRecords(cached.peek(10), "c");
+        final long ackDeadline = System.nanoTime() + 5000 * 1000000L;
+        while (journal.size() > 1 && System.nanoTime() < ackDeadline) {
+            Thread.sleep(5);
+        }
+        assertRecords(journal.peek(10), "c");
+        cached.close();
+    }
+
+    /**
+     * 기록에 실패한 레코드가 있으면 다음 flush 에서 디스크 저장소를 비우고 캐시 전체를 다시 기록한다.
+     */
+    @Test
+    public void failedFlush_resyncsOnNextFlush() throws Exception {
+        final FileJournal journal = new FileJournal(temp.newFolder("journal"));
+        final FailingBackend backend = new FailingBackend(journal);
+        final CachedStorageBackend cached = new CachedStorageBackend(backend, flusher_, NEVER_MS);
+        cached.append(record("a"));
+        cached.flush();
+        assertRecords(journal.peek(10), "a");
+
+        backend.fail_ = true;
+        cached.append(record("b"));
+        cached.append(record("c"));
+        cached.flush();
+        assertRecords(journal.peek(10), "a");
+        assertRecords(cached.peek(10), "a", "b", "c");
+
+        //실패 후의 ack, append 도 resync 결과에 반영된다.
+        backend.fail_ = false;
+        cached.ack(1);
+        cached.append(record("d"));
+        cached.flush();
+        assertRecords(journal.peek(10), "b", "c", "d");
+        assertRecords(cached.peek(10), "b", "c", "d");
+
+        //resync 이후에는 변경분만 기록한다.
+        cached.ack(1);
+        cached.append(record("e"));
+        cached.flush();
+        assertRecords(journal.peek(10), "c", "d", "e");
+        journal.close();
+    }
+
+    /**
+     * 기록에 실패하면 다른 변경이 없어도 maxStalenessMs 후에 다시 기록한다.
+     */
+    @Test
+    public void failedFlush_schedulesResync() throws Exception {
+        final FileJournal journal = new FileJournal(temp.newFolder("journal"));
+        final FailingBackend backend = new FailingBackend(journal);
+        final CachedStorageBackend cached = new CachedStorageBackend(backend, flusher_, STALENESS_MS);
+        backend.fail_ = true;
+        cached.append(record("a"));
+        cached.flush();
+        assertEquals(0, journal.size());
+
+        backend.fail_ = false;
+        final long deadline = System.nanoTime() + 5000 * 1000000L;
+        while (journal.size() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertRecords(journal.peek(10), "a");
+        journal.close();
+    }
+
+    @Test
+    public void closeAndReopen_reloadsFromJournal() throws Exception {
+        final File dir = temp.newFolder("journal");
+        final CachedStorageBackend cached = new CachedStorageBackend(new FileJournal(dir), flusher_, NEVER_MS);
+        for (String value : Arrays.asList("a", "b", "c", "d")) {
+            cached.append(record(value));
+        }
+        cached.flush();
+        cached.ack(1);
+        cached.append(record("e"));
+        cached.close();
+
+        //close() 이후의 변경은 디스크에 기록하지 않는다.
+        cached.append(record("f"));
+        cached.flush();
+
+        final CachedStorageBackend reopened = new CachedStorageBackend(new FileJournal(dir), flusher_, NEVER_MS);
+        assertRecords(reopened.peek(10), "b", "c", "d", "e");
+        assertEquals(4, reopened.size());
+        assertEquals(4, reopened.bytes());
+
+        reopened.ack(2);
+        reopened.close();
+        final CachedStorageBackend again = new CachedStorageBackend(new FileJournal(dir), flusher_, NEVER_MS);
+        assertRecords(again.peek(10), "d", "e");
+        again.close();
+    }
+}
@@ -0,0 +1,129 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * CompressionDictionary 테스트 - dictionary ID 가 수신서버에 등록된 값과 같게 유지되는지,
+ * 수신서버처럼 요청 헤더의 ID 로 찾은 dictionary 로 preset dictionary 압축 본문을 풀 수 있는지 확인한다.
+ */
+public class CompressionDictionaryTest {
+    /** 수신서버에 등록된 ID - dictionary 를 다시 생성하면 VERSION 과 함께 바뀐다. */
+    private static final String REGISTERED_ID = "1-7d8d907d";
+    private static final int WINDOW_SIZE = 32 * 1024;//deflate window(dictionary 는 마지막 32KB 만 사용됨)
+
+    /**
+     * 수신서버의 dictionary 저장소(ID -> dictionary)
+     */
+    private static Map<String, byte[]> serverDictionaries() {
+        final Map<String, byte[]> dictionaries = new HashMap<>();
+        dictionaries.put(REGISTERED_ID, CompressionDictionary.bytes().clone());
+        return dictionaries;
+    }
+
+    /**
+     * 수신서버처럼 요청 헤더의 dictionary ID 로 dictionary 를 찾아 푼다.
+     */
+    private static byte[] serverInflate(final Map<String, byte[]> dictionaries, final String dictionaryId,
+                                        final byte[] data, final int length) throws Exception {
+        final Inflater inflater = new Inflater();
+        inflater.setInput(data, 0, length);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        try {
+            while (!inflater.finished()) {
+                final int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    final byte[] dictionary = dictionaries.get(dictionaryId);
+                    assertNotNull("unknown dictionary " + dictionaryId, dictionary);
+                    //zlib 헤더의 DICTID 는 ID 의 adler32 와 같아야 한다.
+                    assertEquals(dictionaryId.substring(dictionaryId.indexOf('-') + 1),
+                            Long.toHexString(inflater.getAdler() & 0xffffffffL));
+                    inflater.setDictionary(dictionary);
+                } else if (inflated == 0 && inflater.needsInput()) {
+                    fail("truncated zlib stream");
+                }
+                out.write(buffer, 0, inflated);
+            }
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] requestBody(final int events) {
+        final StringBuilder body = new StringBuilder("app_key=server&device_id=3c0c1f7a-6ed0ace70ffb&timestamp=1760746727487"
+                + "&sdk_name=appinsightor-android&sdk_version=1.0&events=%5B");
+        for (int i = 0; i < events; i++) {
+            if (i > 0) {
+                body.append("%2C");
+            }
+            body.append("%7B%22key%22%3A%22tab_select%22%2C%22count%22%3A1%2C%22timestamp%22%3A")
+                    .append(1760170129386L + i * 1000)
+                    .append("%2C%22segmentation%22%3A%7B%22screen%22%3A%22Home%22%7D%2C%22dur%22%3A").append(100 + i)
+                    .append("%7D");
+        }
+        return AppInsightorStore.toBytes(body.append("%5D").toString());
+    }
+
+    /**
+     * dictionary 를 수정하면 ID 가 바뀌어 수신서버가 풀 수 없으므로, 다시 생성하지 않는 한 ID 는 고정이다.
+     */
+    @Test
+    public void id_stable() {
+        assertEquals(REGISTERED_ID, CompressionDictionary.ID);
+        assertTrue(CompressionDictionary.ID.startsWith(CompressionDictionary.VERSION + "-"));
+
+        final byte[] dictionary = CompressionDictionary.bytes();
+        final Adler32 adler = new Adler32();
+        adler.update(dictionary, 0, dictionary.length);
+        assertEquals(CompressionDictionary.VERSION + "-" + Long.toHexString(adler.getValue()), CompressionDictionary.ID);
+        assertSame(dictionary, CompressionDictionary.bytes());
+        assertTrue(dictionary.length + " bytes", dictionary.length <= WINDOW_SIZE);
+    }
+
+    @Test
+    public void serverInflate_roundTrip() throws Exception {
+        final Map<String, byte[]> dictionaries = serverDictionaries();
+        final PayloadCompressor compressor = new PayloadCompressor();
+        for (int events : new int[] {0, 1, 5, 200}) {
+            final byte[] body = requestBody(events);
+            final int compressed = compressor.deflateWithDictionary(body, body.length);
+            final byte[] data = compressor.buffer();
+            //zlib 헤더 FDICT 비트
+            assertTrue((data[1] & 0x20) != 0);
+            assertArrayEquals(events + " events", body, serverInflate(dictionaries, CompressionDictionary.ID, data, compressed));
+        }
+    }
+
+    /**
+     * 다른 dictionary 로는 풀 수 없다.(수신서버는 ID 가 다르면 거부한다.)
+     */
+    @Test
+    public void serverInflate_wrongDictionaryRejected() throws Exception {
+        final PayloadCompressor compressor = new PayloadCompressor();
+        final byte[] body = requestBody(3);
+        final int compressed = compressor.deflateWithDictionary(body, body.length);
+        final Inflater inflater = new Inflater();
+        inflater.setInput(compressor.buffer(), 0, compressed);
+        try {
+            assertEquals(0, inflater.inflate(new byte[4096]));
+            assertTrue(inflater.needsDictionary());
+            final byte[] other = CompressionDictionary.bytes().clone();
+            other[0] ^= 1;
+            inflater.setDictionary(other);
+            fail("dictionary mismatch accepted");
+        } catch (IllegalArgumentException expected) {
+            //adler32 불일치
+        } finally {
+            inflater.end();
+        }
+    }
+}
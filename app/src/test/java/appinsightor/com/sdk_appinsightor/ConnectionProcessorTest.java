@@ -0,0 +1,227 @@
+package appinsightor.com.sdk_appinsightor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * ConnectionProcessor 만료, 최대 전송 시도 테스트 - 로컬 HTTP 서버에 전송하여 만료된 요청 메시지를 전송하지 않고 버리는지,
+ * 3xx, 5xx 응답이 maxAttempts 에 이르면 가장 앞 요청 메시지를 버리는지(재시작 후에도 횟수 유지), 예외는 횟수에 포함하지 않는지 확인한다.
+ */
+public class ConnectionProcessorTest {
+    private static final QueueCapacity CAPACITY = new QueueCapacity(1000, 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST);
+    private static final long RETRY_LATER_MS = 60000;//다음 run() 까지 재시도하지 않음
+
+    private HttpServer server_;
+    private String url_;
+    private volatile long failingSeq_ = -1;//이 일련번호의 요청 메시지는 503 으로 응답
+    private final AtomicInteger failures_ = new AtomicInteger();//남은 수만큼 요청 메시지와 관계없이 503 으로 응답
+    private final List<Long> received_ = Collections.synchronizedList(new ArrayList<Long>());//서버가 받은 seq
+
+    private final RecordCodec codec_ = new RecordCodec(null);
+    private BoundedStorageBackend queue_;
+    private Boolean postOnly_;
+
+    @Before
+    public void setUp() throws IOException {
+        postOnly_ = ConnectionProcessor.HttpPostOnlyRequest;
+        ConnectionProcessor.HttpPostOnlyRequest = true;//요청 본문으로 seq 확인
+        server_ = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server_.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String body = read(exchange.getRequestBody());
+                final long seq;
+                try {
+                    seq = Long.parseLong(new JSONObject(body.substring("c=".length())).getString("seq"));
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+                received_.add(seq);
+                final boolean fail = seq == failingSeq_ || failures_.getAndDecrement() > 0;
+                exchange.sendResponseHeaders(fail ? 503 : 200, -1);
+                exchange.close();
+            }
+        });
+        server_.start();
+        url_ = "http://127.0.0.1:" + server_.getAddress().getPort();
+        queue_ = new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, ConnectionQueue.SEQUENCE);
+    }
+
+    @After
+    public void tearDown() {
+        server_.stop(0);
+        ConnectionProcessor.HttpPostOnlyRequest = postOnly_;
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private void enqueue(final long seq, final long expiresAt, final int maxAttempts) {
+        final ConnectionRecord record = new ConnectionRecord();
+        record.type = ConnectionRecord.TYPE_SESSION;
+        record.seq = seq;
+        record.serverName = "server";
+        record.appName = "app";
+        record.deviceId = "device";
+        record.timestamp = System.currentTimeMillis();
+        record.sessionStatus = "active";
+        record.expiresAt = expiresAt;
+        record.maxAttempts = maxAttempts;
+        assertTrue(queue_.append(codec_.encode(record)));
+    }
+
+    /**
+     * @param retryBaseMs 3xx, 5xx 응답 후 재시도 대기 시간(0 이면 같은 run() 에서 바로 재시도)
+     * @param preferences 전송 시도 횟수 저장(null 이면 메모리에만 유지)
+     */
+    private UploadLanes lanes(final long retryBaseMs, final MemoryPreferences preferences) {
+        final LanePolicy policy = new LanePolicy(CAPACITY, 1, retryBaseMs, Math.max(retryBaseMs, 1), 1);
+        final UploadLanes lanes = new UploadLanes();
+        lanes.put(new UploadLane(LanePolicy.Lane.CRASH, policy,
+                new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, ConnectionQueue.SEQUENCE)));
+        lanes.put(new UploadLane(LanePolicy.Lane.SESSION, policy, queue_, preferences));
+        return lanes;
+    }
+
+    private void upload(final String url, final UploadLanes lanes) {
+        new ConnectionProcessor(url, lanes, codec_, "device", UploadBatchPolicy.SINGLE, new PayloadCompressor(),
+                new EnvelopeWriter()).run();
+    }
+
+    private LaneStats sessionStats(final UploadLanes lanes) {
+        return lanes.get(LanePolicy.Lane.SESSION).stats(System.currentTimeMillis(), codec_);
+    }
+
+    /**
+     * expiresAt 시간부터 만료되며, 0 이면 만료되지 않는다.
+     */
+    @Test
+    public void isExpired_boundary() {
+        final ConnectionRecord record = new ConnectionRecord();
+        assertFalse(record.isExpired(Long.MAX_VALUE));
+        record.expiresAt = 1000;
+        assertFalse(record.isExpired(999));
+        assertTrue(record.isExpired(1000));
+        assertTrue(record.isExpired(1001));
+    }
+
+    @Test
+    public void expiredHead_droppedWithoutSending() {
+        final long now = System.currentTimeMillis();
+        enqueue(1, now - 1, 0);
+        enqueue(2, now + 60000, 0);
+        enqueue(3, 0, 0);
+        final UploadLanes lanes = lanes(0, null);
+        upload(url_, lanes);
+        assertEquals(Arrays.asList(2L, 3L), received_);
+        final LaneStats stats = sessionStats(lanes);
+        assertEquals(1, stats.expired);
+        assertEquals(2, stats.sent);
+        assertEquals(0, stats.depth);
+    }
+
+    @Test
+    public void maxAttempts_dropsHeadAfterLimit() {
+        failingSeq_ = 1;
+        enqueue(1, 0, 3);
+        enqueue(2, 0, 3);
+        final UploadLanes lanes = lanes(0, null);
+        upload(url_, lanes);
+        assertEquals(Arrays.asList(1L, 1L, 1L, 2L), received_);
+        final LaneStats stats = sessionStats(lanes);
+        assertEquals(1, stats.poisoned);
+        assertEquals(3, stats.failures);
+        assertEquals(1, stats.sent);
+        assertEquals(0, stats.depth);
+    }
+
+    /**
+     * maxAttempts 가 0 이면 횟수 제한 없이 재시도하며, 다른 요청 메시지가 가장 앞이 되면 횟수를 다시 센다.
+     */
+    @Test
+    public void maxAttempts_zeroRetriesWithoutLimit() {
+        failures_.set(5);
+        failingSeq_ = 2;
+        enqueue(1, 0, 0);
+        enqueue(2, 0, 2);
+        final UploadLanes lanes = lanes(0, null);
+        upload(url_, lanes);
+        assertEquals(Arrays.asList(1L, 1L, 1L, 1L, 1L, 1L, 2L, 2L), received_);
+        final LaneStats stats = sessionStats(lanes);
+        assertEquals(1, stats.sent);
+        assertEquals(1, stats.poisoned);
+        assertEquals(7, stats.failures);
+        assertEquals(0, queue_.size());
+    }
+
+    /**
+     * 전송 시도 횟수는 SharedPreferences 에 저장되어 재시작(새 UploadLane) 후에도 이어서 센다.
+     */
+    @Test
+    public void attempts_surviveRestart() {
+        failingSeq_ = 1;
+        enqueue(1, 0, 2);
+        final MemoryPreferences preferences = new MemoryPreferences();
+        upload(url_, lanes(RETRY_LATER_MS, preferences));
+        assertEquals(1, queue_.size());
+        assertEquals("1:1", preferences.getString("ATTEMPTS_SESSION", null));
+
+        final UploadLanes restarted = lanes(RETRY_LATER_MS, preferences);
+        upload(url_, restarted);
+        assertEquals(Arrays.asList(1L, 1L), received_);
+        assertEquals(0, queue_.size());
+        assertEquals(1, sessionStats(restarted).poisoned);
+        assertFalse(preferences.contains("ATTEMPTS_SESSION"));
+    }
+
+    /**
+     * 연결 실패 등 예외는 요청 메시지의 문제가 아니므로 전송 시도 횟수에 포함하지 않는다.
+     */
+    @Test
+    public void exception_doesNotCountAttempt() throws IOException {
+        final ServerSocket closed = new ServerSocket(0);
+        final String unreachable = "http://127.0.0.1:" + closed.getLocalPort();
+        closed.close();
+        enqueue(1, 0, 1);
+        final MemoryPreferences preferences = new MemoryPreferences();
+        final UploadLanes lanes = lanes(RETRY_LATER_MS, preferences);
+        upload(unreachable, lanes);
+        final LaneStats stats = sessionStats(lanes);
+        assertEquals(1, stats.failures);
+        assertEquals(0, stats.poisoned);
+        assertEquals(1, queue_.size());
+        assertFalse(preferences.contains("ATTEMPTS_SESSION"));
+
+        final UploadLanes restarted = lanes(RETRY_LATER_MS, preferences);
+        upload(url_, restarted);
+        assertEquals(Arrays.asList(1L), received_);
+        assertEquals(1, sessionStats(restarted).sent);
+        assertEquals(0, queue_.size());
+    }
+}
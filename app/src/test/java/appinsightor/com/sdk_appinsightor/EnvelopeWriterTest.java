@@ -0,0 +1,223 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * EnvelopeWriter 테스트 - Event.writeJSON(EnvelopeWriter) 결과가 toJSON() 과 같은 JSON 인지(key 순서 제외) 확인하고,
+ * 요청 메시지 본문을 JSONObject 로 만드는 방식과 할당 byte 수, 시간을 비교한다.(benchmark 는 {@link Benchmark#PROPERTY} 지정시에만 실행)
+ */
+public class EnvelopeWriterTest {
+    private static final String SPECIAL = "따옴표\" 역슬래시\\ /slash\n\t\r\b\f \u0001\u001f 이모지😀 = & % + ?";
+
+    private static Event event(final String key, final int count) {
+        final Event event = new Event();
+        event.key = key;
+        event.count = count;
+        event.timestamp = 1500000000000L + count;
+        return event;
+    }
+
+    private static List<Event> events() {
+        final List<Event> events = new ArrayList<>();
+        events.add(event("launch", 1));
+
+        final Event special = event(SPECIAL, 1);
+        special.segmentation = new HashMap<>();
+        special.segmentation.put(SPECIAL, SPECIAL);
+        special.segmentation.put("empty", "");
+        special.dur = 3;
+        events.add(special);
+
+        final Event pooled = event("purchase", 1);
+        final SegmentationMap segmentation = pooled.segmentationBuffer();
+        segmentation.put("item", "1234");
+        segmentation.put("list", "home");
+        pooled.dur = 0.125;
+        pooled.sampleRate = 0.1;
+        pooled.measurementsBuffer().put("price", 12.5);
+        pooled.measurements.put("quantity", 3L);
+        pooled.measurements.put("huge", 1e21);
+        pooled.measurements.put("tiny", 1.5e-7);
+        events.add(pooled);
+
+        final Event aggregated = event("scroll", 7);
+        aggregated.dur = 42.5;
+        aggregated.durMin = 0.5;
+        aggregated.durMax = 20;
+        aggregated.histogram = new long[] {3, 2, 17, 4, 130, 1};
+        aggregated.measurementsBuffer().set("pixels", false, 7000, 10, 3000);
+        aggregated.measurements.set("speed", true, Double.doubleToRawLongBits(12.5),
+                Double.doubleToRawLongBits(-1.5), Double.doubleToRawLongBits(9.25));
+        aggregated.measurements.set("min_long", false, Long.MIN_VALUE + 1, Long.MIN_VALUE + 1, Long.MAX_VALUE);
+        events.add(aggregated);
+        return events;
+    }
+
+    private static ConnectionRecord record() {
+        final ConnectionRecord record = new ConnectionRecord();
+        record.type = ConnectionRecord.TYPE_EVENTS;
+        record.seq = 12;
+        record.serverName = "server";
+        record.category = "category";
+        record.appName = "앱 \"이름\"";
+        record.appVersion = "1.0";
+        record.deviceId = "device";
+        record.timestamp = 1500000000000L;
+        record.sdkName = "sdk";
+        record.sdkVersion = "1.0";
+        record.metrics = "{\"_os\":\"Android\",\"_device\":\"a=b&c\",\"_resolution\":\"1080x1920\"}";
+        record.appMetrics = "{\"memory\":12345,\"ratio\":0.5}";
+        record.events = events();
+        return record;
+    }
+
+    /**
+     * key 순서를 제외하고 비교하며, 정수는 long 값, 그 밖의 숫자는 double 값으로 비교한다.(JSONObject 는 정수를 Integer, Long 으로 읽음)
+     */
+    private static void assertJSONEquals(final String path, final Object expected, final Object actual) {
+        if (expected instanceof JSONObject) {
+            assertTrue(path + " is " + actual, actual instanceof JSONObject);
+            final JSONObject expectedObject = (JSONObject) expected;
+            final JSONObject actualObject = (JSONObject) actual;
+            assertEquals(path, expectedObject.keySet(), actualObject.keySet());
+            final Iterator<String> keys = expectedObject.keys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                assertJSONEquals(path + "." + key, expectedObject.opt(key), actualObject.opt(key));
+            }
+        } else if (expected instanceof JSONArray) {
+            assertTrue(path + " is " + actual, actual instanceof JSONArray);
+            final JSONArray expectedArray = (JSONArray) expected;
+            final JSONArray actualArray = (JSONArray) actual;
+            assertEquals(path, expectedArray.length(), actualArray.length());
+            for (int i = 0; i < expectedArray.length(); i++) {
+                assertJSONEquals(path + "[" + i + "]", expectedArray.opt(i), actualArray.opt(i));
+            }
+        } else if (expected instanceof Number) {
+            assertTrue(path + " is " + actual, actual instanceof Number);
+            if (expected instanceof Long || expected instanceof Integer) {
+                assertEquals(path, ((Number) expected).longValue(), ((Number) actual).longValue());
+            } else {
+                assertEquals(path, ((Number) expected).doubleValue(), ((Number) actual).doubleValue(), 0);
+            }
+        } else {
+            assertEquals(path, expected, actual);
+        }
+    }
+
+    @Test
+    public void eventWriteJSON_matchesToJSON() throws Exception {
+        final EnvelopeWriter writer = new EnvelopeWriter();
+        for (Event event : events()) {
+            writer.reset();
+            event.writeJSON(writer);
+            final String written = writer.toString();
+            assertEquals(AppInsightorStore.toBytes(written).length, writer.length());
+            assertJSONEquals(event.key, new JSONObject(event.toJSON().toString()), new JSONObject(written));
+        }
+    }
+
+    /**
+     * 요청 메시지 본문의 events, metrics, app_metrics 는 URL encoding 되어 있으며, 풀면 원래 JSON 과 같다.
+     */
+    @Test
+    public void writeRecord_encodedFieldsDecodeToOriginalJSON() throws Exception {
+        final ConnectionRecord record = record();
+        final EnvelopeWriter writer = new EnvelopeWriter();
+        writer.writeRecord(record);
+        final String body = writer.toString();
+        assertFalse(body, body.contains("\"events\":["));
+        assertTrue(body, body.contains("\"events\":%5B"));
+
+        //envelope 의 문자열 값에는 %, + 가 없으므로 본문 전체를 URL decoding 하면 JSON 이 된다.
+        final JSONObject decoded = new JSONObject(URLDecoder.decode(body, "UTF-8"));
+        assertEquals("server", decoded.getString("t"));
+        assertEquals(record.appName, decoded.getString("app_name"));
+        assertEquals("1500000000000", decoded.getString("timestamp"));
+        assertEquals("12", decoded.getString("seq"));
+        assertJSONEquals("metrics", new JSONObject(record.metrics), decoded.get("metrics"));
+        assertJSONEquals("app_metrics", new JSONObject(record.appMetrics), decoded.get("app_metrics"));
+        final JSONArray expectedEvents = new JSONArray();
+        for (Event event : record.events) {
+            expectedEvents.put(new JSONObject(event.toJSON().toString()));
+        }
+        assertJSONEquals("events", expectedEvents, decoded.get("events"));
+    }
+
+    /**
+     * 이전 방식 - JSONObject 로 envelope 를 만들고 중첩 JSON 을 URL encoding 한 후 문자열, byte 배열로 변환
+     */
+    private static byte[] jsonObjectBody(final ConnectionRecord record) throws Exception {
+        final JSONObject json = new JSONObject();
+        json.put("t", record.serverName);
+        json.put("category", record.category);
+        json.put("app_name", record.appName);
+        json.put("app_version", record.appVersion);
+        json.put("device_id", record.deviceId);
+        json.put("timestamp", String.valueOf(record.timestamp));
+        json.put("sdk_name", record.sdkName);
+        json.put("sdk_version", record.sdkVersion);
+        json.put("metrics", URLEncoder.encode(record.metrics, "UTF-8"));
+        final JSONArray events = new JSONArray();
+        for (Event event : record.events) {
+            events.put(event.toJSON());
+        }
+        json.put("events", URLEncoder.encode(events.toString(), "UTF-8"));
+        json.put("app_metrics", URLEncoder.encode(record.appMetrics, "UTF-8"));
+        json.put("seq", String.valueOf(record.seq));
+        return json.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * microbenchmark - 같은 요청 메시지 본문을 JSONObject 방식과 EnvelopeWriter 로 만들 때의 할당 byte 수, 시간({@link Benchmark})
+     */
+    @Test
+    public void benchmark_writerAllocatesLessThanJSONObject() throws Exception {
+        Benchmark.assumeEnabled();
+        final ConnectionRecord record = record();
+        final EnvelopeWriter writer = new EnvelopeWriter();
+        final int warmup = 5000;
+        final int iterations = 5000;
+        long sink = 0;
+        for (int i = 0; i < warmup; i++) {
+            sink += jsonObjectBody(record).length;
+            writer.reset();
+            writer.writeRecord(record);
+            sink += writer.length();
+        }
+
+        long bytes = Benchmark.allocatedBytes();
+        long nanos = Benchmark.cpuNanos();
+        for (int i = 0; i < iterations; i++) {
+            sink += jsonObjectBody(record).length;
+        }
+        final long jsonNanos = (Benchmark.cpuNanos() - nanos) / iterations;
+        final long jsonBytes = (Benchmark.allocatedBytes() - bytes) / iterations;
+
+        bytes = Benchmark.allocatedBytes();
+        nanos = Benchmark.cpuNanos();
+        for (int i = 0; i < iterations; i++) {
+            writer.reset();
+            writer.writeRecord(record);
+            sink += writer.length();
+        }
+        final long writerNanos = (Benchmark.cpuNanos() - nanos) / iterations;
+        final long writerBytes = (Benchmark.allocatedBytes() - bytes) / iterations;
+
+        Benchmark.report("EnvelopeWriter (per request body)", "JSONObject " + jsonBytes + " bytes, " + jsonNanos
+                + " ns / EnvelopeWriter " + writerBytes + " bytes, " + writerNanos + " ns (" + sink + ")");
+        assertTrue("JSONObject " + jsonBytes + " bytes, EnvelopeWriter " + writerBytes + " bytes",
+                writerBytes * 4 < jsonBytes);
+    }
+}
@@ -0,0 +1,155 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventAggregator 테스트 - key, segmentation, sampling rate 가 같은 이벤트를 합쳐 count, dur(합계, 최소, 최대), 측정값을 누적하는지,
+ * maxKeys 를 넘는 새 조합은 합치지 않는지, events Queue 로 옮긴 후 비워지는지 확인한다.
+ */
+public class EventAggregatorTest {
+    private static final QueueCapacity CAPACITY = new QueueCapacity(1000, 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST);
+
+    private static Event event(final String key, final String screen, final double dur, final long timestamp) {
+        final Event event = new Event();
+        event.key = key;
+        event.count = 1;
+        event.dur = dur;
+        event.timestamp = timestamp;
+        if (screen != null) {
+            final Map<String, String> segmentation = new HashMap<>();
+            segmentation.put("screen", screen);
+            event.segmentation = segmentation;
+        }
+        return event;
+    }
+
+    private static EventQueue eventQueue() {
+        return new EventQueue(new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, EventQueue.SEQUENCE),
+                new RecordCodec(null), new SequenceGenerator(new MemoryPreferences()));
+    }
+
+    @Test
+    public void add_mergesSameKeyAndSegmentation() {
+        final EventAggregator aggregator = new EventAggregator(10);
+        assertTrue(aggregator.add(event("scroll", "home", 2, 1000), 1000));
+        assertTrue(aggregator.add(event("scroll", "home", 0.5, 2000), 2000));
+        assertTrue(aggregator.add(event("scroll", "home", 7.5, 3000), 3000));
+        assertEquals(1, aggregator.size());
+
+        final EventQueue queue = eventQueue();
+        assertEquals(1, aggregator.drainTo(queue));
+        final List<Event> events = queue.events();
+        assertEquals(1, events.size());
+        final Event merged = events.get(0);
+        assertEquals("scroll", merged.key);
+        assertEquals(3, merged.count);
+        assertEquals(10, merged.dur, 0);
+        assertEquals(0.5, merged.durMin, 0);
+        assertEquals(7.5, merged.durMax, 0);
+        assertEquals(1000, merged.timestamp);
+        assertEquals("home", merged.segmentation.get("screen"));
+    }
+
+    /**
+     * segmentation, sampling rate 가 다르면 다른 이벤트로 합치며, 처음 받은 순서대로 옮긴다.
+     */
+    @Test
+    public void add_separatesDifferentSegmentationAndSampleRate() {
+        final EventAggregator aggregator = new EventAggregator(10);
+        aggregator.add(event("view", "home", 0, 1), 1);
+        aggregator.add(event("view", "cart", 0, 2), 2);
+        aggregator.add(event("view", null, 0, 3), 3);
+        final Event sampled = event("view", "home", 0, 4);
+        sampled.sampleRate = 0.5;
+        aggregator.add(sampled, 4);
+        aggregator.add(event("view", "cart", 0, 5), 5);
+        aggregator.add(event("view", null, 0, 6), 6);
+        assertEquals(4, aggregator.size());
+
+        final EventQueue queue = eventQueue();
+        aggregator.drainTo(queue);
+        final List<Event> events = queue.events();
+        assertEquals(4, events.size());
+        assertEquals(1, events.get(0).count);
+        assertEquals("cart", events.get(1).segmentation.get("screen"));
+        assertEquals(2, events.get(1).count);
+        assertNull(events.get(2).segmentation);
+        assertEquals(2, events.get(2).count);
+        assertEquals(0.5, events.get(3).sampleRate, 0);
+    }
+
+    @Test
+    public void add_mergesMeasurements() {
+        final EventAggregator aggregator = new EventAggregator(10);
+        final Event first = event("purchase", null, 0, 1);
+        first.measurementsBuffer().put("items", 3L);
+        first.measurements.put("price", 10.0);
+        aggregator.add(first, 1);
+        aggregator.add(event("purchase", null, 0, 2), 2);//측정값 없는 이벤트
+        final Event third = event("purchase", null, 0, 3);
+        third.measurementsBuffer().put("items", 1L);
+        third.measurements.put("price", 2.5);
+        aggregator.add(third, 3);
+
+        final EventQueue queue = eventQueue();
+        aggregator.drainTo(queue);
+        final Measurements measurements = queue.events().get(0).measurements;
+        assertEquals(2, measurements.size());
+        assertEquals("items", measurements.name(0));
+        assertFalse(measurements.isDouble(0));
+        assertEquals(4, measurements.bits(0));
+        assertEquals(1, measurements.minBits(0));
+        assertEquals(3, measurements.maxBits(0));
+        assertTrue(measurements.isDouble(1));
+        assertEquals(12.5, Double.longBitsToDouble(measurements.bits(1)), 0);
+        assertEquals(2.5, Double.longBitsToDouble(measurements.minBits(1)), 0);
+        assertEquals(10.0, Double.longBitsToDouble(measurements.maxBits(1)), 0);
+    }
+
+    /**
+     * maxKeys 에 이르면 새 조합은 false(그대로 저장)를 반환하지만 이미 합치는 조합은 계속 합친다.
+     */
+    @Test
+    public void add_capsDistinctKeys() {
+        final EventAggregator aggregator = new EventAggregator(2);
+        assertTrue(aggregator.add(event("a", null, 0, 1), 1));
+        assertTrue(aggregator.add(event("b", null, 0, 1), 1));
+        assertFalse(aggregator.add(event("c", null, 0, 1), 1));
+        assertTrue(aggregator.add(event("a", null, 0, 1), 1));
+        assertEquals(2, aggregator.size());
+
+        //합치지 않는 설정(0)에서도 이미 합치는 중인 조합은 전송시까지 유지한다.
+        aggregator.setMaxKeys(0);
+        assertTrue(aggregator.add(event("b", null, 0, 1), 1));
+        assertFalse(aggregator.add(event("d", null, 0, 1), 1));
+        assertFalse(new EventAggregator(EventAggregator.DEFAULT_MAX_KEYS).add(event("a", null, 0, 1), 1));
+    }
+
+    /**
+     * 시간 조건(BatchPolicy.maxAgeMs)은 합치는 중인 첫 이벤트를 받은 시간부터 세며, 옮기거나 버리면 초기화한다.
+     */
+    @Test
+    public void ageMs_fromFirstAddUntilDrained() {
+        final EventAggregator aggregator = new EventAggregator(10);
+        assertEquals(0, aggregator.ageMs(5000));
+        aggregator.add(event("a", null, 0, 1), 1000);
+        aggregator.add(event("b", null, 0, 1), 3000);
+        assertEquals(4000, aggregator.ageMs(5000));
+        assertEquals(0, aggregator.ageMs(500));
+
+        aggregator.drainTo(eventQueue());
+        assertEquals(0, aggregator.size());
+        assertEquals(0, aggregator.ageMs(5000));
+
+        aggregator.add(event("a", null, 0, 1), 6000);
+        aggregator.clear();
+        assertEquals(0, aggregator.size());
+        assertEquals(0, aggregator.ageMs(9000));
+    }
+}
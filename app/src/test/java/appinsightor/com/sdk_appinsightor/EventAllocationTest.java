@@ -0,0 +1,102 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 이벤트 기록 경로의 메모리 할당 회귀 테스트<br />
+ * Event pool, SegmentationMap, EventBuilder 를 반복 사용할 때 호출 스레드에서 새 객체를 만들지 않는지
+ * 스레드별 할당 byte 수(com.sun.management.ThreadMXBean)로 확인한다.
+ */
+public class EventAllocationTest {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 10000;
+    private static final long MAX_BYTES = 16 * 1024;//측정 자체와 JIT 로 생기는 할당 허용치(반복당 2byte 미만)
+
+    private com.sun.management.ThreadMXBean threads_;
+
+    @Before
+    public void setUp() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        threads_ = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(threads_.isThreadAllocatedMemorySupported());
+        threads_.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private long allocatedBytes() {
+        return threads_.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void obtainRecycle() {
+        final Event event = Event.obtain();
+        event.key = "item_impression";
+        event.count = 1;
+        final SegmentationMap segmentation = event.segmentationBuffer();
+        segmentation.put("item", "1234");
+        segmentation.put("list", "home");
+        event.segmentation = segmentation;
+        event.measurementsBuffer().put("price", 12.5);
+        event.recycle();
+    }
+
+    @Test
+    public void obtainRecycle_doesNotAllocate() {
+        for (int i = 0; i < WARMUP; i++) {
+            obtainRecycle();
+        }
+        final long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            obtainRecycle();
+        }
+        final long allocated = allocatedBytes() - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < MAX_BYTES);
+    }
+
+    @Test
+    public void segmentationMap_putGetClear_doesNotAllocate() {
+        final SegmentationMap map = new SegmentationMap();
+        int hash = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            if (i == WARMUP) {
+                hash = 0;
+            }
+            map.put("item", "1234");
+            map.put("list", "home");
+            map.put("list", "search");
+            hash += map.hashCode() + map.get("item").length();
+            map.clear();
+        }
+        final long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            map.put("item", "1234");
+            map.put("list", "home");
+            map.put("list", "search");
+            hash -= map.hashCode() + map.get("item").length();
+            map.clear();
+        }
+        final long allocated = allocatedBytes() - before;
+        assertEquals(0, hash);
+        assertTrue("allocated " + allocated + " bytes", allocated < MAX_BYTES);
+    }
+
+    @Test
+    public void eventBuilder_reuse_doesNotAllocate() {
+        final EventBuilder builder = new EventBuilder(new AppInsightor());
+        for (int i = 0; i < WARMUP; i++) {
+            builder.begin("purchase").seg("item", "1234").measure("price", 12.5).measure("quantity", 2).dur(0.35);
+        }
+        final long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            //record() 하지 않은 이전 이벤트는 begin() 에서 pool 에 돌려준다.
+            builder.begin("purchase").seg("item", "1234").measure("price", 12.5).measure("quantity", 2).dur(0.35);
+        }
+        final long allocated = allocatedBytes() - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < MAX_BYTES);
+    }
+}
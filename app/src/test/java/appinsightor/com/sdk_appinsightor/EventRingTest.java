@@ -0,0 +1,308 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventRing(MPSC ring buffer) 와 EventIngestor 의 용량 초과시 처리(OverflowStrategy) 테스트<br />
+ * EventIngestor 는 이벤트 스레드를 시작하지 않고 테스트 스레드에서 drain() 하여 ring buffer 가 가득 찬 상태를 만든다.<br />
+ * 여러 생산자 스레드의 처리량을 이전 synchronized recordEvent 방식과 비교한다.(benchmark 는 {@link Benchmark#PROPERTY} 지정시에만 실행)
+ */
+public class EventRingTest {
+
+    private static Event event(final String key, final int producer, final long seq) {
+        final Event event = Event.obtain();
+        event.key = key;
+        event.count = producer;
+        event.seq = seq;
+        return event;
+    }
+
+    @Test
+    public void offerPoll_fifoAndFull() {
+        final EventRing ring = new EventRing(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(ring.offer(event("e" + i, 0, i)));
+            }
+            assertFalse("full ring", ring.offer(event("overflow", 0, 4)));
+            assertEquals("e0", ring.poll().key);
+            assertTrue("one slot freed", ring.offer(event("e4", 0, 4)));
+            assertFalse(ring.offer(event("overflow", 0, 5)));
+            for (int i = 1; i <= 4; i++) {
+                assertEquals("e" + i, ring.poll().key);
+            }
+            assertNull(ring.poll());
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    public void multipleProducers_keepPerProducerOrder() throws Exception {
+        final int producers = 4;
+        final int perProducer = 50000;
+        final EventRing ring = new EventRing(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        final Event event = new Event();
+                        event.count = producer;
+                        event.seq = i;
+                        while (!ring.offer(event)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+
+        final long[] next = new long[producers];
+        int received = 0;
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received < producers * perProducer) {
+            final Event event = ring.poll();
+            if (event == null) {
+                assertTrue("timed out after " + received + " events", System.nanoTime() < deadline);
+                Thread.yield();
+                continue;
+            }
+            assertEquals("producer " + event.count, next[event.count], event.seq);
+            next[event.count]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(ring.poll());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer, next[p]);
+        }
+    }
+
+    /**
+     * 받은 이벤트 key 를 순서대로 기록하는 Sink
+     */
+    private static final class RecordingSink implements EventIngestor.Sink {
+        final List<String> keys = Collections.synchronizedList(new ArrayList<String>());
+        long dropped;
+
+        @Override
+        public void accept(final Event event) {
+            keys.add(event.key);
+            event.recycle();
+        }
+
+        @Override
+        public long onDrained() {
+            return 0;
+        }
+
+        @Override
+        public synchronized void onDropped(final long count) {
+            dropped += count;
+        }
+    }
+
+    private static List<String> keys(final int count) {
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add("e" + i);
+        }
+        return keys;
+    }
+
+    @Test
+    public void overflow_dropNewest() {
+        final RecordingSink sink = new RecordingSink();
+        final EventIngestor ingestor = new EventIngestor(new IngestionPolicy(2, IngestionPolicy.WaitStrategy.SLEEPING,
+                IngestionPolicy.OverflowStrategy.DROP_NEWEST), sink);
+        for (int i = 0; i < 5; i++) {
+            ingestor.publish(event("e" + i, 0, i));
+        }
+        assertEquals(3, sink.dropped);
+        assertTrue(sink.keys.isEmpty());
+        assertEquals(2, ingestor.drain());
+        assertEquals(keys(2), sink.keys);
+    }
+
+    @Test
+    public void overflow_callerRuns() {
+        final RecordingSink sink = new RecordingSink();
+        final EventIngestor ingestor = new EventIngestor(new IngestionPolicy(2, IngestionPolicy.WaitStrategy.SLEEPING,
+                IngestionPolicy.OverflowStrategy.CALLER_RUNS), sink);
+        for (int i = 0; i < 5; i++) {
+            ingestor.publish(event("e" + i, 0, i));
+        }
+        //가득 찰 때마다 호출 스레드가 비웠으므로 유실 없이 순서대로 전달된다.
+        assertEquals(4, sink.keys.size());
+        ingestor.drain();
+        assertEquals(keys(5), sink.keys);
+        assertEquals(0, sink.dropped);
+    }
+
+    @Test
+    public void overflow_block() throws Exception {
+        final RecordingSink sink = new RecordingSink();
+        final EventIngestor ingestor = new EventIngestor(new IngestionPolicy(2, IngestionPolicy.WaitStrategy.SLEEPING,
+                IngestionPolicy.OverflowStrategy.BLOCK), sink);
+        ingestor.publish(event("e0", 0, 0));
+        ingestor.publish(event("e1", 0, 1));
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ingestor.publish(event("e2", 0, 2));
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("producer waits for a free slot", producer.isAlive());
+        assertTrue(sink.keys.isEmpty());
+
+        ingestor.drain();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        ingestor.drain();
+        assertEquals(keys(3), sink.keys);
+        assertEquals(0, sink.dropped);
+    }
+
+    /**
+     * 이벤트를 변환하여 events Queue 에 저장하는 일(두 방식에서 같음), 메모리가 늘지 않도록 일정 크기마다 비운다.
+     */
+    private static final class StoringSink implements EventIngestor.Sink {
+        private final RecordCodec codec_ = new RecordCodec(null);
+        private final MemoryStorageBackend queue_ = new MemoryStorageBackend();
+        private final AtomicLong stored_ = new AtomicLong();
+
+        @Override
+        public void accept(final Event event) {
+            queue_.append(codec_.encodeEvent(event));
+            if (queue_.size() >= 10000) {
+                queue_.ack(queue_.size());
+            }
+            event.recycle();
+            stored_.incrementAndGet();
+        }
+
+        @Override
+        public long onDrained() {
+            return 0;
+        }
+
+        @Override
+        public void onDropped(final long count) {
+        }
+    }
+
+    private interface Recorder {
+        void record(Event event);
+    }
+
+    /**
+     * producers 개의 스레드가 perProducer 개씩 기록하고, 모두 저장될 때까지의 시간
+     * @return [모든 생산자가 반환할 때까지 ns, 모두 저장될 때까지 ns]
+     */
+    private static long[] produce(final int producers, final int perProducer, final Recorder recorder, final StoringSink sink)
+            throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        recorder.record(event("benchmark", producer, i));
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        final long stored = sink.stored_.get();
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final long produced = System.nanoTime() - begin;
+        while (sink.stored_.get() - stored < (long) producers * perProducer) {
+            Thread.yield();
+        }
+        return new long[] {produced, System.nanoTime() - begin};
+    }
+
+    /**
+     * microbenchmark - 여러 생산자 스레드가 recordEvent 할 때 이전 방식(synchronized 안에서 변환, 저장)과
+     * EventIngestor(ring buffer, 이벤트 스레드에서 변환, 저장)의 처리량({@link Benchmark})
+     */
+    @Test
+    public void benchmark_ringVsSynchronizedRecordEvent() throws Exception {
+        Benchmark.assumeEnabled();
+        final int producers = 4;
+        final int perProducer = 200000;
+        final StoringSink lockedSink = new StoringSink();
+        final Object lock = new Object();
+        final Recorder locked = new Recorder() {
+            @Override
+            public void record(final Event event) {
+                synchronized (lock) {//이전 AppInsightor.recordEvent (public synchronized)
+                    lockedSink.accept(event);
+                }
+            }
+        };
+        final StoringSink ringSink = new StoringSink();
+        final EventIngestor ingestor = new EventIngestor(IngestionPolicy.DEFAULT, ringSink);
+        final Recorder ring = new Recorder() {
+            @Override
+            public void record(final Event event) {
+                ingestor.publish(event);
+            }
+        };
+        ingestor.start();
+        try {
+            produce(producers, perProducer / 4, locked, lockedSink);//warmup
+            produce(producers, perProducer / 4, ring, ringSink);
+            final long[] lockedNanos = produce(producers, perProducer, locked, lockedSink);
+            final long[] ringNanos = produce(producers, perProducer, ring, ringSink);
+
+            final long events = (long) producers * perProducer;
+            Benchmark.report("recordEvent x" + producers + " threads (events/s, returned / stored)",
+                    "synchronized " + events * 1000000000L / lockedNanos[0] + " / " + events * 1000000000L / lockedNanos[1]
+                    + ", ring " + events * 1000000000L / ringNanos[0] + " / " + events * 1000000000L / ringNanos[1]
+                    + " (" + Runtime.getRuntime().availableProcessors() + " cpu)");
+            //CPU 가 1개이면 두 방식의 처리량이 비슷하므로, 크게 느려지지 않았는지만 확인한다.
+            assertTrue("synchronized " + lockedNanos[1] + " ns, ring " + ringNanos[1] + " ns", ringNanos[1] < lockedNanos[1] * 2);
+        } finally {
+            ingestor.stop();
+        }
+    }
+}
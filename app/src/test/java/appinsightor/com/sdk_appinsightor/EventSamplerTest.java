@@ -0,0 +1,107 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventSampler 테스트 - key, prefix 별 rate 조회 우선순위와 device ID, key 로 정해지는 sampling 결과가
+ * 같은 입력에 항상 같고, device 들 중 rate 비율만큼 전송되는지 확인한다.
+ */
+public class EventSamplerTest {
+    private static final int DEVICES = 20000;
+
+    @Test
+    public void rateOf_exactThenLongestPrefix() {
+        final EventSampler sampler = new EventSampler();
+        assertEquals(EventSampler.FULL_RATE, sampler.rateOf("scroll_home"), 0);
+
+        sampler.setRate("scroll_*", 0.5);
+        sampler.setRate("scroll_home*", 0.25);
+        sampler.setRate("scroll_home_top", 0.1);
+        assertEquals(0.1, sampler.rateOf("scroll_home_top"), 0);
+        assertEquals(0.25, sampler.rateOf("scroll_home_bottom"), 0);
+        assertEquals(0.25, sampler.rateOf("scroll_home"), 0);
+        assertEquals(0.5, sampler.rateOf("scroll_cart"), 0);
+        assertEquals(EventSampler.FULL_RATE, sampler.rateOf("scrol"), 0);
+        assertEquals(EventSampler.FULL_RATE, sampler.rateOf("view"), 0);
+    }
+
+    /**
+     * rate 1 은 설정을 제거하고, clear() 는 모든 설정을 제거한다.
+     */
+    @Test
+    public void setRate_fullRateRemovesAndClear() {
+        final EventSampler sampler = new EventSampler();
+        sampler.setRate("scroll_*", 0.5);
+        sampler.setRate("scroll_home", 0.2);
+        sampler.setRate("scroll_home", 1);
+        assertEquals(0.5, sampler.rateOf("scroll_home"), 0);
+        sampler.setRate("scroll_*", 1.5);
+        assertEquals(EventSampler.FULL_RATE, sampler.rateOf("scroll_home"), 0);
+
+        sampler.setRate("view", 0);
+        sampler.setRate("tap_*", 0.3);
+        sampler.clear();
+        assertEquals(EventSampler.FULL_RATE, sampler.rateOf("view"), 0);
+        assertEquals(EventSampler.FULL_RATE, sampler.rateOf("tap_button"), 0);
+    }
+
+    @Test
+    public void isSampled_edgesAndNullDevice() {
+        assertTrue(EventSampler.isSampled("device", "key", 1));
+        assertTrue(EventSampler.isSampled(null, "key", 1));
+        assertFalse(EventSampler.isSampled("device", "key", 0));
+        assertFalse(EventSampler.isSampled("device", "key", -0.5));
+    }
+
+    /**
+     * 같은 device, key 는 항상 같은 결과이며, rate 를 올리면 이미 전송하던 device 는 계속 전송한다.
+     */
+    @Test
+    public void isSampled_deterministicAndMonotonic() {
+        for (int i = 0; i < 1000; i++) {
+            final String device = "device-" + i;
+            final boolean sampled = EventSampler.isSampled(device, "purchase", 0.3);
+            for (int repeat = 0; repeat < 3; repeat++) {
+                assertEquals(device, sampled, EventSampler.isSampled(device, "purchase", 0.3));
+            }
+            if (sampled) {
+                assertTrue(device, EventSampler.isSampled(device, "purchase", 0.6));
+            }
+        }
+    }
+
+    /**
+     * device 들 중 rate 비율만큼 전송하며, key 가 다르면 다른 device 들이 선택된다.
+     */
+    @Test
+    public void isSampled_fractionMatchesRate() {
+        for (double rate : new double[] {0.01, 0.1, 0.5, 0.9}) {
+            int sampled = 0;
+            for (int i = 0; i < DEVICES; i++) {
+                if (EventSampler.isSampled("device-" + i, "scroll", rate)) {
+                    sampled++;
+                }
+            }
+            final double fraction = (double) sampled / DEVICES;
+            assertEquals("rate " + rate, rate, fraction, 0.01 + rate * 0.05);
+        }
+
+        int both = 0;
+        int either = 0;
+        for (int i = 0; i < DEVICES; i++) {
+            final boolean a = EventSampler.isSampled("device-" + i, "scroll", 0.5);
+            final boolean b = EventSampler.isSampled("device-" + i, "purchase", 0.5);
+            if (a && b) {
+                both++;
+            }
+            if (a || b) {
+                either++;
+            }
+        }
+        //key 별 결과가 독립이면 양쪽 모두 전송하는 device 는 약 1/4, 한쪽이라도 전송하는 device 는 약 3/4
+        assertEquals(0.25, (double) both / DEVICES, 0.02);
+        assertEquals(0.75, (double) either / DEVICES, 0.02);
+    }
+}
@@ -0,0 +1,164 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * FatalCrashStore 테스트 - 기록한 crash 가 다음 실행(새 인스턴스)에서 그대로 읽히는지 확인한다.<br />
+ * 별도 JVM 에서 uncaught exception handler 가 기록한 직후 종료해도 남는지, handler 의 기록 시간도 확인한다.
+ */
+public class FatalCrashStoreTest {
+    private static final byte[] SNAPSHOT = AppInsightorStore.toBytes("{\"t\":\"crash snapshot\"}");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static final long MAX_HANDLER_MS = 200;//cold JVM 에서 stack trace 를 처음 만드는 시간 포함(보통 수 ms)
+
+    /**
+     * crash 프로세스 - uncaught exception handler 에서 crash 를 기록하고 기록 시간(ns)을 출력한 후 바로 종료한다.(close 하지 않음)<br />
+     * args: crash 파일
+     */
+    public static final class Crasher {
+        public static void main(final String[] args) throws Exception {
+            final FatalCrashStore store = new FatalCrashStore(new File(args[0]));
+            store.prepare(SNAPSHOT);
+            Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                @Override
+                public void uncaughtException(final Thread t, final Throwable e) {
+                    final long start = System.nanoTime();
+                    final boolean written = store.write(e, 1500000000000L, 12345, false);
+                    final long nanos = System.nanoTime() - start;
+                    System.out.println(written ? "written " + nanos : "not written");
+                    System.out.flush();
+                    System.exit(1);
+                }
+            });
+            throw new IllegalStateException("forked crash");
+        }
+    }
+
+    private File crashFile() {
+        return new File(temp.getRoot(), "appinsightor/fatal.crash");
+    }
+
+    @Test
+    public void write_survivesReopen() throws Exception {
+        final FatalCrashStore store = new FatalCrashStore(crashFile());
+        store.prepare(SNAPSHOT);
+        final IllegalStateException error = new IllegalStateException("처리되지 않은 예외 crash");
+        assertTrue(store.write(error, 1500000000000L, 12345, true));
+        store.close();
+
+        final FatalCrashStore reopened = new FatalCrashStore(crashFile());
+        final FatalCrashStore.FatalCrash crash = reopened.take();
+        assertNotNull(crash);
+        assertEquals(1500000000000L, crash.timestamp);
+        assertEquals(12345, crash.runningTimeMs);
+        assertTrue(crash.background);
+        assertArrayEquals(SNAPSHOT, crash.snapshot);
+        assertTrue(crash.error, crash.error.startsWith("java.lang.IllegalStateException: 처리되지 않은 예외 crash"));
+        assertTrue(crash.error, crash.error.contains("at " + FatalCrashStoreTest.class.getName()));
+
+        assertNull("take() empties the file", reopened.take());
+        reopened.close();
+        assertNull(new FatalCrashStore(crashFile()).take());
+    }
+
+    @Test
+    public void onlyFirstCrashIsWritten() throws Exception {
+        final FatalCrashStore store = new FatalCrashStore(crashFile());
+        store.prepare(SNAPSHOT);
+        assertTrue(store.write(new RuntimeException("first"), 1, 1, false));
+        assertTrue(store.write(new RuntimeException("second"), 2, 2, false));
+        store.close();
+
+        final FatalCrashStore.FatalCrash crash = new FatalCrashStore(crashFile()).take();
+        assertEquals(1, crash.timestamp);
+        assertTrue(crash.error.startsWith("java.lang.RuntimeException: first"));
+    }
+
+    @Test
+    public void withoutSnapshot_notWritten() throws Exception {
+        final FatalCrashStore store = new FatalCrashStore(crashFile());
+        assertFalse(store.write(new RuntimeException(), 1, 1, false));
+        store.close();
+        assertNull(new FatalCrashStore(crashFile()).take());
+    }
+
+    @Test
+    public void afterClose_fallsBack() throws Exception {
+        final FatalCrashStore store = new FatalCrashStore(crashFile());
+        store.prepare(SNAPSHOT);
+        store.close();
+        assertFalse(store.write(new RuntimeException(), 1, 1, false));
+    }
+
+    @Test
+    public void largeStackTrace_truncated() throws Exception {
+        final char[] message = new char[FatalCrashStore.BUFFER_BYTES];
+        Arrays.fill(message, 'x');
+        final FatalCrashStore store = new FatalCrashStore(crashFile());
+        store.prepare(SNAPSHOT);
+        assertTrue(store.write(new RuntimeException(new String(message)), 1, 1, false));
+        store.close();
+
+        final FatalCrashStore.FatalCrash crash = new FatalCrashStore(crashFile()).take();
+        assertNotNull(crash);
+        assertArrayEquals(SNAPSHOT, crash.snapshot);
+        assertTrue(crash.error.startsWith("java.lang.RuntimeException: xxx"));
+        assertTrue(crash.error.length() < FatalCrashStore.BUFFER_BYTES);
+    }
+
+    /**
+     * 헤더를 기록하기 전에 종료된 경우(payload 만 기록됨) 다음 실행에서 무시한다.
+     */
+    @Test
+    public void tornWrite_ignored() throws Exception {
+        final FatalCrashStore store = new FatalCrashStore(crashFile());
+        store.prepare(SNAPSHOT);
+        assertTrue(store.write(new RuntimeException("torn"), 1, 1, false));
+        store.close();
+        final RandomAccessFile file = new RandomAccessFile(crashFile(), "rw");
+        file.write(new byte[8]);
+        file.close();
+
+        assertNull(new FatalCrashStore(crashFile()).take());
+    }
+
+    /**
+     * handler 에서 기록한 직후 System.exit(1) 로 종료된 프로세스의 crash 를 다음 실행(테스트 프로세스)에서 읽는다.
+     */
+    @Test
+    public void forkedCrash_survivesProcessExit() throws Exception {
+        final Process process = MultiProcessStorageTest.fork(Crasher.class, crashFile().getPath());
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        final String output = reader.readLine();
+        assertEquals(1, process.waitFor());
+        assertNotNull(output);
+        assertTrue(output, output.startsWith("written "));
+        final long handlerMs = TimeUnit.NANOSECONDS.toMillis(Long.parseLong(output.substring("written ".length())));
+        assertTrue("handler " + handlerMs + " ms", handlerMs < MAX_HANDLER_MS);
+
+        final FatalCrashStore store = new FatalCrashStore(crashFile());
+        final FatalCrashStore.FatalCrash crash = store.take();
+        store.close();
+        assertNotNull(crash);
+        assertEquals(1500000000000L, crash.timestamp);
+        assertEquals(12345, crash.runningTimeMs);
+        assertFalse(crash.background);
+        assertArrayEquals(SNAPSHOT, crash.snapshot);
+        assertTrue(crash.error, crash.error.startsWith("java.lang.IllegalStateException: forked crash"));
+        assertTrue(crash.error, crash.error.contains("at " + Crasher.class.getName()));
+    }
+}
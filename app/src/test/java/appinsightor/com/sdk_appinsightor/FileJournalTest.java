@@ -0,0 +1,247 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * FileJournal 테스트 - append/peek/ack, 재시작(reopen) 후 복원, 기록 도중 종료된 마지막 레코드 제거<br />
+ * Queue 길이별로 이전 SharedPreferences Queue 와 추가, 전송 시간을 비교한다.(benchmark 는 {@link Benchmark#PROPERTY} 지정시에만 실행)
+ */
+public class FileJournalTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static byte[] record(final int index) {
+        final byte[] record = new byte[10 + index % 7];
+        Arrays.fill(record, (byte) index);
+        return record;
+    }
+
+    private static List<byte[]> records(final int from, final int to) {
+        final List<byte[]> records = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            records.add(record(i));
+        }
+        return records;
+    }
+
+    private static void assertRecords(final List<byte[]> expected, final List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("record " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    private static long bytesOf(final List<byte[]> records) {
+        long bytes = 0;
+        for (byte[] record : records) {
+            bytes += 4 + record.length;
+        }
+        return bytes;
+    }
+
+    private static File[] segments(final File dir) {
+        final File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(".seg");
+            }
+        });
+        Arrays.sort(files);
+        return files;
+    }
+
+    @Test
+    public void appendPeekAck_roundTrip() throws Exception {
+        final FileJournal journal = new FileJournal(temp.newFolder("journal"));
+        for (byte[] record : records(0, 10)) {
+            assertTrue(journal.append(record));
+        }
+        assertEquals(10, journal.size());
+        assertEquals(bytesOf(records(0, 10)), journal.bytes());
+        assertRecords(records(0, 10), journal.peek(Integer.MAX_VALUE));
+        assertRecords(records(0, 4), journal.peek(4));
+
+        journal.ack(3);
+        assertEquals(7, journal.size());
+        assertEquals(bytesOf(records(3, 10)), journal.bytes());
+        assertRecords(records(3, 10), journal.peek(Integer.MAX_VALUE));
+
+        journal.ack(100);
+        assertEquals(0, journal.size());
+        assertEquals(0, journal.bytes());
+        assertTrue(journal.peek(10).isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void reopenAfterAck_restoresRemainingRecords() throws Exception {
+        final File dir = temp.newFolder("journal");
+        final FileJournal journal = new FileJournal(dir, 64);
+        for (byte[] record : records(0, 20)) {
+            journal.append(record);
+        }
+        journal.ack(7);
+        journal.close();
+
+        final FileJournal reopened = new FileJournal(dir, 64);
+        assertEquals(13, reopened.size());
+        assertEquals(bytesOf(records(7, 20)), reopened.bytes());
+        assertRecords(records(7, 20), reopened.peek(Integer.MAX_VALUE));
+
+        reopened.append(record(20));
+        reopened.ack(13);
+        reopened.close();
+        final FileJournal again = new FileJournal(dir, 64);
+        assertRecords(records(20, 21), again.peek(Integer.MAX_VALUE));
+        again.close();
+    }
+
+    @Test
+    public void ackedSegments_deleted() throws Exception {
+        final File dir = temp.newFolder("journal");
+        final FileJournal journal = new FileJournal(dir, 64);
+        for (byte[] record : records(0, 30)) {
+            journal.append(record);
+        }
+        assertTrue(segments(dir).length > 3);
+        journal.ack(30);
+        assertEquals("only the tail segment is kept", 1, segments(dir).length);
+        journal.close();
+    }
+
+    @Test
+    public void tornTail_truncatedOnReopen() throws Exception {
+        final File dir = temp.newFolder("journal");
+        final FileJournal journal = new FileJournal(dir);
+        for (byte[] record : records(0, 3)) {
+            journal.append(record);
+        }
+        journal.close();
+
+        //길이 헤더는 100byte 이지만 10byte 만 기록된 상태로 종료
+        final File tail = segments(dir)[segments(dir).length - 1];
+        final long length = tail.length();
+        final RandomAccessFile raf = new RandomAccessFile(tail, "rw");
+        raf.seek(length);
+        raf.writeInt(100);
+        raf.write(new byte[10]);
+        raf.close();
+
+        final FileJournal reopened = new FileJournal(dir);
+        assertEquals(length, tail.length());
+        assertEquals(3, reopened.size());
+        assertRecords(records(0, 3), reopened.peek(Integer.MAX_VALUE));
+        reopened.append(record(3));
+        reopened.close();
+
+        final FileJournal again = new FileJournal(dir);
+        assertRecords(records(0, 4), again.peek(Integer.MAX_VALUE));
+        again.close();
+    }
+
+    @Test
+    public void tornHeader_truncatedOnReopen() throws Exception {
+        final File dir = temp.newFolder("journal");
+        final FileJournal journal = new FileJournal(dir);
+        journal.append(record(0));
+        journal.close();
+
+        final File tail = segments(dir)[0];
+        final RandomAccessFile raf = new RandomAccessFile(tail, "rw");
+        raf.seek(raf.length());
+        raf.write(new byte[] {0, 0});//길이 헤더 일부만 기록
+        raf.close();
+
+        final FileJournal reopened = new FileJournal(dir);
+        assertEquals(1, reopened.size());
+        reopened.append(record(1));
+        assertRecords(records(0, 2), reopened.peek(Integer.MAX_VALUE));
+        reopened.close();
+    }
+
+    @Test
+    public void removedRecord_staysRemovedAfterReopen() throws Exception {
+        final File dir = temp.newFolder("journal");
+        final FileJournal journal = new FileJournal(dir);
+        for (byte[] record : records(0, 5)) {
+            journal.append(record);
+        }
+        journal.remove(2);
+        assertEquals(4, journal.size());
+        journal.close();
+
+        final FileJournal reopened = new FileJournal(dir);
+        final List<byte[]> expected = records(0, 5);
+        expected.remove(2);
+        assertEquals(4, reopened.size());
+        assertEquals(bytesOf(expected), reopened.bytes());
+        assertRecords(expected, reopened.peek(Integer.MAX_VALUE));
+        reopened.close();
+    }
+
+    /**
+     * 레코드 1개를 추가하고 전송(peek, ack)하는 시간
+     * @return 1회 평균 ns
+     */
+    private static long queueOperationNanos(final StorageBackend backend, final byte[] record, final int operations) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            backend.append(record);
+            backend.peek(1);
+            backend.ack(1);
+        }
+        return (System.nanoTime() - start) / operations;
+    }
+
+    /**
+     * microbenchmark - Queue 에 10, 1000, 100000 개의 레코드가 있을 때 FileJournal 과 SharedPreferences Queue 의
+     * 추가, 전송 시간({@link Benchmark})<br />
+     * SharedPreferences 는 Android 구현과 같이 commit 마다 전체 XML 파일을 다시 쓰고 sync 한다.({@link MemoryPreferences})
+     */
+    @Test
+    public void benchmark_journalVsPreferences() throws Exception {
+        Benchmark.assumeEnabled();
+        final char[] text = new char[200];
+        Arrays.fill(text, 'a');
+        final String legacy = "events=" + new String(text);//이전 버전의 문자열 레코드
+        final byte[] record = AppInsightorStore.toBytes(legacy);
+        for (int depth : new int[] {10, 10, 1000, 100000}) {//처음 10 은 warmup
+            final FileJournal journal = new FileJournal(temp.newFolder());
+            for (int i = 0; i < depth; i++) {
+                journal.append(record);
+            }
+            final MemoryPreferences preferences = new MemoryPreferences(temp.newFile());
+            preferences.edit().putString("CONNECTIONS", PreferencesStorageBackend.join(Collections.nCopies(depth, legacy),
+                    PreferencesStorageBackend.DELIMITER)).commit();
+            final PreferencesStorageBackend queue = new PreferencesStorageBackend(preferences, "CONNECTIONS");
+            assertEquals(depth, queue.size());
+
+            final int operations = depth >= 100000 ? 5 : 200;
+            final long journalNanos = queueOperationNanos(journal, record, operations);
+            final long preferencesNanos = queueOperationNanos(queue, record, operations);
+            assertEquals(depth, journal.size());
+            assertEquals(depth, queue.size());
+            journal.close();
+
+            Benchmark.report("queue depth " + depth + " (append + peek + ack)", "FileJournal " + journalNanos / 1000
+                    + " us / SharedPreferences " + preferencesNanos / 1000 + " us");
+            if (depth >= 1000) {
+                assertTrue("depth " + depth + " : FileJournal " + journalNanos + " ns, SharedPreferences " + preferencesNanos + " ns",
+                        journalNanos * 10 < preferencesNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * LatencyHistogram 테스트 - bucket index 식이 수신서버가 계산하는 bucket 범위와 맞고 상대 오차가 1/2^SUB_BUCKET_BITS 이하인지,
+ * snapshot() 이 count, sum, min, max 와 0 이 아닌 bucket 을 옮긴 후 비우는지 확인한다.
+ */
+public class LatencyHistogramTest {
+    private static final int SUB_BUCKETS = 1 << LatencyHistogram.SUB_BUCKET_BITS;
+
+    /**
+     * 수신서버의 bucket 범위 계산 - {하한, 폭}
+     */
+    private static long[] rangeOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return new long[] {index, 1};
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return new long[] {sub << shift, 1L << shift};
+    }
+
+    @Test
+    public void indexOf_boundaries() {
+        for (int v = 0; v < SUB_BUCKETS; v++) {
+            assertEquals(v, LatencyHistogram.indexOf(v));
+        }
+        assertEquals(0, LatencyHistogram.indexOf(-5));
+        assertEquals(16, LatencyHistogram.indexOf(16));
+        assertEquals(31, LatencyHistogram.indexOf(31));
+        assertEquals(32, LatencyHistogram.indexOf(32));
+        assertEquals(32, LatencyHistogram.indexOf(33));
+        assertEquals(33, LatencyHistogram.indexOf(34));
+        assertEquals(48, LatencyHistogram.indexOf(64));
+        assertEquals(48, LatencyHistogram.indexOf(67));
+        assertEquals(49, LatencyHistogram.indexOf(68));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf((1L << 41) - 1));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(1L << 41));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    /**
+     * 값은 항상 자신의 bucket 범위 안에 있고, bucket 폭은 하한의 1/2^SUB_BUCKET_BITS 이하이며, index 는 값에 따라 줄지 않는다.
+     */
+    @Test
+    public void indexOf_matchesServerRangeWithinRelativeError() {
+        final Random random = new Random(1);
+        int previous = 0;
+        for (long v = 0; v < 100000; v++) {
+            final int index = LatencyHistogram.indexOf(v);
+            assertTrue(v + " -> " + index, index >= previous);
+            previous = index;
+            assertInRange(v, index);
+        }
+        for (int i = 0; i < 100000; i++) {
+            final long v = random.nextLong() >>> (64 - 41);//41 bit 이하
+            assertInRange(v, LatencyHistogram.indexOf(v));
+        }
+    }
+
+    private static void assertInRange(final long value, final int index) {
+        final long[] range = rangeOf(index);
+        assertTrue(value + " in bucket " + index + " [" + range[0] + ", +" + range[1] + ")",
+                range[0] <= value && value < range[0] + range[1]);
+        assertTrue(value + " bucket width " + range[1], range[1] == 1 || range[1] * SUB_BUCKETS <= range[0]);
+    }
+
+    @Test
+    public void snapshot_movesAndResets() {
+        final LatencyHistogram histogram = new LatencyHistogram("load");
+        assertNull(histogram.snapshot());
+        assertEquals(-1, histogram.ageMs(System.currentTimeMillis()));
+
+        final long before = System.currentTimeMillis();
+        assertTrue(histogram.record(5));
+        assertFalse(histogram.record(5));
+        assertFalse(histogram.record(100));
+        assertFalse(histogram.record(33));
+        assertFalse(histogram.record(32));
+        assertTrue(histogram.ageMs(before + 1000) <= 1000);
+
+        final Event event = histogram.snapshot();
+        assertEquals("load", event.key);
+        assertTrue(event.timestamp >= before);
+        assertEquals(5, event.count);
+        assertEquals(175, event.dur, 0);
+        assertEquals(5, event.durMin, 0);
+        assertEquals(100, event.durMax, 0);
+        //[index, count] - index 오름차순
+        assertArrayEquals(new long[] {5, 2, 32, 2, LatencyHistogram.indexOf(100), 1}, event.histogram);
+
+        assertNull(histogram.snapshot());
+        assertEquals(-1, histogram.ageMs(System.currentTimeMillis()));
+        assertTrue(histogram.record(7));
+        final Event next = histogram.snapshot();
+        assertEquals(1, next.count);
+        assertEquals(7, next.durMin, 0);
+        assertEquals(7, next.durMax, 0);
+        assertArrayEquals(new long[] {7, 1}, next.histogram);
+    }
+
+    @Test
+    public void snapshot_manyBuckets() {
+        final LatencyHistogram histogram = new LatencyHistogram("spread");
+        for (int v = 0; v < 200; v++) {
+            histogram.record(v);
+        }
+        final Event event = histogram.snapshot();
+        long total = 0;
+        int lastIndex = -1;
+        for (int i = 0; i < event.histogram.length; i += 2) {
+            assertTrue(event.histogram[i] > lastIndex);
+            lastIndex = (int) event.histogram[i];
+            total += event.histogram[i + 1];
+        }
+        assertEquals(200, total);
+        assertEquals(LatencyHistogram.indexOf(199) + 1, event.histogram.length / 2);
+    }
+}
@@ -0,0 +1,157 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measurements 테스트 - 같은 이름의 값 교체, 배열 확장, 합계, 최소, 최대 누적(long 과 double 이 섞이면 double 로 변환),
+ * clear 후 재사용, JSON 기록과 읽기를 확인한다.
+ */
+public class MeasurementsTest {
+
+    private static double doubleAt(final long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    @Test
+    public void put_replacesSameNameAndGrows() {
+        final Measurements measurements = new Measurements();
+        for (int i = 0; i < 10; i++) {
+            measurements.put("m" + i, (long) i);
+        }
+        measurements.put("m3", 1.5);
+        assertEquals(10, measurements.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("m" + i, measurements.name(i));
+        }
+        assertFalse(measurements.isDouble(9));
+        assertEquals(9, measurements.bits(9));
+        assertEquals(9, measurements.minBits(9));
+        assertEquals(9, measurements.maxBits(9));
+        assertTrue(measurements.isDouble(3));
+        assertEquals(1.5, doubleAt(measurements.bits(3)), 0);
+    }
+
+    @Test
+    public void merge_longValues() {
+        final Measurements total = new Measurements();
+        total.put("items", 3L);
+        final Measurements other = new Measurements();
+        other.put("items", -2L);
+        other.put("retries", 1L);
+        total.merge(other);
+        other.clear();
+        other.put("items", 10L);
+        total.merge(other);
+
+        assertEquals(2, total.size());
+        assertFalse(total.isDouble(0));
+        assertEquals(11, total.bits(0));
+        assertEquals(-2, total.minBits(0));
+        assertEquals(10, total.maxBits(0));
+        assertEquals("retries", total.name(1));
+        assertEquals(1, total.bits(1));
+    }
+
+    /**
+     * 같은 이름에 long 과 double 이 함께 들어오면 지금까지의 합계, 최소, 최대를 double 로 바꾸어 누적한다.
+     */
+    @Test
+    public void merge_mixedTypesBecomeDouble() {
+        final Measurements total = new Measurements();
+        total.put("price", 4L);
+        final Measurements other = new Measurements();
+        other.put("price", 0.25);
+        total.merge(other);
+        assertTrue(total.isDouble(0));
+        assertEquals(4.25, doubleAt(total.bits(0)), 0);
+        assertEquals(0.25, doubleAt(total.minBits(0)), 0);
+        assertEquals(4.0, doubleAt(total.maxBits(0)), 0);
+
+        other.clear();
+        other.put("price", 6L);
+        total.merge(other);
+        assertTrue(total.isDouble(0));
+        assertEquals(10.25, doubleAt(total.bits(0)), 0);
+        assertEquals(6.0, doubleAt(total.maxBits(0)), 0);
+    }
+
+    @Test
+    public void clear_reusesArrays() {
+        final Measurements measurements = new Measurements();
+        measurements.put("a", 1L);
+        measurements.put("b", 2.0);
+        measurements.clear();
+        assertEquals(0, measurements.size());
+        measurements.put("c", 3L);
+        assertEquals(1, measurements.size());
+        assertEquals("c", measurements.name(0));
+        assertFalse(measurements.isDouble(0));
+        assertEquals(3, measurements.bits(0));
+    }
+
+    /**
+     * 합쳐진 측정값은 최소, 최대를 함께 기록하며, 다시 읽으면 같은 값과 형식이다.(최소, 최대가 없으면 값과 같음)
+     */
+    @Test
+    public void json_roundTrip() throws Exception {
+        final Measurements measurements = new Measurements();
+        measurements.set("pixels", false, 7000, 10, 3000);
+        measurements.set("speed", true, Double.doubleToRawLongBits(12.5),
+                Double.doubleToRawLongBits(-1.5), Double.doubleToRawLongBits(9.25));
+        final JSONObject json = new JSONObject();
+        measurements.toJSON(json, "measurements", "measurements_min", "measurements_max", true);
+        assertEquals(7000, json.getJSONObject("measurements").getLong("pixels"));
+        assertEquals(-1.5, json.getJSONObject("measurements_min").getDouble("speed"), 0);
+
+        final Measurements read = new Measurements();
+        read.fromJSON(json.getJSONObject("measurements"), json.getJSONObject("measurements_min"),
+                json.getJSONObject("measurements_max"));
+        assertEquals(2, read.size());
+        for (int i = 0; i < read.size(); i++) {
+            final String name = read.name(i);
+            final int index = name.equals("pixels") ? 0 : 1;
+            assertEquals(name, measurements.isDouble(index), read.isDouble(i));
+            assertEquals(name, measurements.bits(index), read.bits(i));
+            assertEquals(name, measurements.minBits(index), read.minBits(i));
+            assertEquals(name, measurements.maxBits(index), read.maxBits(i));
+        }
+
+        final Measurements single = new Measurements();
+        single.fromJSON(new JSONObject("{\"items\":3,\"label\":\"x\"}"), null, null);
+        assertEquals(1, single.size());
+        assertEquals(3, single.minBits(0));
+        assertEquals(3, single.maxBits(0));
+
+        final JSONObject plain = new JSONObject();
+        measurements.toJSON(plain, "measurements", "measurements_min", "measurements_max", false);
+        assertFalse(plain.has("measurements_min"));
+    }
+
+    @Test
+    public void writeJSON_matchesToJSON() throws Exception {
+        final Measurements measurements = new Measurements();
+        measurements.put("items", 3L);
+        measurements.put("price", 12.5);
+        measurements.put("huge", 1e21);
+        final JSONObject expected = new JSONObject();
+        measurements.toJSON(expected, "v", "min", "max", true);
+
+        final EnvelopeWriter writer = new EnvelopeWriter();
+        writer.beginObject();
+        measurements.writeJSON(writer, "v", "min", "max", true);
+        writer.endObject();
+        final JSONObject written = new JSONObject(writer.toString());
+        assertEquals(expected.keySet(), written.keySet());
+        for (String key : expected.keySet()) {
+            final JSONObject expectedValues = expected.getJSONObject(key);
+            final JSONObject writtenValues = written.getJSONObject(key);
+            assertEquals(key, expectedValues.keySet(), writtenValues.keySet());
+            for (String name : expectedValues.keySet()) {
+                assertEquals(key + "." + name, expectedValues.getDouble(name), writtenValues.getDouble(name), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 테스트용 메모리 SharedPreferences<br />
+ * 편집 내용은 commit(), apply() 시에 한번에 반영하며, 변경 알림은 지원하지 않는다.<br />
+ * 파일을 지정하면 Android 구현과 같이 commit 마다 전체 값을 XML 파일로 다시 쓰고 sync 한다.(비교 측정용)
+ */
+class MemoryPreferences implements SharedPreferences {
+    private final Map<String, Object> values_ = new HashMap<>();
+    private final File file_;
+
+    MemoryPreferences() {
+        this(null);
+    }
+
+    /**
+     * @param file commit 마다 다시 쓸 XML 파일(null 이면 메모리에만 유지)
+     */
+    MemoryPreferences(final File file) {
+        file_ = file;
+    }
+
+    private void write() {
+        final StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+        for (Map.Entry<String, Object> entry : values_.entrySet()) {
+            xml.append("    <string name=\"").append(escape(entry.getKey())).append("\">")
+                    .append(escape(String.valueOf(entry.getValue()))).append("</string>\n");
+        }
+        xml.append("</map>\n");
+        try {
+            final FileOutputStream out = new FileOutputStream(file_);
+            try {
+                out.write(xml.toString().getBytes("UTF-8"));
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<>(values_);
+    }
+
+    private synchronized Object get(final String key, final Object defValue) {
+        final Object value = values_.get(key);
+        return value == null ? defValue : value;
+    }
+
+    @Override
+    public String getString(final String key, final String defValue) {
+        return (String) get(key, defValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Set<String> getStringSet(final String key, final Set<String> defValues) {
+        return (Set<String>) get(key, defValues);
+    }
+
+    @Override
+    public int getInt(final String key, final int defValue) {
+        return (Integer) get(key, defValue);
+    }
+
+    @Override
+    public long getLong(final String key, final long defValue) {
+        return (Long) get(key, defValue);
+    }
+
+    @Override
+    public float getFloat(final String key, final float defValue) {
+        return (Float) get(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(final String key, final boolean defValue) {
+        return (Boolean) get(key, defValue);
+    }
+
+    @Override
+    public synchronized boolean contains(final String key) {
+        return values_.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new Editor() {
+            private final Map<String, Object> changes_ = new HashMap<>();
+            private boolean clear_;
+
+            private Editor put(final String key, final Object value) {
+                changes_.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putString(final String key, final String value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putStringSet(final String key, final Set<String> values) {
+                return put(key, values == null ? null : new HashSet<>(values));
+            }
+
+            @Override
+            public Editor putInt(final String key, final int value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putLong(final String key, final long value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putFloat(final String key, final float value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putBoolean(final String key, final boolean value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor remove(final String key) {
+                return put(key, null);
+            }
+
+            @Override
+            public Editor clear() {
+                clear_ = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                synchronized (MemoryPreferences.this) {
+                    if (clear_) {
+                        values_.clear();
+                    }
+                    for (Map.Entry<String, Object> change : changes_.entrySet()) {
+                        if (change.getValue() == null) {
+                            values_.remove(change.getKey());
+                        } else {
+                            values_.put(change.getKey(), change.getValue());
+                        }
+                    }
+                    if (file_ != null) {
+                        write();
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+        };
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+    }
+}
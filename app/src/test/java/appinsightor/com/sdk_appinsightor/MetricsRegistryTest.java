@@ -0,0 +1,166 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * MetricsRegistry 테스트 - snapshot() 이 이전 snapshot 이후 counter 증가량, 바뀐 gauge 값, timer 기록만 전송하고,
+ * 변화가 없으면 null 을 반환하는지, 여러 스레드에서 더한 counter 증가량이 빠지거나 두번 전송되지 않는지 확인한다.
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void snapshot_emptyIsNull() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        assertNull(registry.snapshot());
+        registry.counter("unused");
+        registry.timer("unused");
+        assertNull(registry.snapshot());
+    }
+
+    @Test
+    public void counter_sendsDeltaOnly() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final MetricCounter hit = registry.counter("cache_hit");
+        assertSame(hit, registry.counter("cache_hit"));
+        hit.increment();
+        hit.add(4);
+        registry.counter("cache_miss").increment();
+
+        JSONObject metrics = new JSONObject(registry.snapshot());
+        assertTrue(metrics.getLong("interval_ms") >= 0);
+        assertEquals(5, metrics.getJSONObject("counters").getLong("cache_hit"));
+        assertEquals(1, metrics.getJSONObject("counters").getLong("cache_miss"));
+        assertFalse(metrics.has("gauges"));
+        assertFalse(metrics.has("timers"));
+
+        assertNull(registry.snapshot());
+        hit.add(2);
+        metrics = new JSONObject(registry.snapshot());
+        assertEquals(2, metrics.getJSONObject("counters").getLong("cache_hit"));
+        assertFalse(metrics.getJSONObject("counters").has("cache_miss"));
+        assertEquals(7, hit.sum());
+    }
+
+    /**
+     * gauge 는 처음과 값이 바뀐 경우에만 전송하며, NaN 이나 예외는 건너뛰고, 등록 해제 후 다시 등록하면 처음처럼 전송한다.
+     */
+    @Test
+    public void gauge_sendsChangedValuesOnly() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final AtomicLong memory = new AtomicLong(100);
+        final MetricGauge gauge = new MetricGauge() {
+            @Override
+            public double value() {
+                return memory.get();
+            }
+        };
+        registry.registerGauge("memory_used", gauge);
+        registry.registerGauge("broken", new MetricGauge() {
+            @Override
+            public double value() {
+                throw new IllegalStateException("broken");
+            }
+        });
+        registry.registerGauge("nan", new MetricGauge() {
+            @Override
+            public double value() {
+                return Double.NaN;
+            }
+        });
+
+        JSONObject metrics = new JSONObject(registry.snapshot());
+        assertEquals(1, metrics.getJSONObject("gauges").length());
+        assertEquals(100, metrics.getJSONObject("gauges").getDouble("memory_used"), 0);
+        assertNull(registry.snapshot());
+
+        memory.set(250);
+        metrics = new JSONObject(registry.snapshot());
+        assertEquals(250, metrics.getJSONObject("gauges").getDouble("memory_used"), 0);
+
+        registry.unregisterGauge("memory_used");
+        assertNull(registry.snapshot());
+        registry.registerGauge("memory_used", gauge);
+        metrics = new JSONObject(registry.snapshot());
+        assertEquals(250, metrics.getJSONObject("gauges").getDouble("memory_used"), 0);
+    }
+
+    @Test
+    public void timer_sendsRecordsSinceLastSnapshot() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final MetricTimer timer = registry.timer("db_pool_wait");
+        assertSame(timer, registry.timer("db_pool_wait"));
+        timer.record(3);
+        timer.record(3);
+        timer.record(40);
+
+        JSONObject metrics = new JSONObject(registry.snapshot());
+        assertEquals(LatencyHistogram.SUB_BUCKET_BITS, metrics.getInt("sub_bucket_bits"));
+        final JSONObject json = metrics.getJSONObject("timers").getJSONObject("db_pool_wait");
+        assertEquals(3, json.getLong("count"));
+        assertEquals(46, json.getLong("sum"));
+        assertEquals(3, json.getLong("min"));
+        assertEquals(40, json.getLong("max"));
+        final JSONArray buckets = json.getJSONArray("buckets");
+        assertEquals(4, buckets.length());
+        assertEquals(3, buckets.getLong(0));
+        assertEquals(2, buckets.getLong(1));
+        assertEquals(LatencyHistogram.indexOf(40), buckets.getLong(2));
+        assertEquals(1, buckets.getLong(3));
+
+        assertNull(registry.snapshot());
+        timer.record(8);
+        metrics = new JSONObject(registry.snapshot());
+        final JSONObject next = metrics.getJSONObject("timers").getJSONObject("db_pool_wait");
+        assertEquals(1, next.getLong("count"));
+        assertEquals(8, next.getLong("min"));
+        assertFalse(metrics.has("counters"));
+    }
+
+    /**
+     * 여러 스레드가 더하는 동안 snapshot 을 반복해도 전송한 증가량의 합계는 더한 값과 같다.
+     */
+    @Test
+    public void counter_concurrentAddsNotLostOrDuplicated() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final MetricCounter counter = registry.counter("requests");
+        final Thread[] threads = new Thread[4];
+        final int adds = 50000;
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < adds; i++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        long reported = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+            final String snapshot = registry.snapshot();
+            if (snapshot != null) {
+                reported += new JSONObject(snapshot).getJSONObject("counters").getLong("requests");
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final String last = registry.snapshot();
+        if (last != null) {
+            reported += new JSONObject(last).getJSONObject("counters").getLong("requests");
+        }
+        assertEquals((long) threads.length * adds, reported);
+    }
+}
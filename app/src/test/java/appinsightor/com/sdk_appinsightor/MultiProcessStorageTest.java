@@ -0,0 +1,280 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * MultiProcessStorageBackend, UploaderElection 다중 프로세스 테스트<br />
+ * 파일 lock 은 JVM(프로세스) 단위이므로 기록 프로세스와 lock 을 잡는 프로세스는 별도의 JVM 으로 실행하고,
+ * 테스트 프로세스가 전송 프로세스로서 모든 레코드를 읽고 ack 한다.
+ */
+public class MultiProcessStorageTest {
+    private static final long TIMEOUT_MS = 60000;
+    private static final int RECORD_BYTES = 32;
+
+    /** 레코드 앞 8byte 가 일련번호 */
+    static final BoundedStorageBackend.Sequence SEQUENCE = new BoundedStorageBackend.Sequence() {
+        @Override
+        public long of(final byte[] record) {
+            return ByteBuffer.wrap(record).getLong(0);
+        }
+    };
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * 기록 프로세스 - 자신의 디렉토리에 count 개의 레코드를 기록한 후 close 하지 않고 종료한다.<br />
+     * args: laneDir, 프로세스 이름, uploader.lock 파일, 프로세스 번호, 레코드 수
+     */
+    public static final class Writer {
+        public static void main(final String[] args) throws Exception {
+            final int process = Integer.parseInt(args[3]);
+            final int count = Integer.parseInt(args[4]);
+            final MultiProcessStorageBackend backend = new MultiProcessStorageBackend(new File(args[0]), args[1],
+                    new UploaderElection(new File(args[2])), SEQUENCE);
+            for (int i = 1; i <= count; i++) {
+                if (!backend.append(record(process, i))) {
+                    throw new IllegalStateException("append failed");
+                }
+                if (i % 50 == 0) {
+                    backend.size();//전송 프로세스가 기록한 consumed 를 자신의 저널에 반영
+                    Thread.sleep(1);
+                }
+            }
+        }
+    }
+
+    /**
+     * uploader.lock 을 잡고 표준 입력이 닫힐 때까지 기다린다.<br />
+     * args: uploader.lock 파일
+     */
+    public static final class LockHolder {
+        public static void main(final String[] args) throws Exception {
+            final UploaderElection election = new UploaderElection(new File(args[0]));
+            System.out.println(election.isUploader() ? "locked" : "not locked");
+            System.out.flush();
+            while (System.in.read() != -1) {
+                //다음 입력까지 대기
+            }
+        }
+    }
+
+    /**
+     * 실행중인 기록 프로세스 - count 개의 레코드를 기록하고 "written" 을 출력한 후 표준 입력이 닫힐 때까지 기다린다.<br />
+     * args: laneDir, 프로세스 이름, uploader.lock 파일, 프로세스 번호, 레코드 수
+     */
+    public static final class LiveWriter {
+        public static void main(final String[] args) throws Exception {
+            final int process = Integer.parseInt(args[3]);
+            final int count = Integer.parseInt(args[4]);
+            final MultiProcessStorageBackend backend = new MultiProcessStorageBackend(new File(args[0]), args[1],
+                    new UploaderElection(new File(args[2])), SEQUENCE);
+            for (int i = 1; i <= count; i++) {
+                if (!backend.append(record(process, i))) {
+                    throw new IllegalStateException("append failed");
+                }
+            }
+            System.out.println("written");
+            System.out.flush();
+            while (System.in.read() != -1) {
+                //다음 입력까지 대기
+            }
+        }
+    }
+
+    static byte[] record(final int process, final int index) {
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+        buffer.putLong(((long) process << 32) | index);
+        return buffer.array();
+    }
+
+    static Process fork(final Class<?> main, final String... args) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(main.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    private static void assertExitedNormally(final Process process) throws Exception {
+        final StringBuilder output = new StringBuilder();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            output.append(line).append('\n');
+        }
+        assertEquals(output.toString(), 0, process.waitFor());
+    }
+
+    private static Process writer(final File laneDir, final File lockFile, final int process, final int count) throws IOException {
+        return fork(Writer.class, laneDir.getPath(), "writer-" + process, lockFile.getPath(), String.valueOf(process),
+                String.valueOf(count));
+    }
+
+    /**
+     * 종료된 프로세스의 저널(adopt)과 실행중인 프로세스의 저널(consumed)에서 모든 레코드를 한번씩만 읽는다.
+     */
+    @Test
+    public void liveAndExitedWriters_deliverEveryRecordOnce() throws Exception {
+        final File laneDir = temp.newFolder("connections");
+        final File lockFile = new File(temp.getRoot(), "uploader.lock");
+        final int perWriter = 2000;
+
+        //전송 프로세스가 시작하기 전에 종료된 기록 프로세스
+        assertExitedNormally(writer(laneDir, lockFile, 1, perWriter));
+
+        final UploaderElection election = new UploaderElection(lockFile);
+        assertTrue(election.isUploader());
+        final MultiProcessStorageBackend uploader = new MultiProcessStorageBackend(laneDir, "uploader", election, SEQUENCE);
+        final List<Process> writers = new ArrayList<>();
+        for (int process = 2; process <= 4; process++) {
+            writers.add(writer(laneDir, lockFile, process, perWriter));
+        }
+
+        final Set<Long> received = new HashSet<>();
+        final int total = 4 * perWriter;
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (received.size() < total) {
+            assertTrue("received " + received.size() + "/" + total, System.currentTimeMillis() < deadline);
+            final List<byte[]> records = uploader.peek(50);
+            if (records.isEmpty()) {
+                Thread.sleep(5);
+                continue;
+            }
+            for (byte[] record : records) {
+                assertTrue("duplicate record " + Long.toHexString(SEQUENCE.of(record)), received.add(SEQUENCE.of(record)));
+            }
+            uploader.ack(records.size());
+        }
+        for (Process writer : writers) {
+            assertExitedNormally(writer);
+        }
+
+        for (int process = 1; process <= 4; process++) {
+            for (int i = 1; i <= perWriter; i++) {
+                assertTrue(received.contains(SEQUENCE.of(record(process, i))));
+            }
+        }
+        //모든 기록 프로세스가 종료되었으므로 남은 레코드는 없고, 비워진 디렉토리는 삭제된다.
+        assertTrue(uploader.peek(1).isEmpty());
+        final File[] dirs = laneDir.listFiles();
+        assertNotNull(dirs);
+        for (File dir : dirs) {
+            assertTrue("left over " + dir.getName(), dir.getName().startsWith("uploader") || dir.getName().startsWith("."));
+        }
+        uploader.close();
+        election.close();
+    }
+
+    /**
+     * 전송 프로세스의 lane 이 가득 차도 용량 초과 처리는 자신의 레코드에만 적용하며,
+     * 실행중인 기록 프로세스가 아직 전송하지 않은 레코드는 버리지 않는다.
+     */
+    @Test
+    public void fullUploaderLane_evictsOnlyOwnRecords() throws Exception {
+        final File lockFile = new File(temp.getRoot(), "uploader.lock");
+        final UploaderElection election = new UploaderElection(lockFile);
+        assertTrue(election.isUploader());
+        final int capacity = 20;
+        final int writerRecords = 50;
+        final int ownRecords = 30;
+        for (QueueCapacity.OverflowPolicy policy : new QueueCapacity.OverflowPolicy[] {
+                QueueCapacity.OverflowPolicy.DROP_OLDEST, QueueCapacity.OverflowPolicy.DROP_LOWEST_PRIORITY}) {
+            final File laneDir = temp.newFolder(policy.name());
+            final Process writer = fork(LiveWriter.class, laneDir.getPath(), "writer", lockFile.getPath(), "2",
+                    String.valueOf(writerRecords));
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(writer.getInputStream(), "UTF-8"));
+            assertEquals("written", reader.readLine());
+
+            final MultiProcessStorageBackend uploader = new MultiProcessStorageBackend(laneDir, "uploader", election, SEQUENCE);
+            final BoundedStorageBackend lane = new BoundedStorageBackend(uploader, null,
+                    new QueueCapacity(capacity, 1024 * 1024, policy), null, SEQUENCE);
+            assertEquals(writerRecords, lane.size());//다른 프로세스의 레코드만으로 용량을 넘었다.
+            for (int i = 1; i <= ownRecords; i++) {
+                assertTrue(policy.name(), lane.append(record(1, i)));
+            }
+            assertEquals(policy.name(), ownRecords - capacity, lane.takeDropped());
+
+            final Set<Long> received = new HashSet<>();
+            for (List<byte[]> records = lane.peek(50); !records.isEmpty(); records = lane.peek(50)) {
+                for (byte[] record : records) {
+                    assertTrue(policy.name(), received.add(SEQUENCE.of(record)));
+                }
+                lane.ack(records.size());
+            }
+            assertEquals(policy.name(), writerRecords + capacity, received.size());
+            for (int i = 1; i <= writerRecords; i++) {
+                assertTrue(policy.name() + " writer record " + i, received.contains(SEQUENCE.of(record(2, i))));
+            }
+            for (int i = ownRecords - capacity + 1; i <= ownRecords; i++) {
+                assertTrue(policy.name() + " own record " + i, received.contains(SEQUENCE.of(record(1, i))));
+            }
+
+            writer.getOutputStream().close();
+            assertEquals(0, writer.waitFor());
+            uploader.close();
+        }
+        election.close();
+    }
+
+    /**
+     * 레코드를 남기고 종료된 프로세스의 디렉토리는 같은 이름으로 다시 시작한 프로세스가 owner.lock 을 잡고 이어서 사용한다.
+     */
+    @Test
+    public void restartedWriter_reopensItsDirectory() throws Exception {
+        final File laneDir = temp.newFolder("events");
+        final File lockFile = new File(temp.getRoot(), "uploader.lock");
+        assertExitedNormally(fork(Writer.class, laneDir.getPath(), "writer", lockFile.getPath(), "1", "100"));
+
+        final MultiProcessStorageBackend restarted = new MultiProcessStorageBackend(laneDir, "writer",
+                new UploaderElection(lockFile), SEQUENCE);
+        assertEquals(100, restarted.size());
+        assertEquals(SEQUENCE.of(record(1, 1)), SEQUENCE.of(restarted.peek(1).get(0)));
+        assertTrue(restarted.append(record(1, 101)));
+        restarted.close();
+        assertArrayEquals(new String[] {"writer"}, laneDir.list());
+    }
+
+    /**
+     * 전송 프로세스가 종료되면 다른 프로세스가 uploader.lock 을 잡고 전송을 이어받는다.
+     */
+    @Test
+    public void uploaderLock_handedOverWhenHolderExits() throws Exception {
+        final File lockFile = temp.newFile("uploader.lock");
+        final Process holder = fork(LockHolder.class, lockFile.getPath());
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(holder.getInputStream(), "UTF-8"));
+        assertEquals("locked", reader.readLine());
+
+        final UploaderElection election = new UploaderElection(lockFile);
+        assertFalse(election.isUploader());
+
+        holder.getOutputStream().close();
+        assertEquals(0, holder.waitFor());
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!election.isUploader()) {
+            assertTrue("lock not handed over", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+        election.close();
+        assertFalse("closed election never uploads", election.isUploader());
+    }
+}
@@ -0,0 +1,430 @@
+package appinsightor.com.sdk_appinsightor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * PayloadCompressor 테스트 - gzip, preset dictionary(zlib) 압축 결과를 JDK 로 풀어서 원래 본문과 비교하고,
+ * 로컬 HTTP 서버로 전송하여 compressionThreshold 경계와 수신서버가 압축을 거부한 경우의 fallback 을 확인한다.<br />
+ * crash, event batch 본문의 전송 byte 수와 압축 CPU 시간을 측정한다.(benchmark 는 {@link Benchmark#PROPERTY} 지정시에만 실행)
+ */
+public class PayloadCompressorTest {
+    private static final QueueCapacity CAPACITY = new QueueCapacity(10000, 64L * 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST);
+
+    /**
+     * 수신서버가 받은 요청
+     */
+    private static final class Request {
+        final String contentEncoding;
+        final String dictionary;
+        final byte[] body;//전송된 본문(압축된 경우 압축 결과)
+
+        Request(final String contentEncoding, final String dictionary, final byte[] body) {
+            this.contentEncoding = contentEncoding;
+            this.dictionary = dictionary;
+            this.body = body;
+        }
+    }
+
+    private HttpServer server_;
+    private String url_;
+    private volatile int compressedResponseCode_ = 200;//압축된 본문에 대한 응답 코드
+    private final List<Request> requests_ = Collections.synchronizedList(new ArrayList<Request>());
+
+    private int threshold_;
+    private boolean dictionary_;
+    private Boolean postOnly_;
+
+    @Before
+    public void setUp() throws IOException {
+        threshold_ = ConnectionProcessor.compressionThreshold;
+        dictionary_ = ConnectionProcessor.compressionDictionary;
+        postOnly_ = ConnectionProcessor.HttpPostOnlyRequest;
+        ConnectionProcessor.HttpPostOnlyRequest = true;
+
+        server_ = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server_.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                requests_.add(new Request(contentEncoding,
+                        exchange.getRequestHeaders().getFirst(PayloadCompressor.DICTIONARY_HEADER),
+                        read(exchange.getRequestBody())));
+                exchange.sendResponseHeaders(contentEncoding == null ? 200 : compressedResponseCode_, -1);
+                exchange.close();
+            }
+        });
+        server_.start();
+        url_ = "http://127.0.0.1:" + server_.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server_.stop(0);
+        ConnectionProcessor.compressionThreshold = threshold_;
+        ConnectionProcessor.compressionDictionary = dictionary_;
+        ConnectionProcessor.HttpPostOnlyRequest = postOnly_;
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(final byte[] data, final int length) throws IOException {
+        return read(new GZIPInputStream(new ByteArrayInputStream(data, 0, length)));
+    }
+
+    private static byte[] inflateWithDictionary(final byte[] data, final int length) throws Exception {
+        final Inflater inflater = new Inflater();
+        inflater.setInput(data, 0, length);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        while (!inflater.finished()) {
+            final int inflated = inflater.inflate(buffer);
+            if (inflated == 0 && inflater.needsDictionary()) {
+                final byte[] dictionary = CompressionDictionary.bytes();
+                final Adler32 adler = new Adler32();
+                adler.update(dictionary);
+                assertEquals((int) adler.getValue(), inflater.getAdler());
+                inflater.setDictionary(dictionary);
+            } else if (inflated == 0 && inflater.needsInput()) {
+                fail("truncated zlib stream");
+            }
+            out.write(buffer, 0, inflated);
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    /**
+     * 요청 메시지와 비슷한 query string(반복되는 key) 본문
+     */
+    private static byte[] body(final int length, final long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder body = new StringBuilder(length + 64);
+        while (body.length() < length) {
+            body.append("app_key=server&device_id=device-").append(random.nextInt(1000))
+                    .append("&timestamp=").append(1500000000000L + random.nextInt())
+                    .append("&events=%5B%7B%22key%22%3A%22purchase%22%2C%22count%22%3A1%7D%5D&");
+        }
+        body.setLength(length);
+        return AppInsightorStore.toBytes(body.toString());
+    }
+
+    @Test
+    public void gzip_roundTrip() throws Exception {
+        final PayloadCompressor compressor = new PayloadCompressor();
+        //buffer 보다 큰 본문(buffer 확장), 다시 작은 본문(buffer 축소 후 재사용) 순서로 압축한다.
+        for (int length : new int[] {0, 1, 100, 8 * 1024, 600 * 1024, 1000}) {
+            final byte[] input = body(length, length);
+            final int compressed = compressor.gzip(input, input.length);
+            assertArrayEquals("length " + length, input, gunzip(compressor.buffer(), compressed));
+            if (length >= 8 * 1024) {
+                assertTrue(compressed < length / 2);
+            }
+        }
+    }
+
+    /**
+     * 입력 배열의 앞부분(inputLength)만 압축한다.
+     */
+    @Test
+    public void gzip_usesInputLength() throws Exception {
+        final PayloadCompressor compressor = new PayloadCompressor();
+        final byte[] input = body(4096, 1);
+        final int compressed = compressor.gzip(input, 1000);
+        final byte[] expected = new byte[1000];
+        System.arraycopy(input, 0, expected, 0, expected.length);
+        assertArrayEquals(expected, gunzip(compressor.buffer(), compressed));
+    }
+
+    @Test
+    public void incompressibleInput_roundTrip() throws Exception {
+        final PayloadCompressor compressor = new PayloadCompressor();
+        final byte[] input = new byte[64 * 1024];
+        new Random(7).nextBytes(input);
+        final int compressed = compressor.gzip(input, input.length);
+        assertArrayEquals(input, gunzip(compressor.buffer(), compressed));
+        final int deflated = compressor.deflateWithDictionary(input, input.length);
+        assertArrayEquals(input, inflateWithDictionary(compressor.buffer(), deflated));
+    }
+
+    @Test
+    public void deflateWithDictionary_roundTrip() throws Exception {
+        final PayloadCompressor compressor = new PayloadCompressor();
+        for (int length : new int[] {1, 200, 2000, 300 * 1024}) {
+            final byte[] input = body(length, length);
+            final int compressed = compressor.deflateWithDictionary(input, input.length);
+            assertArrayEquals("length " + length, input, inflateWithDictionary(compressor.buffer(), compressed));
+        }
+    }
+
+    /**
+     * 작은 요청 메시지는 dictionary 를 사용하면 gzip 보다 작게 압축된다.
+     */
+    @Test
+    public void dictionary_smallerThanGzipForSmallBody() {
+        final PayloadCompressor compressor = new PayloadCompressor();
+        final byte[] input = body(300, 3);
+        final int gzip = compressor.gzip(input, input.length);
+        final int deflate = compressor.deflateWithDictionary(input, input.length);
+        assertTrue(deflate + " < " + gzip, deflate < gzip);
+    }
+
+    private UploadLanes lanes() {
+        final RecordCodec codec = new RecordCodec(null);
+        final BoundedStorageBackend queue = new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, ConnectionQueue.SEQUENCE);
+        final ConnectionRecord record = new ConnectionRecord();
+        record.type = ConnectionRecord.TYPE_SESSION;
+        record.seq = 1;
+        record.serverName = "server";
+        record.category = "category";
+        record.appName = "app";
+        record.appVersion = "1.0";
+        record.deviceId = "device";
+        record.timestamp = 1500000000000L;
+        record.sdkName = "sdk";
+        record.sdkVersion = "1.0";
+        record.sessionStatus = "active";
+        record.metrics = "{\"_os\":\"Android\",\"_device\":\"test\"}";
+        queue.append(codec.encode(record));
+        final LanePolicy policy = new LanePolicy(CAPACITY, 1, 60000, 60000, 1);
+        final UploadLanes lanes = new UploadLanes();
+        lanes.put(new UploadLane(LanePolicy.Lane.CRASH, policy,
+                new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, ConnectionQueue.SEQUENCE)));
+        lanes.put(new UploadLane(LanePolicy.Lane.SESSION, policy, queue));
+        return lanes;
+    }
+
+    /**
+     * 같은 요청 메시지 1건을 전송하고 수신서버가 마지막으로 받은 요청을 반환한다.
+     */
+    private Request upload(final PayloadCompressor compressor, final int threshold) {
+        ConnectionProcessor.compressionThreshold = threshold;
+        requests_.clear();
+        new ConnectionProcessor(url_, lanes(), new RecordCodec(null), "device", UploadBatchPolicy.SINGLE, compressor,
+                new EnvelopeWriter()).run();
+        assertFalse(requests_.isEmpty());
+        return requests_.get(requests_.size() - 1);
+    }
+
+    @Test
+    public void threshold_boundary() throws Exception {
+        final PayloadCompressor compressor = new PayloadCompressor();
+        final Request plain = upload(compressor, -1);
+        assertNull(plain.contentEncoding);
+        final int length = plain.body.length;
+        assertTrue(length > 1);
+
+        assertNull(upload(compressor, length + 1).contentEncoding);
+
+        final Request atThreshold = upload(compressor, length);
+        assertEquals("gzip", atThreshold.contentEncoding);
+        assertArrayEquals(plain.body, gunzip(atThreshold.body, atThreshold.body.length));
+
+        assertEquals("gzip", upload(compressor, 0).contentEncoding);
+        assertEquals(1, requests_.size());
+    }
+
+    @Test
+    public void dictionary_sentWithId() throws Exception {
+        ConnectionProcessor.compressionDictionary = true;
+        final PayloadCompressor compressor = new PayloadCompressor();
+        final byte[] plain = upload(compressor, -1).body;
+        final Request request = upload(compressor, 0);
+        assertEquals("deflate", request.contentEncoding);
+        assertEquals(CompressionDictionary.ID, request.dictionary);
+        assertArrayEquals(plain, inflateWithDictionary(request.body, request.body.length));
+    }
+
+    /**
+     * 415 응답은 압축하지 않은 본문으로 바로 다시 전송하며, 이후로는 압축하지 않는다.
+     */
+    @Test
+    public void gzipRejected_fallsBackToPlain() {
+        compressedResponseCode_ = 415;
+        final PayloadCompressor compressor = new PayloadCompressor();
+        upload(compressor, 0);
+        assertEquals(2, requests_.size());
+        assertEquals("gzip", requests_.get(0).contentEncoding);
+        assertNull(requests_.get(1).contentEncoding);
+        assertTrue(compressor.isRejected());
+        assertNull(upload(compressor, 0).contentEncoding);
+    }
+
+    /**
+     * dictionary 를 거부(415)하면 gzip 으로, gzip 도 거부하면 압축하지 않고 전송한다.
+     */
+    @Test
+    public void dictionaryRejected_fallsBackToGzip() {
+        ConnectionProcessor.compressionDictionary = true;
+        compressedResponseCode_ = 415;
+        final PayloadCompressor compressor = new PayloadCompressor();
+        upload(compressor, 0);
+        assertEquals(3, requests_.size());
+        assertEquals("deflate", requests_.get(0).contentEncoding);
+        assertEquals("gzip", requests_.get(1).contentEncoding);
+        assertNull(requests_.get(2).contentEncoding);
+        assertTrue(compressor.isDictionaryRejected());
+        assertTrue(compressor.isRejected());
+    }
+
+    /**
+     * DICTIONARY_HEADER 가 없는 400 은 요청 메시지 오류이므로 다시 전송하지 않고 압축도 계속 사용한다.
+     */
+    @Test
+    public void badRequest_notTreatedAsRejection() {
+        compressedResponseCode_ = 400;
+        final PayloadCompressor compressor = new PayloadCompressor();
+        upload(compressor, 0);
+        assertEquals(1, requests_.size());
+        assertFalse(compressor.isRejected());
+        assertEquals("gzip", upload(compressor, 0).contentEncoding);
+    }
+
+    private static ConnectionRecord record(final int type, final int seq) {
+        final ConnectionRecord record = new ConnectionRecord();
+        record.type = type;
+        record.seq = seq;
+        record.serverName = "server";
+        record.category = "category";
+        record.appName = "app";
+        record.appVersion = "1.0";
+        record.deviceId = "device-0123456789abcdef";
+        record.timestamp = 1500000000000L + seq * 1000L;
+        record.sdkName = "sdk";
+        record.sdkVersion = "1.0";
+        record.metrics = "{\"_os\":\"Android\",\"_os_version\":\"7.1.1\",\"_device\":\"SM-G930F\","
+                + "\"_resolution\":\"1080x1920\",\"_carrier\":\"carrier\",\"_app_version\":\"1.0\"}";
+        return record;
+    }
+
+    /**
+     * CrashDetails.getCrashData 와 같은 항목의 crash 요청 메시지 본문(stack trace, 로그 포함)
+     */
+    private static byte[] crashBody() {
+        final StringBuilder error = new StringBuilder("java.lang.IllegalStateException: checkout failed\n");
+        for (int i = 0; i < 40; i++) {
+            error.append("\tat com.example.shop.checkout.Step").append(i % 7).append(".run(Step")
+                    .append(i % 7).append(".java:").append(100 + i * 3).append(")\n");
+        }
+        final StringBuilder logs = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            logs.append("cart item ").append(i).append(" added\n");
+        }
+        final ConnectionRecord record = record(ConnectionRecord.TYPE_CRASH, 1);
+        record.crash = "{\"_error\":" + JSONObject.quote(error.toString())
+                + ",\"_nonfatal\":\"false\",\"_logs\":" + JSONObject.quote(logs.toString())
+                + ",\"_device\":\"SM-G930F\",\"_os\":\"Android\",\"_os_version\":\"7.1.1\""
+                + ",\"_resolution\":\"1080x1920\",\"_app_version\":\"1.0\",\"_manufacture\":\"samsung\""
+                + ",\"_cpu\":\"arm64-v8a\",\"_opengl\":\"3\",\"_ram_current\":\"1024\",\"_ram_total\":\"3700\""
+                + ",\"_disk_current\":\"12000\",\"_disk_total\":\"32000\",\"_bat\":\"57\",\"_run\":\"843\""
+                + ",\"_orientation\":\"portrait\",\"_root\":\"false\",\"_online\":\"true\",\"_muted\":\"false\""
+                + ",\"_background\":\"false\"}";
+        final EnvelopeWriter writer = new EnvelopeWriter();
+        writer.writeRecord(record);
+        final byte[] body = new byte[writer.length()];
+        System.arraycopy(writer.buffer(), 0, body, 0, body.length);
+        return body;
+    }
+
+    /**
+     * ConnectionProcessor 의 batch 와 같은 "c=[...]" 본문 - events 요청 메시지 records 개(각 event 10개)
+     */
+    private static byte[] eventBatchBody(final int records) {
+        final String[] keys = {"screen_view", "purchase", "add_to_cart", "search", "scroll"};
+        final EnvelopeWriter writer = new EnvelopeWriter();
+        writer.writeAscii("c=[");
+        for (int r = 0; r < records; r++) {
+            final ConnectionRecord record = record(ConnectionRecord.TYPE_EVENTS, r + 1);
+            record.events = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                final Event event = new Event();
+                event.key = keys[(r + i) % keys.length];
+                event.count = 1;
+                event.timestamp = record.timestamp + i * 137;
+                event.segmentation = new HashMap<>();
+                event.segmentation.put("screen", "product_" + (r * 10 + i) % 23);
+                event.segmentation.put("item", String.valueOf(1000 + (r * 31 + i * 7) % 500));
+                record.events.add(event);
+            }
+            if (r > 0) {
+                writer.writeAscii(",");
+            }
+            writer.writeRecord(record);
+        }
+        writer.writeAscii("]");
+        final byte[] body = new byte[writer.length()];
+        System.arraycopy(writer.buffer(), 0, body, 0, body.length);
+        return body;
+    }
+
+    /**
+     * @return {압축 결과 byte 수, 1회 CPU 시간(ns)}
+     */
+    private static long[] measure(final PayloadCompressor compressor, final boolean dictionary, final byte[] body, final int iterations) {
+        long length = 0;
+        final long nanos = Benchmark.cpuNanos();
+        for (int i = 0; i < iterations; i++) {
+            length = dictionary ? compressor.deflateWithDictionary(body, body.length) : compressor.gzip(body, body.length);
+        }
+        return new long[] {length, (Benchmark.cpuNanos() - nanos) / iterations};
+    }
+
+    /**
+     * microbenchmark - crash 1건, events batch(요청 메시지 1건, 20건) 본문의 압축하지 않은 경우, gzip, dictionary 의
+     * 전송 byte 수와 batch 1회 압축 CPU 시간({@link Benchmark})
+     */
+    @Test
+    public void benchmark_bytesOnWireAndCpuPerBatch() throws Exception {
+        Benchmark.assumeEnabled();
+        final String[] names = {"crash", "events x1", "events x20"};
+        final byte[][] bodies = {crashBody(), eventBatchBody(1), eventBatchBody(20)};
+        final PayloadCompressor compressor = new PayloadCompressor();
+        final int iterations = 2000;
+        for (byte[] body : bodies) {
+            measure(compressor, false, body, iterations);
+            measure(compressor, true, body, iterations);
+        }
+        for (int i = 0; i < bodies.length; i++) {
+            final byte[] body = bodies[i];
+            final long[] gzip = measure(compressor, false, body, iterations);
+            assertArrayEquals(body, gunzip(compressor.buffer(), (int) gzip[0]));
+            final long[] dictionary = measure(compressor, true, body, iterations);
+            assertArrayEquals(body, inflateWithDictionary(compressor.buffer(), (int) dictionary[0]));
+            Benchmark.report("compression (" + names[i] + " per batch)", "plain " + body.length + " bytes / gzip "
+                    + gzip[0] + " bytes, " + gzip[1] / 1000 + " us / dictionary " + dictionary[0] + " bytes, "
+                    + dictionary[1] / 1000 + " us");
+            assertTrue(names[i] + " gzip " + gzip[0] + " bytes, plain " + body.length, gzip[0] * 2 < body.length);
+            assertTrue(names[i] + " dictionary " + dictionary[0] + " bytes, plain " + body.length, dictionary[0] * 2 < body.length);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * RecordCodec, StringTable 테스트 - 요청 메시지 종류별(SESSION, CRASH, EVENTS, LEGACY) 변환 후 다시 읽은 값이 같은지 확인한다.<br />
+ * 문자열 테이블을 사용하는 경우와 사용하지 않는 경우(여러 프로세스가 같은 Queue 를 읽는 경우)를 모두 확인한다.<br />
+ * 이전 버전의 query string(JSON) 레코드와 크기, 변환 시간을 비교한다.(benchmark 는 {@link Benchmark#PROPERTY} 지정시에만 실행)
+ */
+public class RecordCodecTest {
+
+    private static RecordCodec[] codecs() {
+        return new RecordCodec[] {new RecordCodec(new StringTable(null)), new RecordCodec(null)};
+    }
+
+    private static ConnectionRecord record(final int type) {
+        final ConnectionRecord record = new ConnectionRecord();
+        record.type = type;
+        record.seq = 1234567890123L;
+        record.expiresAt = 1700000000000L;
+        record.maxAttempts = 5;
+        record.serverName = "server";
+        record.category = "category";
+        record.appName = "앱 이름";
+        record.appVersion = "1.2.3";
+        record.deviceId = "device-0001";
+        record.timestamp = 1500000000123L;
+        record.sdkName = "java-native-android";
+        record.sdkVersion = "16.06";
+        return record;
+    }
+
+    private static Event event(final String key, final int count) {
+        final Event event = new Event();
+        event.key = key;
+        event.count = count;
+        event.timestamp = 1500000000000L + count;
+        return event;
+    }
+
+    private static void assertRecordEquals(final ConnectionRecord expected, final ConnectionRecord actual) {
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.seq, actual.seq);
+        assertEquals(expected.expiresAt, actual.expiresAt);
+        assertEquals(expected.maxAttempts, actual.maxAttempts);
+        assertEquals(expected.serverName, actual.serverName);
+        assertEquals(expected.category, actual.category);
+        assertEquals(expected.appName, actual.appName);
+        assertEquals(expected.appVersion, actual.appVersion);
+        assertEquals(expected.deviceId, actual.deviceId);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.sdkName, actual.sdkName);
+        assertEquals(expected.sdkVersion, actual.sdkVersion);
+        assertEquals(expected.sessionStatus, actual.sessionStatus);
+        assertEquals(expected.metrics, actual.metrics);
+        assertEquals(expected.crash, actual.crash);
+        assertEquals(expected.appMetrics, actual.appMetrics);
+        assertEquals(expected.droppedRequests, actual.droppedRequests);
+        assertEquals(expected.droppedEvents, actual.droppedEvents);
+        assertEquals(expected.legacy, actual.legacy);
+        if (expected.events == null) {
+            assertNull(actual.events);
+        } else {
+            assertEquals(expected.events.size(), actual.events.size());
+            for (int i = 0; i < expected.events.size(); i++) {
+                assertEventEquals(expected.events.get(i), actual.events.get(i), false);
+            }
+        }
+    }
+
+    private static void assertEventEquals(final Event expected, final Event actual, final boolean withSeq) {
+        assertEquals(expected.key, actual.key);
+        assertEquals(expected.count, actual.count);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.dur, actual.dur, 0);
+        assertEquals(expected.durMin, actual.durMin, 0);
+        assertEquals(expected.durMax, actual.durMax, 0);
+        assertEquals(expected.sampleRate, actual.sampleRate, 0);
+        assertEquals(expected.segmentation, actual.segmentation);
+        assertArrayEquals(expected.histogram, actual.histogram);
+        assertEquals(withSeq ? expected.seq : 0, actual.seq);
+        final Measurements measurements = expected.measurements;
+        if (measurements == null || measurements.size() == 0) {
+            assertTrue(actual.measurements == null || actual.measurements.size() == 0);
+            return;
+        }
+        assertEquals(measurements.size(), actual.measurements.size());
+        for (int i = 0; i < measurements.size(); i++) {
+            assertEquals(measurements.name(i), actual.measurements.name(i));
+            assertEquals(measurements.isDouble(i), actual.measurements.isDouble(i));
+            assertEquals(measurements.bits(i), actual.measurements.bits(i));
+            assertEquals(measurements.minBits(i), actual.measurements.minBits(i));
+            assertEquals(measurements.maxBits(i), actual.measurements.maxBits(i));
+        }
+    }
+
+    /**
+     * segmentation, 처리 시간, sampling, 처리 시간 분포, 측정값을 모두 가진 이벤트와 key 만 가진 이벤트
+     */
+    private static List<Event> events() {
+        final List<Event> events = new ArrayList<>();
+        final Event single = event("purchase", 1);
+        single.dur = 1.25;
+        single.sampleRate = 0.25;
+        single.segmentation = new HashMap<>();
+        single.segmentation.put("country", "대한민국");
+        single.segmentation.put("empty", "");
+        single.measurementsBuffer().put("amount", 1500L);
+        single.measurements.put("ratio", 0.75);
+        events.add(single);
+
+        final Event aggregated = event("scroll", 7);
+        aggregated.dur = 42.5;
+        aggregated.durMin = 0.5;
+        aggregated.durMax = 20;
+        aggregated.histogram = new long[] {3, 2, 17, 4, 130, 1};
+        final Measurements measurements = aggregated.measurementsBuffer();
+        measurements.set("pixels", false, 7000, 10, 3000);
+        measurements.set("speed", true, Double.doubleToRawLongBits(12.5),
+                Double.doubleToRawLongBits(-1.5), Double.doubleToRawLongBits(9.25));
+        events.add(aggregated);
+
+        events.add(event("launch", 1));
+        return events;
+    }
+
+    @Test
+    public void sessionRecord_roundTrip() {
+        for (RecordCodec codec : codecs()) {
+            final ConnectionRecord record = record(ConnectionRecord.TYPE_SESSION);
+            record.sessionStatus = "begin_session=1";
+            record.metrics = "{\"_os\":\"Android\",\"_device\":\"Pixel \\\"3\\\"\"}";
+            record.appMetrics = "{\"memory\":12345}";
+            record.droppedRequests = 3;
+            record.droppedEvents = 300;
+            final byte[] data = codec.encode(record);
+            assertEquals(ConnectionRecord.TYPE_SESSION, RecordCodec.typeOf(data));
+            assertEquals(record.seq, RecordCodec.seqOf(data));
+            assertEquals(record.expiresAt, RecordCodec.expiresAtOf(data));
+            assertRecordEquals(record, codec.decode(data));
+        }
+    }
+
+    @Test
+    public void crashRecord_roundTrip() {
+        for (RecordCodec codec : codecs()) {
+            final ConnectionRecord record = record(ConnectionRecord.TYPE_CRASH);
+            final StringBuilder crash = new StringBuilder("{\"_error\":\"java.lang.IllegalStateException: 오류\\n");
+            for (int i = 0; i < 200; i++) {
+                crash.append("\\tat appinsightor.Frame").append(i).append("(Frame.java:").append(i).append(")\\n");
+            }
+            record.crash = crash.append("\",\"_nonfatal\":false}").toString();
+            final byte[] data = codec.encode(record);
+            assertEquals(ConnectionRecord.TYPE_CRASH, RecordCodec.typeOf(data));
+            assertRecordEquals(record, codec.decode(data));
+        }
+    }
+
+    @Test
+    public void eventsRecord_roundTrip() {
+        for (RecordCodec codec : codecs()) {
+            final ConnectionRecord record = record(ConnectionRecord.TYPE_EVENTS);
+            record.events = events();
+            final byte[] data = codec.encode(record);
+            assertEquals(ConnectionRecord.TYPE_EVENTS, RecordCodec.typeOf(data));
+            assertRecordEquals(record, codec.decode(data));
+        }
+    }
+
+    /**
+     * 값이 없는(0, null) 필드는 기록하지 않으며 읽은 후에도 기본값이다.
+     */
+    @Test
+    public void emptyRecord_roundTrip() {
+        for (RecordCodec codec : codecs()) {
+            final ConnectionRecord record = new ConnectionRecord();
+            record.type = ConnectionRecord.TYPE_SESSION;
+            final byte[] data = codec.encode(record);
+            assertEquals(2, data.length);
+            assertEquals(0, RecordCodec.seqOf(data));
+            assertEquals(0, RecordCodec.expiresAtOf(data));
+            assertRecordEquals(record, codec.decode(data));
+        }
+    }
+
+    @Test
+    public void legacyRecord_roundTrip() {
+        for (RecordCodec codec : codecs()) {
+            final ConnectionRecord record = new ConnectionRecord();
+            record.type = ConnectionRecord.TYPE_LEGACY;
+            record.legacy = "app_key=server&timestamp=1500000000&device_id=device&events=%5B%7B%22key%22%3A%22a%22%7D%5D";
+            final byte[] data = codec.encode(record);
+            assertArrayEquals(AppInsightorStore.toBytes(record.legacy), data);
+            assertEquals(ConnectionRecord.TYPE_LEGACY, RecordCodec.typeOf(data));
+            assertEquals(0, RecordCodec.seqOf(data));
+            assertEquals(0, RecordCodec.expiresAtOf(data));
+            assertRecordEquals(record, codec.decode(data));
+        }
+    }
+
+    @Test
+    public void event_roundTrip() {
+        for (RecordCodec codec : codecs()) {
+            long seq = 1;
+            for (Event event : events()) {
+                event.seq = seq++ * 1000003;
+                final byte[] data = codec.encodeEvent(event);
+                assertEquals(event.seq, RecordCodec.eventSeqOf(data));
+                assertEventEquals(event, codec.decodeEvent(data), true);
+            }
+        }
+    }
+
+    /**
+     * 이전 버전에서 JSON 문자열로 저장된 이벤트
+     */
+    @Test
+    public void legacyEvent_decoded() {
+        final Event event = event("legacy", 1);
+        event.segmentation = new HashMap<>();
+        event.segmentation.put("k", "v");
+        event.dur = 3.5;
+        final byte[] data = AppInsightorStore.toBytes(event.toJSON().toString());
+        assertEquals(0, RecordCodec.eventSeqOf(data));
+        for (RecordCodec codec : codecs()) {
+            assertEventEquals(event, codec.decodeEvent(data), false);
+        }
+        assertNull(new RecordCodec(null).decodeEvent(AppInsightorStore.toBytes("not json")));
+    }
+
+    /**
+     * 문자열 테이블을 사용하면 반복되는 문자열을 번호로 기록하여 레코드가 작아지고,
+     * 같은 테이블을 사용하는 다른 RecordCodec(재시작 후)도 읽을 수 있다.
+     */
+    @Test
+    public void stringTable_sharesRepeatedStrings() {
+        final StringTable table = new StringTable(null);
+        final ConnectionRecord record = record(ConnectionRecord.TYPE_EVENTS);
+        record.events = events();
+        final byte[] plain = new RecordCodec(null).encode(record);
+        final byte[] interned = new RecordCodec(table).encode(record);
+        assertTrue(interned.length + " < " + plain.length, interned.length < plain.length);
+        assertRecordEquals(record, new RecordCodec(table).decode(interned));
+
+        final int index = table.indexOf(record.deviceId);
+        assertEquals(index, table.indexOf(record.deviceId));
+        assertEquals(record.deviceId, table.get(index));
+        assertNull(table.get(StringTable.MAX_ENTRIES));
+        final char[] longValue = new char[StringTable.MAX_LENGTH + 1];
+        assertEquals(-1, table.indexOf(new String(longValue)));
+    }
+
+    @Test
+    public void stringTable_full_writesStringsInline() {
+        final StringTable table = new StringTable(null);
+        for (int i = 0; table.indexOf("filler-" + i) >= 0; i++) {
+            assertTrue(i < StringTable.MAX_ENTRIES);
+        }
+        final RecordCodec codec = new RecordCodec(table);
+        final ConnectionRecord record = record(ConnectionRecord.TYPE_SESSION);
+        final byte[] data = codec.encode(record);
+        assertEquals(new RecordCodec(null).encode(record).length, data.length);
+        assertRecordEquals(record, codec.decode(data));
+    }
+
+    /**
+     * 이전 버전의 Queue 레코드 - 요청 메시지 query string, events 와 metrics 는 URL encoding 한 JSON
+     */
+    private static String legacyEncode(final ConnectionRecord record) throws Exception {
+        final JSONArray events = new JSONArray();
+        for (Event event : record.events) {
+            events.put(event.toJSON());
+        }
+        return "t=" + record.serverName
+                + "&category=" + record.category
+                + "&app_name=" + record.appName
+                + "&app_version=" + record.appVersion
+                + "&device_id=" + record.deviceId
+                + "&timestamp=" + record.timestamp
+                + "&sdk_name=" + record.sdkName
+                + "&sdk_version=" + record.sdkVersion
+                + "&metrics=" + URLEncoder.encode(record.metrics, "UTF-8")
+                + "&session_status=" + record.sessionStatus
+                + "&events=" + URLEncoder.encode(events.toString(), "UTF-8");
+    }
+
+    /**
+     * 이전 버전의 Queue 레코드를 요청 메시지 값으로 다시 읽는다.(events 는 JSON 을 읽어 Event 로 변환)
+     */
+    private static ConnectionRecord legacyDecode(final String data) throws Exception {
+        final Map<String, String> params = new HashMap<>();
+        for (String param : data.split("&")) {
+            final int eq = param.indexOf('=');
+            params.put(param.substring(0, eq), param.substring(eq + 1));
+        }
+        final ConnectionRecord record = new ConnectionRecord();
+        record.type = ConnectionRecord.TYPE_EVENTS;
+        record.serverName = params.get("t");
+        record.category = params.get("category");
+        record.appName = params.get("app_name");
+        record.appVersion = params.get("app_version");
+        record.deviceId = params.get("device_id");
+        record.timestamp = Long.parseLong(params.get("timestamp"));
+        record.sdkName = params.get("sdk_name");
+        record.sdkVersion = params.get("sdk_version");
+        record.metrics = URLDecoder.decode(params.get("metrics"), "UTF-8");
+        record.sessionStatus = params.get("session_status");
+        final JSONArray events = new JSONArray(URLDecoder.decode(params.get("events"), "UTF-8"));
+        record.events = new ArrayList<>(events.length());
+        for (int i = 0; i < events.length(); i++) {
+            record.events.add(Event.fromJSON(events.getJSONObject(i)));
+        }
+        return record;
+    }
+
+    /**
+     * microbenchmark - 이벤트 150개를 담은 EVENTS 요청 메시지의 저장 크기와 변환(encode + decode) 시간, 할당 byte 수를
+     * 이전 query string(JSON) 레코드와 비교한다.({@link Benchmark})
+     */
+    @Test
+    public void benchmark_codecVsLegacyQueryString() throws Exception {
+        Benchmark.assumeEnabled();
+        final ConnectionRecord record = record(ConnectionRecord.TYPE_EVENTS);
+        record.sessionStatus = "active";
+        record.metrics = "{\"_os\":\"Android\",\"_os_version\":\"7.1.1\",\"_device\":\"Pixel\",\"_resolution\":\"1080x1920\"}";
+        record.events = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            record.events.addAll(events());
+        }
+        final RecordCodec[] codecs = {new RecordCodec(new StringTable(null)), new RecordCodec(null)};
+        final String[] names = {"RecordCodec (string table)", "RecordCodec"};
+
+        final int legacyBytes = AppInsightorStore.toBytes(legacyEncode(record)).length;
+        assertEquals(record.events.size(), legacyDecode(legacyEncode(record)).events.size());
+        final int iterations = 500;
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {//warmup
+            sink += legacyDecode(legacyEncode(record)).events.size();
+            for (RecordCodec codec : codecs) {
+                sink += codec.decode(codec.encode(record)).events.size();
+            }
+        }
+        long bytes = Benchmark.allocatedBytes();
+        long nanos = Benchmark.cpuNanos();
+        for (int i = 0; i < iterations; i++) {
+            sink += legacyDecode(legacyEncode(record)).events.size();
+        }
+        final long legacyNanos = (Benchmark.cpuNanos() - nanos) / iterations;
+        final long legacyAllocated = (Benchmark.allocatedBytes() - bytes) / iterations;
+        final StringBuilder result = new StringBuilder("query string " + legacyBytes + " bytes, " + legacyNanos / 1000 + " us, "
+                + legacyAllocated / 1024 + " KB allocated");
+
+        for (int c = 0; c < codecs.length; c++) {
+            final RecordCodec codec = codecs[c];
+            final int codecBytes = codec.encode(record).length;
+            bytes = Benchmark.allocatedBytes();
+            nanos = Benchmark.cpuNanos();
+            for (int i = 0; i < iterations; i++) {
+                sink += codec.decode(codec.encode(record)).events.size();
+            }
+            final long codecNanos = (Benchmark.cpuNanos() - nanos) / iterations;
+            final long codecAllocated = (Benchmark.allocatedBytes() - bytes) / iterations;
+            result.append(" / ").append(names[c]).append(' ').append(codecBytes).append(" bytes, ").append(codecNanos / 1000)
+                    .append(" us, ").append(codecAllocated / 1024).append(" KB allocated");
+            assertTrue(names[c] + " " + codecBytes + " bytes, query string " + legacyBytes + " bytes", codecBytes * 2 < legacyBytes);
+            assertTrue(names[c] + " " + codecNanos + " ns, query string " + legacyNanos + " ns", codecNanos * 2 < legacyNanos);
+        }
+        Benchmark.report("EVENTS record, 150 events (encode + decode)", result + " (" + sink + ")");
+    }
+}
@@ -0,0 +1,39 @@
+package appinsightor.com.sdk_appinsightor;
+
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AppInsightorStore 테스트용 Context - 이름별 {@link MemoryPreferences} 와 지정한 files 디렉토리만 제공한다.
+ */
+class TestContext extends ContextWrapper {
+    private final File filesDir_;
+    private final Map<String, SharedPreferences> preferences_ = new HashMap<>();
+
+    /**
+     * @param filesDir getFilesDir() 디렉토리(MEMORY 저장소는 null 가능)
+     */
+    TestContext(final File filesDir) {
+        super(null);
+        filesDir_ = filesDir;
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(final String name, final int mode) {
+        SharedPreferences preferences = preferences_.get(name);
+        if (preferences == null) {
+            preferences = new MemoryPreferences();
+            preferences_.put(name, preferences);
+        }
+        return preferences;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir_;
+    }
+}
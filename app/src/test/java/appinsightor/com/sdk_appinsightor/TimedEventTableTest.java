@@ -0,0 +1,149 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * TimedEventTable 테스트 - 같은 key 의 이벤트를 겹쳐서 측정하고, maxOpen 제한, staleTimeoutMs 가 지난 이벤트 제거,
+ * 종료된 handle 을 다시 사용하거나 같은 slot 의 새 handle 과 혼동하지 않는지 확인한다.
+ */
+public class TimedEventTableTest {
+
+    @Test
+    public void overlappingSameKey_endIndependently() throws Exception {
+        final TimedEventTable table = new TimedEventTable(8, TimedEventTable.DEFAULT_STALE_TIMEOUT_MS);
+        final long first = table.start("download", 1000);
+        Thread.sleep(20);
+        final long second = table.start("download", 2000);
+        assertTrue(first > 0);
+        assertTrue(second > 0);
+        assertNotEquals(first, second);
+        assertEquals(2, table.openCount());
+
+        final Event secondEvent = new Event();
+        assertTrue(table.end(second, secondEvent));
+        assertEquals("download", secondEvent.key);
+        assertEquals(2000, secondEvent.timestamp);
+
+        final Event firstEvent = new Event();
+        assertTrue(table.end(first, firstEvent));
+        assertEquals(1000, firstEvent.timestamp);
+        assertTrue(firstEvent.dur + " ms", firstEvent.dur >= 20);
+        assertTrue(firstEvent.dur >= secondEvent.dur);
+        assertEquals(0, table.openCount());
+    }
+
+    @Test
+    public void maxOpen_rejectsUntilSlotFreed() {
+        final TimedEventTable table = new TimedEventTable(3, TimedEventTable.DEFAULT_STALE_TIMEOUT_MS);
+        final long[] handles = new long[3];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = table.start("key" + i, i);
+            assertTrue(handles[i] > 0);
+        }
+        assertEquals(0, table.start("over", 0));
+        assertEquals(3, table.openCount());
+
+        assertTrue(table.cancel(handles[1]));
+        final long reopened = table.start("again", 0);
+        assertTrue(reopened > 0);
+        assertEquals(0, table.start("over", 0));
+        assertEquals(3, table.openCount());
+    }
+
+    /**
+     * 종료, 취소한 handle 은 다시 사용할 수 없으며, 같은 slot 에 새로 시작한 이벤트를 종료하지 않는다.
+     */
+    @Test
+    public void endedHandle_notReusable() {
+        final TimedEventTable table = new TimedEventTable(1, TimedEventTable.DEFAULT_STALE_TIMEOUT_MS);
+        final long first = table.start("a", 1);
+        assertTrue(table.end(first, new Event()));
+        assertFalse(table.end(first, new Event()));
+        assertFalse(table.cancel(first));
+
+        final Set<Long> handles = new HashSet<>();
+        handles.add(first);
+        long current = 0;
+        for (int i = 0; i < 100; i++) {
+            current = table.start("b", 2);
+            assertTrue(handles.add(current));
+            assertFalse(table.end(first, new Event()));
+            if (i < 99) {
+                assertTrue(table.cancel(current));
+            }
+        }
+        final Event event = new Event();
+        assertTrue(table.end(current, event));
+        assertEquals("b", event.key);
+        assertEquals(0, table.openCount());
+    }
+
+    @Test
+    public void invalidHandle_ignored() {
+        final TimedEventTable table = new TimedEventTable(4, TimedEventTable.DEFAULT_STALE_TIMEOUT_MS);
+        final long handle = table.start("a", 1);
+        assertFalse(table.end(0, new Event()));
+        assertFalse(table.cancel(-1));
+        assertFalse(table.end(handle + 1, new Event()));
+        assertEquals(1, table.openCount());
+    }
+
+    /**
+     * staleTimeoutMs 가 지난 이벤트는 다음 start 에서 제거되어 maxOpen 을 차지하지 않는다.
+     */
+    @Test
+    public void staleEvents_sweptOnStart() throws Exception {
+        final long staleMs = 50;
+        final TimedEventTable table = new TimedEventTable(2, staleMs);
+        final long stale1 = table.start("forgotten", 1);
+        final long stale2 = table.start("forgotten", 2);
+        assertEquals(0, table.start("full", 3));
+
+        Thread.sleep(staleMs * 3);
+        final long fresh = table.start("fresh", 4);
+        assertTrue(fresh > 0);
+        assertEquals(1, table.openCount());
+        assertFalse(table.end(stale1, new Event()));
+        assertFalse(table.cancel(stale2));
+        assertTrue(table.end(fresh, new Event()));
+    }
+
+    @Test
+    public void concurrentStartEnd_keepsCount() throws Exception {
+        final TimedEventTable table = new TimedEventTable(TimedEventTable.DEFAULT_MAX_OPEN, TimedEventTable.DEFAULT_STALE_TIMEOUT_MS);
+        final AtomicInteger failures = new AtomicInteger();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final String key = "thread" + t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final Event event = new Event();
+                    final long[] open = new long[16];
+                    for (int round = 0; round < 2000; round++) {
+                        for (int i = 0; i < open.length; i++) {
+                            open[i] = table.start(key, round);
+                        }
+                        for (long handle : open) {
+                            if (handle == 0 || !table.end(handle, event) || !key.equals(event.key)) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+        assertEquals(0, table.openCount());
+    }
+}
@@ -0,0 +1,191 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * AppInsightor.uniqueTimestampMs 테스트 - 같은 ms, 시스템 시간이 뒤로 바뀐 경우(60초 이하, 초과)의 단조 증가 확인<br />
+ * 직전 timestamp 는 static 값이므로 테스트마다 이전 테스트보다 큰 시간을 기준으로 한다.<br />
+ * 여러 스레드에서 호출할 때의 처리 시간을 이전 synchronized 방식과 비교한다.(benchmark 는 {@link Benchmark#PROPERTY} 지정시에만 실행)
+ */
+public class TimestampTest {
+    private static long nextBase_ = System.currentTimeMillis() + 365L * 24 * 60 * 60 * 1000;
+
+    private long base_;
+
+    @Before
+    public void setUp() {
+        nextBase_ += 60L * 60 * 1000;
+        base_ = nextBase_;
+        assertEquals(base_, AppInsightor.uniqueTimestampMs(base_));
+    }
+
+    @Test
+    public void sameMillisecond_increments() {
+        assertEquals(base_ + 1, AppInsightor.uniqueTimestampMs(base_));
+        assertEquals(base_ + 2, AppInsightor.uniqueTimestampMs(base_));
+        assertEquals(base_ + 10, AppInsightor.uniqueTimestampMs(base_ + 10));
+        assertEquals(base_ + 11, AppInsightor.uniqueTimestampMs(base_ + 5));
+    }
+
+    @Test
+    public void smallBackwardJump_staysMonotonic() {
+        long last = base_;
+        long wall = base_;
+        //시스템 시간이 30초 뒤로 바뀐 후 다시 흐름
+        for (long ms = base_ - 30000; ms < base_ + 100; ms += 7) {
+            final long timestamp = AppInsightor.uniqueTimestampMs(ms);
+            assertTrue(timestamp + " after " + last, timestamp > last);
+            last = timestamp;
+            wall = ms;
+        }
+        //가장 늦은 측정 시간보다 60초 이내로 되돌아간 경우는 직전 timestamp 이후로 보정한다.
+        assertEquals(last + 1, AppInsightor.uniqueTimestampMs(wall - 60000));
+    }
+
+    @Test
+    public void largeBackwardJump_followsNewClock() {
+        assertEquals(base_ + 1, AppInsightor.uniqueTimestampMs(base_));
+        //60초보다 크게 뒤로 바뀌면 바뀐 시간을 새 기준으로 사용하며, 이후로는 다시 단조 증가한다.
+        final long changed = base_ - 2 * 60 * 1000;
+        assertEquals(changed, AppInsightor.uniqueTimestampMs(changed));
+        assertEquals(changed + 1, AppInsightor.uniqueTimestampMs(changed));
+        assertEquals(changed + 2, AppInsightor.uniqueTimestampMs(changed - 1000));
+        assertEquals(changed + 5000, AppInsightor.uniqueTimestampMs(changed + 5000));
+    }
+
+    @Test
+    public void concurrentCallers_getUniqueIncreasingTimestamps() throws Exception {
+        final int threads = 4;
+        final int perThread = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<long[]> results = new ArrayList<>();
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final long[] timestamps = new long[perThread];
+            results.add(timestamps);
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        timestamps[i] = AppInsightor.uniqueTimestampMs(base_ + i / 100);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        final Set<Long> all = new HashSet<>();
+        for (long[] timestamps : results) {
+            for (int i = 0; i < perThread; i++) {
+                assertTrue("duplicate " + timestamps[i], all.add(timestamps[i]));
+                if (i > 0) {
+                    assertTrue(timestamps[i] > timestamps[i - 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 이전 버전의 AppInsightor.currentTimestampMs() - 클래스 lock 을 잡고 직전 timestamp 보다 커질 때까지 1ms 씩 증가
+     */
+    private static final class SynchronizedTimestamp {
+        private static long lastTsMs;
+
+        static synchronized long currentTimestampMs() {
+            long ms = System.currentTimeMillis();
+            while (lastTsMs >= ms) {
+                ms += 1;
+            }
+            lastTsMs = ms;
+            return ms;
+        }
+    }
+
+    private interface Clock {
+        long timestamp();
+    }
+
+    /**
+     * @return threads 개의 스레드가 perThread 번씩 호출하는데 걸린 시간(ns)
+     */
+    private static long callConcurrently(final int threads, final int perThread, final Clock clock) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> workers = new ArrayList<>();
+        final long[] sink = new long[threads];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        sink[index] += clock.timestamp();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - begin;
+    }
+
+    /**
+     * microbenchmark - 4개의 스레드가 동시에 timestamp 를 요청할 때 CAS 방식과 이전 synchronized 방식의 호출당 시간({@link Benchmark})<br />
+     * 이전 방식은 같은 ms 에 요청이 몰려 직전 timestamp 가 시스템 시간보다 앞서면, 앞선 만큼 1ms 씩 반복하므로 호출이 많을수록 느려진다.
+     */
+    @Test
+    public void benchmark_casVsSynchronizedTimestamp() throws Exception {
+        Benchmark.assumeEnabled();
+        final int threads = 4;
+        final int perThread = 20000;
+        final Clock cas = new Clock() {
+            @Override
+            public long timestamp() {
+                return AppInsightor.uniqueTimestampMs(System.currentTimeMillis());
+            }
+        };
+        final Clock locked = new Clock() {
+            @Override
+            public long timestamp() {
+                return SynchronizedTimestamp.currentTimestampMs();
+            }
+        };
+        callConcurrently(threads, 1000, cas);//warmup
+        callConcurrently(threads, 1000, locked);
+        final long casNanos = callConcurrently(threads, perThread, cas);
+        final long lockedNanos = callConcurrently(threads, perThread, locked);
+
+        final long calls = (long) threads * perThread;
+        Benchmark.report("timestamp x" + threads + " threads (per call)", "CAS " + casNanos / calls + " ns / synchronized "
+                + lockedNanos / calls + " ns (" + Runtime.getRuntime().availableProcessors() + " cpu)");
+        assertTrue("CAS " + casNanos + " ns, synchronized " + lockedNanos + " ns", casNanos * 2 < lockedNanos);
+    }
+}
@@ -0,0 +1,181 @@
+package appinsightor.com.sdk_appinsightor;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * UploadLanes 전송 순서 테스트 - CRASH lane 우선, SESSION, EVENTS lane 의 weight 비율(smooth weighted round robin),
+ * 재시도 대기중인 lane 제외, LaneStats 의 전송, 실패, 버림 통계를 확인한다.
+ */
+public class UploadLanesTest {
+    private static final QueueCapacity CAPACITY = new QueueCapacity(1000, 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST);
+    private static final long NOW = 1500000000000L;
+
+    private final RecordCodec codec_ = new RecordCodec(null);
+
+    private static UploadLane lane(final LanePolicy.Lane lane, final int weight) {
+        return new UploadLane(lane, new LanePolicy(CAPACITY, weight, 1000, 8000, 1),
+                new BoundedStorageBackend(new MemoryStorageBackend(), null, CAPACITY, null, ConnectionQueue.SEQUENCE));
+    }
+
+    private static UploadLanes lanes(final int sessionWeight, final int eventsWeight) {
+        final UploadLanes lanes = new UploadLanes();
+        lanes.put(lane(LanePolicy.Lane.CRASH, 1));
+        lanes.put(lane(LanePolicy.Lane.SESSION, sessionWeight));
+        lanes.put(lane(LanePolicy.Lane.EVENTS, eventsWeight));
+        return lanes;
+    }
+
+    private void append(final UploadLanes lanes, final int type, final int count, final long timestamp) {
+        for (int i = 0; i < count; i++) {
+            final ConnectionRecord record = new ConnectionRecord();
+            record.type = type;
+            record.seq = i + 1;
+            record.timestamp = timestamp;
+            record.deviceId = "device";
+            assertTrue(lanes.of(type).queue.append(codec_.encode(record)));
+        }
+    }
+
+    /**
+     * next() 로 고른 lane 의 요청 메시지를 1개씩 전송(ack)한 순서 - lane 이름의 첫 글자
+     */
+    private static String drain(final UploadLanes lanes, final int max) {
+        final StringBuilder order = new StringBuilder();
+        UploadLane lane;
+        while (order.length() < max && (lane = lanes.next(NOW)) != null) {
+            order.append(lane.lane.name().charAt(0));
+            lane.queue.ack(1);
+            lane.onSent(1, 0, 0);
+        }
+        return order.toString();
+    }
+
+    @Test
+    public void of_mapsRecordTypeToLane() {
+        final UploadLanes lanes = lanes(2, 1);
+        assertEquals(LanePolicy.Lane.CRASH, lanes.of(ConnectionRecord.TYPE_CRASH).lane);
+        assertEquals(LanePolicy.Lane.EVENTS, lanes.of(ConnectionRecord.TYPE_EVENTS).lane);
+        assertEquals(LanePolicy.Lane.SESSION, lanes.of(ConnectionRecord.TYPE_SESSION).lane);
+        assertEquals(LanePolicy.Lane.SESSION, lanes.of(ConnectionRecord.TYPE_LEGACY).lane);
+    }
+
+    /**
+     * CRASH lane 을 모두 전송한 후 SESSION, EVENTS lane 을 weight 비율(2:1)로 번갈아 전송하며, 같은 credit 이면 SESSION 이 먼저다.
+     */
+    @Test
+    public void next_crashFirstThenWeightedRoundRobin() {
+        final UploadLanes lanes = lanes(2, 1);
+        append(lanes, ConnectionRecord.TYPE_EVENTS, 4, NOW);
+        append(lanes, ConnectionRecord.TYPE_SESSION, 8, NOW);
+        append(lanes, ConnectionRecord.TYPE_CRASH, 3, NOW);
+        assertEquals(15, lanes.size());
+        assertEquals("CCCSESSESSESSES", drain(lanes, 100));
+        assertEquals(0, lanes.size());
+        assertNull(lanes.next(NOW));
+    }
+
+    @Test
+    public void next_equalWeights_alternateSessionFirst() {
+        final UploadLanes lanes = lanes(1, 1);
+        append(lanes, ConnectionRecord.TYPE_EVENTS, 3, NOW);
+        append(lanes, ConnectionRecord.TYPE_SESSION, 3, NOW);
+        assertEquals("SESESE", drain(lanes, 100));
+    }
+
+    /**
+     * 전송 중 추가된 crash 는 다음 순서에 바로 전송한다.
+     */
+    @Test
+    public void next_newCrashPreemptsOtherLanes() {
+        final UploadLanes lanes = lanes(1, 1);
+        append(lanes, ConnectionRecord.TYPE_SESSION, 2, NOW);
+        append(lanes, ConnectionRecord.TYPE_EVENTS, 2, NOW);
+        assertEquals("SE", drain(lanes, 2));
+        append(lanes, ConnectionRecord.TYPE_CRASH, 1, NOW);
+        assertEquals("CSE", drain(lanes, 100));
+    }
+
+    /**
+     * 재시도 대기중인 lane 은 건너뛰며, CRASH lane 이 대기중이면 다른 lane 을 전송한다.
+     */
+    @Test
+    public void next_skipsLaneWaitingForRetry() {
+        final UploadLanes lanes = lanes(1, 1);
+        append(lanes, ConnectionRecord.TYPE_CRASH, 1, NOW);
+        append(lanes, ConnectionRecord.TYPE_SESSION, 1, NOW);
+        append(lanes, ConnectionRecord.TYPE_EVENTS, 1, NOW);
+        lanes.get(LanePolicy.Lane.CRASH).onFailure(NOW);
+        lanes.get(LanePolicy.Lane.SESSION).onFailure(NOW);
+        assertSame(lanes.get(LanePolicy.Lane.EVENTS), lanes.next(NOW));
+        assertSame(lanes.get(LanePolicy.Lane.CRASH), lanes.next(NOW + 1000));
+    }
+
+    @Test
+    public void stats_countSentFailuresAndDrops() {
+        final UploadLanes lanes = lanes(1, 1);
+        append(lanes, ConnectionRecord.TYPE_SESSION, 3, NOW - 5000);
+        final UploadLane session = lanes.get(LanePolicy.Lane.SESSION);
+
+        LaneStats stats = session.stats(NOW, codec_);
+        assertEquals(LanePolicy.Lane.SESSION, stats.lane);
+        assertEquals(3, stats.depth);
+        assertEquals(session.queue.bytes(), stats.bytes);
+        assertEquals(5000, stats.oldestWaitMs);
+        assertEquals(0, stats.sent);
+        assertEquals(0, stats.averageWaitMs);
+
+        //연속 실패시 retryBaseMs 부터 2배씩, retryMaxMs 까지 대기한다.
+        session.onFailure(NOW);
+        assertEquals(1000, session.stats(NOW, codec_).retryInMs);
+        session.onFailure(NOW);
+        assertEquals(2000, session.stats(NOW, codec_).retryInMs);
+        session.onFailure(NOW);
+        session.onFailure(NOW);
+        session.onFailure(NOW);
+        stats = session.stats(NOW + 500, codec_);
+        assertEquals(5, stats.failures);
+        assertEquals(7500, stats.retryInMs);
+
+        //전송 완료시 재시도 대기를 초기화한다.
+        session.queue.ack(2);
+        session.onSent(2, 9000, 6000);
+        session.onDropped(true);
+        session.onDropped(false);
+        session.onDropped(false);
+        stats = session.stats(NOW, codec_);
+        assertEquals(1, stats.depth);
+        assertEquals(2, stats.sent);
+        assertEquals(4500, stats.averageWaitMs);
+        assertEquals(6000, stats.maxWaitMs);
+        assertEquals(5, stats.failures);
+        assertEquals(0, stats.retryInMs);
+        assertEquals(1, stats.poisoned);
+        assertEquals(2, stats.expired);
+
+        session.queue.ack(1);
+        session.onSent(1, 3000, 3000);
+        stats = session.stats(NOW, codec_);
+        assertEquals(0, stats.depth);
+        assertEquals(0, stats.bytes);
+        assertEquals(0, stats.oldestWaitMs);
+        assertEquals(3, stats.sent);
+        assertEquals(4000, stats.averageWaitMs);
+        assertEquals(6000, stats.maxWaitMs);
+    }
+
+    @Test
+    public void stats_perLane() {
+        final UploadLanes lanes = lanes(1, 1);
+        append(lanes, ConnectionRecord.TYPE_CRASH, 1, NOW);
+        append(lanes, ConnectionRecord.TYPE_EVENTS, 2, NOW);
+        final Map<LanePolicy.Lane, LaneStats> stats = lanes.stats(codec_);
+        assertEquals(3, stats.size());
+        assertEquals(1, stats.get(LanePolicy.Lane.CRASH).depth);
+        assertEquals(0, stats.get(LanePolicy.Lane.SESSION).depth);
+        assertEquals(2, stats.get(LanePolicy.Lane.EVENTS).depth);
+    }
+}
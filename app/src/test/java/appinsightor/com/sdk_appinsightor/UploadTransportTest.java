@@ -0,0 +1,412 @@
+package appinsightor.com.sdk_appinsightor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * UploadTransport 연결 재사용(keep-alive, TLS) 테스트 - 로컬 HTTP(S) 서버 앞의 TCP 중계(proxy)가 받은 연결 수로
+ * 새 연결 수를 세고, https 는 TransportStats 의 TLS handshake 수와 함께 확인한다.<br />
+ * loopback 은 닫힌 연결의 client port 를 바로 재사용할 수 있으므로 서버가 받은 요청의 port 로는 연결을 구분하지 않는다.<br />
+ * 요청 1건의 지연 시간, CPU 시간을 매 요청 disconnect 하는 이전 방식과 비교한다.(benchmark 는 {@link Benchmark#PROPERTY} 지정시에만 실행)
+ */
+public class UploadTransportTest {
+    private static final int REQUESTS = 20;
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    //JDK 는 닫은 응답 본문의 남은 부분이 http.KeepAlive.remainingData(512KB) 이하이면 따로 읽고 pool 에 돌려주므로,
+    //연결을 끊는 경우를 확인할 때는 그보다 긴 응답 본문을 사용한다.
+    private static final int UNREAD_RESPONSE_BYTES = 1024 * 1024;
+
+    static {
+        //stub 서버가 응답 header 와 본문을 모아 보내면(Nagle) 재사용한 연결의 응답이 client 의 delayed ACK 만큼 늦어진다.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private HttpServer server_;
+    private String url_;
+    private volatile int responseCode_ = 200;
+    private volatile int responseBytes_;
+    private final AtomicInteger requests_ = new AtomicInteger();
+    private final AtomicInteger connections_ = new AtomicInteger();
+    private ServerSocket proxy_;
+    private BoundedStorageBackend queue_;
+
+    @After
+    public void tearDown() {
+        if (server_ != null) {
+            server_.stop(0);
+        }
+        if (proxy_ != null) {
+            close(proxy_);
+        }
+    }
+
+    private void start(final HttpServer server, final String scheme) throws IOException {
+        server_ = server;
+        server_.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final InputStream in = exchange.getRequestBody();
+                final byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    //요청 본문을 끝까지 읽음
+                }
+                requests_.incrementAndGet();
+                exchange.sendResponseHeaders(responseCode_, responseBytes_ == 0 ? -1 : responseBytes_);
+                if (responseBytes_ > 0) {
+                    exchange.getResponseBody().write(new byte[responseBytes_]);
+                }
+                exchange.close();
+            }
+        });
+        server_.start();
+        proxy_ = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket client = proxy_.accept();
+                        connections_.incrementAndGet();
+                        final Socket backend = new Socket("127.0.0.1", server_.getAddress().getPort());
+                        //중계가 받은 byte 를 모아 보내지(Nagle) 않아야 요청 지연 시간이 서버, client 의 시간만 포함한다.
+                        client.setTcpNoDelay(true);
+                        backend.setTcpNoDelay(true);
+                        pump(client, backend);
+                        pump(backend, client);
+                    }
+                } catch (IOException ignored) {//tearDown
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        url_ = scheme + "://127.0.0.1:" + proxy_.getLocalPort();
+    }
+
+    /**
+     * from 에서 읽은 byte 를 to 로 전달하며, 한쪽이 닫히면 양쪽 모두 닫는다.
+     */
+    private static void pump(final Socket from, final Socket to) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final InputStream in = from.getInputStream();
+                    final OutputStream out = to.getOutputStream();
+                    final byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                        out.flush();
+                    }
+                } catch (IOException ignored) {
+                } finally {
+                    close(from);
+                    close(to);
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void close(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void startHttp() throws IOException {
+        start(HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0), "http");
+    }
+
+    /**
+     * ConnectionProcessor 와 같은 순서로 POST 요청 1건을 보낸다.
+     * @param release false 이면 응답을 받지 못한 요청과 같이 정리(disconnect)한다.
+     */
+    private int post(final boolean release) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) new URL(url_ + "/i").openConnection();
+        UploadTransport.prepare(conn);
+        conn.setDoOutput(true);
+        conn.setRequestMethod("POST");
+        final long startNanos = AppInsightor.monotonicNanos();
+        boolean responded = false;
+        try {
+            final OutputStream out = conn.getOutputStream();
+            out.write(AppInsightorStore.toBytes("app_key=server&device_id=device&begin_session=1"));
+            out.close();
+            final int responseCode = conn.getResponseCode();
+            responded = release;
+            UploadTransport.onResponse(conn, startNanos);
+            return responseCode;
+        } finally {
+            UploadTransport.release(conn, responded);
+        }
+    }
+
+    @Test
+    public void http_successResponses_reuseOneConnection() throws Exception {
+        startHttp();
+        responseBytes_ = 512;
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals(200, post(true));
+        }
+        assertEquals(REQUESTS, requests_.get());
+        assertEquals(1, connections_.get());
+    }
+
+    /**
+     * 4xx, 5xx 응답도 error stream 을 읽고 닫아서 연결을 재사용한다.
+     */
+    @Test
+    public void http_errorResponses_reuseOneConnection() throws Exception {
+        startHttp();
+        responseCode_ = 503;
+        responseBytes_ = 128;
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals(503, post(true));
+        }
+        assertEquals(1, connections_.get());
+    }
+
+    /**
+     * 응답 본문을 읽기 전에 끝난 요청(네트워크 오류)은 연결을 끊는다.
+     */
+    @Test
+    public void http_notResponded_disconnects() throws Exception {
+        startHttp();
+        responseBytes_ = UNREAD_RESPONSE_BYTES;
+        for (int i = 0; i < 5; i++) {
+            post(false);
+        }
+        assertEquals(5, connections_.get());
+    }
+
+    /**
+     * 너무 긴 응답 본문은 끝까지 읽지 않고 연결을 닫는다.
+     */
+    @Test
+    public void http_largeResponse_notDrained() throws Exception {
+        startHttp();
+        responseBytes_ = UNREAD_RESPONSE_BYTES;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, post(true));
+        }
+        assertEquals(3, connections_.get());
+    }
+
+    /**
+     * 전송 경로(ConnectionProcessor) 전체에서 요청 메시지마다 같은 연결을 사용한다.
+     */
+    @Test
+    public void connectionProcessor_reusesConnection() throws Exception {
+        startHttp();
+        final boolean postOnly = ConnectionProcessor.HttpPostOnlyRequest;
+        ConnectionProcessor.HttpPostOnlyRequest = true;
+        try {
+            final UploadLanes lanes = lanes(REQUESTS);
+            new ConnectionProcessor(url_, lanes, new RecordCodec(null), "device",
+                    UploadBatchPolicy.SINGLE, new PayloadCompressor(), new EnvelopeWriter()).run();
+            assertEquals(0, queue_.size());
+        } finally {
+            ConnectionProcessor.HttpPostOnlyRequest = postOnly;
+        }
+        assertEquals(REQUESTS, requests_.get());
+        assertEquals(1, connections_.get());
+    }
+
+    /**
+     * self-signed 인증서로 https 서버를 시작한다.
+     * @return 그 인증서를 신뢰하는 client SSLSocketFactory
+     */
+    private SSLSocketFactory startHttps() throws Exception {
+        final KeyStore keyStore = keyStore();
+        final KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+        final HttpsServer server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        start(server, "https");
+
+        final TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        final SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagers.getTrustManagers(), null);
+        return clientContext.getSocketFactory();
+    }
+
+    @Test
+    public void https_handshakeOnlyForNewConnection() throws Exception {
+        final SSLSocketFactory clientFactory = startHttps();
+        responseBytes_ = 512;
+        final SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        HttpsURLConnection.setDefaultSSLSocketFactory(clientFactory);
+        try {
+            final TransportStats before = UploadTransport.stats();
+            for (int i = 0; i < REQUESTS; i++) {
+                assertEquals(200, post(true));
+            }
+            final TransportStats after = UploadTransport.stats();
+            assertEquals(REQUESTS, after.tlsRequests - before.tlsRequests);
+            assertEquals(1, after.tlsHandshakes - before.tlsHandshakes);
+            assertEquals(1, connections_.get());
+
+            //pool 의 연결로 요청한 후 끊으면 다음 요청은 새 연결(handshake)을 사용한다.
+            responseBytes_ = UNREAD_RESPONSE_BYTES;
+            post(false);
+            responseBytes_ = 512;
+            assertEquals(200, post(true));
+            assertEquals(2, UploadTransport.stats().tlsHandshakes - before.tlsHandshakes);
+            assertEquals(2, connections_.get());
+        } finally {
+            HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+        }
+    }
+
+    /**
+     * 이전 ConnectionProcessor 와 같은 순서로 POST 요청 1건을 보낸다. - 응답 본문을 읽지 않고 매 요청마다 disconnect
+     */
+    private int postDisconnect() throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) new URL(url_ + "/i").openConnection();
+        conn.setDoOutput(true);
+        conn.setRequestMethod("POST");
+        try {
+            conn.connect();
+            final OutputStream out = conn.getOutputStream();
+            out.write(AppInsightorStore.toBytes("app_key=server&device_id=device&begin_session=1"));
+            out.close();
+            return conn.getResponseCode();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * https 요청 1건의 지연 시간, client 스레드 CPU 시간 측정(ns) - {keepAliveNanos, keepAliveCpu, disconnectNanos, disconnectCpu}
+     */
+    private long[] measureTls(final int requests) throws IOException {
+        final long[] result = new long[4];
+        for (int mode = 0; mode < 2; mode++) {
+            final long nanos = System.nanoTime();
+            final long cpu = Benchmark.cpuNanos();
+            for (int i = 0; i < requests; i++) {
+                assertEquals(200, mode == 0 ? post(true) : postDisconnect());
+            }
+            result[mode * 2] = (System.nanoTime() - nanos) / requests;
+            result[mode * 2 + 1] = (Benchmark.cpuNanos() - cpu) / requests;
+        }
+        return result;
+    }
+
+    /**
+     * microbenchmark - TLS 서버(stub)로 보내는 요청 1건의 지연 시간, client CPU 시간을
+     * keep-alive(UploadTransport)와 매 요청 disconnect(이전 방식)로 비교한다.({@link Benchmark})
+     */
+    @Test
+    public void benchmark_tlsKeepAliveVsDisconnect() throws Exception {
+        Benchmark.assumeEnabled();
+        final SSLSocketFactory clientFactory = startHttps();
+        responseBytes_ = 512;
+        final SSLSocketFactory defaultFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        HttpsURLConnection.setDefaultSSLSocketFactory(clientFactory);
+        try {
+            final int requests = 200;
+            measureTls(requests / 4);
+            final TransportStats before = UploadTransport.stats();
+            final int connections = connections_.get();
+            final long[] result = measureTls(requests);
+            assertEquals(0, UploadTransport.stats().tlsHandshakes - before.tlsHandshakes);
+            Benchmark.report("TLS keep-alive (per request)",
+                    "keep-alive " + result[0] / 1000 + " us, cpu " + result[1] / 1000 + " us / disconnect "
+                            + result[2] / 1000 + " us, cpu " + result[3] / 1000 + " us, "
+                            + (connections_.get() - connections) + " connections / " + requests + " requests");
+            assertTrue("keep-alive " + result[0] + " ns, disconnect " + result[2] + " ns", result[0] * 2 < result[2]);
+            assertTrue("keep-alive cpu " + result[1] + " ns, disconnect cpu " + result[3] + " ns", result[1] * 2 < result[3]);
+        } finally {
+            HttpsURLConnection.setDefaultSSLSocketFactory(defaultFactory);
+        }
+    }
+
+    private UploadLanes lanes(final int count) {
+        final QueueCapacity capacity = new QueueCapacity(10000, 64L * 1024 * 1024, QueueCapacity.OverflowPolicy.DROP_OLDEST);
+        final RecordCodec codec = new RecordCodec(null);
+        queue_ = new BoundedStorageBackend(new MemoryStorageBackend(), null, capacity, null, ConnectionQueue.SEQUENCE);
+        for (int i = 1; i <= count; i++) {
+            final ConnectionRecord record = new ConnectionRecord();
+            record.type = ConnectionRecord.TYPE_SESSION;
+            record.seq = i;
+            record.serverName = "server";
+            record.deviceId = "device";
+            record.timestamp = System.currentTimeMillis();
+            record.sessionStatus = "active";
+            queue_.append(codec.encode(record));
+        }
+        final LanePolicy policy = new LanePolicy(capacity, 1, 60000, 60000, 1);
+        final UploadLanes lanes = new UploadLanes();
+        lanes.put(new UploadLane(LanePolicy.Lane.CRASH, policy,
+                new BoundedStorageBackend(new MemoryStorageBackend(), null, capacity, null, ConnectionQueue.SEQUENCE)));
+        lanes.put(new UploadLane(LanePolicy.Lane.SESSION, policy, queue_));
+        return lanes;
+    }
+
+    /**
+     * 127.0.0.1 용 self-signed 인증서(keytool 로 생성)
+     */
+    private KeyStore keyStore() throws Exception {
+        final File file = new File(temp.getRoot(), "server.p12");
+        final Process keytool = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/keytool").getPath(),
+                "-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+                "-dname", "CN=127.0.0.1", "-ext", "san=ip:127.0.0.1", "-storetype", "PKCS12",
+                "-keystore", file.getPath(), "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD),
+                "-noprompt").redirectErrorStream(true).start();
+        final InputStream output = keytool.getInputStream();
+        while (output.read() != -1) {
+            //keytool 출력
+        }
+        assertEquals(0, keytool.waitFor());
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            keyStore.load(in, PASSWORD);
+        } finally {
+            in.close();
+        }
+        return keyStore;
+    }
+}
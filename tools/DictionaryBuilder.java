@@ -0,0 +1,271 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * AppInsightor 요청 메시지 압축용 preset dictionary 생성 도구(Android build 에 포함되지 않는 JDK 실행 도구)<br />
+ * sample 요청 메시지 본문(corpus)에서 여러 sample 에 반복되는 구간을 골라 CompressionDictionary.java 를 생성한다.
+ *
+ * <p>corpus</p>
+ * 파일 1줄에 요청 메시지 본문("c={...}") 1개, 디렉터리는 하위 파일을 모두 읽는다.<br />
+ * AppInsightor.setLoggingEnabled(true) 상태의 "send ok ->" log 에서 ConnectionQueue(session, events), CrashDetails(crash)
+ * 요청 메시지를 고루 모은다.
+ *
+ * <p>실행</p>
+ * javac -d build/tools tools/DictionaryBuilder.java<br />
+ * java -cp build/tools DictionaryBuilder -version 2 -size 4096 -out app/src/main/java/appinsightor/com/sdk_appinsightor/CompressionDictionary.java corpus/
+ *
+ * <p>방식(COVER)</p>
+ * 1. 길이 DMER 인 구간(d-mer)마다 포함된 sample 수를 센다.<br />
+ * 2. corpus 를 (size / SEGMENT) 개 epoch 로 나누고, epoch 마다 d-mer 빈도 합이 가장 큰 길이 SEGMENT 구간을 고른다.
+ * 고른 구간의 d-mer 는 빈도를 0 으로 하여 다시 고르지 않는다.<br />
+ * 3. 점수가 높은 구간을 dictionary 끝에 둔다.(deflate 는 가까운 거리를 더 적은 bit 로 기록한다.)<br />
+ * 생성한 dictionary 로 corpus 를 압축한 결과(dictionary 없음 / 있음)를 출력한다.
+ */
+public class DictionaryBuilder {
+    private static final int DMER = 8;
+    private static final int SEGMENT = 48;
+
+    public static void main(final String[] args) throws IOException {
+        int version = 1;
+        int size = 4096;
+        String out = null;
+        final List<String> samples = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-version".equals(args[i])) {
+                version = Integer.parseInt(args[++i]);
+            } else if ("-size".equals(args[i])) {
+                size = Integer.parseInt(args[++i]);
+            } else if ("-out".equals(args[i])) {
+                out = args[++i];
+            } else {
+                read(new File(args[i]), samples);
+            }
+        }
+        if (samples.isEmpty() || size <= 0 || size > 32 * 1024) {
+            System.err.println("usage: DictionaryBuilder [-version N] [-size BYTES(<=32768)] [-out CompressionDictionary.java] corpus...");
+            System.exit(1);
+        }
+
+        final String dictionary = build(samples, size);
+        report(samples, dictionary);
+        final String source = source(version, dictionary);
+        if (out == null) {
+            System.out.print(source);
+        } else {
+            final Writer writer = new OutputStreamWriter(new java.io.FileOutputStream(out), "UTF-8");
+            writer.write(source);
+            writer.close();
+            System.err.println("wrote " + out);
+        }
+    }
+
+    private static void read(final File file, final List<String> samples) throws IOException {
+        if (file.isDirectory()) {
+            final File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    read(child, samples);
+                }
+            }
+            return;
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.length() >= DMER) {
+                samples.add(line);
+            }
+        }
+        reader.close();
+    }
+
+    static String build(final List<String> samples, final int size) {
+        //1. d-mer 별 포함된 sample 수
+        final Map<String, Integer> frequency = new HashMap<>();
+        for (String sample : samples) {
+            final Set<String> seen = new HashSet<>();
+            for (int i = 0; i + DMER <= sample.length(); i++) {
+                final String dmer = sample.substring(i, i + DMER);
+                if (seen.add(dmer)) {
+                    final Integer count = frequency.get(dmer);
+                    frequency.put(dmer, count == null ? 1 : count + 1);
+                }
+            }
+        }
+
+        //2. epoch 마다 점수가 가장 큰 구간
+        final StringBuilder corpus = new StringBuilder();
+        for (String sample : samples) {
+            corpus.append(sample).append('\n');
+        }
+        final int epochs = Math.max(1, size / SEGMENT);
+        final int epochLength = Math.max(SEGMENT, corpus.length() / epochs);
+        final List<Segment> segments = new ArrayList<>();
+        int total = 0;
+        for (int pass = 0; pass < 4 && total < size; pass++) {
+            for (int start = 0; start + SEGMENT <= corpus.length() && total < size; start += epochLength) {
+                final Segment best = best(corpus, start, Math.min(corpus.length(), start + epochLength), frequency);
+                if (best == null) {
+                    continue;
+                }
+                for (int i = best.start; i + DMER <= best.start + SEGMENT; i++) {
+                    frequency.put(corpus.substring(i, i + DMER), 0);
+                }
+                segments.add(best);
+                total += SEGMENT;
+            }
+        }
+
+        //3. 점수가 높은 구간을 끝에
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(final Segment a, final Segment b) {
+                return a.score < b.score ? -1 : (a.score == b.score ? 0 : 1);
+            }
+        });
+        final StringBuilder dictionary = new StringBuilder(size);
+        for (Segment segment : segments) {
+            dictionary.append(corpus, segment.start, segment.start + SEGMENT);
+        }
+        return dictionary.length() > size ? dictionary.substring(dictionary.length() - size) : dictionary.toString();
+    }
+
+    /**
+     * [from, to) 에서 d-mer 빈도 합이 가장 큰 길이 SEGMENT 구간(1개 sample 에만 있는 d-mer 는 제외)
+     */
+    private static Segment best(final CharSequence corpus, final int from, final int to, final Map<String, Integer> frequency) {
+        Segment best = null;
+        for (int start = from; start + SEGMENT <= to; start++) {
+            long score = 0;
+            final Set<String> seen = new HashSet<>();
+            for (int i = start; i + DMER <= start + SEGMENT; i++) {
+                final String dmer = corpus.subSequence(i, i + DMER).toString();
+                final Integer count = frequency.get(dmer);
+                if (count != null && count > 1 && seen.add(dmer)) {
+                    score += count;
+                }
+            }
+            if (score > 0 && (best == null || score > best.score)) {
+                best = new Segment(start, score);
+            }
+        }
+        return best;
+    }
+
+    private static void report(final List<String> samples, final String dictionary) throws IOException {
+        final byte[] dict = dictionary.getBytes("UTF-8");
+        long raw = 0;
+        long plain = 0;
+        long preset = 0;
+        final byte[] buffer = new byte[1 << 20];
+        for (String sample : samples) {
+            final byte[] input = sample.getBytes("UTF-8");
+            raw += input.length;
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(input);
+            deflater.finish();
+            plain += deflater.deflate(buffer) + 18;//gzip header, trailer
+            deflater.end();
+            final Deflater withDictionary = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            withDictionary.setDictionary(dict);
+            withDictionary.setInput(input);
+            withDictionary.finish();
+            preset += withDictionary.deflate(buffer);
+            withDictionary.end();
+        }
+        System.err.println(samples.size() + " samples, " + raw + " bytes, dictionary " + dict.length + " bytes");
+        System.err.println("gzip: " + plain + " bytes (" + plain * 100 / raw + "%), preset dictionary: " + preset
+                + " bytes (" + preset * 100 / raw + "%)");
+    }
+
+    private static String source(final int version, final String dictionary) throws IOException {
+        final Adler32 adler = new Adler32();
+        adler.update(dictionary.getBytes("UTF-8"));
+        final StringBuilder source = new StringBuilder();
+        source.append("package appinsightor.com.sdk_appinsightor;\n\n")
+              .append("import java.io.UnsupportedEncodingException;\n")
+              .append("import java.util.zip.Adler32;\n\n")
+              .append("/**\n")
+              .append(" * 요청 메시지 압축용 preset dictionary(Deflater.setDictionary)<br />\n")
+              .append(" * tools/DictionaryBuilder 로 ConnectionQueue, CrashDetails 요청 메시지 sample 에서 생성한 파일이므로 직접 수정하지 않는다.<br />\n")
+              .append(" * 다시 생성하면 VERSION 을 올리고, 수신서버에 같은 ID 의 dictionary 를 먼저 등록해야 한다.\n")
+              .append(" */\n")
+              .append("final class CompressionDictionary {\n")
+              .append("    static final int VERSION = ").append(version).append(";\n\n")
+              .append("    private static final String DICTIONARY =\n");
+        for (int i = 0; i < dictionary.length(); i += 96) {
+            source.append(i == 0 ? "            \"" : "            + \"")
+                  .append(escape(dictionary.substring(i, Math.min(dictionary.length(), i + 96)))).append("\"\n");
+        }
+        source.append("            ;//adler32 ").append(Long.toHexString(adler.getValue())).append("\n\n")
+              .append("    private static final byte[] BYTES = toBytes(DICTIONARY);\n\n")
+              .append("    /** 수신서버에 전송하는 dictionary ID(VERSION-adler32) */\n")
+              .append("    static final String ID = VERSION + \"-\" + adler32(BYTES);\n\n")
+              .append("    private CompressionDictionary() {\n")
+              .append("    }\n\n")
+              .append("    /**\n")
+              .append("     * @return dictionary(수정하지 않는다.)\n")
+              .append("     */\n")
+              .append("    static byte[] bytes() {\n")
+              .append("        return BYTES;\n")
+              .append("    }\n\n")
+              .append("    private static byte[] toBytes(final String dictionary) {\n")
+              .append("        try {\n")
+              .append("            return dictionary.getBytes(\"UTF-8\");\n")
+              .append("        } catch (UnsupportedEncodingException e) {\n")
+              .append("            throw new IllegalStateException(e);\n")
+              .append("        }\n")
+              .append("    }\n\n")
+              .append("    private static String adler32(final byte[] bytes) {\n")
+              .append("        final Adler32 adler = new Adler32();\n")
+              .append("        adler.update(bytes, 0, bytes.length);\n")
+              .append("        return Long.toHexString(adler.getValue());\n")
+              .append("    }\n")
+              .append("}\n");
+        return source.toString();
+    }
+
+    private static String escape(final String value) {
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\t') {
+                escaped.append("\\t");
+            } else if (c < 0x20 || c > 0x7e) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static class Segment {
+        final int start;
+        final long score;
+
+        Segment(final int start, final long score) {
+            this.start = start;
+            this.score = score;
+        }
+    }
+}